@@ -0,0 +1,241 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NonNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compares two JMH result files (produced with {@code -rf json -rff results.json}) and reports relative change of
+ * every benchmark present in both of them:
+ * <pre>
+ * java -cp target/benchmarks.jar org.deeplearning4j.benchmarks.BaselineReport baseline.json current.json [threshold%] [report.md]
+ * </pre>
+ * Change is normalized so that positive values always mean "faster", regardless of benchmark mode. Changes within
+ * the score error of either run are reported as noise. Process exits with status 1 if any benchmark regressed by more
+ * than the threshold (5% by default), so the tool can gate release pipelines.
+ */
+public class BaselineReport {
+
+    public enum Status {
+        IMPROVED, REGRESSED, UNCHANGED, NOISE, NEW, MISSING
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Result {
+        private String benchmark;
+        private String mode;
+        private String params;
+        private double score;
+        private double scoreError;
+        private String unit;
+
+        public String key() {
+            return params.isEmpty() ? benchmark : benchmark + " {" + params + "}";
+        }
+
+        /**
+         * @return true if higher score means better performance
+         */
+        public boolean isHigherBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Comparison {
+        private String key;
+        private Result baseline;
+        private Result current;
+        /**
+         * Relative change, positive means faster
+         */
+        private double change;
+        private Status status;
+    }
+
+    private final Map<String, Result> baseline;
+    private final Map<String, Result> current;
+    private final double threshold;
+
+    /**
+     * @param baseline  baseline results
+     * @param current   current results
+     * @param threshold relative change, which is considered significant, i.e. 0.05 for 5%
+     */
+    public BaselineReport(@NonNull List<Result> baseline, @NonNull List<Result> current, double threshold) {
+        this.baseline = index(baseline);
+        this.current = index(current);
+        this.threshold = threshold;
+    }
+
+    private static Map<String, Result> index(List<Result> results) {
+        Map<String, Result> map = new LinkedHashMap<>();
+        for (Result r : results)
+            map.put(r.key(), r);
+        return map;
+    }
+
+    /**
+     * This method parses JMH JSON output
+     */
+    public static List<Result> parse(@NonNull InputStream is) throws IOException {
+        JsonNode root = new ObjectMapper().readTree(is);
+        List<Result> results = new ArrayList<>();
+        for (JsonNode node : root) {
+            StringBuilder params = new StringBuilder();
+            JsonNode p = node.get("params");
+            if (p != null) {
+                // JMH writes params in declaration order, we sort them to keep keys stable
+                TreeMap<String, String> sorted = new TreeMap<>();
+                Iterator<Map.Entry<String, JsonNode>> fields = p.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> e = fields.next();
+                    sorted.put(e.getKey(), e.getValue().asText());
+                }
+                for (Map.Entry<String, String> e : sorted.entrySet()) {
+                    if (params.length() > 0)
+                        params.append(", ");
+                    params.append(e.getKey()).append("=").append(e.getValue());
+                }
+            }
+
+            JsonNode metric = node.get("primaryMetric");
+            double error = metric.get("scoreError").asDouble();
+            results.add(new Result(node.get("benchmark").asText(), node.get("mode").asText(), params.toString(),
+                    metric.get("score").asDouble(), Double.isNaN(error) ? 0.0 : error, metric.get("scoreUnit").asText()));
+        }
+        return results;
+    }
+
+    public static List<Result> parse(@NonNull File file) throws IOException {
+        try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+            return parse(is);
+        }
+    }
+
+    public List<Comparison> compare() {
+        List<Comparison> out = new ArrayList<>();
+        for (Map.Entry<String, Result> e : current.entrySet()) {
+            Result c = e.getValue();
+            Result b = baseline.get(e.getKey());
+            if (b == null) {
+                out.add(new Comparison(e.getKey(), null, c, 0.0, Status.NEW));
+                continue;
+            }
+
+            if (!b.getUnit().equals(c.getUnit()) || !b.getMode().equals(c.getMode()))
+                throw new IllegalStateException("Benchmark [" + e.getKey() + "] has different mode or units: " + b.getMode() + "/" + b.getUnit()
+                        + " vs " + c.getMode() + "/" + c.getUnit());
+
+            double change = c.isHigherBetter() ? c.getScore() / b.getScore() - 1.0 : b.getScore() / c.getScore() - 1.0;
+
+            Status status;
+            if (Math.abs(c.getScore() - b.getScore()) <= Math.max(b.getScoreError(), c.getScoreError()))
+                status = Status.NOISE;
+            else if (change >= threshold)
+                status = Status.IMPROVED;
+            else if (change <= -threshold)
+                status = Status.REGRESSED;
+            else
+                status = Status.UNCHANGED;
+
+            out.add(new Comparison(e.getKey(), b, c, change, status));
+        }
+
+        for (Map.Entry<String, Result> e : baseline.entrySet()) {
+            if (!current.containsKey(e.getKey()))
+                out.add(new Comparison(e.getKey(), e.getValue(), null, 0.0, Status.MISSING));
+        }
+        return out;
+    }
+
+    /**
+     * This method renders comparison as Markdown table
+     */
+    public String toMarkdown(List<Comparison> comparisons) {
+        StringBuilder sb = new StringBuilder();
+        Map<Status, Integer> counts = new EnumMap<>(Status.class);
+        for (Comparison c : comparisons)
+            counts.merge(c.getStatus(), 1, Integer::sum);
+
+        sb.append("## Benchmark comparison\n\n");
+        sb.append("Threshold: ").append(String.format(Locale.ROOT, "%.1f%%", threshold * 100)).append("; ");
+        for (Map.Entry<Status, Integer> e : counts.entrySet())
+            sb.append(e.getKey()).append(": ").append(e.getValue()).append("; ");
+        sb.append("\n\n");
+
+        sb.append("| Benchmark | Mode | Baseline | Current | Units | Change | Status |\n");
+        sb.append("|---|---|---:|---:|---|---:|---|\n");
+        for (Comparison c : comparisons) {
+            Result any = c.getCurrent() != null ? c.getCurrent() : c.getBaseline();
+            sb.append("| ").append(c.getKey())
+                    .append(" | ").append(any.getMode())
+                    .append(" | ").append(score(c.getBaseline()))
+                    .append(" | ").append(score(c.getCurrent()))
+                    .append(" | ").append(any.getUnit())
+                    .append(" | ").append(c.getBaseline() != null && c.getCurrent() != null ? String.format(Locale.ROOT, "%+.2f%%", c.getChange() * 100) : "")
+                    .append(" | ").append(c.getStatus())
+                    .append(" |\n");
+        }
+        return sb.toString();
+    }
+
+    private static String score(Result r) {
+        if (r == null)
+            return "-";
+
+        return String.format(Locale.ROOT, "%.3f ± %.3f", r.getScore(), r.getScoreError());
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineReport <baseline.json> <current.json> [threshold%] [report.md]");
+            System.exit(2);
+        }
+
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) / 100.0 : 0.05;
+        BaselineReport report = new BaselineReport(parse(new File(args[0])), parse(new File(args[1])), threshold);
+        List<Comparison> comparisons = report.compare();
+        String markdown = report.toMarkdown(comparisons);
+
+        if (args.length > 3) {
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(args[3]), StandardCharsets.UTF_8)) {
+                w.write(markdown);
+            }
+        }
+        System.out.println(markdown);
+
+        for (Comparison c : comparisons) {
+            if (c.getStatus() == Status.REGRESSED)
+                System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.benchmarks;
+
+import org.deeplearning4j.datasets.iterator.RandomDataSetIterator;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.AsyncDataSetIterator;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full pass over DataSetIterator, with and without AsyncDataSetIterator prefetch.<br>
+ * Each minibatch is generated on the fly, which stands in for ETL cost, and consumer does {@code consumerWork}
+ * matrix multiplications per minibatch, which stands in for training step. With async prefetch both should overlap.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DataSetIteratorBenchmark {
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    @Param({"0", "4"})
+    public int consumerWork;
+
+    @Param({"32"})
+    public int batchSize;
+
+    @Param({"50"})
+    public int numBatches;
+
+    @Param({"4"})
+    public int prefetchSize;
+
+    private INDArray weights;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Nd4j.getRandom().setSeed(12345);
+        weights = Nd4j.rand(784, 784);
+    }
+
+    /**
+     * @return number of iterated examples
+     */
+    @Benchmark
+    public long epoch(Blackhole bh) {
+        DataSetIterator iterator = new RandomDataSetIterator(numBatches, new long[]{batchSize, 784}, new long[]{batchSize, 10},
+                RandomDataSetIterator.Values.RANDOM_UNIFORM, RandomDataSetIterator.Values.ONE_HOT);
+        if (async)
+            iterator = new AsyncDataSetIterator(iterator, prefetchSize, true);
+
+        long examples = 0;
+        try {
+            while (iterator.hasNext()) {
+                DataSet ds = iterator.next();
+                INDArray features = ds.getFeatures();
+                for (int i = 0; i < consumerWork; i++)
+                    bh.consume(features.mmul(weights));
+
+                examples += ds.numExamples();
+            }
+        } finally {
+            if (iterator instanceof AsyncDataSetIterator)
+                ((AsyncDataSetIterator) iterator).shutdown();
+        }
+        return examples;
+    }
+}
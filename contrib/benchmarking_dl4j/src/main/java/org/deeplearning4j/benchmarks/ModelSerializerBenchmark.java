@@ -0,0 +1,75 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.benchmarks;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ModelSerializer save/restore round trips. In-memory streams are used, so disk speed doesn't affect results
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelSerializerBenchmark {
+
+    @Param({"DENSE", "CONV", "LSTM"})
+    public MultiLayerNetworkBenchmark.ModelType model;
+
+    @Param({"true"})
+    public boolean saveUpdater;
+
+    private MultiLayerNetwork network;
+    private byte[] serialized;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        network = new MultiLayerNetwork(MultiLayerNetworkBenchmark.configuration(model));
+        network.init();
+        // one fit call, so updater state is initialized
+        network.fit(MultiLayerNetworkBenchmark.data(model, 8));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ModelSerializer.writeModel(network, baos, saveUpdater);
+        serialized = baos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] save() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(serialized.length);
+        ModelSerializer.writeModel(network, baos, saveUpdater);
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public MultiLayerNetwork restore() throws IOException {
+        return ModelSerializer.restoreMultiLayerNetwork(new ByteArrayInputStream(serialized), saveUpdater);
+    }
+}
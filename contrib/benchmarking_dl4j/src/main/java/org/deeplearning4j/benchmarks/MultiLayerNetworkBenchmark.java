@@ -0,0 +1,153 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.benchmarks;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.*;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MultiLayerNetwork fit() and output() for dense, convolutional and recurrent models, over synthetic data
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiLayerNetworkBenchmark {
+
+    public enum ModelType {
+        DENSE, CONV, LSTM
+    }
+
+    @Param({"DENSE", "CONV", "LSTM"})
+    public ModelType model;
+
+    @Param({"32"})
+    public int batchSize;
+
+    private MultiLayerNetwork network;
+    private DataSet dataSet;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Nd4j.getRandom().setSeed(12345);
+        network = new MultiLayerNetwork(configuration(model));
+        network.init();
+        dataSet = data(model, batchSize);
+
+        // initial call allocates workspaces, so it's kept out of measurements
+        network.fit(dataSet);
+        network.output(dataSet.getFeatures());
+    }
+
+    protected static MultiLayerConfiguration configuration(ModelType model) {
+        NeuralNetConfiguration.ListBuilder builder = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .updater(new Adam(1e-3))
+                .weightInit(WeightInit.XAVIER)
+                .list();
+
+        switch (model) {
+            case DENSE:
+                return builder
+                        .layer(new DenseLayer.Builder().nOut(512).activation(Activation.RELU).build())
+                        .layer(new DenseLayer.Builder().nOut(256).activation(Activation.RELU).build())
+                        .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(10).activation(Activation.SOFTMAX).build())
+                        .setInputType(InputType.feedForward(784))
+                        .build();
+            case CONV:
+                return builder
+                        .layer(new ConvolutionLayer.Builder(5, 5).nOut(20).activation(Activation.RELU).build())
+                        .layer(new SubsamplingLayer.Builder(SubsamplingLayer.PoolingType.MAX).kernelSize(2, 2).stride(2, 2).build())
+                        .layer(new ConvolutionLayer.Builder(5, 5).nOut(50).activation(Activation.RELU).build())
+                        .layer(new SubsamplingLayer.Builder(SubsamplingLayer.PoolingType.MAX).kernelSize(2, 2).stride(2, 2).build())
+                        .layer(new DenseLayer.Builder().nOut(500).activation(Activation.RELU).build())
+                        .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(10).activation(Activation.SOFTMAX).build())
+                        .setInputType(InputType.convolutional(28, 28, 1))
+                        .build();
+            case LSTM:
+                return builder
+                        .layer(new LSTM.Builder().nOut(256).activation(Activation.TANH).build())
+                        .layer(new RnnOutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(10).activation(Activation.SOFTMAX).build())
+                        .setInputType(InputType.recurrent(64, 50))
+                        .build();
+            default:
+                throw new IllegalArgumentException("Unknown model type: " + model);
+        }
+    }
+
+    protected static DataSet data(ModelType model, int batchSize) {
+        INDArray features;
+        INDArray labels;
+        switch (model) {
+            case DENSE:
+                features = Nd4j.rand(batchSize, 784);
+                labels = oneHot(batchSize, 10);
+                break;
+            case CONV:
+                features = Nd4j.rand(batchSize, 1, 28, 28);
+                labels = oneHot(batchSize, 10);
+                break;
+            case LSTM:
+                features = Nd4j.rand(batchSize, 64, 50);
+                labels = Nd4j.zeros(batchSize, 10, 50);
+                for (int i = 0; i < batchSize; i++)
+                    for (int t = 0; t < 50; t++)
+                        labels.putScalar(i, (i + t) % 10, t, 1.0);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown model type: " + model);
+        }
+        return new DataSet(features, labels);
+    }
+
+    private static INDArray oneHot(int batchSize, int numClasses) {
+        INDArray labels = Nd4j.zeros(batchSize, numClasses);
+        for (int i = 0; i < batchSize; i++)
+            labels.putScalar(i, i % numClasses, 1.0);
+        return labels;
+    }
+
+    @Benchmark
+    public MultiLayerNetwork fit() {
+        network.fit(dataSet);
+        return network;
+    }
+
+    @Benchmark
+    public INDArray output() {
+        return network.output(dataSet.getFeatures());
+    }
+}
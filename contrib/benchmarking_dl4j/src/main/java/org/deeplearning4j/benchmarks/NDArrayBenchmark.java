@@ -0,0 +1,110 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.benchmarks;
+
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Element-wise, broadcast, reduction and matrix multiplication ops over square matrices
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NDArrayBenchmark {
+
+    @Param({"64", "512", "2048"})
+    public int size;
+
+    @Param({"FLOAT"})
+    public DataType dataType;
+
+    private INDArray x;
+    private INDArray y;
+    private INDArray row;
+    private INDArray result;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Nd4j.getRandom().setSeed(12345);
+        x = Nd4j.rand(dataType, size, size);
+        y = Nd4j.rand(dataType, size, size);
+        row = Nd4j.rand(dataType, 1, size);
+        result = Nd4j.create(dataType, size, size);
+    }
+
+    @Benchmark
+    public INDArray add() {
+        return x.add(y);
+    }
+
+    @Benchmark
+    public INDArray addInplace() {
+        return result.assign(x).addi(y);
+    }
+
+    @Benchmark
+    public INDArray tanh() {
+        return Nd4j.math().tanh(x);
+    }
+
+    @Benchmark
+    public INDArray addRowVector() {
+        return x.addRowVector(row);
+    }
+
+    @Benchmark
+    public INDArray mulColumnVector() {
+        return x.mulColumnVector(row.reshape(size, 1));
+    }
+
+    @Benchmark
+    public INDArray sumAlongRows() {
+        return x.sum(1);
+    }
+
+    @Benchmark
+    public double sumNumber() {
+        return x.sumNumber().doubleValue();
+    }
+
+    @Benchmark
+    public INDArray argMax() {
+        return Nd4j.argMax(x, 1);
+    }
+
+    @Benchmark
+    public INDArray mmul() {
+        return x.mmul(y);
+    }
+
+    @Benchmark
+    public INDArray mmulTransposed() {
+        return x.mmul(y.transpose());
+    }
+}
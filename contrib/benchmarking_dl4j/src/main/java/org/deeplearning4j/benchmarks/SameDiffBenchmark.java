@@ -0,0 +1,126 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.benchmarks;
+
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SameDiff.output() over imported graph.<br>
+ * Graph is loaded from {@code modelPath}: frozen TensorFlow graphs (*.pb) are imported, anything else is treated as
+ * SameDiff FlatBuffers file. If {@code modelPath} is empty, simple MLP graph is built instead, so the benchmark is
+ * runnable without any external files, i.e.:
+ * <pre>
+ * java -jar target/benchmarks.jar SameDiffBenchmark -p modelPath=/path/to/frozen_model.pb -p outputs=output
+ * </pre>
+ * Placeholders are filled with random values, unknown (-1) dimensions are replaced with {@code batchSize}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SameDiffBenchmark {
+
+    @Param({""})
+    public String modelPath;
+
+    /**
+     * Comma separated list of outputs. If empty, outputs defined in the graph itself are used
+     */
+    @Param({""})
+    public String outputs;
+
+    @Param({"32"})
+    public int batchSize;
+
+    private SameDiff sd;
+    private Map<String, INDArray> placeholders;
+    private String[] outputNames;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+        if (modelPath == null || modelPath.isEmpty()) {
+            sd = mlp();
+        } else if (modelPath.endsWith(".pb")) {
+            sd = SameDiff.importFrozenTF(new File(modelPath));
+        } else {
+            sd = SameDiff.fromFlatFile(new File(modelPath));
+        }
+
+        if (outputs != null && !outputs.isEmpty()) {
+            outputNames = outputs.split(",");
+        } else if (sd.outputs() != null && !sd.outputs().isEmpty()) {
+            outputNames = sd.outputs().toArray(new String[0]);
+        } else {
+            throw new IllegalStateException("Graph doesn't define outputs, please specify them via -p outputs=...");
+        }
+
+        placeholders = new HashMap<>();
+        for (String input : sd.inputs()) {
+            SDVariable v = sd.getVariable(input);
+            long[] shape = v.placeholderShape();
+            if (shape == null)
+                throw new IllegalStateException("Placeholder [" + input + "] has unknown rank");
+
+            shape = shape.clone();
+            for (int i = 0; i < shape.length; i++) {
+                if (shape[i] < 0)
+                    shape[i] = batchSize;
+            }
+
+            DataType dataType = v.dataType();
+            placeholders.put(input, dataType.isFPType() ? Nd4j.rand(dataType, shape) : Nd4j.zeros(dataType, shape));
+        }
+
+        // first call builds execution plan and allocates everything
+        sd.output(placeholders, outputNames);
+    }
+
+    protected static SameDiff mlp() {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("input", DataType.FLOAT, -1, 784);
+        SDVariable w0 = sd.var("w0", Nd4j.rand(DataType.FLOAT, 784, 512).subi(0.5).muli(0.1));
+        SDVariable b0 = sd.var("b0", Nd4j.zeros(DataType.FLOAT, 512));
+        SDVariable w1 = sd.var("w1", Nd4j.rand(DataType.FLOAT, 512, 10).subi(0.5).muli(0.1));
+        SDVariable b1 = sd.var("b1", Nd4j.zeros(DataType.FLOAT, 10));
+
+        SDVariable h = sd.nn().relu(in.mmul(w0).add(b0), 0.0);
+        sd.nn().softmax("output", h.mmul(w1).add(b1), 1);
+        sd.setOutputs("output");
+        return sd;
+    }
+
+    @Benchmark
+    public Map<String, INDArray> output() {
+        return sd.output(placeholders, outputNames);
+    }
+}
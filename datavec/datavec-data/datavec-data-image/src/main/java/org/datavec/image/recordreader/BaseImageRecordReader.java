@@ -52,6 +52,12 @@ import org.nd4j.linalg.factory.Nd4j;
 import java.io.*;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public abstract class BaseImageRecordReader extends BaseRecordReader {
@@ -78,12 +84,21 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
     protected boolean logLabelCountOnInit = true;
     @Getter @Setter
     protected boolean nchw_channels_first = true;
+    protected int numDecodeThreads = 1;
+    protected transient ExecutorService decodeExecutor;
+    protected transient ThreadLocal<NativeImageLoader> decodeLoaders;
+    /**
+     * Timing information for the most recent call to {@link #next(int)}, or null if no batch has been read yet
+     */
+    @Getter
+    protected ImageBatchStats lastBatchStats;
 
     public final static String HEIGHT = NAME_SPACE + ".height";
     public final static String WIDTH = NAME_SPACE + ".width";
     public final static String CHANNELS = NAME_SPACE + ".channels";
     public final static String CROP_IMAGE = NAME_SPACE + ".cropimage";
     public final static String IMAGE_LOADER = NAME_SPACE + ".imageloader";
+    public final static String DECODE_THREADS = NAME_SPACE + ".decodethreads";
 
     public BaseImageRecordReader() {}
 
@@ -127,6 +142,8 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
 
     @Override
     public void initialize(InputSplit split) throws IOException {
+        //Decode threads hold loaders created with the previous settings
+        shutdownDecodeExecutor();
         if (imageLoader == null) {
             imageLoader = new NativeImageLoader(height, width, channels, imageTransform);
         }
@@ -183,6 +200,7 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
         this.width = conf.getLong(WIDTH, width);
         this.channels = conf.getLong(CHANNELS, channels);
         this.cropImage = conf.getBoolean(CROP_IMAGE, cropImage);
+        setNumDecodeThreads(conf.getInt(DECODE_THREADS, numDecodeThreads));
         if ("imageio".equals(conf.get(IMAGE_LOADER))) {
             this.imageLoader = new ImageLoader(height, width, channels, cropImage);
         } else {
@@ -303,6 +321,7 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
             imageLoader = new NativeImageLoader(height, width, channels, imageTransform);
         }
 
+        long start = System.nanoTime();
         List<File> currBatch = new ArrayList<>();
 
         int cnt = 0;
@@ -337,17 +356,22 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
             cnt++;
         }
 
+        long listEnd = System.nanoTime();
         INDArray features = Nd4j.createUninitialized(new long[] {cnt, channels, height, width}, 'c');
         Nd4j.getAffinityManager().tagLocation(features, AffinityManager.Location.HOST);
-        for (int i = 0; i < cnt; i++) {
-            try {
-                ((NativeImageLoader) imageLoader).asMatrixView(currBatch.get(i),
-                        features.tensorAlongDimension(i, 1, 2, 3));
-            } catch (Exception e) {
-                System.out.println("Image file failed during load: " + currBatch.get(i).getAbsolutePath());
-                throw new RuntimeException(e);
+        int decodeThreads = parallelDecodeSupported() ? Math.min(numDecodeThreads, cnt) : 1;
+        long sumImageDecodeNanos;
+        if (decodeThreads > 1) {
+            sumImageDecodeNanos = decodeParallel(currBatch, features);
+        } else {
+            sumImageDecodeNanos = 0;
+            for (int i = 0; i < cnt; i++) {
+                long imageStart = System.nanoTime();
+                decodeInto((NativeImageLoader) imageLoader, currBatch.get(i), features.tensorAlongDimension(i, 1, 2, 3));
+                sumImageDecodeNanos += System.nanoTime() - imageStart;
             }
         }
+        long decodeEnd = System.nanoTime();
         if(!nchw_channels_first){
             features = features.permute(0,2,3,1);   //NCHW to NHWC
         }
@@ -395,12 +419,126 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
             }
         }
 
+        long end = System.nanoTime();
+        lastBatchStats = new ImageBatchStats(cnt, decodeThreads, listEnd - start, decodeEnd - listEnd,
+                sumImageDecodeNanos, end - decodeEnd);
+        if (log.isTraceEnabled()) {
+            log.trace("Image batch: {}", lastBatchStats);
+        }
+
         return new NDArrayRecordBatch(ret);
     }
 
+    /**
+     * Set the number of threads used to decode, resize and transform images in {@link #next(int)}. Each image is
+     * decoded directly into its own slice of the (pre-allocated) batch feature array, so the returned batch - including
+     * example order and label alignment - is the same irrespective of the number of threads.<br>
+     * Note that when an {@link ImageTransform} is used with more than one thread, the transform is shared between
+     * the threads (and its calls serialized), hence the assignment of random augmentations to images is not reproducible
+     * between runs. Parallel decoding is only used with the default {@link NativeImageLoader}; other loaders always
+     * decode on the calling thread.<br>
+     * May also be set via the configuration key {@link #DECODE_THREADS}.
+     *
+     * @param numDecodeThreads Number of decode threads. 1 (the default) decodes on the calling thread.
+     */
+    public void setNumDecodeThreads(int numDecodeThreads) {
+        Preconditions.checkArgument(numDecodeThreads > 0, "Number of decode threads must be > 0: got %s", numDecodeThreads);
+        if (numDecodeThreads != this.numDecodeThreads) {
+            shutdownDecodeExecutor();
+        }
+        this.numDecodeThreads = numDecodeThreads;
+    }
+
+    public int getNumDecodeThreads() {
+        return numDecodeThreads;
+    }
+
+    protected boolean parallelDecodeSupported() {
+        return numDecodeThreads > 1 && imageLoader != null && imageLoader.getClass() == NativeImageLoader.class;
+    }
+
+    protected void decodeInto(NativeImageLoader loader, File file, INDArray view) {
+        try {
+            loader.asMatrixView(file, view);
+        } catch (Exception e) {
+            throw new RuntimeException("Image file failed during load: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Decode the specified files into the corresponding slices of the features array, using the decode thread pool
+     *
+     * @return Sum of the per-image decode times, in nanoseconds
+     */
+    protected long decodeParallel(List<File> files, INDArray features) {
+        if (decodeExecutor == null) {
+            final Integer deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadFactory threadFactory = r -> {
+                Thread t = new Thread(() -> {
+                    //Decode threads use the same device as the thread that owns the reader
+                    Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+                    r.run();
+                }, "ImageRecordReader-decode-" + threadCount.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            };
+            decodeExecutor = Executors.newFixedThreadPool(numDecodeThreads, threadFactory);
+            final ImageTransform transform = imageTransform == null ? null : new SynchronizedImageTransform(imageTransform);
+            decodeLoaders = new ThreadLocal<NativeImageLoader>() {
+                @Override
+                protected NativeImageLoader initialValue() {
+                    return new NativeImageLoader(height, width, channels, transform);
+                }
+            };
+        }
+
+        //Views are created on the calling thread; the decode threads only write into them
+        List<Future<Long>> futures = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            final File file = files.get(i);
+            final INDArray view = features.tensorAlongDimension(i, 1, 2, 3);
+            final ThreadLocal<NativeImageLoader> loaders = decodeLoaders;
+            futures.add(decodeExecutor.submit(() -> {
+                long imageStart = System.nanoTime();
+                decodeInto(loaders.get(), file, view);
+                return System.nanoTime() - imageStart;
+            }));
+        }
+
+        long sum = 0;
+        RuntimeException failure = null;
+        for (Future<Long> f : futures) {
+            //Wait for all tasks, even after a failure, so no thread is still writing to the array when we return
+            try {
+                sum += f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null)
+                    failure = new RuntimeException("Interrupted while decoding images", e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    Throwable cause = e.getCause();
+                    failure = cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+                }
+            }
+        }
+        if (failure != null)
+            throw failure;
+        return sum;
+    }
+
+    protected void shutdownDecodeExecutor() {
+        if (decodeExecutor != null) {
+            decodeExecutor.shutdownNow();
+            decodeExecutor = null;
+            decodeLoaders = null;
+        }
+    }
+
     @Override
     public void close() throws IOException {
-        //No op
+        shutdownDecodeExecutor();
     }
 
     @Override
@@ -0,0 +1,54 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.image.recordreader;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Timing information for a single call to {@link BaseImageRecordReader#next(int)}. All times are in nanoseconds.<br>
+ * When images are decoded on multiple threads, {@link #getDecodeNanos()} is the wall clock time of the decode
+ * phase, whereas {@link #getSumImageDecodeNanos()} is the sum of the individual image decode times across all
+ * threads - the ratio of the two gives the effective decode parallelism.
+ */
+@Data
+@AllArgsConstructor
+public class ImageBatchStats {
+    /** Number of images in the batch */
+    private int numImages;
+    /** Number of threads used to decode the batch */
+    private int numDecodeThreads;
+    /** Time spent iterating over the files and collecting labels */
+    private long listNanos;
+    /** Wall clock time spent decoding, resizing and transforming images into the feature array */
+    private long decodeNanos;
+    /** Sum of the per-image decode times */
+    private long sumImageDecodeNanos;
+    /** Time spent building the label arrays */
+    private long labelNanos;
+
+    /**
+     * @return Total time for the batch, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return listNanos + decodeNanos + labelNanos;
+    }
+}
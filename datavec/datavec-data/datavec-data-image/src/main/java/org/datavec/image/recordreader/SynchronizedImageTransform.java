@@ -0,0 +1,68 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.image.recordreader;
+
+import org.datavec.image.data.ImageWritable;
+import org.datavec.image.transform.ImageTransform;
+
+import java.util.Random;
+
+/**
+ * Wraps an {@link ImageTransform} so that it can be shared between the decode threads of a
+ * {@link BaseImageRecordReader}. Image transforms hold mutable state (the random number generator and the last
+ * transformed image), so calls are serialized on the wrapped instance.
+ */
+class SynchronizedImageTransform implements ImageTransform {
+
+    private final ImageTransform transform;
+
+    SynchronizedImageTransform(ImageTransform transform) {
+        this.transform = transform;
+    }
+
+    @Override
+    public ImageWritable transform(ImageWritable image) {
+        synchronized (transform) {
+            return transform.transform(image);
+        }
+    }
+
+    @Override
+    public ImageWritable transform(ImageWritable image, Random random) {
+        synchronized (transform) {
+            return transform.transform(image, random);
+        }
+    }
+
+    @Override
+    public float[] query(float... coordinates) {
+        synchronized (transform) {
+            return transform.query(coordinates);
+        }
+    }
+
+    @Override
+    public ImageWritable getCurrentImage() {
+        synchronized (transform) {
+            return transform.getCurrentImage();
+        }
+    }
+}
@@ -556,5 +556,46 @@ public class TestImageRecordReader {
             assertArrayEquals(new long[]{1, 32, 32, 3}, arr.shape());
         }
     }
-}
 
+    @Test
+    public void testParallelBatchDecode(@TempDir Path testDir) throws Exception {
+        File f0 = testDir.toFile();
+        new ClassPathResource("datavec-data-image/testimages/").copyDirectory(f0);
+
+        ImageRecordReader sequential = new ImageRecordReader(32, 32, 3, new ParentPathLabelGenerator());
+        sequential.initialize(new FileSplit(f0, new Random(12345)));
+
+        ImageRecordReader parallel = new ImageRecordReader(32, 32, 3, new ParentPathLabelGenerator());
+        parallel.setNumDecodeThreads(4);
+        parallel.initialize(new FileSplit(f0, new Random(12345)));
+
+        for (int epoch = 0; epoch < 2; epoch++) {
+            int batchCount = 0;
+            while (sequential.hasNext()) {
+                assertTrue(parallel.hasNext());
+                batchCount++;
+
+                NDArrayRecordBatch b1 = (NDArrayRecordBatch) sequential.next(4);
+                NDArrayRecordBatch b2 = (NDArrayRecordBatch) parallel.next(4);
+
+                //Features and labels must be identical, in the same order
+                assertEquals(b1.getArrays(), b2.getArrays());
+
+                ImageBatchStats stats = parallel.getLastBatchStats();
+                assertNotNull(stats);
+                assertEquals(b1.size(), stats.getNumImages());
+                assertEquals(Math.min(4, b1.size()), stats.getNumDecodeThreads());
+                assertTrue(stats.getSumImageDecodeNanos() > 0);
+                assertEquals(1, sequential.getLastBatchStats().getNumDecodeThreads());
+            }
+            assertFalse(parallel.hasNext());
+            assertEquals(2, batchCount);
+
+            sequential.reset();
+            parallel.reset();
+        }
+
+        sequential.close();
+        parallel.close();
+    }
+}
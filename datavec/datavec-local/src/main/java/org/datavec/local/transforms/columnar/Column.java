@@ -0,0 +1,248 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.columnar;
+
+import org.datavec.api.writable.*;
+
+/**
+ * A single column of a {@link ColumnBatch}.<br>
+ * Values are held either in a primitive array ({@code double[]}, {@code float[]}, {@code int[]}, {@code long[]}),
+ * a {@code String[]}, or - for columns that no kernel has touched yet, or that were produced by a row-wise
+ * fallback step - the original {@link Writable} objects.<br>
+ * The typed accessors ({@link #doubles()}, {@link #ints()} etc) return the backing array when the column is
+ * already of that kind, and otherwise convert using exactly the same conversion the row-wise path would apply
+ * ({@link Writable#toDouble()}, {@link Writable#toInt()}, {@link Writable#toString()}...), so kernels see the same
+ * values a {@link org.datavec.api.transform.Transform} would.<br>
+ * Columns are immutable once created: kernels always produce new columns, and columns that a step does not touch
+ * are shared between the input and output batches.
+ */
+public class Column {
+
+    public enum Kind {
+        DOUBLE, FLOAT, INT, LONG, STRING, WRITABLE
+    }
+
+    private final Kind kind;
+    private final Object data;
+    private final int length;
+
+    private Column(Kind kind, Object data, int length) {
+        this.kind = kind;
+        this.data = data;
+        this.length = length;
+    }
+
+    public static Column ofDoubles(double[] values) {
+        return new Column(Kind.DOUBLE, values, values.length);
+    }
+
+    public static Column ofFloats(float[] values) {
+        return new Column(Kind.FLOAT, values, values.length);
+    }
+
+    public static Column ofInts(int[] values) {
+        return new Column(Kind.INT, values, values.length);
+    }
+
+    public static Column ofLongs(long[] values) {
+        return new Column(Kind.LONG, values, values.length);
+    }
+
+    public static Column ofStrings(String[] values) {
+        return new Column(Kind.STRING, values, values.length);
+    }
+
+    public static Column ofWritables(Writable[] values) {
+        return new Column(Kind.WRITABLE, values, values.length);
+    }
+
+    /**
+     * @return The storage kind of this column
+     */
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * @return Number of values in this column
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Get the value at the specified row as a writable. For primitive columns this boxes the value into the
+     * writable type the equivalent row-wise transform would have produced (for example {@link DoubleWritable}
+     * for a double column)
+     *
+     * @param row Row index
+     * @return Value as a writable
+     */
+    public Writable get(int row) {
+        switch (kind) {
+            case DOUBLE:
+                return new DoubleWritable(((double[]) data)[row]);
+            case FLOAT:
+                return new FloatWritable(((float[]) data)[row]);
+            case INT:
+                return new IntWritable(((int[]) data)[row]);
+            case LONG:
+                return new LongWritable(((long[]) data)[row]);
+            case STRING:
+                return new Text(((String[]) data)[row]);
+            case WRITABLE:
+                return ((Writable[]) data)[row];
+            default:
+                throw new IllegalStateException("Unknown column kind: " + kind);
+        }
+    }
+
+    public double[] doubles() {
+        if (kind == Kind.DOUBLE)
+            return (double[]) data;
+        double[] out = new double[length];
+        switch (kind) {
+            case FLOAT:
+                float[] f = (float[]) data;
+                for (int i = 0; i < length; i++)
+                    out[i] = f[i];
+                break;
+            case INT:
+                int[] in = (int[]) data;
+                for (int i = 0; i < length; i++)
+                    out[i] = in[i];
+                break;
+            case LONG:
+                long[] l = (long[]) data;
+                for (int i = 0; i < length; i++)
+                    out[i] = l[i];
+                break;
+            default:
+                for (int i = 0; i < length; i++)
+                    out[i] = get(i).toDouble();
+        }
+        return out;
+    }
+
+    public float[] floats() {
+        if (kind == Kind.FLOAT)
+            return (float[]) data;
+        float[] out = new float[length];
+        for (int i = 0; i < length; i++)
+            out[i] = get(i).toFloat();
+        return out;
+    }
+
+    public int[] ints() {
+        if (kind == Kind.INT)
+            return (int[]) data;
+        int[] out = new int[length];
+        if (kind == Kind.DOUBLE) {
+            double[] d = (double[]) data;
+            for (int i = 0; i < length; i++)
+                out[i] = (int) d[i];
+        } else {
+            for (int i = 0; i < length; i++)
+                out[i] = get(i).toInt();
+        }
+        return out;
+    }
+
+    public long[] longs() {
+        if (kind == Kind.LONG)
+            return (long[]) data;
+        long[] out = new long[length];
+        if (kind == Kind.INT) {
+            int[] in = (int[]) data;
+            for (int i = 0; i < length; i++)
+                out[i] = in[i];
+        } else {
+            for (int i = 0; i < length; i++)
+                out[i] = get(i).toLong();
+        }
+        return out;
+    }
+
+    public String[] strings() {
+        if (kind == Kind.STRING)
+            return (String[]) data;
+        String[] out = new String[length];
+        for (int i = 0; i < length; i++)
+            out[i] = get(i).toString();
+        return out;
+    }
+
+    /**
+     * Select the rows at the specified indices (in order) into a new column of the same kind
+     *
+     * @param rows  Row indices to keep
+     * @param count Number of valid entries in {@code rows}
+     * @return New column
+     */
+    public Column select(int[] rows, int count) {
+        switch (kind) {
+            case DOUBLE: {
+                double[] src = (double[]) data;
+                double[] out = new double[count];
+                for (int i = 0; i < count; i++)
+                    out[i] = src[rows[i]];
+                return ofDoubles(out);
+            }
+            case FLOAT: {
+                float[] src = (float[]) data;
+                float[] out = new float[count];
+                for (int i = 0; i < count; i++)
+                    out[i] = src[rows[i]];
+                return ofFloats(out);
+            }
+            case INT: {
+                int[] src = (int[]) data;
+                int[] out = new int[count];
+                for (int i = 0; i < count; i++)
+                    out[i] = src[rows[i]];
+                return ofInts(out);
+            }
+            case LONG: {
+                long[] src = (long[]) data;
+                long[] out = new long[count];
+                for (int i = 0; i < count; i++)
+                    out[i] = src[rows[i]];
+                return ofLongs(out);
+            }
+            case STRING: {
+                String[] src = (String[]) data;
+                String[] out = new String[count];
+                for (int i = 0; i < count; i++)
+                    out[i] = src[rows[i]];
+                return ofStrings(out);
+            }
+            case WRITABLE: {
+                Writable[] src = (Writable[]) data;
+                Writable[] out = new Writable[count];
+                for (int i = 0; i < count; i++)
+                    out[i] = src[rows[i]];
+                return ofWritables(out);
+            }
+            default:
+                throw new IllegalStateException("Unknown column kind: " + kind);
+        }
+    }
+}
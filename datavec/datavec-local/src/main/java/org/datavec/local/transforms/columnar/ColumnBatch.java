@@ -0,0 +1,229 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.columnar;
+
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A batch of rows stored column by column. See {@link Column} for the storage of the individual columns.
+ */
+public class ColumnBatch {
+
+    private final int numRows;
+    private final Column[] columns;
+
+    public ColumnBatch(int numRows, Column[] columns) {
+        for (Column c : columns) {
+            if (c.length() != numRows)
+                throw new IllegalArgumentException("Column length (" + c.length() + ") does not match the number of rows ("
+                        + numRows + ")");
+        }
+        this.numRows = numRows;
+        this.columns = columns;
+    }
+
+    /**
+     * Transpose the rows in the range [from, to) into a column batch. The writables themselves are not converted;
+     * conversion to primitive storage happens lazily, and only for the columns a kernel actually operates on.
+     *
+     * @param rows       Rows to transpose
+     * @param from       First row (inclusive)
+     * @param to         Last row (exclusive)
+     * @param numColumns Number of columns in each row
+     * @return Column batch
+     */
+    public static ColumnBatch fromRows(List<List<Writable>> rows, int from, int to, int numColumns) {
+        int n = to - from;
+        Writable[][] cols = new Writable[numColumns][n];
+        for (int i = 0; i < n; i++) {
+            List<Writable> row = rows.get(from + i);
+            for (int j = 0; j < numColumns; j++) {
+                cols[j][i] = row.get(j);
+            }
+        }
+
+        Column[] columns = new Column[numColumns];
+        for (int j = 0; j < numColumns; j++) {
+            columns[j] = Column.ofWritables(cols[j]);
+        }
+        return new ColumnBatch(n, columns);
+    }
+
+    public int numRows() {
+        return numRows;
+    }
+
+    public int numColumns() {
+        return columns.length;
+    }
+
+    public Column column(int idx) {
+        return columns[idx];
+    }
+
+    /**
+     * @return A copy of the column array, that may be modified by the caller to build a new batch
+     */
+    public Column[] columns() {
+        return Arrays.copyOf(columns, columns.length);
+    }
+
+    /**
+     * Return a new batch with only the rows for which {@code keep[row]} is true. Row order is preserved
+     *
+     * @param keep Mask of rows to keep
+     * @return Filtered batch (this batch, if all rows are kept)
+     */
+    public ColumnBatch filter(boolean[] keep) {
+        int[] idxs = new int[numRows];
+        int count = 0;
+        for (int i = 0; i < numRows; i++) {
+            if (keep[i])
+                idxs[count++] = i;
+        }
+        if (count == numRows)
+            return this;
+
+        Column[] out = new Column[columns.length];
+        for (int j = 0; j < columns.length; j++) {
+            out[j] = columns[j].select(idxs, count);
+        }
+        return new ColumnBatch(count, out);
+    }
+
+    /**
+     * Get the specified row as a list of writables. Primitive values are boxed into new writables, see
+     * {@link Column#get(int)}
+     *
+     * @param row Row index
+     * @return Row
+     */
+    public List<Writable> row(int row) {
+        List<Writable> out = new ArrayList<>(columns.length);
+        for (Column c : columns) {
+            out.add(c.get(row));
+        }
+        return out;
+    }
+
+    /**
+     * Convert this batch back to rows of writables, converting each value to the writable type for the column type
+     * in the specified schema. This matches the type conversion {@link org.datavec.local.transforms.LocalTransformExecutor}
+     * applies to its output (via Arrow columns): for example, a value in an Integer column is always returned as an
+     * {@link IntWritable}
+     *
+     * @param schema Schema of the data in this batch
+     * @return Rows of writables
+     * @throws RuntimeException If a value can't be converted directly; callers should fall back to the Arrow
+     *                          based conversion in that case
+     */
+    public List<List<Writable>> toWritables(Schema schema) {
+        if (schema.numColumns() != columns.length) {
+            throw new IllegalStateException("Schema has " + schema.numColumns() + " columns but batch has "
+                    + columns.length + " columns");
+        }
+
+        Writable[][] byColumn = new Writable[columns.length][];
+        for (int j = 0; j < columns.length; j++) {
+            byColumn[j] = toWritables(columns[j], schema, j);
+        }
+
+        List<List<Writable>> out = new ArrayList<>(numRows);
+        for (int i = 0; i < numRows; i++) {
+            List<Writable> row = new ArrayList<>(columns.length);
+            for (int j = 0; j < columns.length; j++) {
+                row.add(byColumn[j][i]);
+            }
+            out.add(row);
+        }
+        return out;
+    }
+
+    private Writable[] toWritables(Column c, Schema schema, int idx) {
+        Writable[] out = new Writable[numRows];
+        if (c.kind() == Column.Kind.WRITABLE) {
+            for (int i = 0; i < numRows; i++) {
+                if (c.get(i) instanceof NullWritable) {
+                    throw new IllegalStateException("Null writable in column \"" + schema.getName(idx) + "\"");
+                }
+            }
+        }
+
+        switch (schema.getType(idx)) {
+            case Integer: {
+                int[] values = c.ints();
+                for (int i = 0; i < numRows; i++)
+                    out[i] = new IntWritable(values[i]);
+                break;
+            }
+            case Long:
+            case Time: {
+                long[] values = c.longs();
+                for (int i = 0; i < numRows; i++)
+                    out[i] = new LongWritable(values[i]);
+                break;
+            }
+            case Float: {
+                float[] values = c.floats();
+                for (int i = 0; i < numRows; i++)
+                    out[i] = new FloatWritable(values[i]);
+                break;
+            }
+            case Double: {
+                double[] values = c.doubles();
+                for (int i = 0; i < numRows; i++)
+                    out[i] = new DoubleWritable(values[i]);
+                break;
+            }
+            case String:
+            case Categorical: {
+                String[] values = c.strings();
+                for (int i = 0; i < numRows; i++)
+                    out[i] = new Text(values[i]);
+                break;
+            }
+            case Boolean:
+                for (int i = 0; i < numRows; i++) {
+                    Writable w = c.get(i);
+                    if (!(w instanceof BooleanWritable))
+                        throw new IllegalStateException("Non-boolean value in boolean column \"" + schema.getName(idx) + "\"");
+                    out[i] = new BooleanWritable(((BooleanWritable) w).get());
+                }
+                break;
+            case NDArray:
+                for (int i = 0; i < numRows; i++) {
+                    Writable w = c.get(i);
+                    if (!(w instanceof NDArrayWritable))
+                        throw new IllegalStateException("Non-NDArray value in NDArray column \"" + schema.getName(idx) + "\"");
+                    out[i] = w;
+                }
+                break;
+            default:
+                throw new IllegalStateException("No direct conversion for column type " + schema.getType(idx));
+        }
+        return out;
+    }
+}
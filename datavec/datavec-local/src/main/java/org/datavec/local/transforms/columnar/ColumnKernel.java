@@ -0,0 +1,38 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.local.transforms.columnar;
+
+/**
+ * A compiled step of a {@link ColumnarTransformExecutor} pipeline: maps one {@link ColumnBatch} to another.<br>
+ * Implementations must not modify the input batch or its columns, and must be safe to call from multiple threads.
+ */
+public interface ColumnKernel {
+
+    /**
+     * Apply this step to a batch
+     *
+     * @param batch Input batch
+     * @return Output batch
+     */
+    ColumnBatch apply(ColumnBatch batch);
+
+}
@@ -0,0 +1,569 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.local.transforms.columnar;
+
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.Transform;
+import org.datavec.api.transform.condition.Condition;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.*;
+import org.datavec.api.transform.filter.ConditionFilter;
+import org.datavec.api.transform.filter.Filter;
+import org.datavec.api.transform.transform.BaseColumnTransform;
+import org.datavec.api.transform.transform.categorical.CategoricalToIntegerTransform;
+import org.datavec.api.transform.transform.categorical.CategoricalToOneHotTransform;
+import org.datavec.api.transform.transform.categorical.IntegerToCategoricalTransform;
+import org.datavec.api.transform.transform.categorical.StringToCategoricalTransform;
+import org.datavec.api.transform.transform.column.*;
+import org.datavec.api.transform.transform.doubletransform.*;
+import org.datavec.api.transform.transform.floattransform.FloatMathOpTransform;
+import org.datavec.api.transform.transform.integer.IntegerMathOpTransform;
+import org.datavec.api.transform.transform.longtransform.LongMathOpTransform;
+import org.datavec.api.transform.transform.string.ChangeCaseStringTransform;
+import org.datavec.api.transform.transform.string.RemoveWhiteSpaceTransform;
+import org.datavec.api.transform.transform.string.ReplaceEmptyStringTransform;
+import org.datavec.api.writable.Writable;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Per-column kernels for the common {@link Transform} and {@link Filter} types.<br>
+ * Each kernel reproduces the row-wise semantics of the corresponding transform/filter exactly (same arithmetic,
+ * same conversions, same writable type for the output values), but operates on whole columns of primitive values.
+ * {@link #forAction(DataAction)} returns null for actions that have no columnar kernel; the executor runs those
+ * row-wise instead.
+ */
+public class ColumnKernels {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s");
+
+    private ColumnKernels() {
+    }
+
+    /**
+     * Get a columnar kernel for the specified action
+     *
+     * @param action Action to compile. The input schema of the action must already have been set (as is the case for
+     *               the actions of a built {@link org.datavec.api.transform.TransformProcess})
+     * @return Kernel, or null if the action is not supported by the columnar executor
+     */
+    public static ColumnKernel forAction(DataAction action) {
+        if (action.getTransform() != null) {
+            return forTransform(action.getTransform());
+        } else if (action.getFilter() != null) {
+            return forFilter(action.getFilter());
+        }
+        return null;
+    }
+
+    /**
+     * @return True if the specified action has a columnar kernel
+     */
+    public static boolean isSupported(DataAction action) {
+        return forAction(action) != null;
+    }
+
+    private static ColumnKernel forTransform(Transform t) {
+        // Math ops and normalizers: replace one column with a primitive column
+        if (t instanceof DoubleMathOpTransform) {
+            DoubleMathOpTransform d = (DoubleMathOpTransform) t;
+            MathOp op = d.getMathOp();
+            double scalar = d.getScalar();
+            return replaceColumn(d.getColumnNumber(), c -> {
+                double[] in = c.doubles();
+                double[] out = new double[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = doubleOp(op, in[i], scalar);
+                return Column.ofDoubles(out);
+            });
+        } else if (t instanceof FloatMathOpTransform) {
+            FloatMathOpTransform f = (FloatMathOpTransform) t;
+            MathOp op = f.getMathOp();
+            float scalar = f.getScalar();
+            return replaceColumn(f.getColumnNumber(), c -> {
+                float[] in = c.floats();
+                float[] out = new float[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = floatOp(op, in[i], scalar);
+                return Column.ofFloats(out);
+            });
+        } else if (t instanceof IntegerMathOpTransform) {
+            IntegerMathOpTransform m = (IntegerMathOpTransform) t;
+            MathOp op = m.getMathOp();
+            int scalar = m.getScalar();
+            return replaceColumn(m.getColumnNumber(), c -> {
+                int[] in = c.ints();
+                int[] out = new int[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = intOp(op, in[i], scalar);
+                return Column.ofInts(out);
+            });
+        } else if (t instanceof LongMathOpTransform) {
+            LongMathOpTransform m = (LongMathOpTransform) t;
+            MathOp op = m.getMathOp();
+            long scalar = m.getScalar();
+            return replaceColumn(m.getColumnNumber(), c -> {
+                long[] in = c.longs();
+                long[] out = new long[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = longOp(op, in[i], scalar);
+                return Column.ofLongs(out);
+            });
+        } else if (t instanceof MinMaxNormalizer) {
+            MinMaxNormalizer n = (MinMaxNormalizer) t;
+            double min = n.getMin();
+            double newMin = n.getNewMin();
+            double ratio = n.getRatio();
+            return replaceColumn(n.getColumnNumber(), c -> {
+                double[] in = c.doubles();
+                double[] out = new double[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = Double.isNaN(in[i]) ? 0 : ratio * (in[i] - min) + newMin;
+                return Column.ofDoubles(out);
+            });
+        } else if (t instanceof StandardizeNormalizer) {
+            StandardizeNormalizer n = (StandardizeNormalizer) t;
+            double mean = n.getMean();
+            double stdev = n.getStdev();
+            return replaceColumn(n.getColumnNumber(), c -> {
+                double[] in = c.doubles();
+                double[] out = new double[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = (in[i] - mean) / stdev;
+                return Column.ofDoubles(out);
+            });
+        } else if (t instanceof SubtractMeanNormalizer) {
+            SubtractMeanNormalizer n = (SubtractMeanNormalizer) t;
+            double mean = n.getMean();
+            return replaceColumn(n.getColumnNumber(), c -> {
+                double[] in = c.doubles();
+                double[] out = new double[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = in[i] - mean;
+                return Column.ofDoubles(out);
+            });
+        } else if (t instanceof Log2Normalizer) {
+            Log2Normalizer n = (Log2Normalizer) t;
+            double columnMean = n.getColumnMean();
+            double columnMin = n.getColumnMin();
+            double scalingFactor = n.getScalingFactor();
+            double log2 = Math.log(2);
+            return replaceColumn(n.getColumnNumber(), c -> {
+                double[] in = c.doubles();
+                double[] out = new double[in.length];
+                for (int i = 0; i < in.length; i++) {
+                    if (Double.isNaN(in[i]))
+                        out[i] = 0;
+                    else
+                        out[i] = scalingFactor * (Math.log((in[i] - columnMin) / (columnMean - columnMin) + 1) / log2);
+                }
+                return Column.ofDoubles(out);
+            });
+        }
+
+        // Categorical
+        else if (t instanceof StringToCategoricalTransform) {
+            //Metadata only: values are unchanged
+            return batch -> batch;
+        } else if (t instanceof CategoricalToIntegerTransform) {
+            CategoricalToIntegerTransform ct = (CategoricalToIntegerTransform) t;
+            Map<String, Integer> statesMap = ct.getStatesMap();
+            List<String> stateNames = ct.getStateNames();
+            return replaceColumn(ct.getColumnIdx(), c -> {
+                String[] in = c.strings();
+                int[] out = new int[in.length];
+                for (int i = 0; i < in.length; i++) {
+                    Integer classIdx = statesMap.get(in[i]);
+                    if (classIdx == null) {
+                        throw new IllegalStateException("Cannot convert categorical value to integer value: input value (\"" + in[i]
+                                + "\") is not in the list of known categories (state names/categories: " + stateNames + ")");
+                    }
+                    out[i] = classIdx;
+                }
+                return Column.ofInts(out);
+            });
+        } else if (t instanceof CategoricalToOneHotTransform) {
+            CategoricalToOneHotTransform ct = (CategoricalToOneHotTransform) t;
+            return oneHot(ct.getColumnIdx(), ct.getStatesMap(), ct.getStateNames());
+        } else if (t instanceof IntegerToCategoricalTransform) {
+            IntegerToCategoricalTransform it = (IntegerToCategoricalTransform) t;
+            Map<Integer, String> map = it.getMap();
+            return replaceColumn(it.getColumnNumber(), c -> {
+                int[] in = c.ints();
+                String[] out = new String[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = map.get(in[i]);
+                return Column.ofStrings(out);
+            });
+        }
+
+        // String
+        else if (t instanceof ChangeCaseStringTransform) {
+            ChangeCaseStringTransform ct = (ChangeCaseStringTransform) t;
+            boolean upper = ct.getCaseType() == ChangeCaseStringTransform.CaseType.UPPER;
+            return replaceColumn(ct.getColumnNumber(), c -> {
+                String[] in = c.strings();
+                String[] out = new String[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = upper ? in[i].toUpperCase() : in[i].toLowerCase();
+                return Column.ofStrings(out);
+            });
+        } else if (t instanceof RemoveWhiteSpaceTransform) {
+            return replaceColumn(((RemoveWhiteSpaceTransform) t).getColumnNumber(), c -> {
+                String[] in = c.strings();
+                String[] out = new String[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = WHITESPACE.matcher(in[i]).replaceAll("");
+                return Column.ofStrings(out);
+            });
+        } else if (t instanceof ReplaceEmptyStringTransform) {
+            ReplaceEmptyStringTransform rt = (ReplaceEmptyStringTransform) t;
+            String value = rt.getValue();
+            return replaceColumn(rt.getColumnNumber(), c -> {
+                String[] in = c.strings();
+                String[] out = new String[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = (in[i] == null || in[i].isEmpty()) ? value : in[i];
+                return Column.ofStrings(out);
+            });
+        }
+
+        // Column selection/reordering: no data is touched, columns are just rearranged
+        else if (t instanceof RenameColumnsTransform) {
+            return batch -> batch;
+        } else if (t instanceof RemoveColumnsTransform) {
+            Set<Integer> toRemove = ((RemoveColumnsTransform) t).getIndicesToRemove();
+            return selectColumns(t, idx -> !toRemove.contains(idx));
+        } else if (t instanceof RemoveAllColumnsExceptForTransform) {
+            Set<Integer> toKeep = ((RemoveAllColumnsExceptForTransform) t).getIndicesToKeep();
+            return selectColumns(t, toKeep::contains);
+        } else if (t instanceof ReorderColumnsTransform) {
+            int[] outputOrder = ((ReorderColumnsTransform) t).getOutputOrder();
+            return batch -> {
+                Column[] out = new Column[outputOrder.length];
+                for (int i = 0; i < outputOrder.length; i++)
+                    out[i] = batch.column(outputOrder[i]);
+                return new ColumnBatch(batch.numRows(), out);
+            };
+        } else if (t instanceof DuplicateColumnsTransform) {
+            Set<Integer> toDuplicate = ((DuplicateColumnsTransform) t).getColumnIndexesToDuplicateSet();
+            return batch -> {
+                List<Column> out = new ArrayList<>(batch.numColumns() + toDuplicate.size());
+                for (int i = 0; i < batch.numColumns(); i++) {
+                    out.add(batch.column(i));
+                    if (toDuplicate.contains(i))
+                        out.add(batch.column(i));
+                }
+                return new ColumnBatch(batch.numRows(), out.toArray(new Column[0]));
+            };
+        } else if (t instanceof AddConstantColumnTransform) {
+            Writable fixedValue = ((AddConstantColumnTransform) t).getFixedValue();
+            return batch -> {
+                Writable[] values = new Writable[batch.numRows()];
+                Arrays.fill(values, fixedValue);
+                Column[] in = batch.columns();
+                Column[] out = Arrays.copyOf(in, in.length + 1);
+                out[in.length] = Column.ofWritables(values);
+                return new ColumnBatch(batch.numRows(), out);
+            };
+        }
+
+        // Any other single column transform that uses the default BaseColumnTransform.map(List<Writable>):
+        // apply map(Writable) to that one column only, instead of rebuilding every row
+        else if (t instanceof BaseColumnTransform && usesDefaultRowMap((BaseColumnTransform) t)) {
+            BaseColumnTransform bt = (BaseColumnTransform) t;
+            return replaceColumn(bt.getColumnNumber(), c -> {
+                Writable[] out = new Writable[c.length()];
+                for (int i = 0; i < out.length; i++)
+                    out[i] = bt.map(c.get(i));
+                return Column.ofWritables(out);
+            });
+        }
+
+        return null;
+    }
+
+    private static ColumnKernel forFilter(Filter f) {
+        if (!(f instanceof ConditionFilter))
+            return null;
+        Condition condition = ((ConditionFilter) f).getCondition();
+        if (!(condition instanceof BaseColumnCondition))
+            return null;
+
+        int idx = ((BaseColumnCondition) condition).getColumnIdx();
+        ColumnPredicate remove;
+        if (condition instanceof DoubleColumnCondition) {
+            DoubleColumnCondition dc = (DoubleColumnCondition) condition;
+            ConditionOp op = dc.getOp();
+            double value = dc.getValue() == null ? Double.NaN : dc.getValue();
+            Set<Double> set = dc.getSet();
+            remove = c -> {
+                double[] in = c.doubles();
+                boolean[] out = new boolean[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = op.apply(in[i], value, set);
+                return out;
+            };
+        } else if (condition instanceof FloatColumnCondition) {
+            FloatColumnCondition fc = (FloatColumnCondition) condition;
+            ConditionOp op = fc.getOp();
+            float value = fc.getValue() == null ? Float.NaN : fc.getValue();
+            Set<Float> set = fc.getSet();
+            remove = c -> {
+                float[] in = c.floats();
+                boolean[] out = new boolean[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = op.apply(in[i], value, set);
+                return out;
+            };
+        } else if (condition instanceof IntegerColumnCondition) {
+            IntegerColumnCondition ic = (IntegerColumnCondition) condition;
+            ConditionOp op = ic.getOp();
+            int value = ic.getValue() == null ? 0 : ic.getValue();
+            Set<Integer> set = ic.getSet();
+            remove = c -> {
+                int[] in = c.ints();
+                boolean[] out = new boolean[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = op.apply(in[i], value, set);
+                return out;
+            };
+        } else if (condition instanceof LongColumnCondition) {
+            LongColumnCondition lc = (LongColumnCondition) condition;
+            ConditionOp op = lc.getOp();
+            long value = lc.getValue() == null ? 0 : lc.getValue();
+            Set<Long> set = lc.getSet();
+            remove = c -> {
+                long[] in = c.longs();
+                boolean[] out = new boolean[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = op.apply(in[i], value, set);
+                return out;
+            };
+        } else if (condition instanceof CategoricalColumnCondition || condition instanceof StringColumnCondition) {
+            ConditionOp op;
+            String value;
+            Set<String> set;
+            if (condition instanceof CategoricalColumnCondition) {
+                CategoricalColumnCondition cc = (CategoricalColumnCondition) condition;
+                op = cc.getOp();
+                value = cc.getValue();
+                set = cc.getSet();
+            } else {
+                StringColumnCondition sc = (StringColumnCondition) condition;
+                op = sc.getOp();
+                value = sc.getValue();
+                set = sc.getSet();
+            }
+            remove = c -> {
+                String[] in = c.strings();
+                boolean[] out = new boolean[in.length];
+                for (int i = 0; i < in.length; i++)
+                    out[i] = op.apply(in[i], value, set);
+                return out;
+            };
+        } else {
+            return null;
+        }
+
+        return batch -> {
+            boolean[] removeMask = remove.test(batch.column(idx));
+            boolean[] keep = new boolean[removeMask.length];
+            for (int i = 0; i < keep.length; i++)
+                keep[i] = !removeMask[i];
+            return batch.filter(keep);
+        };
+    }
+
+    private static ColumnKernel replaceColumn(int idx, ColumnFunction fn) {
+        if (idx < 0)
+            throw new IllegalStateException("Column index is " + idx + " - input schema not set on transform?");
+        return batch -> {
+            Column[] cols = batch.columns();
+            cols[idx] = fn.apply(cols[idx]);
+            return new ColumnBatch(batch.numRows(), cols);
+        };
+    }
+
+    private static ColumnKernel oneHot(int idx, Map<String, Integer> statesMap, List<String> stateNames) {
+        int n = stateNames.size();
+        return batch -> {
+            String[] in = batch.column(idx).strings();
+            int[][] oneHot = new int[n][in.length];
+            for (int i = 0; i < in.length; i++) {
+                Integer classIdx = statesMap.get(in[i]);
+                if (classIdx == null) {
+                    throw new IllegalStateException("Cannot convert categorical value to one-hot: input value (\"" + in[i]
+                            + "\") is not in the list of known categories (state names/categories: " + stateNames + ")");
+                }
+                oneHot[classIdx][i] = 1;
+            }
+
+            Column[] cols = batch.columns();
+            Column[] out = new Column[cols.length - 1 + n];
+            System.arraycopy(cols, 0, out, 0, idx);
+            for (int j = 0; j < n; j++)
+                out[idx + j] = Column.ofInts(oneHot[j]);
+            System.arraycopy(cols, idx + 1, out, idx + n, cols.length - idx - 1);
+            return new ColumnBatch(batch.numRows(), out);
+        };
+    }
+
+    private static ColumnKernel selectColumns(Transform t, ColumnIndexPredicate keep) {
+        int numIn = t.getInputSchema().numColumns();
+        List<Integer> kept = new ArrayList<>();
+        for (int i = 0; i < numIn; i++) {
+            if (keep.test(i))
+                kept.add(i);
+        }
+        return batch -> {
+            Column[] out = new Column[kept.size()];
+            for (int i = 0; i < out.length; i++)
+                out[i] = batch.column(kept.get(i));
+            return new ColumnBatch(batch.numRows(), out);
+        };
+    }
+
+    private static boolean usesDefaultRowMap(BaseColumnTransform t) {
+        try {
+            return t.getClass().getMethod("map", List.class).getDeclaringClass() == BaseColumnTransform.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    //Same semantics as the (private) doOp methods of the math op transforms
+
+    private static double doubleOp(MathOp mathOp, double input, double scalar) {
+        switch (mathOp) {
+            case Add:
+                return input + scalar;
+            case Subtract:
+                return input - scalar;
+            case Multiply:
+                return input * scalar;
+            case Divide:
+                return input / scalar;
+            case Modulus:
+                return input % scalar;
+            case ReverseSubtract:
+                return scalar - input;
+            case ReverseDivide:
+                return scalar / input;
+            case ScalarMin:
+                return Math.min(input, scalar);
+            case ScalarMax:
+                return Math.max(input, scalar);
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + mathOp);
+        }
+    }
+
+    private static float floatOp(MathOp mathOp, float input, float scalar) {
+        switch (mathOp) {
+            case Add:
+                return input + scalar;
+            case Subtract:
+                return input - scalar;
+            case Multiply:
+                return input * scalar;
+            case Divide:
+                return input / scalar;
+            case Modulus:
+                return input % scalar;
+            case ReverseSubtract:
+                return scalar - input;
+            case ReverseDivide:
+                return scalar / input;
+            case ScalarMin:
+                return Math.min(input, scalar);
+            case ScalarMax:
+                return Math.max(input, scalar);
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + mathOp);
+        }
+    }
+
+    private static int intOp(MathOp mathOp, int input, int scalar) {
+        switch (mathOp) {
+            case Add:
+                return input + scalar;
+            case Subtract:
+                return input - scalar;
+            case Multiply:
+                return input * scalar;
+            case Divide:
+                return input / scalar;
+            case Modulus:
+                return input % scalar;
+            case ReverseSubtract:
+                return scalar - input;
+            case ReverseDivide:
+                return scalar / input;
+            case ScalarMin:
+                return Math.min(input, scalar);
+            case ScalarMax:
+                return Math.max(input, scalar);
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + mathOp);
+        }
+    }
+
+    private static long longOp(MathOp mathOp, long input, long scalar) {
+        switch (mathOp) {
+            case Add:
+                return input + scalar;
+            case Subtract:
+                return input - scalar;
+            case Multiply:
+                return input * scalar;
+            case Divide:
+                return input / scalar;
+            case Modulus:
+                return input % scalar;
+            case ReverseSubtract:
+                return scalar - input;
+            case ReverseDivide:
+                return scalar / input;
+            case ScalarMin:
+                return Math.min(input, scalar);
+            case ScalarMax:
+                return Math.max(input, scalar);
+            default:
+                throw new IllegalStateException("Unknown or not implemented math op: " + mathOp);
+        }
+    }
+
+    private interface ColumnFunction {
+        Column apply(Column column);
+    }
+
+    private interface ColumnPredicate {
+        boolean[] test(Column column);
+    }
+
+    private interface ColumnIndexPredicate {
+        boolean test(int idx);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.local.transforms.columnar;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.schema.SequenceSchema;
+import org.datavec.api.writable.Writable;
+import org.datavec.arrow.ArrowConverter;
+import org.datavec.local.transforms.LocalTransformExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An alternative to {@link LocalTransformExecutor#execute(List, TransformProcess)} that executes a
+ * {@link TransformProcess} over columnar batches instead of row by row.<br>
+ * <br>
+ * The transform process is compiled into a pipeline of {@link ColumnKernel}s, one per action. Actions with a
+ * columnar kernel (see {@link ColumnKernels}: math ops, normalizers, categorical/integer/one-hot conversions, common
+ * string transforms, column removal/reordering/renaming/duplication and column condition filters) operate on
+ * primitive arrays for whole columns at a time; columns an action doesn't touch are passed through without being
+ * copied or converted. Consecutive actions without a columnar kernel are run row-wise on the batch, as a single step.<br>
+ * <br>
+ * The output is identical to that of {@link LocalTransformExecutor#execute(List, TransformProcess)}, including
+ * the conversion of each output value to the writable type of its column in the final schema.<br>
+ * Transform processes that are not purely row-local (those with reductions, sequence conversion/splitting or sorted
+ * rank operations, or with sequence input/output), and execution with {@link LocalTransformExecutor#LOG_ERROR_PROPERTY}
+ * set, are delegated to {@link LocalTransformExecutor} unchanged.
+ */
+@Slf4j
+public class ColumnarTransformExecutor {
+
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private static BufferAllocator bufferAllocator = new RootAllocator(Long.MAX_VALUE);
+
+    private ColumnarTransformExecutor() {
+    }
+
+    /**
+     * Execute the specified TransformProcess with the given input data, using the default batch size of
+     * {@value #DEFAULT_BATCH_SIZE} rows
+     *
+     * @param inputWritables   Input data to process
+     * @param transformProcess TransformProcess to execute
+     * @return Processed data
+     */
+    public static List<List<Writable>> execute(List<List<Writable>> inputWritables, TransformProcess transformProcess) {
+        return execute(inputWritables, transformProcess, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Execute the specified TransformProcess with the given input data<br>
+     * Note: this method can only be used if the TransformProcess returns non-sequence data
+     *
+     * @param inputWritables   Input data to process
+     * @param transformProcess TransformProcess to execute
+     * @param batchSize        Number of rows per columnar batch
+     * @return Processed data
+     */
+    public static List<List<Writable>> execute(List<List<Writable>> inputWritables, TransformProcess transformProcess,
+                                               int batchSize) {
+        if (transformProcess.getFinalSchema() instanceof SequenceSchema) {
+            throw new IllegalStateException("Cannot return sequence data with this method");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+        }
+        if (!canExecute(transformProcess) || LocalTransformExecutor.isTryCatch()) {
+            return LocalTransformExecutor.execute(inputWritables, transformProcess);
+        }
+
+        int numColumns = transformProcess.getInitialSchema().numColumns();
+        List<List<Writable>> filtered = new ArrayList<>(inputWritables.size());
+        for (List<Writable> l : inputWritables) {
+            if (l.size() == numColumns)
+                filtered.add(l);
+        }
+        if (filtered.size() != inputWritables.size()) {
+            log.warn("Filtered out " + (inputWritables.size() - filtered.size()) + " values");
+        }
+
+        List<ColumnKernel> pipeline = compile(transformProcess);
+        Schema finalSchema = transformProcess.getFinalSchema();
+        List<List<Writable>> out = new ArrayList<>(filtered.size());
+        for (int from = 0; from < filtered.size(); from += batchSize) {
+            int to = Math.min(filtered.size(), from + batchSize);
+            ColumnBatch batch = ColumnBatch.fromRows(filtered, from, to, numColumns);
+            out.addAll(toWritables(execute(pipeline, batch), finalSchema));
+        }
+        return out;
+    }
+
+    /**
+     * Returns true if the specified TransformProcess can be run by the columnar executor. This is the case for
+     * transform processes with non-sequence input and output, consisting only of transforms and filters. Other
+     * transform processes are delegated to {@link LocalTransformExecutor}.
+     *
+     * @param transformProcess TransformProcess to check
+     * @return True if the transform process can be executed over columnar batches
+     */
+    public static boolean canExecute(TransformProcess transformProcess) {
+        if (transformProcess.getInitialSchema() instanceof SequenceSchema
+                || transformProcess.getFinalSchema() instanceof SequenceSchema) {
+            return false;
+        }
+        for (DataAction d : transformProcess.getActionList()) {
+            if (d.getTransform() == null && d.getFilter() == null)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compile the specified TransformProcess to a columnar pipeline. Each action with a columnar kernel becomes one
+     * step; each run of consecutive actions without one becomes a single row-wise step.
+     *
+     * @param transformProcess TransformProcess to compile. Must satisfy {@link #canExecute(TransformProcess)}
+     * @return Kernels to apply, in order
+     */
+    public static List<ColumnKernel> compile(TransformProcess transformProcess) {
+        if (!canExecute(transformProcess)) {
+            throw new IllegalArgumentException("Transform process cannot be executed over columnar batches: "
+                    + "only transforms and filters on non-sequence data are supported");
+        }
+
+        return compile(transformProcess, 0, transformProcess.getActionList().size());
+    }
+
+    /**
+     * Compile a range of the actions of the specified TransformProcess to a columnar pipeline. Used to run the
+     * row-local parts of transform processes that also contain other (non row-local) actions, such as reductions.
+     *
+     * @param transformProcess TransformProcess containing the actions
+     * @param fromStep         Index of the first action to compile (inclusive)
+     * @param toStep           Index of the last action to compile (exclusive)
+     * @return Kernels to apply, in order
+     * @throws IllegalArgumentException If any action in the range is not a transform or filter
+     */
+    public static List<ColumnKernel> compile(TransformProcess transformProcess, int fromStep, int toStep) {
+        List<DataAction> actions = transformProcess.getActionList();
+        List<ColumnKernel> pipeline = new ArrayList<>();
+        int rowWiseStart = -1;
+        int rowWiseSteps = 0;
+        for (int i = fromStep; i < toStep; i++) {
+            DataAction d = actions.get(i);
+            if (d.getTransform() == null && d.getFilter() == null) {
+                throw new IllegalArgumentException("Only transforms and filters can be compiled to a columnar pipeline, got " + d);
+            }
+            ColumnKernel k = ColumnKernels.forAction(d);
+            if (k == null) {
+                if (rowWiseStart < 0)
+                    rowWiseStart = i;
+                rowWiseSteps++;
+                continue;
+            }
+            if (rowWiseStart >= 0) {
+                pipeline.add(new RowWiseKernel(transformProcess, rowWiseStart, i - 1));
+                rowWiseStart = -1;
+            }
+            pipeline.add(k);
+        }
+        if (rowWiseStart >= 0) {
+            pipeline.add(new RowWiseKernel(transformProcess, rowWiseStart, toStep - 1));
+        }
+
+        if (rowWiseSteps > 0) {
+            log.debug("Compiled transform process: {} of {} steps executed row-wise", rowWiseSteps, toStep - fromStep);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Apply a compiled pipeline to a single batch
+     *
+     * @param pipeline Pipeline, as returned by {@link #compile(TransformProcess)}
+     * @param batch    Input batch, with columns matching the initial schema of the transform process
+     * @return Output batch, with columns matching the final schema of the transform process
+     */
+    public static ColumnBatch execute(List<ColumnKernel> pipeline, ColumnBatch batch) {
+        for (ColumnKernel k : pipeline) {
+            if (batch.numRows() == 0)
+                break;
+            batch = k.apply(batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Convert an output batch to rows of writables, with the same value types {@link LocalTransformExecutor}
+     * produces for the given schema
+     *
+     * @param batch  Output batch
+     * @param schema Final schema of the transform process
+     * @return Rows of writables
+     */
+    public static List<List<Writable>> toWritables(ColumnBatch batch, Schema schema) {
+        if (batch.numRows() == 0)
+            return new ArrayList<>();
+        try {
+            return batch.toWritables(schema);
+        } catch (RuntimeException e) {
+            //Values that can't be converted directly (nulls, unparseable values, unusual types):
+            //use exactly the same Arrow round trip as LocalTransformExecutor for this batch
+            List<List<Writable>> rows = new ArrayList<>(batch.numRows());
+            for (int i = 0; i < batch.numRows(); i++)
+                rows.add(batch.row(i));
+            return ArrowConverter.toArrowWritables(ArrowConverter.toArrowColumns(bufferAllocator, schema, rows), schema);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.local.transforms.columnar;
+
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.writable.Writable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fallback kernel for a run of consecutive actions that have no columnar implementation.<br>
+ * Each row of the batch is materialized once as a list of writables, all actions in the run are applied to it
+ * exactly as {@link org.datavec.local.transforms.LocalTransformExecutor} would, and the surviving rows are transposed
+ * back into a column batch.
+ */
+class RowWiseKernel implements ColumnKernel {
+
+    private final List<DataAction> actions;
+    private final int numOutputColumns;
+
+    /**
+     * @param transformProcess Transform process the actions belong to
+     * @param firstStep        Index of the first action in the run
+     * @param lastStep         Index of the last action in the run (inclusive)
+     */
+    RowWiseKernel(TransformProcess transformProcess, int firstStep, int lastStep) {
+        this.actions = new ArrayList<>(transformProcess.getActionList().subList(firstStep, lastStep + 1));
+        this.numOutputColumns = transformProcess.getSchemaAfterStep(lastStep).numColumns();
+    }
+
+    @Override
+    public ColumnBatch apply(ColumnBatch batch) {
+        List<List<Writable>> out = new ArrayList<>(batch.numRows());
+        for (int i = 0; i < batch.numRows(); i++) {
+            List<Writable> row = batch.row(i);
+            boolean removed = false;
+            for (DataAction d : actions) {
+                if (d.getTransform() != null) {
+                    row = d.getTransform().map(row);
+                } else if (d.getFilter().removeExample(row)) {
+                    removed = true;
+                    break;
+                }
+            }
+            if (!removed)
+                out.add(row);
+        }
+        return ColumnBatch.fromRows(out, 0, out.size(), numOutputColumns);
+    }
+
+    @Override
+    public String toString() {
+        return "RowWiseKernel(" + actions + ")";
+    }
+}
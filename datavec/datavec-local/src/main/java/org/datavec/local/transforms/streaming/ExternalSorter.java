@@ -0,0 +1,260 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.local.transforms.streaming;
+
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.WritableFactory;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * External merge sort for records.<br>
+ * Records are buffered in memory until {@code maxRecordsInMemory} is reached; the buffer is then sorted and spilled
+ * to a temporary run file. {@link #sortedIterator()} merges the runs (and whatever is still in memory) into a single
+ * sorted stream. If nothing was spilled, the records are sorted and returned from memory.<br>
+ * The sort is stable: records that compare as equal are returned in the order they were added.<br>
+ * Run files are deleted when the sorted iterator is exhausted, or on {@link #close()}.
+ */
+@Slf4j
+public class ExternalSorter implements Closeable {
+
+    /**
+     * Maximum number of runs that are merged at once. Beyond this, runs are first merged in groups into
+     * intermediate runs, to bound the number of open files
+     */
+    public static final int MAX_MERGE_FAN_IN = 64;
+
+    private static final int END_OF_RUN = -1;
+
+    private final Comparator<List<Writable>> comparator;
+    private final int maxRecordsInMemory;
+    private final File tempDirectory;
+
+    private List<List<Writable>> buffer = new ArrayList<>();
+    private final List<File> runs = new ArrayList<>();
+    private final List<DataInputStream> openRuns = new ArrayList<>();
+    private long numRecords;
+
+    /**
+     * @param comparator         Ordering of the records
+     * @param maxRecordsInMemory Maximum number of records to buffer before spilling to disk
+     * @param tempDirectory      Directory for run files
+     */
+    public ExternalSorter(Comparator<List<Writable>> comparator, int maxRecordsInMemory, File tempDirectory) {
+        if (maxRecordsInMemory <= 0)
+            throw new IllegalArgumentException("maxRecordsInMemory must be positive, got " + maxRecordsInMemory);
+        this.comparator = comparator;
+        this.maxRecordsInMemory = maxRecordsInMemory;
+        this.tempDirectory = tempDirectory;
+    }
+
+    public void add(List<Writable> record) throws IOException {
+        buffer.add(record);
+        numRecords++;
+        if (buffer.size() >= maxRecordsInMemory) {
+            spill();
+        }
+    }
+
+    /**
+     * @return Total number of records added
+     */
+    public long numRecords() {
+        return numRecords;
+    }
+
+    /**
+     * @return Number of runs spilled to disk so far
+     */
+    public int numSpilledRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Get all records added so far, in sorted order. No more records may be added after calling this method
+     *
+     * @return Iterator over the sorted records
+     */
+    public Iterator<List<Writable>> sortedIterator() throws IOException {
+        if (runs.isEmpty()) {
+            List<List<Writable>> sorted = buffer;
+            sorted.sort(comparator);
+            buffer = null;
+            return sorted.iterator();
+        }
+
+        if (!buffer.isEmpty())
+            spill();
+        buffer = null;
+
+        List<File> toMerge = new ArrayList<>(runs);
+        while (toMerge.size() > MAX_MERGE_FAN_IN) {
+            //Merge groups of adjacent runs, keeping the run order so the merge stays stable
+            List<File> merged = new ArrayList<>();
+            for (int i = 0; i < toMerge.size(); i += MAX_MERGE_FAN_IN) {
+                List<File> group = toMerge.subList(i, Math.min(toMerge.size(), i + MAX_MERGE_FAN_IN));
+                File out = newRunFile();
+                try (DataOutputStream dos = openForWrite(out)) {
+                    MergeIterator it = new MergeIterator(group);
+                    while (it.hasNext())
+                        writeRecord(dos, it.next());
+                    dos.writeInt(END_OF_RUN);
+                }
+                merged.add(out);
+            }
+            toMerge = merged;
+        }
+        return new MergeIterator(toMerge);
+    }
+
+    @Override
+    public void close() {
+        for (DataInputStream dis : openRuns) {
+            try {
+                dis.close();
+            } catch (IOException e) {
+                log.warn("Error closing run file", e);
+            }
+        }
+        openRuns.clear();
+        for (File f : runs)
+            delete(f);
+        runs.clear();
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(comparator);
+        File f = newRunFile();
+        try (DataOutputStream dos = openForWrite(f)) {
+            for (List<Writable> record : buffer)
+                writeRecord(dos, record);
+            dos.writeInt(END_OF_RUN);
+        }
+        log.debug("Spilled {} records to {}", buffer.size(), f);
+        buffer = new ArrayList<>();
+    }
+
+    private File newRunFile() throws IOException {
+        //No deleteOnExit(): its registry is never cleared, and run files are always deleted after merging or on close()
+        File f = File.createTempFile("datavec_sort_run_", ".bin", tempDirectory);
+        runs.add(f);
+        return f;
+    }
+
+    private void delete(File f) {
+        if (f.exists() && !f.delete())
+            log.warn("Could not delete run file {}", f);
+    }
+
+    private static DataOutputStream openForWrite(File f) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+    }
+
+    static void writeRecord(DataOutput out, List<Writable> record) throws IOException {
+        out.writeInt(record.size());
+        for (Writable w : record)
+            WritableFactory.getInstance().writeWithType(w, out);
+    }
+
+    static List<Writable> readRecord(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n == END_OF_RUN)
+            return null;
+        List<Writable> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            out.add(WritableFactory.getInstance().readWithType(in));
+        return out;
+    }
+
+    private class MergeIterator implements Iterator<List<Writable>> {
+        private final PriorityQueue<Head> queue;
+        private final List<DataInputStream> inputs = new ArrayList<>();
+        private final List<File> files;
+
+        private MergeIterator(List<File> files) throws IOException {
+            this.files = new ArrayList<>(files);
+            //Ties are broken by run index: runs hold consecutive ranges of the input, so this keeps the sort stable
+            queue = new PriorityQueue<>(Math.max(1, files.size()), (a, b) -> {
+                int c = comparator.compare(a.record, b.record);
+                return c != 0 ? c : Integer.compare(a.run, b.run);
+            });
+            for (int i = 0; i < files.size(); i++) {
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(files.get(i)), 1 << 16));
+                inputs.add(dis);
+                openRuns.add(dis);
+                List<Writable> first = readRecord(dis);
+                if (first != null)
+                    queue.add(new Head(first, i));
+            }
+            if (queue.isEmpty())
+                closeInputs();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public List<Writable> next() {
+            if (queue.isEmpty())
+                throw new NoSuchElementException();
+            Head h = queue.poll();
+            try {
+                List<Writable> next = readRecord(inputs.get(h.run));
+                if (next != null)
+                    queue.add(new Head(next, h.run));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading spilled run", e);
+            }
+            if (queue.isEmpty())
+                closeInputs();
+            return h.record;
+        }
+
+        private void closeInputs() {
+            for (DataInputStream dis : inputs) {
+                try {
+                    dis.close();
+                } catch (IOException e) {
+                    log.warn("Error closing run file", e);
+                }
+                openRuns.remove(dis);
+            }
+            inputs.clear();
+            for (File f : files)
+                delete(f);
+        }
+    }
+
+    private static class Head {
+        private final List<Writable> record;
+        private final int run;
+
+        private Head(List<Writable> record, int run) {
+            this.record = record;
+            this.run = run;
+        }
+    }
+}
@@ -0,0 +1,607 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.local.transforms.streaming;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.writer.RecordWriter;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.join.Join;
+import org.datavec.api.transform.ops.IAggregableReduceOp;
+import org.datavec.api.transform.rank.CalculateSortedRank;
+import org.datavec.api.transform.reduce.IAssociativeReducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.schema.SequenceSchema;
+import org.datavec.api.writable.LongWritable;
+import org.datavec.api.writable.Text;
+import org.datavec.api.writable.Writable;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.datavec.local.transforms.columnar.ColumnBatch;
+import org.datavec.local.transforms.columnar.ColumnKernel;
+import org.datavec.local.transforms.columnar.ColumnarTransformExecutor;
+import org.datavec.local.transforms.join.ExecuteJoinFromCoGroupFlatMapFunction;
+import org.datavec.local.transforms.reduce.MapToPairForReducerFunction;
+import org.nd4j.common.primitives.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Bounded-memory, streaming counterpart of {@link LocalTransformExecutor}.<br>
+ * <br>
+ * Instead of taking and returning fully materialized lists, records are pulled from a {@link RecordReader} (or any
+ * iterator), pushed through the {@link TransformProcess} in chunks of {@code chunkSize} records, and returned as a
+ * lazy iterator or written to a {@link RecordWriter}. Runs of transforms and filters are executed with the columnar
+ * kernels of {@link ColumnarTransformExecutor}, one chunk at a time.<br>
+ * Operations that need to see all of the data - reductions, {@link CalculateSortedRank} and joins - sort their input
+ * with an {@link ExternalSorter}: at most {@code maxRecordsInMemory} records are held in memory per sort, and the rest
+ * is spilled to sorted run files in {@code tempDirectory} and merged back.<br>
+ * <br>
+ * Differences from {@link LocalTransformExecutor}:
+ * <ul>
+ *     <li>Only non-sequence input and output is supported; transform processes with sequence operations are rejected</li>
+ *     <li>Reductions return one record per key in key order (LocalTransformExecutor: hash order)</li>
+ *     <li>Join keys are matched on the string representation of the key columns, and all records of a single
+ *     key (on both sides) must fit in memory</li>
+ * </ul>
+ * Usage:
+ * <pre>
+ * {@code
+ * StreamingTransformExecutor exec = new StreamingTransformExecutor.Builder()
+ *         .chunkSize(8192)
+ *         .maxRecordsInMemory(500_000)
+ *         .tempDirectory(new File("/mnt/scratch"))
+ *         .build();
+ * long written = exec.execute(csvReader, transformProcess, csvWriter);
+ * }
+ * </pre>
+ */
+@Slf4j
+public class StreamingTransformExecutor {
+
+    public static final int DEFAULT_CHUNK_SIZE = ColumnarTransformExecutor.DEFAULT_BATCH_SIZE;
+    public static final int DEFAULT_MAX_RECORDS_IN_MEMORY = 1_000_000;
+
+    private final int chunkSize;
+    private final int maxRecordsInMemory;
+    private final File tempDirectory;
+
+    private StreamingTransformExecutor(Builder builder) {
+        this.chunkSize = builder.chunkSize;
+        this.maxRecordsInMemory = builder.maxRecordsInMemory;
+        this.tempDirectory = builder.tempDirectory;
+    }
+
+    /**
+     * Execute the specified TransformProcess on all records of the given reader.
+     * Records are read and processed lazily as the returned iterator is consumed
+     *
+     * @param reader           Source of the input records
+     * @param transformProcess TransformProcess to execute
+     * @return Iterator over the processed records
+     */
+    public Iterator<List<Writable>> execute(@NonNull RecordReader reader, @NonNull TransformProcess transformProcess) {
+        return execute(asIterator(reader), transformProcess);
+    }
+
+    /**
+     * Execute the specified TransformProcess on all records of the given reader, writing the results to the writer
+     *
+     * @param reader           Source of the input records
+     * @param transformProcess TransformProcess to execute
+     * @param writer           Destination of the processed records. Not closed by this method
+     * @return Number of records written
+     */
+    public long execute(@NonNull RecordReader reader, @NonNull TransformProcess transformProcess,
+                        @NonNull RecordWriter writer) throws IOException {
+        return writeAll(execute(reader, transformProcess), writer);
+    }
+
+    /**
+     * Execute the specified TransformProcess on the given records.
+     * Records are pulled from the input lazily as the returned iterator is consumed
+     *
+     * @param input            Input records
+     * @param transformProcess TransformProcess to execute
+     * @return Iterator over the processed records
+     */
+    public Iterator<List<Writable>> execute(@NonNull Iterator<List<Writable>> input,
+                                            @NonNull TransformProcess transformProcess) {
+        if (transformProcess.getInitialSchema() instanceof SequenceSchema
+                || transformProcess.getFinalSchema() instanceof SequenceSchema) {
+            throw new IllegalStateException("Streaming execution is only supported for non-sequence input and output");
+        }
+
+        List<DataAction> actions = transformProcess.getActionList();
+        for (DataAction d : actions) {
+            if (d.getTransform() == null && d.getFilter() == null && d.getReducer() == null
+                    && d.getCalculateSortedRank() == null) {
+                throw new UnsupportedOperationException("Streaming execution does not support sequence operations: " + d);
+            }
+        }
+
+        Iterator<List<Writable>> current = new NumColumnsFilterIterator(input,
+                transformProcess.getInitialSchema().numColumns());
+        int segmentStart = 0;
+        for (int i = 0; i < actions.size(); i++) {
+            DataAction d = actions.get(i);
+            if (d.getTransform() != null || d.getFilter() != null)
+                continue;
+
+            if (segmentStart < i) {
+                current = new ChunkIterator(current, ColumnarTransformExecutor.compile(transformProcess, segmentStart, i),
+                        numColumnsBefore(transformProcess, segmentStart), null);
+            }
+            if (d.getReducer() != null) {
+                current = new ReduceIterator(current, d.getReducer());
+            } else {
+                current = sortedRank(current, d.getCalculateSortedRank());
+            }
+            segmentStart = i + 1;
+        }
+
+        //Always finish with a chunked stage: this also converts the output values to the final schema types
+        return new ChunkIterator(current, ColumnarTransformExecutor.compile(transformProcess, segmentStart, actions.size()),
+                numColumnsBefore(transformProcess, segmentStart), transformProcess.getFinalSchema());
+    }
+
+    /**
+     * Execute a join on the records of the two readers. Both inputs are sorted externally on the join key and
+     * then merge-joined
+     *
+     * @param join  Join to execute
+     * @param left  Left data for join
+     * @param right Right data for join
+     * @return Iterator over the joined records
+     */
+    public Iterator<List<Writable>> executeJoin(@NonNull Join join, @NonNull RecordReader left,
+                                                @NonNull RecordReader right) {
+        return executeJoin(join, asIterator(left), asIterator(right));
+    }
+
+    /**
+     * Execute a join on the records of the two readers, writing the results to the writer
+     *
+     * @param join   Join to execute
+     * @param left   Left data for join
+     * @param right  Right data for join
+     * @param writer Destination of the joined records. Not closed by this method
+     * @return Number of records written
+     */
+    public long executeJoin(@NonNull Join join, @NonNull RecordReader left, @NonNull RecordReader right,
+                            @NonNull RecordWriter writer) throws IOException {
+        return writeAll(executeJoin(join, left, right), writer);
+    }
+
+    /**
+     * Execute a join on the given records. Both inputs are sorted externally on the join key and then merge-joined
+     *
+     * @param join  Join to execute
+     * @param left  Left data for join
+     * @param right Right data for join
+     * @return Iterator over the joined records
+     */
+    public Iterator<List<Writable>> executeJoin(@NonNull Join join, @NonNull Iterator<List<Writable>> left,
+                                                @NonNull Iterator<List<Writable>> right) {
+        int[] leftKeys = join.getLeftSchema().getIndexOfColumns(join.getJoinColumnsLeft());
+        int[] rightKeys = join.getRightSchema().getIndexOfColumns(join.getJoinColumnsRight());
+
+        //Same input filtering as LocalTransformExecutor.executeJoin
+        Iterator<List<Writable>> leftFiltered = new NumColumnsFilterIterator(left, leftKeys.length, true);
+        Iterator<List<Writable>> rightFiltered = new NumColumnsFilterIterator(right, rightKeys.length, true);
+
+        Iterator<List<Writable>> joined = new JoinIterator(join, leftFiltered, leftKeys, rightFiltered, rightKeys);
+        return new ChunkIterator(joined, Collections.<ColumnKernel>emptyList(), join.getOutputSchema().numColumns(),
+                join.getOutputSchema());
+    }
+
+    private static int numColumnsBefore(TransformProcess tp, int step) {
+        return step == 0 ? tp.getInitialSchema().numColumns() : tp.getSchemaAfterStep(step - 1).numColumns();
+    }
+
+    private static long writeAll(Iterator<List<Writable>> it, RecordWriter writer) throws IOException {
+        long count = 0;
+        while (it.hasNext()) {
+            writer.write(it.next());
+            count++;
+        }
+        return count;
+    }
+
+    private static Iterator<List<Writable>> asIterator(RecordReader reader) {
+        return new Iterator<List<Writable>>() {
+            @Override
+            public boolean hasNext() {
+                return reader.hasNext();
+            }
+
+            @Override
+            public List<Writable> next() {
+                return reader.next();
+            }
+        };
+    }
+
+    private Iterator<List<Writable>> sortedRank(Iterator<List<Writable>> input, CalculateSortedRank csr) {
+        Comparator<Writable> comparator = csr.getComparator();
+        int sortColumnIdx = csr.getInputSchema().getIndexOfColumn(csr.getSortOnColumn());
+        boolean ascending = csr.isAscending();
+        Comparator<List<Writable>> recordComparator = (a, b) -> {
+            int result = comparator.compare(a.get(sortColumnIdx), b.get(sortColumnIdx));
+            return ascending ? result : -result;
+        };
+
+        Iterator<List<Writable>> sorted = new SortingIterator(input, recordComparator);
+        return new Iterator<List<Writable>>() {
+            private long rank = 0;
+
+            @Override
+            public boolean hasNext() {
+                return sorted.hasNext();
+            }
+
+            @Override
+            public List<Writable> next() {
+                List<Writable> out = new ArrayList<>(sorted.next());
+                out.add(new LongWritable(rank++));
+                return out;
+            }
+        };
+    }
+
+    private ExternalSorter newSorter(Comparator<List<Writable>> comparator) {
+        return new ExternalSorter(comparator, maxRecordsInMemory, tempDirectory);
+    }
+
+    private static int compareKeys(List<Writable> a, List<Writable> b) {
+        return ((Text) a.get(0)).compareTo((Text) b.get(0));
+    }
+
+    private static Text joinKey(List<Writable> record, int[] keyColumns) {
+        if (keyColumns.length == 1)
+            return new Text(record.get(keyColumns[0]).toString());
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < keyColumns.length; i++) {
+            if (i > 0)
+                sb.append('\u0000');
+            sb.append(record.get(keyColumns[i]).toString());
+        }
+        return new Text(sb.toString());
+    }
+
+    private static List<Writable> withKey(Text key, List<Writable> record) {
+        List<Writable> out = new ArrayList<>(record.size() + 1);
+        out.add(key);
+        out.addAll(record);
+        return out;
+    }
+
+    private static List<Writable> withoutKey(List<Writable> keyed) {
+        return keyed.subList(1, keyed.size());
+    }
+
+    /**
+     * Skips records with the wrong number of columns, as LocalTransformExecutor does
+     */
+    private static class NumColumnsFilterIterator extends LookaheadIterator {
+        private final Iterator<List<Writable>> input;
+        private final int numColumns;
+        private final boolean invert;
+        private long skipped;
+
+        private NumColumnsFilterIterator(Iterator<List<Writable>> input, int numColumns) {
+            this(input, numColumns, false);
+        }
+
+        private NumColumnsFilterIterator(Iterator<List<Writable>> input, int numColumns, boolean invert) {
+            this.input = input;
+            this.numColumns = numColumns;
+            this.invert = invert;
+        }
+
+        @Override
+        protected List<Writable> computeNext() {
+            while (input.hasNext()) {
+                List<Writable> next = input.next();
+                if ((next.size() == numColumns) != invert)
+                    return next;
+                skipped++;
+            }
+            if (skipped > 0 && !invert)
+                log.warn("Filtered out " + skipped + " values");
+            return null;
+        }
+    }
+
+    /**
+     * Pulls records in chunks, runs them through a columnar pipeline, and returns the output records
+     */
+    private class ChunkIterator extends LookaheadIterator {
+        private final Iterator<List<Writable>> input;
+        private final List<ColumnKernel> pipeline;
+        private final int numColumns;
+        private final Schema outputSchema;
+        private Iterator<List<Writable>> currentChunk = Collections.emptyIterator();
+
+        private ChunkIterator(Iterator<List<Writable>> input, List<ColumnKernel> pipeline, int numColumns,
+                              Schema outputSchema) {
+            this.input = input;
+            this.pipeline = pipeline;
+            this.numColumns = numColumns;
+            this.outputSchema = outputSchema;
+        }
+
+        @Override
+        protected List<Writable> computeNext() {
+            while (!currentChunk.hasNext()) {
+                if (!input.hasNext())
+                    return null;
+                List<List<Writable>> chunk = new ArrayList<>(chunkSize);
+                while (chunk.size() < chunkSize && input.hasNext())
+                    chunk.add(input.next());
+
+                ColumnBatch out = ColumnarTransformExecutor.execute(pipeline,
+                        ColumnBatch.fromRows(chunk, 0, chunk.size(), numColumns));
+                if (outputSchema != null) {
+                    currentChunk = ColumnarTransformExecutor.toWritables(out, outputSchema).iterator();
+                } else {
+                    List<List<Writable>> rows = new ArrayList<>(out.numRows());
+                    for (int i = 0; i < out.numRows(); i++)
+                        rows.add(out.row(i));
+                    currentChunk = rows.iterator();
+                }
+            }
+            return currentChunk.next();
+        }
+    }
+
+    /**
+     * Drains the input into an external sorter on the first call, then returns the sorted records
+     */
+    private class SortingIterator extends LookaheadIterator {
+        private final Iterator<List<Writable>> input;
+        private final Comparator<List<Writable>> comparator;
+        private Iterator<List<Writable>> sorted;
+
+        private SortingIterator(Iterator<List<Writable>> input, Comparator<List<Writable>> comparator) {
+            this.input = input;
+            this.comparator = comparator;
+        }
+
+        @Override
+        protected List<Writable> computeNext() {
+            if (sorted == null) {
+                ExternalSorter sorter = newSorter(comparator);
+                boolean success = false;
+                try {
+                    while (input.hasNext())
+                        sorter.add(input.next());
+                    if (sorter.numSpilledRuns() > 0) {
+                        log.info("Sorted {} records using {} spilled runs", sorter.numRecords(), sorter.numSpilledRuns());
+                    }
+                    sorted = sorter.sortedIterator();
+                    success = true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Error during external sort", e);
+                } finally {
+                    //On success, run files are deleted once the sorted iterator is exhausted
+                    if (!success)
+                        sorter.close();
+                }
+            }
+            return sorted.hasNext() ? sorted.next() : null;
+        }
+    }
+
+    /**
+     * Groups the input by reduction key (via an external sort), and applies the reducer to each group
+     */
+    private class ReduceIterator extends LookaheadIterator {
+        private final IAssociativeReducer reducer;
+        private final MapToPairForReducerFunction keyFunction;
+        private final SortingIterator sorted;
+        private List<Writable> pending;
+
+        private ReduceIterator(Iterator<List<Writable>> input, IAssociativeReducer reducer) {
+            this.reducer = reducer;
+            this.keyFunction = new MapToPairForReducerFunction(reducer);
+            Iterator<List<Writable>> keyed = new Iterator<List<Writable>>() {
+                @Override
+                public boolean hasNext() {
+                    return input.hasNext();
+                }
+
+                @Override
+                public List<Writable> next() {
+                    List<Writable> record = input.next();
+                    return withKey(new Text(keyFunction.apply(record).getFirst()), record);
+                }
+            };
+            this.sorted = new SortingIterator(keyed, StreamingTransformExecutor::compareKeys);
+        }
+
+        @Override
+        protected List<Writable> computeNext() {
+            if (pending == null) {
+                if (!sorted.hasNext())
+                    return null;
+                pending = sorted.next();
+            }
+
+            IAggregableReduceOp<List<Writable>, List<Writable>> op = reducer.aggregableReducer();
+            List<Writable> first = pending;
+            op.accept(withoutKey(first));
+            pending = null;
+            while (sorted.hasNext()) {
+                List<Writable> next = sorted.next();
+                if (compareKeys(first, next) != 0) {
+                    pending = next;
+                    break;
+                }
+                op.accept(withoutKey(next));
+            }
+            return op.get();
+        }
+    }
+
+    /**
+     * Sort-merge join: both sides are sorted by key, then the records for each key are co-grouped and joined
+     * exactly as LocalTransformExecutor.executeJoin does
+     */
+    private class JoinIterator extends LookaheadIterator {
+        private final ExecuteJoinFromCoGroupFlatMapFunction joinFunction;
+        private final SortingIterator left;
+        private final SortingIterator right;
+        private List<Writable> leftPending;
+        private List<Writable> rightPending;
+        private Iterator<List<Writable>> currentGroup = Collections.emptyIterator();
+
+        private JoinIterator(Join join, Iterator<List<Writable>> left, int[] leftKeys,
+                             Iterator<List<Writable>> right, int[] rightKeys) {
+            this.joinFunction = new ExecuteJoinFromCoGroupFlatMapFunction(join);
+            this.left = new SortingIterator(keyed(left, leftKeys), StreamingTransformExecutor::compareKeys);
+            this.right = new SortingIterator(keyed(right, rightKeys), StreamingTransformExecutor::compareKeys);
+        }
+
+        private Iterator<List<Writable>> keyed(Iterator<List<Writable>> in, int[] keys) {
+            return new Iterator<List<Writable>>() {
+                @Override
+                public boolean hasNext() {
+                    return in.hasNext();
+                }
+
+                @Override
+                public List<Writable> next() {
+                    List<Writable> record = in.next();
+                    return withKey(joinKey(record, keys), record);
+                }
+            };
+        }
+
+        @Override
+        protected List<Writable> computeNext() {
+            while (!currentGroup.hasNext()) {
+                if (leftPending == null && left.hasNext())
+                    leftPending = left.next();
+                if (rightPending == null && right.hasNext())
+                    rightPending = right.next();
+                if (leftPending == null && rightPending == null)
+                    return null;
+
+                //Smallest key among the two sides
+                List<Writable> keyRecord;
+                if (leftPending == null)
+                    keyRecord = rightPending;
+                else if (rightPending == null)
+                    keyRecord = leftPending;
+                else
+                    keyRecord = compareKeys(leftPending, rightPending) <= 0 ? leftPending : rightPending;
+
+                List<List<Writable>> leftGroup = new ArrayList<>();
+                while (leftPending != null && compareKeys(leftPending, keyRecord) == 0) {
+                    leftGroup.add(withoutKey(leftPending));
+                    leftPending = left.hasNext() ? left.next() : null;
+                }
+                List<List<Writable>> rightGroup = new ArrayList<>();
+                while (rightPending != null && compareKeys(rightPending, keyRecord) == 0) {
+                    rightGroup.add(withoutKey(rightPending));
+                    rightPending = right.hasNext() ? right.next() : null;
+                }
+
+                List<Writable> key = Collections.singletonList(keyRecord.get(0));
+                currentGroup = joinFunction.call(Pair.of(key, Pair.of(leftGroup, rightGroup))).iterator();
+            }
+            return currentGroup.next();
+        }
+    }
+
+    /**
+     * Iterator that computes its next element on demand; {@link #computeNext()} returns null when exhausted
+     */
+    private abstract static class LookaheadIterator implements Iterator<List<Writable>> {
+        private List<Writable> next;
+        private boolean done;
+
+        protected abstract List<Writable> computeNext();
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                next = computeNext();
+                done = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public List<Writable> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            List<Writable> out = next;
+            next = null;
+            return out;
+        }
+    }
+
+    public static class Builder {
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+        private int maxRecordsInMemory = DEFAULT_MAX_RECORDS_IN_MEMORY;
+        private File tempDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+        /**
+         * Number of records processed together by the transform/filter stages. Default: {@value #DEFAULT_CHUNK_SIZE}
+         */
+        public Builder chunkSize(int chunkSize) {
+            if (chunkSize <= 0)
+                throw new IllegalArgumentException("Chunk size must be positive, got " + chunkSize);
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Maximum number of records each reduce, sort or join input holds in memory before spilling to disk.
+         * Default: {@value #DEFAULT_MAX_RECORDS_IN_MEMORY}
+         */
+        public Builder maxRecordsInMemory(int maxRecordsInMemory) {
+            if (maxRecordsInMemory <= 0)
+                throw new IllegalArgumentException("maxRecordsInMemory must be positive, got " + maxRecordsInMemory);
+            this.maxRecordsInMemory = maxRecordsInMemory;
+            return this;
+        }
+
+        /**
+         * Directory for spilled sort runs. Default: the {@code java.io.tmpdir} directory
+         */
+        public Builder tempDirectory(@NonNull File tempDirectory) {
+            this.tempDirectory = tempDirectory;
+            return this;
+        }
+
+        public StreamingTransformExecutor build() {
+            return new StreamingTransformExecutor(this);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.columnar;
+
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.CategoricalColumnCondition;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.condition.column.IntegerColumnCondition;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.transform.doubletransform.MinMaxNormalizer;
+import org.datavec.api.transform.transform.string.ChangeCaseStringTransform;
+import org.datavec.api.writable.*;
+import org.datavec.api.writable.comparator.DoubleWritableComparator;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Columnar Transform Executor Test")
+@Tag(TagNames.FILE_IO)
+@NativeTag
+class ColumnarTransformExecutorTest {
+
+    private static Schema schema() {
+        return new Schema.Builder()
+                .addColumnInteger("id")
+                .addColumnCategorical("cat", "a", "b", "c")
+                .addColumnDouble("x")
+                .addColumnLong("l")
+                .addColumnString("s")
+                .addColumnDouble("y")
+                .build();
+    }
+
+    private static List<List<Writable>> data(int n) {
+        Random r = new Random(12345);
+        String[] cats = {"a", "b", "c"};
+        List<List<Writable>> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            out.add(Arrays.<Writable>asList(new IntWritable(i), new Text(cats[r.nextInt(3)]),
+                    new DoubleWritable(r.nextDouble() * 10), new LongWritable(r.nextInt(1000)),
+                    new Text(" Some Text " + i), new DoubleWritable(r.nextGaussian())));
+        }
+        return out;
+    }
+
+    @Test
+    @DisplayName("Test Columnar Matches Row Wise")
+    void testColumnarMatchesRowWise() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .doubleMathOp("x", MathOp.Multiply, 2.5)
+                .transform(new MinMaxNormalizer("y", -3, 3))
+                .longMathOp("l", MathOp.Modulus, 7)
+                .filter(new DoubleColumnCondition("x", ConditionOp.LessThan, 5.0))
+                .transform(new ChangeCaseStringTransform("s", ChangeCaseStringTransform.CaseType.UPPER))
+                .stringRemoveWhitespaceTransform("s")
+                //No columnar kernels for these two: executed row-wise, as one step
+                .doubleColumnsMathOp("xy", MathOp.Add, "x", "y")
+                .appendStringColumnTransform("s", "_suffix")
+                .categoricalToOneHot("cat")
+                .duplicateColumn("id", "id2")
+                .integerMathOp("id2", MathOp.Add, 1000)
+                .removeColumns("l")
+                .reorderColumns("xy", "s")
+                .build();
+
+        List<List<Writable>> in = data(1000);
+        List<List<Writable>> expected = LocalTransformExecutor.execute(in, tp);
+        List<List<Writable>> actual = ColumnarTransformExecutor.execute(in, tp, 64);
+
+        assertTrue(expected.size() > 0 && expected.size() < in.size());
+        assertEquals(expected, actual);
+        for (int i = 0; i < expected.size(); i++) {
+            for (int j = 0; j < expected.get(i).size(); j++) {
+                assertEquals(expected.get(i).get(j).getClass(), actual.get(i).get(j).getClass());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test Categorical Filters And Conversion")
+    void testCategoricalFilters() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .filter(new CategoricalColumnCondition("cat", ConditionOp.Equal, "b"))
+                .categoricalToInteger("cat")
+                .filter(new IntegerColumnCondition("id", ConditionOp.InSet, new HashSet<>(Arrays.asList(1, 2, 3, 4, 5))))
+                .integerToCategorical("cat", Arrays.asList("zero", "one", "two"))
+                .removeAllColumnsExceptFor("id", "cat", "x")
+                .build();
+
+        List<List<Writable>> in = data(500);
+        List<List<Writable>> expected = LocalTransformExecutor.execute(in, tp);
+        List<List<Writable>> actual = ColumnarTransformExecutor.execute(in, tp, 100);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    @DisplayName("Test Compile")
+    void testCompile() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .doubleColumnsMathOp("xy", MathOp.Add, "x", "y")
+                .appendStringColumnTransform("s", "_suffix")
+                .doubleMathOp("x", MathOp.Add, 1.0)
+                .build();
+
+        List<ColumnKernel> pipeline = ColumnarTransformExecutor.compile(tp);
+        assertEquals(2, pipeline.size());
+        assertTrue(pipeline.get(0) instanceof RowWiseKernel);
+        assertFalse(pipeline.get(1) instanceof RowWiseKernel);
+
+        TransformProcess rank = new TransformProcess.Builder(schema())
+                .calculateSortedRank("rank", "x", new DoubleWritableComparator())
+                .build();
+        assertFalse(ColumnarTransformExecutor.canExecute(rank));
+    }
+}
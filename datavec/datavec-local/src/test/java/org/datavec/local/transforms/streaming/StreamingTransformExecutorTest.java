@@ -0,0 +1,186 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.datavec.local.transforms.streaming;
+
+import org.datavec.api.records.reader.impl.collection.CollectionRecordReader;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.ReduceOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.join.Join;
+import org.datavec.api.transform.reduce.Reducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+import org.datavec.api.writable.comparator.DoubleWritableComparator;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Streaming Transform Executor Test")
+@Tag(TagNames.FILE_IO)
+@NativeTag
+class StreamingTransformExecutorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static Schema schema() {
+        return new Schema.Builder()
+                .addColumnInteger("id")
+                .addColumnCategorical("cat", "a", "b", "c", "d")
+                .addColumnDouble("x")
+                .addColumnString("s")
+                .build();
+    }
+
+    private static List<List<Writable>> data(int n) {
+        Random r = new Random(12345);
+        String[] cats = {"a", "b", "c", "d"};
+        List<List<Writable>> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            out.add(Arrays.<Writable>asList(new IntWritable(i), new Text(cats[r.nextInt(4)]),
+                    new DoubleWritable(r.nextInt(50)), new Text("s" + i)));
+        }
+        return out;
+    }
+
+    private StreamingTransformExecutor executor() {
+        //Small limits, so that every sort spills several runs
+        return new StreamingTransformExecutor.Builder()
+                .chunkSize(16)
+                .maxRecordsInMemory(10)
+                .tempDirectory(tempDir.toFile())
+                .build();
+    }
+
+    private static List<List<Writable>> toList(Iterator<List<Writable>> it) {
+        List<List<Writable>> out = new ArrayList<>();
+        while (it.hasNext())
+            out.add(it.next());
+        return out;
+    }
+
+    private static List<List<Writable>> sorted(List<List<Writable>> in) {
+        List<List<Writable>> out = new ArrayList<>(in);
+        out.sort(Comparator.comparing(Object::toString));
+        return out;
+    }
+
+    @Test
+    @DisplayName("Test Row Local Matches Local Executor")
+    void testRowLocal() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .doubleMathOp("x", MathOp.Multiply, 2)
+                .filter(new DoubleColumnCondition("x", ConditionOp.LessThan, 20.0))
+                .appendStringColumnTransform("s", "_x")
+                .categoricalToInteger("cat")
+                .build();
+
+        List<List<Writable>> in = data(200);
+        List<List<Writable>> expected = LocalTransformExecutor.execute(in, tp);
+        List<List<Writable>> actual = toList(executor().execute(new CollectionRecordReader(in), tp));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    @DisplayName("Test Reduce With Spilling")
+    void testReduce() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .removeColumns("s")
+                .reduce(new Reducer.Builder(ReduceOp.Sum).keyColumns("cat").countColumns("id").build())
+                .doubleMathOp("sum(x)", MathOp.Divide, 2.0)
+                .build();
+
+        List<List<Writable>> in = data(200);
+        List<List<Writable>> expected = LocalTransformExecutor.execute(in, tp);
+        List<List<Writable>> actual = toList(executor().execute(in.iterator(), tp));
+        assertEquals(4, actual.size());
+        assertEquals(sorted(expected), sorted(actual));
+    }
+
+    @Test
+    @DisplayName("Test Sorted Rank With Spilling")
+    void testSortedRank() {
+        TransformProcess tp = new TransformProcess.Builder(schema())
+                .calculateSortedRank("rank", "x", new DoubleWritableComparator(), false)
+                .build();
+
+        List<List<Writable>> in = data(150);
+        List<List<Writable>> expected = LocalTransformExecutor.execute(in, tp);
+        List<List<Writable>> actual = toList(executor().execute(in.iterator(), tp));
+        //Stable sort on both sides: ties are kept in input order, so even the ranks match exactly
+        assertEquals(expected, actual);
+        assertEquals(0, tempDir.toFile().listFiles().length);
+    }
+
+    @Test
+    @DisplayName("Test Join With Spilling")
+    void testJoin() {
+        Schema left = new Schema.Builder().addColumnInteger("key").addColumnString("l").build();
+        Schema right = new Schema.Builder().addColumnInteger("key").addColumnDouble("r").build();
+        List<List<Writable>> leftData = new ArrayList<>();
+        List<List<Writable>> rightData = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            leftData.add(Arrays.<Writable>asList(new IntWritable(i % 20), new Text("l" + i)));
+            rightData.add(Arrays.<Writable>asList(new IntWritable(i % 30 + 10), new DoubleWritable(i)));
+        }
+
+        for (Join.JoinType jt : Join.JoinType.values()) {
+            Join join = new Join.Builder(jt).setJoinColumns("key").setSchemas(left, right).build();
+            List<List<Writable>> expected = LocalTransformExecutor.executeJoin(join, leftData, rightData);
+            List<List<Writable>> actual = toList(executor().executeJoin(join, leftData.iterator(), rightData.iterator()));
+            assertEquals(sorted(expected), sorted(actual), jt.toString());
+        }
+    }
+
+    @Test
+    @DisplayName("Test External Sorter")
+    void testExternalSorter() throws Exception {
+        File dir = tempDir.toFile();
+        try (ExternalSorter sorter = new ExternalSorter(Comparator.comparingInt(l -> l.get(0).toInt()), 3, dir)) {
+            Random r = new Random(0);
+            List<List<Writable>> in = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                List<Writable> l = Arrays.<Writable>asList(new IntWritable(r.nextInt(20)), new IntWritable(i));
+                in.add(l);
+                sorter.add(l);
+            }
+            assertTrue(sorter.numSpilledRuns() > ExternalSorter.MAX_MERGE_FAN_IN);
+
+            List<List<Writable>> expected = new ArrayList<>(in);
+            expected.sort(Comparator.comparingInt(l -> l.get(0).toInt()));
+            assertEquals(expected, toList(sorter.sortedIterator()));
+        }
+        assertEquals(0, dir.listFiles().length);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.deeplearning4j.datasets.datavec;
+
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.resources.Resources;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Numeric CSV Data Set Iterator Test")
+@NativeTag
+class NumericCSVDataSetIteratorTest extends BaseDL4JTest {
+
+    private static void assertSameData(DataSetIterator expected, DataSetIterator actual) {
+        int count = 0;
+        while (expected.hasNext()) {
+            assertTrue(actual.hasNext());
+            DataSet e = expected.next();
+            DataSet a = actual.next();
+            assertEquals(e.getFeatures(), a.getFeatures());
+            assertEquals(e.getLabels(), a.getLabels());
+            count++;
+        }
+        assertFalse(actual.hasNext());
+        assertTrue(count > 0);
+    }
+
+    @Test
+    @DisplayName("Test Classification Matches Record Reader Iterator")
+    void testClassification() throws Exception {
+        File f = Resources.asFile("iris.txt");
+        for (boolean reuse : new boolean[]{false, true}) {
+            RecordReader rr = new CSVRecordReader();
+            rr.initialize(new FileSplit(f));
+            DataSetIterator expected = new RecordReaderDataSetIterator(rr, 32, 4, 3);
+
+            NumericCSVDataSetIterator actual = new NumericCSVDataSetIterator.Builder(f, 32)
+                    .classification(4, 3).dataType(DataType.FLOAT).reuseArrays(reuse).build();
+            assertEquals(4, actual.inputColumns());
+            assertEquals(3, actual.totalOutcomes());
+            assertSameData(expected, actual);
+
+            //Second epoch
+            expected.reset();
+            actual.reset();
+            assertSameData(expected, actual);
+
+            assertEquals(300, actual.getTotalRows());
+            assertTrue(actual.getRowsPerSecond() > 0);
+            actual.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Test Next With Number Of Examples")
+    void testNextNum() throws Exception {
+        File f = Resources.asFile("iris.txt");
+        RecordReader rr = new CSVRecordReader();
+        rr.initialize(new FileSplit(f));
+        DataSet all = new RecordReaderDataSetIterator(rr, 150, 4, 3).next();
+
+        for (boolean reuse : new boolean[]{false, true}) {
+            NumericCSVDataSetIterator iter = new NumericCSVDataSetIterator.Builder(f, 32)
+                    .classification(4, 3).dataType(DataType.FLOAT).reuseArrays(reuse).build();
+            int[] nums = {10, 50, 50, 100};
+            int[] expRows = {10, 50, 50, 40};
+            int row = 0;
+            for (int i = 0; i < nums.length; i++) {
+                DataSet ds = iter.next(nums[i]);
+                assertEquals(expRows[i], ds.numExamples());
+                DataSet exp = (DataSet) all.getRange(row, row + expRows[i]);
+                assertEquals(exp.getFeatures(), ds.getFeatures());
+                assertEquals(exp.getLabels(), ds.getLabels());
+                row += expRows[i];
+            }
+            assertFalse(iter.hasNext());
+            iter.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Test Regression With Header And Formats")
+    void testRegression(@TempDir Path testDir) throws Exception {
+        Random r = new Random(12345);
+        StringBuilder sb = new StringBuilder("a,b,c,d,e\n");
+        for (int i = 0; i < 57; i++) {
+            for (int j = 0; j < 5; j++) {
+                if (j > 0)
+                    sb.append(",");
+                switch ((i + j) % 4) {
+                    case 0:
+                        sb.append(r.nextDouble());          //Up to 17 significant digits: slow path
+                        break;
+                    case 1:
+                        sb.append(r.nextInt(1000) - 500);
+                        break;
+                    case 2:
+                        sb.append(String.format(Locale.US, "%.3e", r.nextGaussian() * 1e5));
+                        break;
+                    default:
+                        sb.append("\"").append(r.nextInt(100) / 8.0).append("\"");
+                }
+            }
+            sb.append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        File f = new File(testDir.toFile(), "data.csv");
+        FileUtils.writeStringToFile(f, sb.toString(), StandardCharsets.UTF_8);
+
+        RecordReader rr = new CSVRecordReader(1);
+        rr.initialize(new FileSplit(f));
+        DataSetIterator expected = new RecordReaderDataSetIterator.Builder(rr, 10).regression(1, 2).build();
+
+        NumericCSVDataSetIterator actual = new NumericCSVDataSetIterator.Builder(f, 10)
+                .skipNumLines(1).regression(1, 2).dataType(DataType.DOUBLE).build();
+        assertEquals(3, actual.inputColumns());
+        assertEquals(2, actual.totalOutcomes());
+
+        //Compare in double precision to check parsing exactly matches Double.parseDouble
+        int count = 0;
+        while (expected.hasNext()) {
+            assertTrue(actual.hasNext());
+            DataSet e = expected.next();
+            DataSet a = actual.next();
+            assertEquals(e.getFeatures().castTo(DataType.DOUBLE), a.getFeatures());
+            assertEquals(e.getLabels().castTo(DataType.DOUBLE), a.getLabels());
+            count += a.numExamples();
+        }
+        assertFalse(actual.hasNext());
+        assertEquals(57, count);
+        actual.close();
+    }
+
+    @Test
+    @DisplayName("Test Small Window Size")
+    void testSmallWindow(@TempDir Path testDir) throws Exception {
+        File f = Resources.asFile("iris.txt");
+        double[] expected = new double[150 * 5];
+        double[] actual = new double[150 * 5];
+        try (NumericCSVReader r1 = new NumericCSVReader(f, ',', 0);
+             NumericCSVReader r2 = new NumericCSVReader(f, ',', 0, 64)) {
+            assertEquals(5, r1.numColumns());
+            assertEquals(5, r2.numColumns());
+            assertEquals(150, r1.readRows(expected, 150));
+            assertEquals(150, r2.readRows(actual, 150));
+            assertFalse(r2.hasNext());
+            assertArrayEquals(expected, actual, 0.0);
+
+            r2.reset();
+            assertTrue(r2.hasNext());
+        }
+    }
+
+    @Test
+    @DisplayName("Test Invalid Rows")
+    void testInvalidRows(@TempDir Path testDir) throws Exception {
+        File f = new File(testDir.toFile(), "bad.csv");
+        FileUtils.writeStringToFile(f, "1,2,3\n4,5\n", StandardCharsets.UTF_8);
+        try (NumericCSVReader r = new NumericCSVReader(f, ',', 0)) {
+            double[] row = new double[3];
+            assertTrue(r.readRow(row, 0));
+            assertThrows(IllegalStateException.class, () -> r.readRow(row, 0));
+        }
+
+        FileUtils.writeStringToFile(f, "1,x,3\n", StandardCharsets.UTF_8);
+        try (NumericCSVReader r = new NumericCSVReader(f, ',', 0)) {
+            assertThrows(NumberFormatException.class, () -> r.readRow(new double[3], 0));
+        }
+    }
+}
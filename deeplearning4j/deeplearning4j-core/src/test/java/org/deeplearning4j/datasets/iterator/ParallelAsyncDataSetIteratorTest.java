@@ -0,0 +1,174 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.datasets.iterator;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.ParallelAsyncDataSetIterator;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+@DisplayName("Parallel Async Data Set Iterator Test")
+@NativeTag
+class ParallelAsyncDataSetIteratorTest extends BaseDL4JTest {
+
+    private static final int TEST_SIZE = 100;
+
+    private static List<DataSet> data(int offset, int size) {
+        List<DataSet> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            list.add(new DataSet(Nd4j.scalar(offset + i).reshape(1, 1), Nd4j.create(new float[] {1.0f}).reshape(1, 1)));
+        }
+        return list;
+    }
+
+    private static int value(DataSet ds) {
+        return ds.getFeatures().getInt(0);
+    }
+
+    // simulates expensive normalization/augmentation, which is performed by worker threads
+    private static class SlowPreProcessor implements DataSetPreProcessor {
+        private final Random rng = new Random(12345);
+
+        @Override
+        public void preProcess(DataSet toPreProcess) {
+            try {
+                Thread.sleep(rng.nextInt(3));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            toPreProcess.getLabels().addi(1.0);
+        }
+    }
+
+    @Test
+    @DisplayName("Test Single Source Unordered")
+    void testSingleSourceUnordered() {
+        for (int workers = 1; workers <= 4; workers++) {
+            ParallelAsyncDataSetIterator iterator = new ParallelAsyncDataSetIterator.Builder(new ExistingDataSetIterator(data(0, TEST_SIZE)))
+                    .workers(workers).queueSize(4).useWorkspace(false).preProcessor(new SlowPreProcessor()).build();
+
+            Set<Integer> seen = new HashSet<>();
+            while (iterator.hasNext()) {
+                DataSet ds = iterator.next();
+                assertTrue(seen.add(value(ds)));
+                assertEquals(2.0, ds.getLabels().getDouble(0), 1e-6);
+            }
+            assertEquals(TEST_SIZE, seen.size());
+            assertFalse(iterator.hasNext());
+            assertEquals(TEST_SIZE, iterator.getStats().getBatches().sum());
+            iterator.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Test Single Source Ordered")
+    void testSingleSourceOrdered() {
+        ParallelAsyncDataSetIterator iterator = new ParallelAsyncDataSetIterator.Builder(new ExistingDataSetIterator(data(0, TEST_SIZE)))
+                .workers(4).queueSize(6).ordered(true).useWorkspace(false).preProcessor(new SlowPreProcessor()).build();
+
+        int cnt = 0;
+        while (iterator.hasNext()) {
+            assertEquals(cnt++, value(iterator.next()));
+        }
+        assertEquals(TEST_SIZE, cnt);
+        iterator.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test Shards Ordered")
+    void testShardsOrdered() {
+        // shards of different length: round-robin continues over remaining shards once shorter ones are exhausted
+        List<DataSetIterator> shards = Arrays.<DataSetIterator>asList(
+                new ExistingDataSetIterator(data(0, 10)),
+                new ExistingDataSetIterator(data(1000, 5)),
+                new ExistingDataSetIterator(data(2000, 8)));
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add(i);
+            if (i < 5)
+                expected.add(1000 + i);
+            if (i < 8)
+                expected.add(2000 + i);
+        }
+
+        ParallelAsyncDataSetIterator iterator = new ParallelAsyncDataSetIterator.Builder(shards)
+                .workers(6).queueSize(6).ordered(true).preProcessor(new SlowPreProcessor()).build();
+
+        for (int e = 0; e < 3; e++) {
+            List<Integer> actual = new ArrayList<>();
+            while (iterator.hasNext())
+                actual.add(value(iterator.next()));
+
+            assertEquals(expected, actual, "Failed on epoch " + e);
+            iterator.reset();
+        }
+        iterator.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test Reset Mid Epoch")
+    void testResetMidEpoch() {
+        ParallelAsyncDataSetIterator iterator = new ParallelAsyncDataSetIterator.Builder(new ExistingDataSetIterator(data(0, TEST_SIZE)))
+                .workers(3).queueSize(4).build();
+
+        int cnt = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            cnt++;
+            if (cnt == TEST_SIZE / 2)
+                iterator.reset();
+        }
+        assertEquals(TEST_SIZE + (TEST_SIZE / 2), cnt);
+        iterator.shutdown();
+    }
+
+    @Test
+    @DisplayName("Test With Exception")
+    void testWithException() {
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> {
+            ParallelAsyncDataSetIterator iterator = new ParallelAsyncDataSetIterator.Builder(new ExistingDataSetIterator(data(0, TEST_SIZE)))
+                    .workers(2).useWorkspace(false)
+                    .preProcessor(ds -> {
+                        if (value(ds) == 10)
+                            throw new ArrayIndexOutOfBoundsException();
+                    }).build();
+            try {
+                while (iterator.hasNext()) {
+                    iterator.next();
+                }
+            } finally {
+                iterator.shutdown();
+            }
+        });
+    }
+}
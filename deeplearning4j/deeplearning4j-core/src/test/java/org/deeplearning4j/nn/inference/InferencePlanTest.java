@@ -0,0 +1,195 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.inference;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.ActivationLayer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.DropoutLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class InferencePlanTest extends BaseDL4JTest {
+
+    @Override
+    public DataType getDataType() {
+        return DataType.DOUBLE;
+    }
+
+    @Test
+    public void testMultiLayerNetwork() {
+        Nd4j.getRandom().setSeed(12345);
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(8).activation(Activation.RELU).build())
+                .layer(new DenseLayer.Builder().nOut(8).activation(Activation.IDENTITY).build())
+                .layer(new BatchNormalization.Builder().build())
+                .layer(new ActivationLayer.Builder().activation(Activation.TANH).build())
+                .layer(new DropoutLayer.Builder(0.5).build())
+                .layer(new BatchNormalization.Builder().useLogStd(false).build())
+                .layer(new DenseLayer.Builder().nOut(6).activation(Activation.LEAKYRELU).build())
+                .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .setInputType(InputType.feedForward(10))
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        //Fit a few times so that the batch norm global mean/variance are not the defaults
+        INDArray labels = Nd4j.create(DataType.DOUBLE, 32, 3);
+        for (int i = 0; i < 32; i++) {
+            labels.putScalar(i, i % 3, 1.0);
+        }
+        DataSet ds = new DataSet(Nd4j.rand(DataType.DOUBLE, 32, 10), labels);
+        for (int i = 0; i < 5; i++) {
+            net.fit(ds);
+        }
+
+        assertTrue(InferencePlan.isSupported(net));
+        InferencePlan plan = InferencePlan.compile(net, 4);
+        //Dense+relu, dense+BN+tanh, scale/shift (BN after tanh), dense, output
+        assertEquals(5, plan.numSteps(), plan.describe());
+
+        for (int mb : new int[]{4, 1, 7, 4}) {
+            INDArray in = Nd4j.rand(DataType.DOUBLE, mb, 10);
+            INDArray exp = net.output(in);
+            INDArray out = plan.output(in);
+            assertArrayEquals(exp.shape(), out.shape());
+            assertTrue(exp.equalsWithEps(out, 1e-6), "Batch size " + mb);
+
+            //Same batch size again: same buffer is reused
+            INDArray in2 = Nd4j.rand(DataType.DOUBLE, mb, 10);
+            INDArray out2 = plan.output(in2);
+            assertSame(out, out2);
+            assertTrue(net.output(in2).equalsWithEps(out2, 1e-6));
+
+            INDArray target = Nd4j.create(DataType.DOUBLE, mb, 3);
+            plan.output(in, target);
+            assertTrue(exp.equalsWithEps(target, 1e-6));
+        }
+
+        //Non-contiguous input
+        INDArray view = Nd4j.rand(DataType.DOUBLE, 10, 6).transpose();
+        assertTrue(net.output(view).equalsWithEps(plan.output(view), 1e-6));
+    }
+
+    @Test
+    public void testBufferCacheBounded() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(5).nOut(4).activation(Activation.RELU).build())
+                .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        InferencePlan plan = InferencePlan.compile(net);
+        plan.setMaxCachedBatchSizes(3);
+        INDArray out1 = plan.output(Nd4j.rand(DataType.DOUBLE, 1, 5));
+        for (int mb = 1; mb <= 20; mb++) {
+            INDArray in = Nd4j.rand(DataType.DOUBLE, mb, 5);
+            assertTrue(net.output(in).equalsWithEps(plan.output(in), 1e-6), "Batch size " + mb);
+            assertTrue(plan.numCachedBatchSizes() <= 3);
+        }
+        assertEquals(3, plan.numCachedBatchSizes());
+
+        //Batch size 1 was evicted: new buffers are allocated
+        assertNotSame(out1, plan.output(Nd4j.rand(DataType.DOUBLE, 1, 5)));
+
+        //Recently used batch sizes are kept
+        INDArray out20 = plan.output(Nd4j.rand(DataType.DOUBLE, 20, 5));
+        plan.output(Nd4j.rand(DataType.DOUBLE, 21, 5));
+        assertSame(out20, plan.output(Nd4j.rand(DataType.DOUBLE, 20, 5)));
+
+        plan.setMaxCachedBatchSizes(1);
+        assertEquals(1, plan.numCachedBatchSizes());
+        assertSame(out20, plan.output(Nd4j.rand(DataType.DOUBLE, 20, 5)));
+    }
+
+    @Test
+    public void testComputationGraph() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .graphBuilder()
+                .addInputs("in")
+                .layer("bn0", new BatchNormalization.Builder().build(), "in")
+                .layer("d0", new DenseLayer.Builder().nOut(5).activation(Activation.SIGMOID).build(), "bn0")
+                .layer("out", new OutputLayer.Builder().nOut(4).activation(Activation.IDENTITY)
+                        .lossFunction(LossFunctions.LossFunction.MSE).build(), "d0")
+                .setOutputs("out")
+                .setInputTypes(InputType.feedForward(6))
+                .build();
+        ComputationGraph cg = new ComputationGraph(conf);
+        cg.init();
+        DataSet ds = new DataSet(Nd4j.rand(DataType.DOUBLE, 16, 6).muli(3).addi(1), Nd4j.rand(DataType.DOUBLE, 16, 4));
+        for (int i = 0; i < 5; i++) {
+            cg.fit(ds);
+        }
+
+        assertTrue(InferencePlan.isSupported(cg));
+        InferencePlan plan = InferencePlan.compile(cg);
+        assertEquals(3, plan.numSteps(), plan.describe());
+        for (int mb : new int[]{3, 3, 8}) {
+            INDArray in = Nd4j.rand(DataType.DOUBLE, mb, 6);
+            assertTrue(cg.outputSingle(in).equalsWithEps(plan.output(in), 1e-6));
+        }
+    }
+
+    @Test
+    public void testUnsupported() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .list()
+                .layer(new ConvolutionLayer.Builder().kernelSize(2, 2).nOut(2).build())
+                .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX).build())
+                .setInputType(InputType.convolutional(4, 4, 1))
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        assertFalse(InferencePlan.isSupported(net));
+        assertThrows(UnsupportedOperationException.class, () -> InferencePlan.compile(net));
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.inference;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.conf.layers.SimpleRnn;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class RnnSessionManagerTest extends BaseDL4JTest {
+
+    private static final int N_IN = 4;
+
+    private static MultiLayerNetwork getNet() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .list()
+                .layer(new LSTM.Builder().nOut(6).activation(Activation.TANH).build())
+                .layer(new SimpleRnn.Builder().nOut(5).activation(Activation.TANH).build())
+                .layer(new RnnOutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .setInputType(InputType.recurrent(N_IN))
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+
+    @Test
+    public void testInterleavedSessions() {
+        Nd4j.getRandom().setSeed(12345);
+        MultiLayerNetwork net = getNet();
+        //One reference network per session, stepped with the standard rnnTimeStep
+        Map<String, MultiLayerNetwork> reference = new HashMap<>();
+        String[] ids = {"a", "b", "c", "d"};
+        for (String s : ids) {
+            reference.put(s, net.clone());
+        }
+
+        RnnSessionManager sm = new RnnSessionManager.Builder(net).maxSessions(8).build();
+        Random r = new Random(12345);
+        for (int step = 0; step < 10; step++) {
+            //Random subset of sessions, in random order
+            List<String> batch = new ArrayList<>(Arrays.asList(ids));
+            Collections.shuffle(batch, r);
+            batch = batch.subList(0, 1 + r.nextInt(ids.length));
+
+            int tsLength = 1 + r.nextInt(3);
+            INDArray in = Nd4j.rand(DataType.DOUBLE, batch.size(), N_IN, tsLength);
+            INDArray out = sm.step(batch, in)[0];
+            for (int i = 0; i < batch.size(); i++) {
+                INDArray exp = reference.get(batch.get(i)).rnnTimeStep(in.get(NDArrayIndex.interval(i, i + 1)));
+                INDArray act = out.get(NDArrayIndex.interval(i, i + 1));
+                assertTrue(exp.equalsWithEps(act, 1e-8), "Step " + step + ", session " + batch.get(i));
+            }
+        }
+        assertEquals(4, sm.numSessions());
+
+        //Ended session restarts from the initial state
+        assertTrue(sm.endSession("a"));
+        assertFalse(sm.hasSession("a"));
+        INDArray in = Nd4j.rand(DataType.DOUBLE, 1, N_IN);
+        INDArray exp = net.clone().rnnTimeStep(in);
+        assertTrue(exp.equalsWithEps(sm.step(Collections.singletonList("a"), in)[0], 1e-8));
+        sm.close();
+    }
+
+    @Test
+    public void testLruEviction() {
+        MultiLayerNetwork net = getNet();
+        RnnSessionManager sm = new RnnSessionManager.Builder(net).maxSessions(2).build();
+        INDArray in = Nd4j.rand(DataType.DOUBLE, 1, N_IN);
+        sm.step(Collections.singletonList("a"), in);
+        sm.step(Collections.singletonList("b"), in);
+        sm.step(Collections.singletonList("a"), in);
+        //"b" is least recently used
+        sm.step(Collections.singletonList("c"), in);
+        assertTrue(sm.hasSession("a"));
+        assertFalse(sm.hasSession("b"));
+        assertTrue(sm.hasSession("c"));
+        assertEquals(1, sm.getEvictedCount());
+
+        //Reused slot must start from the initial state, not the evicted session's state
+        INDArray exp = net.clone().rnnTimeStep(in);
+        assertTrue(exp.equalsWithEps(sm.step(Collections.singletonList("b"), in)[0], 1e-8));
+
+        RnnSessionManager noEvict = new RnnSessionManager.Builder(net).maxSessions(1).evictWhenFull(false).build();
+        noEvict.step(Collections.singletonList("a"), in);
+        assertThrows(IllegalStateException.class, () -> noEvict.step(Collections.singletonList("b"), in));
+
+        assertThrows(IllegalArgumentException.class, () -> sm.step(Arrays.asList("a", "a"), Nd4j.rand(DataType.DOUBLE, 2, N_IN)));
+        sm.close();
+        noEvict.close();
+    }
+
+    @Test
+    public void testSubmitBatched() throws Exception {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .graphBuilder()
+                .addInputs("in")
+                .layer("lstm", new LSTM.Builder().nOut(6).activation(Activation.TANH).build(), "in")
+                .layer("out", new RnnOutputLayer.Builder().nOut(3).activation(Activation.IDENTITY)
+                        .lossFunction(LossFunctions.LossFunction.MSE).build(), "lstm")
+                .setOutputs("out")
+                .setInputTypes(InputType.recurrent(N_IN))
+                .build();
+        ComputationGraph cg = new ComputationGraph(conf);
+        cg.init();
+
+        int nSessions = 6;
+        int nSteps = 4;
+        List<ComputationGraph> reference = new ArrayList<>();
+        for (int i = 0; i < nSessions; i++) {
+            reference.add(cg.clone());
+        }
+
+        RnnSessionManager sm = new RnnSessionManager.Builder(cg).maxBatchSize(4).build();
+        List<List<Future<INDArray[]>>> futures = new ArrayList<>();
+        List<List<INDArray>> inputs = new ArrayList<>();
+        for (int i = 0; i < nSessions; i++) {
+            futures.add(new ArrayList<>());
+            inputs.add(new ArrayList<>());
+        }
+        //Multiple steps per session may be queued at once; they must be applied in order
+        for (int step = 0; step < nSteps; step++) {
+            for (int i = 0; i < nSessions; i++) {
+                INDArray in = Nd4j.rand(DataType.DOUBLE, 1, N_IN, 1);
+                inputs.get(i).add(in);
+                futures.get(i).add(sm.submit("session_" + i, in));
+            }
+        }
+
+        for (int i = 0; i < nSessions; i++) {
+            for (int step = 0; step < nSteps; step++) {
+                INDArray exp = reference.get(i).rnnTimeStep(inputs.get(i).get(step))[0];
+                INDArray act = futures.get(i).get(step).get()[0];
+                assertTrue(exp.equalsWithEps(act, 1e-8), "Session " + i + ", step " + step);
+            }
+        }
+        assertEquals(nSessions, sm.numSessions());
+        sm.close();
+    }
+
+    @Test
+    public void testSubmitConcurrentWithClose() throws Exception {
+        MultiLayerNetwork net = getNet();
+        for (int attempt = 0; attempt < 5; attempt++) {
+            RnnSessionManager sm = new RnnSessionManager.Builder(net).build();
+            int nThreads = 4;
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService exec = Executors.newFixedThreadPool(nThreads);
+            List<Future<List<Future<INDArray[]>>>> submitted = new ArrayList<>();
+            for (int t = 0; t < nThreads; t++) {
+                String id = "session_" + t;
+                submitted.add(exec.submit(() -> {
+                    List<Future<INDArray[]>> l = new ArrayList<>();
+                    start.await();
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            l.add(sm.submit(id, Nd4j.rand(DataType.DOUBLE, 1, N_IN)));
+                        }
+                    } catch (IllegalStateException e) {
+                        //Closed before submit
+                    }
+                    return l;
+                }));
+            }
+            start.countDown();
+            sm.close();
+
+            //Every accepted request must complete - either with a result or with an exception - and never hang
+            for (Future<List<Future<INDArray[]>>> f : submitted) {
+                for (Future<INDArray[]> r : f.get(30, TimeUnit.SECONDS)) {
+                    try {
+                        r.get(30, TimeUnit.SECONDS);
+                    } catch (ExecutionException e) {
+                        assertTrue(e.getCause() instanceof IllegalStateException, String.valueOf(e.getCause()));
+                    }
+                }
+            }
+            exec.shutdown();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.misc;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class TestActivationRecomputation extends BaseDL4JTest {
+
+    @Override
+    public DataType getDataType() {
+        return DataType.DOUBLE;
+    }
+
+    private static INDArray labels(int n, int nOut) {
+        INDArray l = Nd4j.create(DataType.DOUBLE, n, nOut);
+        for (int i = 0; i < n; i++) {
+            l.putScalar(i, i % nOut, 1.0);
+        }
+        return l;
+    }
+
+    private static MultiLayerConfiguration.Builder mlnConf() {
+        return new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Adam(1e-2))
+                .l2(1e-3)
+                .list()
+                .layer(new ConvolutionLayer.Builder().kernelSize(2, 2).nOut(3).activation(Activation.TANH).build())
+                .layer(new DenseLayer.Builder().nOut(8).activation(Activation.TANH).build())
+                .layer(new DenseLayer.Builder().nOut(8).activation(Activation.RELU).build())
+                .layer(new DenseLayer.Builder().nOut(8).activation(Activation.TANH).build())
+                .layer(new DenseLayer.Builder().nOut(8).activation(Activation.SIGMOID).build())
+                .layer(new DenseLayer.Builder().nOut(8).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .setInputType(InputType.convolutional(4, 4, 1));
+    }
+
+    @Test
+    public void testMultiLayerNetworkGradients() {
+        MultiLayerNetwork plain = new MultiLayerNetwork(mlnConf().build());
+        plain.init();
+
+        for (int interval : new int[]{1, 2, 3}) {
+            MultiLayerConfiguration conf = mlnConf().activationCheckpointInterval(interval).build();
+            assertEquals(interval, conf.getActivationCheckpointInterval());
+            assertEquals(conf, MultiLayerConfiguration.fromJson(conf.toJson()));
+            MultiLayerNetwork net = new MultiLayerNetwork(conf);
+            net.init(plain.params().dup(), false);
+
+            INDArray f = Nd4j.rand(DataType.DOUBLE, 5, 1, 4, 4);
+            INDArray l = labels(5, 3);
+            plain.setInput(f);
+            plain.setLabels(l);
+            plain.computeGradientAndScore();
+            net.setInput(f);
+            net.setLabels(l);
+            net.computeGradientAndScore();
+
+            String msg = "Interval " + interval;
+            assertEquals(plain.score(), net.score(), 1e-10, msg);
+            assertEquals(plain.gradient().gradientForVariable().keySet(), net.gradient().gradientForVariable().keySet(), msg);
+            for (String key : plain.gradient().gradientForVariable().keySet()) {
+                assertTrue(plain.gradient().getGradientFor(key).equalsWithEps(net.gradient().getGradientFor(key), 1e-10),
+                        msg + " - " + key);
+            }
+            assertTrue(plain.getGradientsViewArray().equalsWithEps(net.getGradientsViewArray(), 1e-10), msg);
+        }
+    }
+
+    @Test
+    public void testMultiLayerNetworkFit() {
+        MultiLayerNetwork plain = new MultiLayerNetwork(mlnConf().build());
+        plain.init();
+        MultiLayerNetwork net = new MultiLayerNetwork(mlnConf().activationCheckpointInterval(2).build());
+        net.init();
+
+        Nd4j.getRandom().setSeed(12345);
+        for (int i = 0; i < 5; i++) {
+            DataSet ds = new DataSet(Nd4j.rand(DataType.DOUBLE, 6, 1, 4, 4), labels(6, 3));
+            plain.fit(ds);
+            net.fit(ds);
+            assertEquals(plain.score(), net.score(), 1e-8);
+            assertTrue(plain.params().equalsWithEps(net.params(), 1e-8), "Iteration " + i);
+        }
+        assertEquals(5, net.getIterationCount());
+    }
+
+    @Test
+    public void testDropoutMasksReused() {
+        //With dropout, gradients are only correct if the recomputed forward pass uses the same dropout masks as the
+        // original forward pass. Check this numerically: for a fixed RNG seed the masks are fixed, hence the gradients
+        // should match the finite difference approximation of the score
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Adam(1e-2))
+                .dropOut(0.5)
+                .list()
+                .layer(new DenseLayer.Builder().nOut(8).activation(Activation.TANH).build())
+                .layer(new DenseLayer.Builder().nOut(8).activation(Activation.TANH).build())
+                .layer(new DenseLayer.Builder().nOut(8).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .setInputType(InputType.feedForward(4))
+                .activationCheckpointInterval(1)
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        int n = 10;
+        net.setInput(Nd4j.rand(DataType.DOUBLE, n, 4));
+        net.setLabels(labels(n, 3));
+
+        Nd4j.getRandom().setSeed(42);
+        net.computeGradientAndScore();
+        INDArray grad = net.getGradientsViewArray().dup();
+
+        //Different RNG state -> different dropout masks
+        Nd4j.getRandom().setSeed(43);
+        net.computeGradientAndScore();
+        assertNotEquals(grad, net.getGradientsViewArray());
+
+        //Gradients are the sum over examples; score is the average over examples
+        double eps = 1e-6;
+        INDArray params = net.params();
+        for (int i = 0; i < params.length(); i++) {
+            double orig = params.getDouble(i);
+            params.putScalar(i, orig + eps);
+            Nd4j.getRandom().setSeed(42);
+            net.computeGradientAndScore();
+            double scorePlus = net.score();
+            params.putScalar(i, orig - eps);
+            Nd4j.getRandom().setSeed(42);
+            net.computeGradientAndScore();
+            double scoreMinus = net.score();
+            params.putScalar(i, orig);
+
+            double numerical = n * (scorePlus - scoreMinus) / (2 * eps);
+            assertEquals(numerical, grad.getDouble(i), 1e-5 * Math.max(1.0, Math.abs(numerical)), "Parameter " + i);
+        }
+    }
+
+    private static ComputationGraphConfiguration.GraphBuilder resNetConf() {
+        return new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Adam(1e-2))
+                .l2(1e-3)
+                .graphBuilder()
+                .addInputs("in")
+                .layer("d0", new DenseLayer.Builder().nOut(6).activation(Activation.TANH).build(), "in")
+                .layer("d1", new DenseLayer.Builder().nOut(6).activation(Activation.TANH).build(), "d0")
+                .layer("d2", new DenseLayer.Builder().nOut(6).activation(Activation.TANH).build(), "d1")
+                .addVertex("block1", new ElementWiseVertex(ElementWiseVertex.Op.Add), "d0", "d2")
+                .layer("d3", new DenseLayer.Builder().nOut(6).activation(Activation.TANH).build(), "block1")
+                .layer("d4", new DenseLayer.Builder().nOut(6).activation(Activation.TANH).build(), "d3")
+                .addVertex("block2", new ElementWiseVertex(ElementWiseVertex.Op.Add), "block1", "d4")
+                .layer("out", new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "block2")
+                .layer("out2", new OutputLayer.Builder().nOut(2).activation(Activation.IDENTITY)
+                        .lossFunction(LossFunctions.LossFunction.MSE).build(), "d3")
+                .setOutputs("out", "out2")
+                .setInputTypes(InputType.feedForward(4));
+    }
+
+    @Test
+    public void testComputationGraphGradients() {
+        ComputationGraph plain = new ComputationGraph(resNetConf().build());
+        plain.init();
+
+        ComputationGraphConfiguration[] confs = new ComputationGraphConfiguration[]{
+                resNetConf().activationCheckpointInterval(1).build(),
+                resNetConf().activationCheckpointInterval(3).build(),
+                resNetConf().activationCheckpoints("block1", "block2").build(),
+                resNetConf().activationCheckpointInterval(4).activationCheckpoints("d1").build()
+        };
+
+        INDArray f = Nd4j.rand(DataType.DOUBLE, 5, 4);
+        INDArray[] l = new INDArray[]{labels(5, 3), Nd4j.rand(DataType.DOUBLE, 5, 2)};
+        plain.setInputs(f);
+        plain.setLabels(l);
+        plain.computeGradientAndScore();
+
+        for (int i = 0; i < confs.length; i++) {
+            ComputationGraphConfiguration conf = confs[i];
+            assertEquals(conf, ComputationGraphConfiguration.fromJson(conf.toJson()));
+            ComputationGraph net = new ComputationGraph(conf);
+            net.init(plain.params().dup(), false);
+            net.setInputs(f);
+            net.setLabels(l);
+            net.computeGradientAndScore();
+
+            String msg = "Config " + i;
+            assertEquals(plain.score(), net.score(), 1e-10, msg);
+            for (String key : plain.gradient().gradientForVariable().keySet()) {
+                assertTrue(plain.gradient().getGradientFor(key).equalsWithEps(net.gradient().getGradientFor(key), 1e-10),
+                        msg + " - " + key);
+            }
+            assertTrue(plain.getGradientsViewArray().equalsWithEps(net.getGradientsViewArray(), 1e-10), msg);
+        }
+    }
+
+    @Test
+    public void testComputationGraphFit() {
+        ComputationGraph plain = new ComputationGraph(resNetConf().build());
+        plain.init();
+        ComputationGraph net = new ComputationGraph(resNetConf().activationCheckpoints("block1").build());
+        net.init();
+
+        Nd4j.getRandom().setSeed(12345);
+        for (int i = 0; i < 5; i++) {
+            INDArray f = Nd4j.rand(DataType.DOUBLE, 6, 4);
+            INDArray[] l = new INDArray[]{labels(6, 3), Nd4j.rand(DataType.DOUBLE, 6, 2)};
+            plain.fit(new INDArray[]{f}, l);
+            net.fit(new INDArray[]{f}, l);
+            assertEquals(plain.score(), net.score(), 1e-8);
+            assertTrue(plain.params().equalsWithEps(net.params(), 1e-8), "Iteration " + i);
+        }
+    }
+
+    @Test
+    public void testInvalidCheckpointName() {
+        assertThrows(IllegalStateException.class, () -> resNetConf().activationCheckpoints("nonExistent").build());
+    }
+}
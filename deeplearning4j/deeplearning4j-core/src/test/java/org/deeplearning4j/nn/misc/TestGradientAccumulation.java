@@ -0,0 +1,205 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.misc;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.RnnOutputLayer;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class TestGradientAccumulation extends BaseDL4JTest {
+
+    @Override
+    public DataType getDataType() {
+        return DataType.DOUBLE;
+    }
+
+    private static MultiLayerConfiguration.Builder mlnConf() {
+        return new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Adam(1e-2))
+                .l2(1e-3)
+                .list()
+                .layer(new DenseLayer.Builder().nOut(6).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .setInputType(InputType.feedForward(4));
+    }
+
+    private static INDArray labels(int n, int nOut) {
+        INDArray l = Nd4j.create(DataType.DOUBLE, n, nOut);
+        for (int i = 0; i < n; i++) {
+            l.putScalar(i, i % nOut, 1.0);
+        }
+        return l;
+    }
+
+    @Test
+    public void testMultiLayerNetworkMatchesFullBatch() {
+        MultiLayerNetwork full = new MultiLayerNetwork(mlnConf().build());
+        full.init();
+        MultiLayerConfiguration microConf = mlnConf().microBatchSize(4).build();
+        assertEquals(4, microConf.getMicroBatchSize());
+        assertEquals(microConf, MultiLayerConfiguration.fromJson(microConf.toJson()));
+        MultiLayerNetwork micro = new MultiLayerNetwork(microConf);
+        micro.init();
+
+        Nd4j.getRandom().setSeed(12345);
+        for (int i = 0; i < 5; i++) {
+            //10 examples: micro-batches of 4, 4, 2
+            DataSet ds = new DataSet(Nd4j.rand(DataType.DOUBLE, 10, 4), labels(10, 3));
+            full.fit(ds);
+            micro.fit(ds);
+            assertEquals(full.score(), micro.score(), 1e-8);
+            assertTrue(full.params().equalsWithEps(micro.params(), 1e-8), "Iteration " + i);
+        }
+    }
+
+    @Test
+    public void testMasksSplit() {
+        MultiLayerConfiguration.Builder b = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Adam(1e-2))
+                .list()
+                .layer(new LSTM.Builder().nOut(5).activation(Activation.TANH).build())
+                .layer(new RnnOutputLayer.Builder().nOut(2).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .setInputType(InputType.recurrent(3));
+        MultiLayerNetwork full = new MultiLayerNetwork(b.build());
+        full.init();
+        MultiLayerNetwork micro = new MultiLayerNetwork(b.microBatchSize(3).build());
+        micro.init();
+
+        int n = 8;
+        int tsLength = 6;
+        INDArray f = Nd4j.rand(DataType.DOUBLE, n, 3, tsLength);
+        INDArray l = Nd4j.create(DataType.DOUBLE, n, 2, tsLength);
+        INDArray fMask = Nd4j.ones(DataType.DOUBLE, n, tsLength);
+        for (int i = 0; i < n; i++) {
+            for (int t = 0; t < tsLength; t++) {
+                l.putScalar(i, (i + t) % 2, t, 1.0);
+            }
+            //Variable length sequences
+            for (int t = tsLength - (i % 4); t < tsLength; t++) {
+                fMask.putScalar(i, t, 0.0);
+            }
+        }
+        DataSet ds = new DataSet(f, l, fMask, fMask);
+        for (int i = 0; i < 3; i++) {
+            full.fit(ds);
+            micro.fit(ds);
+            assertEquals(full.score(), micro.score(), 1e-8);
+            assertTrue(full.params().equalsWithEps(micro.params(), 1e-8), "Iteration " + i);
+        }
+    }
+
+    @Test
+    public void testComputationGraphAndBatchNorm() {
+        ComputationGraphConfiguration.GraphBuilder gb = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Adam(1e-2))
+                .graphBuilder()
+                .addInputs("in")
+                .layer("bn", new BatchNormalization.Builder().build(), "in")
+                .layer("d", new DenseLayer.Builder().nOut(6).activation(Activation.TANH).build(), "bn")
+                .layer("out", new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "d")
+                .setOutputs("out")
+                .setInputTypes(InputType.feedForward(4));
+
+        ComputationGraph full = new ComputationGraph(gb.build());
+        full.init();
+        ComputationGraphConfiguration microConf = gb.microBatchSize(5).build();
+        assertEquals(microConf, ComputationGraphConfiguration.fromJson(microConf.toJson()));
+        ComputationGraph micro = new ComputationGraph(microConf);
+        micro.init();
+
+        DataSet ds = new DataSet(Nd4j.rand(DataType.DOUBLE, 20, 4).muli(5).addi(2), labels(20, 3));
+
+        //Batch norm normalizes each micro-batch with its own statistics, so the result can't match the full minibatch.
+        //Reference instead: accumulate the micro-batch gradients manually, then apply a single update
+        ComputationGraph ref = full.clone();
+        INDArray acc = null;
+        double expScore = 0.0;
+        for (int start = 0; start < 20; start += 5) {
+            ref.setInputs(ds.getFeatures().get(NDArrayIndex.interval(start, start + 5), NDArrayIndex.all()));
+            ref.setLabels(ds.getLabels().get(NDArrayIndex.interval(start, start + 5), NDArrayIndex.all()));
+            ref.computeGradientAndScore();
+            expScore += 0.25 * ref.score();
+
+            Layer bn = ref.getLayer("bn");
+            for (String p : bn.paramTable(false).keySet()) {
+                if (!bn.updaterDivideByMinibatch(p)) {
+                    ref.gradient().getGradientFor("bn_" + p).muli(0.25);
+                }
+            }
+            acc = (acc == null ? ref.gradient().gradient().dup() : acc.addi(ref.gradient().gradient()));
+        }
+        Gradient g = ref.gradient();
+        g.gradient().assign(acc);
+        ref.getUpdater().update(g, 0, 0, 20, LayerWorkspaceMgr.noWorkspaces());
+        ref.params().subi(g.gradient());
+
+        full.fit(ds);
+        micro.fit(ds);
+
+        //Batch norm global mean estimate: mean of the micro-batch means = full minibatch mean
+        INDArray expMean = full.getLayer("bn").getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN);
+        INDArray actMean = micro.getLayer("bn").getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN);
+        assertTrue(expMean.equalsWithEps(actMean, 1e-8));
+
+        //Score: average over all examples
+        assertEquals(expScore, micro.score(), 1e-8);
+        assertTrue(ref.params().equalsWithEps(micro.params(), 1e-8));
+        assertEquals(1, micro.getIterationCount());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.util;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.preprocessor.NormalizerStandardize;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Chunked Model Serializer Test")
+@NativeTag
+@Tag(TagNames.FILE_IO)
+class ChunkedModelSerializerTest extends BaseDL4JTest {
+
+    @TempDir
+    public Path tempDir;
+
+    private static MultiLayerNetwork trainedNetwork() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Adam(0.01))
+                .activation(Activation.TANH).weightInit(WeightInit.XAVIER).list()
+                .layer(0, new DenseLayer.Builder().nIn(5).nOut(20).build())
+                .layer(1, new DenseLayer.Builder().nIn(20).nOut(30).build())
+                .layer(2, new OutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MSE).nIn(30).nOut(6).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        net.fit(new DataSet(Nd4j.rand(10, 5), Nd4j.rand(10, 6)));
+        return net;
+    }
+
+    @Test
+    @DisplayName("Test Write MLN Model Memory Mapped")
+    void testWriteMLNModelMemoryMapped() throws Exception {
+        MultiLayerNetwork net = trainedNetwork();
+        File f = new File(tempDir.toFile(), "mln.bin");
+        ChunkedModelSerializer.writeModel(net, f, true);
+        assertTrue(ChunkedModelSerializer.isChunkedModelFile(f));
+
+        MultiLayerNetwork restored = ChunkedModelSerializer.restoreMultiLayerNetwork(f);
+        assertEquals(net.getLayerWiseConfigurations().toJson(), restored.getLayerWiseConfigurations().toJson());
+        assertEquals(net.params(), restored.params());
+
+        // updater state isn't loaded until updater is created
+        assertTrue(restored.getChunkedModelSource().hasDeferredUpdaterState());
+        INDArray in = Nd4j.rand(3, 5);
+        assertEquals(net.output(in), restored.output(in));
+        assertTrue(restored.getChunkedModelSource().hasDeferredUpdaterState());
+
+        assertEquals(net.getUpdater().getStateViewArray(), restored.getUpdater().getStateViewArray());
+        assertFalse(restored.getChunkedModelSource().hasDeferredUpdaterState());
+
+        // training must not modify the file, since it's mapped copy-on-write
+        DataSet ds = new DataSet(Nd4j.rand(10, 5), Nd4j.rand(10, 6));
+        net.fit(ds);
+        restored.fit(ds);
+        assertEquals(net.params(), restored.params());
+
+        MultiLayerNetwork restoredAgain = ChunkedModelSerializer.restoreMultiLayerNetwork(f);
+        assertNotEquals(restored.params(), restoredAgain.params());
+    }
+
+    @Test
+    @DisplayName("Test Updater State Length Mismatch")
+    void testUpdaterStateLengthMismatch() throws Exception {
+        MultiLayerNetwork net = trainedNetwork();
+        File f = new File(tempDir.toFile(), "mln.bin");
+        ChunkedModelSerializer.writeModel(net, f, true);
+
+        MultiLayerNetwork restored = ChunkedModelSerializer.restoreMultiLayerNetwork(f);
+        long length = net.getUpdater().getStateViewArray().length();
+        assertThrows(IllegalStateException.class, () -> ChunkedModelSerializer.loadDeferredUpdaterState(restored, length + 1));
+    }
+
+    @Test
+    @DisplayName("Test Write MLN Model Compressed")
+    void testWriteMLNModelCompressed() throws Exception {
+        MultiLayerNetwork net = trainedNetwork();
+        NormalizerStandardize normalizer = new NormalizerStandardize();
+        normalizer.fit(new DataSet(Nd4j.rand(10, 5), Nd4j.rand(10, 6)));
+
+        File f = new File(tempDir.toFile(), "mln_compressed.bin");
+        // small chunks, so parameters are decoded by multiple threads
+        ChunkedModelSerializer.writeModel(net, f, true, normalizer, true, 256);
+
+        MultiLayerNetwork restored = ChunkedModelSerializer.restoreMultiLayerNetwork(f, true, true, 4);
+        assertEquals(net.params(), restored.params());
+        assertEquals(net.getUpdater().getStateViewArray(), restored.getUpdater().getStateViewArray());
+
+        NormalizerStandardize restoredNormalizer = ChunkedModelSerializer.restoreNormalizer(f);
+        assertEquals(normalizer.getMean(), restoredNormalizer.getMean());
+        assertEquals(normalizer.getStd(), restoredNormalizer.getStd());
+
+        // updater state isn't loaded when not requested
+        MultiLayerNetwork withoutUpdater = ChunkedModelSerializer.restoreMultiLayerNetwork(f, true, false, 4);
+        assertEquals(net.params(), withoutUpdater.params());
+        assertFalse(withoutUpdater.getChunkedModelSource().hasDeferredUpdaterState());
+    }
+
+    @Test
+    @DisplayName("Test Write CG Model")
+    void testWriteCGModel() throws Exception {
+        ComputationGraphConfiguration config = new NeuralNetConfiguration.Builder().seed(12345).updater(new Adam(0.01))
+                .graphBuilder().addInputs("in")
+                .addLayer("dense", new DenseLayer.Builder().nIn(4).nOut(2).build(), "in")
+                .addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(2).nOut(3).activation(Activation.SOFTMAX).build(), "dense")
+                .setOutputs("out").build();
+        ComputationGraph cg = new ComputationGraph(config);
+        cg.init();
+        cg.fit(new DataSet(Nd4j.rand(5, 4), Nd4j.createFromArray(new float[][] {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}, {1, 0, 0}, {0, 1, 0}})));
+
+        for (boolean compress : new boolean[] {false, true}) {
+            File f = new File(tempDir.toFile(), "cg_" + compress + ".bin");
+            ChunkedModelSerializer.writeModel(cg, f, true, null, compress, 64);
+
+            ComputationGraph restored = ChunkedModelSerializer.restoreComputationGraph(f);
+            assertEquals(cg.getConfiguration().toJson(), restored.getConfiguration().toJson());
+            assertEquals(cg.params(), restored.params());
+            assertEquals(cg.getUpdater().getStateViewArray(), restored.getUpdater().getStateViewArray());
+            assertNull(ChunkedModelSerializer.restoreNormalizer(f));
+
+            assertThrows(IllegalStateException.class, () -> ChunkedModelSerializer.restoreMultiLayerNetwork(f));
+        }
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.datasets.datavec;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A DataSetIterator for delimited files containing only numeric values, that parses the file directly into the
+ * minibatch arrays using a {@link NumericCSVReader}. For wide numeric files this avoids the {@code Text} and
+ * {@code Writable} objects (and the per-value conversion) of the
+ * {@link org.datavec.api.records.reader.impl.csv.CSVRecordReader} + {@link RecordReaderDataSetIterator} path.<br>
+ * Label options are the same as for {@link RecordReaderDataSetIterator}:<br>
+ * - {@link Builder#classification(int, int)}: the (integer) class index at the given column is converted to a one-hot
+ * representation. A label index of -1 means the last column<br>
+ * - {@link Builder#regression(int)} / {@link Builder#regression(int, int)}: the values in the given column range are
+ * used as regression targets<br>
+ * - No labels: all columns are features, and (as with RecordReaderDataSetIterator) the labels are set to the features<br>
+ * All other columns are features, in order.<br>
+ * Values are parsed straight into the memory of the minibatch arrays, without intermediate Java arrays. A final
+ * minibatch with fewer rows than requested is returned as a view of the first rows of the arrays.<br>
+ * With {@link Builder#reuseArrays(boolean)} the feature and label arrays are allocated once and overwritten for each
+ * minibatch: in this case a returned DataSet is only valid until the next call to {@link #next()}, and
+ * asynchronous prefetching is not supported.<br>
+ * Parsing throughput is available via {@link #getRowsPerSecond()}.
+ */
+@Slf4j
+public class NumericCSVDataSetIterator implements DataSetIterator, Closeable {
+
+    private final NumericCSVReader reader;
+    private final int batchSize;
+    private final int maxNumBatches;
+    private final boolean regression;
+    private final int numPossibleLabels;
+    private final DataType dataType;
+    private final boolean reuseArrays;
+    @Getter
+    private DataSetPreProcessor preProcessor;
+
+    private int labelIndex;
+    private int labelIndexTo;
+    private int numColumns = -1;
+    private int numFeatures;
+    private int numLabels;
+
+    private final RowWriter writer = new RowWriter();
+    private INDArray features;
+    private INDArray labels;
+
+    private int batchNum;
+    /** Total number of rows parsed since this iterator was created */
+    @Getter
+    private long totalRows;
+    /** Total time (in nanoseconds) spent parsing rows and filling the minibatch arrays */
+    @Getter
+    private long totalParseNanos;
+
+    protected NumericCSVDataSetIterator(Builder b) throws IOException {
+        Preconditions.checkArgument(b.batchSize > 0, "Batch size must be > 0: got %s", b.batchSize);
+        Preconditions.checkArgument(b.dataType.isFPType(), "Data type must be a floating point type: got %s", b.dataType);
+        this.reader = new NumericCSVReader(b.file, b.delimiter, b.skipNumLines);
+        this.batchSize = b.batchSize;
+        this.maxNumBatches = b.maxNumBatches;
+        this.labelIndex = b.labelIndex;
+        this.labelIndexTo = b.labelIndexTo;
+        this.numPossibleLabels = b.numPossibleLabels;
+        this.regression = b.regression;
+        this.dataType = b.dataType;
+        this.reuseArrays = b.reuseArrays;
+        this.preProcessor = b.preProcessor;
+    }
+
+    private void initialize() throws IOException {
+        if (numColumns >= 0)
+            return;
+        numColumns = reader.numColumns();
+
+        //allow people to specify label index as -1 and infer the last possible label
+        if (numPossibleLabels >= 1 && labelIndex < 0) {
+            labelIndex = numColumns - 1;
+            labelIndexTo = labelIndex;
+        }
+
+        if (labelIndex >= 0) {
+            Preconditions.checkState(labelIndex < numColumns && labelIndexTo < numColumns && labelIndex <= labelIndexTo,
+                    "Invalid label indices: from %s to %s, for data with %s columns", labelIndex, labelIndexTo, numColumns);
+            numFeatures = numColumns - (labelIndexTo - labelIndex + 1);
+            numLabels = regression ? labelIndexTo - labelIndex + 1 : numPossibleLabels;
+        } else {
+            numFeatures = numColumns;
+            numLabels = 0;
+        }
+        //Position of each column in the feature row, or -1 for label columns
+        writer.featureIndex = new int[numColumns];
+        int f = 0;
+        for (int j = 0; j < numColumns; j++) {
+            writer.featureIndex[j] = numLabels > 0 && j >= labelIndex && j <= labelIndexTo ? -1 : f++;
+        }
+    }
+
+    @Override
+    public DataSet next(int num) {
+        Preconditions.checkArgument(num > 0, "Number of examples must be > 0: got %s", num);
+        if (!hasNext())
+            throw new NoSuchElementException("No next element");
+
+        long start = System.nanoTime();
+        INDArray f = allocate(num, numFeatures, true);
+        INDArray l = numLabels > 0 ? allocate(num, numLabels, false) : null;
+        writer.bind(f, l);
+        int n = 0;
+        try {
+            while (n < num && reader.readRow(writer)) {
+                writer.nextRow();
+                n++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writer.unbind();
+
+        //Values were written to host memory directly
+        Nd4j.getAffinityManager().tagLocation(f, AffinityManager.Location.HOST);
+        if (l != null)
+            Nd4j.getAffinityManager().tagLocation(l, AffinityManager.Location.HOST);
+        if (n < num) {
+            //Fewer rows left than requested: first n rows of the c order arrays, as views
+            f = f.get(NDArrayIndex.interval(0, n), NDArrayIndex.all());
+            if (l != null)
+                l = l.get(NDArrayIndex.interval(0, n), NDArrayIndex.all());
+        }
+        if (l == null)
+            l = f;
+        totalParseNanos += System.nanoTime() - start;
+        totalRows += n;
+        batchNum++;
+
+        DataSet ds = new DataSet(f, l);
+        if (preProcessor != null)
+            preProcessor.preProcess(ds);
+        return ds;
+    }
+
+    private INDArray allocate(int rows, int cols, boolean isFeatures) {
+        if (!reuseArrays)
+            return Nd4j.createUninitialized(dataType, rows, cols);
+
+        INDArray out = isFeatures ? features : labels;
+        if (out == null || out.size(0) != rows) {
+            out = Nd4j.createUninitialized(dataType, rows, cols);
+            if (isFeatures)
+                features = out;
+            else
+                labels = out;
+        }
+        return out;
+    }
+
+    /**
+     * Writes the parsed values straight into the memory of the feature and label arrays: as a float or double NIO
+     * view where possible, otherwise via {@link DataBuffer#put(long, double)}
+     */
+    private class RowWriter implements NumericCSVReader.ValueConsumer {
+        private int[] featureIndex;
+
+        private DataBuffer featureData;
+        private FloatBuffer featureFloat;
+        private DoubleBuffer featureDouble;
+        private DataBuffer labelData;
+        private FloatBuffer labelFloat;
+        private DoubleBuffer labelDouble;
+        private int featureOffset;
+        private int labelOffset;
+
+        private void bind(INDArray f, INDArray l) {
+            featureData = f.data();
+            featureFloat = dataType == DataType.FLOAT ? featureData.asNioFloat() : null;
+            featureDouble = dataType == DataType.DOUBLE ? featureData.asNioDouble() : null;
+            featureOffset = 0;
+            if (l != null) {
+                labelData = l.data();
+                labelFloat = dataType == DataType.FLOAT ? labelData.asNioFloat() : null;
+                labelDouble = dataType == DataType.DOUBLE ? labelData.asNioDouble() : null;
+                labelOffset = 0;
+                if (!regression) {
+                    //One-hot: only the label class is written for each row
+                    for (long i = 0; i < l.length(); i++)
+                        put(labelFloat, labelDouble, labelData, (int) i, 0.0);
+                }
+            }
+        }
+
+        private void unbind() {
+            featureData = null;
+            featureFloat = null;
+            featureDouble = null;
+            labelData = null;
+            labelFloat = null;
+            labelDouble = null;
+        }
+
+        private void nextRow() {
+            featureOffset += numFeatures;
+            labelOffset += numLabels;
+        }
+
+        @Override
+        public void accept(int column, double value) {
+            int idx = featureIndex[column];
+            if (idx >= 0) {
+                put(featureFloat, featureDouble, featureData, featureOffset + idx, value);
+            } else if (regression) {
+                put(labelFloat, labelDouble, labelData, labelOffset + column - labelIndex, value);
+            } else {
+                int cls = (int) value;
+                if (cls != value || cls < 0 || cls >= numPossibleLabels) {
+                    throw new IllegalStateException("Invalid classification label value " + value + " on line "
+                            + reader.getLineNumber() + ": must be an integer in range 0 to "
+                            + (numPossibleLabels - 1) + " inclusive");
+                }
+                put(labelFloat, labelDouble, labelData, labelOffset + cls, 1.0);
+            }
+        }
+
+        private void put(FloatBuffer f, DoubleBuffer d, DataBuffer data, int i, double value) {
+            if (f != null)
+                f.put(i, (float) value);
+            else if (d != null)
+                d.put(i, value);
+            else
+                data.put(i, value);
+        }
+    }
+
+    /**
+     * @return Average number of rows parsed per second (parse and array fill time only), or 0 if no rows have been
+     * parsed yet
+     */
+    public double getRowsPerSecond() {
+        return totalParseNanos == 0 ? 0.0 : totalRows / (totalParseNanos / 1e9);
+    }
+
+    @Override
+    public DataSet next() {
+        return next(batchSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (maxNumBatches >= 0 && batchNum >= maxNumBatches)
+            return false;
+        try {
+            initialize();
+            return reader.hasNext();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int inputColumns() {
+        try {
+            initialize();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return numFeatures;
+    }
+
+    @Override
+    public int totalOutcomes() {
+        try {
+            initialize();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return numLabels > 0 ? numLabels : numFeatures;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        //Reused arrays would be overwritten while the consumer still holds them
+        return !reuseArrays;
+    }
+
+    @Override
+    public void reset() {
+        if (totalRows > 0 && log.isDebugEnabled()) {
+            log.debug("NumericCSVDataSetIterator: {} rows parsed at {} rows/sec", totalRows, getRowsPerSecond());
+        }
+        batchNum = 0;
+        try {
+            reader.reset();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Builder class for NumericCSVDataSetIterator
+     */
+    public static class Builder {
+
+        protected File file;
+        protected int batchSize;
+        protected char delimiter = ',';
+        protected int skipNumLines = 0;
+        protected int maxNumBatches = -1;
+        protected int labelIndex = -1;
+        protected int labelIndexTo = -1;
+        protected int numPossibleLabels = -1;
+        protected boolean regression = false;
+        protected DataType dataType = Nd4j.defaultFloatingPointType();
+        protected boolean reuseArrays = false;
+        protected DataSetPreProcessor preProcessor;
+
+        /**
+         * @param file      File to read
+         * @param batchSize Batch size to use
+         */
+        public Builder(@NonNull File file, int batchSize) {
+            this.file = file;
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Delimiter between values. Default: ','
+         */
+        public Builder delimiter(char delimiter) {
+            this.delimiter = delimiter;
+            return this;
+        }
+
+        /**
+         * Number of lines (for example, header lines) to skip at the start of the file. Default: 0
+         */
+        public Builder skipNumLines(int skipNumLines) {
+            this.skipNumLines = skipNumLines;
+            return this;
+        }
+
+        /**
+         * Optional argument. If set, limits the maximum number of minibatches that will be returned (between resets)
+         *
+         * @param maxNumBatches Maximum number of minibatches per epoch / reset
+         */
+        public Builder maxNumBatches(int maxNumBatches) {
+            this.maxNumBatches = maxNumBatches;
+            return this;
+        }
+
+        /**
+         * Use this for single output regression (i.e., 1 output/regression target)
+         *
+         * @param labelIndex Column index that contains the regression target (indexes start at 0)
+         */
+        public Builder regression(int labelIndex) {
+            return regression(labelIndex, labelIndex);
+        }
+
+        /**
+         * Use this for multiple output regression (1 or more output/regression targets). Note that all regression
+         * targets must be contiguous (i.e., positions x to y, without gaps)
+         *
+         * @param labelIndexFrom Column index of the first regression target (indexes start at 0)
+         * @param labelIndexTo   Column index of the last regression target (inclusive)
+         */
+        public Builder regression(int labelIndexFrom, int labelIndexTo) {
+            this.labelIndex = labelIndexFrom;
+            this.labelIndexTo = labelIndexTo;
+            this.regression = true;
+            return this;
+        }
+
+        /**
+         * Use this for classification
+         *
+         * @param labelIndex Index that contains the label index. Column (indexes start from 0), or -1 for the last column
+         * @param numClasses Number of label classes (i.e., number of categories/classes in the dataset)
+         */
+        public Builder classification(int labelIndex, int numClasses) {
+            this.labelIndex = labelIndex;
+            this.labelIndexTo = labelIndex;
+            this.numPossibleLabels = numClasses;
+            this.regression = false;
+            return this;
+        }
+
+        /**
+         * Data type of the feature and label arrays. Default: {@link Nd4j#defaultFloatingPointType()}
+         */
+        public Builder dataType(@NonNull DataType dataType) {
+            this.dataType = dataType;
+            return this;
+        }
+
+        /**
+         * If true, the feature and label arrays are allocated once and reused for every minibatch. Each returned
+         * DataSet is then only valid until the next call to next(). Default: false
+         */
+        public Builder reuseArrays(boolean reuseArrays) {
+            this.reuseArrays = reuseArrays;
+            return this;
+        }
+
+        /**
+         * Optional argument, usually not used. If set, applies the specified preprocessor to each DataSet
+         */
+        public Builder preProcessor(DataSetPreProcessor preProcessor) {
+            this.preProcessor = preProcessor;
+            return this;
+        }
+
+        public NumericCSVDataSetIterator build() throws IOException {
+            return new NumericCSVDataSetIterator(this);
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.datasets.datavec;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reader for delimited files that contain only numeric values. Unlike
+ * {@link org.datavec.api.records.reader.impl.csv.CSVRecordReader}, no {@code String} or
+ * {@link org.datavec.api.writable.Writable} objects are created: values are parsed directly from a memory-mapped
+ * view of the file into a caller-provided {@code double[]}, or handed one by one to a {@link ValueConsumer}.<br>
+ * The file is mapped in windows of (by default) 256MB, so files larger than 2GB are supported; a single line must
+ * however fit within one window.<br>
+ * Fields may be surrounded by whitespace and/or double quotes. Empty lines are skipped. All (non-empty) lines must have
+ * the same number of values, as determined from the first line after the skipped header lines.<br>
+ * Values are parsed with the same result as {@link Double#parseDouble(String)}; common values (up to 15 significant
+ * digits, exponents in the range -22 to 22) are parsed directly from the bytes, other values fall back to
+ * {@link Double#parseDouble(String)}.<br>
+ * Not thread safe.
+ */
+public class NumericCSVReader implements Closeable {
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Receives the values of a row read via {@link #readRow(ValueConsumer)}, in column order
+     */
+    public interface ValueConsumer {
+        /**
+         * @param column Index of the column of the value
+         * @param value  Parsed value
+         */
+        void accept(int column, double value);
+    }
+
+    private final File file;
+    private final byte delimiter;
+    private final int skipNumLines;
+    private final int windowSize;
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private long fileSize;
+    private MappedByteBuffer buffer;
+    private long windowStart;
+    private int windowLength;
+    private int pos;
+
+    private int numColumns = -1;
+    /** Line number (1-based) of the most recently read row */
+    @Getter
+    private long lineNumber;
+
+    /**
+     * @param file         File to read
+     * @param delimiter    Delimiter between values, for example ','
+     * @param skipNumLines Number of lines to skip at the start of the file (for example, 1 for a header line)
+     */
+    public NumericCSVReader(@NonNull File file, char delimiter, int skipNumLines) throws IOException {
+        this(file, delimiter, skipNumLines, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param file         File to read
+     * @param delimiter    Delimiter between values, for example ','
+     * @param skipNumLines Number of lines to skip at the start of the file (for example, 1 for a header line)
+     * @param windowSize   Size (in bytes) of the memory mapped window
+     */
+    public NumericCSVReader(@NonNull File file, char delimiter, int skipNumLines, int windowSize) throws IOException {
+        if (delimiter > 127)
+            throw new IllegalArgumentException("Only single byte (ASCII) delimiters are supported: got '" + delimiter + "'");
+        if (delimiter == '\n' || delimiter == '\r' || delimiter == '"' || delimiter == '.' || delimiter == '-'
+                || delimiter == '+' || (delimiter >= '0' && delimiter <= '9'))
+            throw new IllegalArgumentException("Invalid delimiter: '" + delimiter + "'");
+        if (skipNumLines < 0)
+            throw new IllegalArgumentException("Number of lines to skip must be >= 0: got " + skipNumLines);
+        if (windowSize <= 0)
+            throw new IllegalArgumentException("Window size must be > 0: got " + windowSize);
+        this.file = file;
+        this.delimiter = (byte) delimiter;
+        this.skipNumLines = skipNumLines;
+        this.windowSize = windowSize;
+
+        raf = new RandomAccessFile(file, "r");
+        channel = raf.getChannel();
+        reset();
+    }
+
+    /**
+     * Reset the reader to the start of the file (after any skipped lines)
+     */
+    public void reset() throws IOException {
+        fileSize = channel.size();
+        lineNumber = 0;
+        map(0);
+        for (int i = 0; i < skipNumLines && hasRemaining(); i++) {
+            ensureLine();
+            skipLine();
+            lineNumber++;
+        }
+    }
+
+    /**
+     * @return Number of values in each row of the file, or 0 if the file contains no data rows
+     */
+    public int numColumns() throws IOException {
+        if (numColumns < 0) {
+            skipEmptyLines();
+            if (!hasRemaining()) {
+                numColumns = 0;
+            } else {
+                ensureLine();
+                int count = 1;
+                boolean inQuotes = false;
+                for (int i = pos; i < windowLength; i++) {
+                    byte b = buffer.get(i);
+                    if (b == '\n' || b == '\r')
+                        break;
+                    if (b == '"')
+                        inQuotes = !inQuotes;
+                    else if (b == delimiter && !inQuotes)
+                        count++;
+                }
+                numColumns = count;
+            }
+        }
+        return numColumns;
+    }
+
+    /**
+     * @return True if another row is available
+     */
+    public boolean hasNext() throws IOException {
+        skipEmptyLines();
+        return hasRemaining();
+    }
+
+    /**
+     * Read the next row into the specified array
+     *
+     * @param dest   Array to read the values into
+     * @param offset Index in the array of the first value of the row
+     * @return False if there are no more rows (in which case the array is not modified), true otherwise
+     */
+    public boolean readRow(double[] dest, int offset) throws IOException {
+        int nCol = numColumns();
+        if (!hasNext())
+            return false;
+        if (offset < 0 || offset + nCol > dest.length)
+            throw new IllegalArgumentException("Array of length " + dest.length + " is too small for " + nCol
+                    + " values at offset " + offset);
+        readRow(dest, offset, null);
+        return true;
+    }
+
+    /**
+     * Read the next row, passing each value to the specified consumer as soon as it's parsed. This allows values to be
+     * written directly to their final destination (for example, the memory of an INDArray)
+     *
+     * @param consumer Consumer to pass the values of the row to
+     * @return False if there are no more rows (in which case the consumer is not called), true otherwise
+     */
+    public boolean readRow(@NonNull ValueConsumer consumer) throws IOException {
+        numColumns();
+        if (!hasNext())
+            return false;
+        readRow(null, 0, consumer);
+        return true;
+    }
+
+    private void readRow(double[] dest, int offset, ValueConsumer consumer) throws IOException {
+        int nCol = numColumns;
+        ensureLine();
+        lineNumber++;
+
+        int col = 0;
+        int i = pos;
+        while (true) {
+            //Find the end of the current field
+            int fieldStart = i;
+            boolean inQuotes = false;
+            byte b = 0;
+            while (i < windowLength) {
+                b = buffer.get(i);
+                if (b == '"')
+                    inQuotes = !inQuotes;
+                else if (!inQuotes && (b == delimiter || b == '\n' || b == '\r'))
+                    break;
+                i++;
+            }
+            if (col >= nCol)
+                throw new IllegalStateException("Line " + lineNumber + " of file " + file + " has more than the expected "
+                        + nCol + " values");
+            double value = parseField(fieldStart, i);
+            if (consumer == null)
+                dest[offset + col] = value;
+            else
+                consumer.accept(col, value);
+            col++;
+
+            if (i >= windowLength || b != delimiter) {
+                break;
+            }
+            i++;    //Skip delimiter
+        }
+        if (col != nCol)
+            throw new IllegalStateException("Line " + lineNumber + " of file " + file + " has " + col
+                    + " values, expected " + nCol);
+
+        pos = i;
+        skipLine();
+    }
+
+    /**
+     * Read up to {@code maxRows} rows into the specified array. Row {@code r} is written at offset
+     * {@code r * numColumns()}
+     *
+     * @param dest    Array to read into. Must have length of at least {@code maxRows * numColumns()}
+     * @param maxRows Maximum number of rows to read
+     * @return Number of rows read
+     */
+    public int readRows(double[] dest, int maxRows) throws IOException {
+        int nCol = numColumns();
+        int n = 0;
+        while (n < maxRows && readRow(dest, n * nCol)) {
+            n++;
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        if (raf != null) {
+            raf.close();
+            raf = null;
+            channel = null;
+        }
+    }
+
+    private boolean hasRemaining() {
+        return windowStart + pos < fileSize;
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        windowLength = (int) Math.min(windowSize, fileSize - position);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowLength);
+        pos = 0;
+    }
+
+    /**
+     * Make sure that the whole line starting at the current position is in the mapped window
+     */
+    private void ensureLine() throws IOException {
+        if (windowStart + windowLength >= fileSize)
+            return;     //Window extends to the end of the file
+        for (int i = pos; i < windowLength; i++) {
+            if (buffer.get(i) == '\n')
+                return;
+        }
+        map(windowStart + pos);
+        if (windowStart + windowLength >= fileSize)
+            return;
+        for (int i = 0; i < windowLength; i++) {
+            if (buffer.get(i) == '\n')
+                return;
+        }
+        throw new IllegalStateException("Line " + (lineNumber + 1) + " of file " + file + " is longer than the window size of "
+                + windowSize + " bytes");
+    }
+
+    /**
+     * Move the position to the start of the next line
+     */
+    private void skipLine() throws IOException {
+        while (true) {
+            while (pos < windowLength) {
+                if (buffer.get(pos++) == '\n')
+                    return;
+            }
+            if (!hasRemaining())
+                return;
+            map(windowStart + pos);
+        }
+    }
+
+    private void skipEmptyLines() throws IOException {
+        while (hasRemaining()) {
+            if (pos >= windowLength) {
+                map(windowStart + pos);
+            }
+            byte b = buffer.get(pos);
+            if (b == '\n') {
+                lineNumber++;
+                pos++;
+            } else if (b == '\r') {
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private double parseField(int start, int end) {
+        //Trim whitespace and quotes
+        while (start < end && isTrimmable(buffer.get(start)))
+            start++;
+        while (end > start && isTrimmable(buffer.get(end - 1)))
+            end--;
+        if (start == end)
+            throw new NumberFormatException("Empty value on line " + lineNumber + " of file " + file);
+
+        int i = start;
+        boolean negative = false;
+        byte b = buffer.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int sigDigits = 0;
+        int exp10 = 0;
+        boolean anyDigits = false;
+        boolean truncated = false;
+        while (i < end && (b = buffer.get(i)) >= '0' && b <= '9') {
+            if (sigDigits < 18) {
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0)
+                    sigDigits++;
+            } else {
+                exp10++;
+                truncated |= b != '0';
+            }
+            anyDigits = true;
+            i++;
+        }
+        if (i < end && buffer.get(i) == '.') {
+            i++;
+            while (i < end && (b = buffer.get(i)) >= '0' && b <= '9') {
+                if (sigDigits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0)
+                        sigDigits++;
+                    exp10--;
+                } else {
+                    truncated |= b != '0';
+                }
+                anyDigits = true;
+                i++;
+            }
+        }
+        if (anyDigits && i < end && ((b = buffer.get(i)) == 'e' || b == 'E')) {
+            i++;
+            boolean expNegative = false;
+            if (i < end && ((b = buffer.get(i)) == '-' || b == '+')) {
+                expNegative = b == '-';
+                i++;
+            }
+            int exp = 0;
+            boolean anyExpDigits = false;
+            while (i < end && (b = buffer.get(i)) >= '0' && b <= '9') {
+                if (exp < 100_000)
+                    exp = exp * 10 + (b - '0');
+                anyExpDigits = true;
+                i++;
+            }
+            if (!anyExpDigits)
+                return parseSlow(start, end);
+            exp10 += expNegative ? -exp : exp;
+        }
+
+        if (!anyDigits || i != end || truncated)
+            return parseSlow(start, end);
+        if (mantissa == 0)
+            return negative ? -0.0 : 0.0;
+        if (mantissa >= MAX_EXACT_MANTISSA || exp10 < -22 || exp10 > 22)
+            return parseSlow(start, end);
+
+        //Both the mantissa and the power of 10 are exactly representable, so a single multiplication or division
+        //gives the correctly rounded result
+        double d = exp10 >= 0 ? mantissa * POW10[exp10] : mantissa / POW10[-exp10];
+        return negative ? -d : d;
+    }
+
+    private double parseSlow(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        String s = new String(bytes, StandardCharsets.UTF_8);
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Invalid numeric value \"" + s + "\" on line " + lineNumber + " of file " + file);
+        }
+    }
+
+    private static boolean isTrimmable(byte b) {
+        return b == ' ' || b == '\t' || b == '"';
+    }
+}
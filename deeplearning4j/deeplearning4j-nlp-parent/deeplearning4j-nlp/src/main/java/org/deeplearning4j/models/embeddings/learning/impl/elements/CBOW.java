@@ -193,12 +193,12 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
         if (configuration.isUseHierarchicSoftmax()) {
             idxSyn1 = new int[currentWord.getCodeLength()];
             codes = new byte[currentWord.getCodeLength()];
-            for (int p = 0; p < currentWord.getCodeLength(); p++) {
-                if (currentWord.getPoints().get(p) < 0)
-                    continue;
-
-                codes[p] = currentWord.getCodes().get(p);
-                idxSyn1[p] = currentWord.getPoints().get(p);
+            vocabCache.huffmanCodes(currentWord, codes, idxSyn1);
+            for (int p = 0; p < idxSyn1.length; p++) {
+                if (idxSyn1[p] < 0) {
+                    codes[p] = 0;
+                    idxSyn1[p] = 0;
+                }
             }
         } else {
             idxSyn1 = new int[0];
@@ -338,12 +338,12 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
             if (useHS) {
                 idxSyn1 = new int[currentWord.getCodeLength()];
                 codes = new byte[currentWord.getCodeLength()];
-                for (int p = 0; p < currentWord.getCodeLength(); p++) {
-                    if (currentWord.getPoints().get(p) < 0)
-                        continue;
-
-                    codes[p] = currentWord.getCodes().get(p);
-                    idxSyn1[p] = currentWord.getPoints().get(p);
+                vocabCache.huffmanCodes(currentWord, codes, idxSyn1);
+                for (int p = 0; p < idxSyn1.length; p++) {
+                    if (idxSyn1[p] < 0) {
+                        codes[p] = 0;
+                        idxSyn1[p] = 0;
+                    }
                 }
                 for (int i = 0; i < maxCols; ++i) {
                     if (i < currentWord.getCodeLength())
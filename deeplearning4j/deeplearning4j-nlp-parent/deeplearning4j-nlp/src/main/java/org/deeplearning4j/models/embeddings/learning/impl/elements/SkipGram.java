@@ -344,14 +344,12 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
         if (configuration.isUseHierarchicSoftmax()) {
             idxSyn1 = new int[w1.getCodeLength()];
             codes = new byte[w1.getCodeLength()];
-            for (int i = 0; i < w1.getCodeLength(); i++) {
-                int code = w1.getCodes().get(i);
-                int point = w1.getPoints().get(i);
-                if (point >= vocabCache.numWords() || point < 0)
-                    continue;
-
-                codes[i] = (byte)code;
-                idxSyn1[i] = point;
+            vocabCache.huffmanCodes(w1, codes, idxSyn1);
+            for (int i = 0; i < idxSyn1.length; i++) {
+                if (idxSyn1[i] >= vocabCache.numWords() || idxSyn1[i] < 0) {
+                    codes[i] = 0;
+                    idxSyn1[i] = 0;
+                }
             }
         } else {
             idxSyn1 = new int[0];
@@ -472,14 +470,12 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
             if (useHS) {
                 idxSyn1 = new int[w1.getCodeLength()];
                 interimCodes = new byte[w1.getCodeLength()];
-                for (int i = 0; i < w1.getCodeLength(); i++) {
-                    int code = w1.getCodes().get(i);
-                    int point = w1.getPoints().get(i);
-                    if (point >= vocabCache.numWords() || point < 0)
-                        continue;
-
-                    interimCodes[i] = (byte) code;
-                    idxSyn1[i] = point;
+                vocabCache.huffmanCodes(w1, interimCodes, idxSyn1);
+                for (int i = 0; i < idxSyn1.length; i++) {
+                    if (idxSyn1[i] >= vocabCache.numWords() || idxSyn1[i] < 0) {
+                        interimCodes[i] = 0;
+                        idxSyn1[i] = 0;
+                    }
                 }
                 for (int i = 0; i < maxCols; ++i) {
                     if (i < w1.getCodeLength())
@@ -40,6 +40,8 @@ import org.deeplearning4j.models.embeddings.WeightLookupTable;
 import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.learning.impl.elements.SkipGram;
 import org.deeplearning4j.models.embeddings.reader.impl.BasicModelUtils;
+import org.deeplearning4j.models.embeddings.reader.impl.HnswIndex;
+import org.deeplearning4j.models.embeddings.reader.impl.HnswModelUtils;
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectorsImpl;
 import org.deeplearning4j.models.fasttext.FastText;
@@ -3127,6 +3129,37 @@ public class WordVectorSerializer {
         return result;
     }
 
+    /**
+     * This method saves HNSW index used by the given HnswModelUtils to file, building it if necessary.
+     * Please note: only the graph is saved, vectors are taken from the model when index is loaded
+     *
+     * @param modelUtils HnswModelUtils initialized with the model
+     * @param file File
+     */
+    public static void writeHnswIndex(@NonNull HnswModelUtils<?> modelUtils, @NonNull File file) throws IOException {
+        HnswIndex index = modelUtils.getIndex();
+        if (index == null)
+            throw new ND4JIllegalStateException("HNSW index is available only for InMemoryLookupTable");
+
+        try (BufferedOutputStream stream = new BufferedOutputStream(new FileOutputStream(file))) {
+            index.write(stream);
+        }
+    }
+
+    /**
+     * This method loads HNSW index saved via {@link #writeHnswIndex(HnswModelUtils, File)}.
+     * Use it with {@link HnswModelUtils#HnswModelUtils(HnswIndex, int)}, and pass that to WordVectors.setModelUtils()
+     * of the same model index was built for.
+     *
+     * @param file File
+     * @return HnswIndex
+     */
+    public static HnswIndex readHnswIndex(@NonNull File file) throws IOException {
+        try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+            return HnswIndex.read(stream);
+        }
+    }
+
     /**
      * This method prints memory usage to log
      *
@@ -0,0 +1,478 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Hierarchical Navigable Small World graph over unit-normalized vectors, used for approximate cosine similarity search.
+ * See "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs",
+ * Malkov &amp; Yashunin, 2016.<br>
+ * Graph is built once, single-threaded. Searches are thread-safe once the graph is built.
+ *
+ * PLEASE NOTE: only the graph is persisted via {@link #write(OutputStream)}, vectors are expected to come from the
+ * model this index was built for, see {@link #attach(float[])}
+ */
+@Slf4j
+public class HnswIndex {
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+    public static final int DEFAULT_EF_SEARCH = 64;
+
+    private static final int MAGIC = 0x484e5357;
+    private static final int VERSION = 1;
+
+    private static final Comparator<Candidate> NEAREST_FIRST = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate o1, Candidate o2) {
+            return Float.compare(o1.distance, o2.distance);
+        }
+    };
+
+    private static final Comparator<Candidate> FURTHEST_FIRST = Collections.reverseOrder(NEAREST_FIRST);
+
+    @Getter
+    private final int dimension;
+    @Getter
+    private final int m;
+    @Getter
+    private final int efConstruction;
+    @Getter
+    private final int size;
+
+    private final int maxM0;
+    private final double levelMultiplier;
+
+    private float[] vectors;
+    private int[] levels;
+    private int[][][] links;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private final ThreadLocal<VisitedList> visited = new ThreadLocal<>();
+
+    protected HnswIndex(int size, int dimension, int m, int efConstruction) {
+        if (m < 2)
+            throw new IllegalArgumentException("M should be at least 2, got " + m);
+
+        if (efConstruction < 1)
+            throw new IllegalArgumentException("efConstruction should be positive value, got " + efConstruction);
+
+        this.size = size;
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.levels = new int[size];
+        this.links = new int[size][][];
+    }
+
+    /**
+     * This method builds index over rows of the given matrix, using cosine similarity
+     *
+     * @param vectors        matrix of vectors, one row per element
+     * @param m              number of bi-directional links per element. Higher values give better recall at cost of memory and build time
+     * @param efConstruction size of the candidates list used during build. Higher values give better graph quality at cost of build time
+     * @param seed           seed for level generator
+     * @return
+     */
+    public static HnswIndex build(@NonNull INDArray vectors, int m, int efConstruction, long seed) {
+        if (vectors.rank() != 2)
+            throw new IllegalArgumentException("Vectors should be matrix, got array of rank " + vectors.rank());
+
+        return build(normalizedVectors(vectors), (int) vectors.columns(), m, efConstruction, seed);
+    }
+
+    /**
+     * This method builds index over unit-normalized vectors, stored as flat c-order array
+     */
+    public static HnswIndex build(@NonNull float[] unitVectors, int dimension, int m, int efConstruction, long seed) {
+        if (unitVectors.length % dimension != 0)
+            throw new IllegalArgumentException("Vectors length " + unitVectors.length + " isn't multiple of dimension " + dimension);
+
+        HnswIndex index = new HnswIndex(unitVectors.length / dimension, dimension, m, efConstruction);
+        index.vectors = unitVectors;
+
+        Random rng = new Random(seed);
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < index.size; i++) {
+            index.insert(i, rng);
+
+            if (i > 0 && i % 100000 == 0)
+                log.info("HNSW index: {} of {} elements inserted", i, index.size);
+        }
+        log.debug("HNSW index over {} elements built in {} ms", index.size, System.currentTimeMillis() - time);
+
+        return index;
+    }
+
+    /**
+     * This method returns rows of the given matrix, unit-normalized and flattened into c-order float array
+     */
+    public static float[] normalizedVectors(@NonNull INDArray vectors) {
+        int rows = (int) vectors.rows();
+        int columns = (int) vectors.columns();
+        float[] data = vectors.castTo(DataType.FLOAT).dup('c').data().asFloat();
+        for (int r = 0; r < rows; r++) {
+            normalize(data, r * columns, columns);
+        }
+        return data;
+    }
+
+    private static void normalize(float[] data, int offset, int length) {
+        double norm = 0.0;
+        for (int i = 0; i < length; i++)
+            norm += data[offset + i] * data[offset + i];
+
+        if (norm > 0.0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < length; i++)
+                data[offset + i] *= scale;
+        }
+    }
+
+    /**
+     * This method attaches vectors to the index loaded via {@link #read(InputStream)}
+     *
+     * @param unitVectors unit-normalized vectors, as returned by {@link #normalizedVectors(INDArray)}
+     */
+    public void attach(@NonNull float[] unitVectors) {
+        if (unitVectors.length != (long) size * dimension)
+            throw new IllegalArgumentException("Expected " + size + " vectors of length " + dimension + ", got array of length " + unitVectors.length);
+
+        this.vectors = unitVectors;
+    }
+
+    public boolean isAttached() {
+        return vectors != null;
+    }
+
+    private int randomLevel(Random rng) {
+        return (int) (-Math.log(1.0 - rng.nextDouble()) * levelMultiplier);
+    }
+
+    private void insert(int q, Random rng) {
+        int level = randomLevel(rng);
+        levels[q] = level;
+        links[q] = new int[level + 1][];
+        for (int l = 0; l <= level; l++)
+            links[q][l] = new int[0];
+
+        if (entryPoint < 0) {
+            entryPoint = q;
+            maxLevel = level;
+            return;
+        }
+
+        int offset = q * dimension;
+        int ep = entryPoint;
+        for (int l = maxLevel; l > level; l--)
+            ep = greedySearch(vectors, offset, ep, l);
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(vectors, offset, ep, efConstruction, l);
+            int[] neighbours = selectNeighbours(candidates, m);
+            links[q][l] = neighbours;
+
+            int maxConnections = l == 0 ? maxM0 : m;
+            for (int nb : neighbours)
+                addLink(nb, q, l, maxConnections);
+
+            ep = candidates.get(0).id;
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = q;
+        }
+    }
+
+    private void addLink(int node, int newNeighbour, int level, int maxConnections) {
+        int[] current = links[node][level];
+        if (current.length < maxConnections) {
+            int[] updated = new int[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = newNeighbour;
+            links[node][level] = updated;
+            return;
+        }
+
+        // node is full, so we re-select its neighbours among existing ones plus the new one
+        int offset = node * dimension;
+        List<Candidate> candidates = new ArrayList<>(current.length + 1);
+        for (int c : current)
+            candidates.add(new Candidate(c, distance(vectors, offset, c)));
+        candidates.add(new Candidate(newNeighbour, distance(vectors, offset, newNeighbour)));
+        Collections.sort(candidates, NEAREST_FIRST);
+
+        links[node][level] = selectNeighbours(candidates, maxConnections);
+    }
+
+    /**
+     * Neighbour selection heuristic: candidate is kept only if it's closer to the base element than to any
+     * of already selected neighbours. Remaining slots are filled with nearest pruned candidates.
+     *
+     * @param candidates candidates sorted by distance, nearest first
+     */
+    private int[] selectNeighbours(List<Candidate> candidates, int max) {
+        if (candidates.size() <= max) {
+            int[] result = new int[candidates.size()];
+            for (int i = 0; i < result.length; i++)
+                result[i] = candidates.get(i).id;
+            return result;
+        }
+
+        int[] result = new int[max];
+        int cnt = 0;
+        List<Candidate> pruned = new ArrayList<>();
+        for (Candidate c : candidates) {
+            if (cnt >= max)
+                break;
+
+            boolean good = true;
+            int offset = c.id * dimension;
+            for (int i = 0; i < cnt; i++) {
+                if (distance(vectors, offset, result[i]) < c.distance) {
+                    good = false;
+                    break;
+                }
+            }
+
+            if (good)
+                result[cnt++] = c.id;
+            else
+                pruned.add(c);
+        }
+
+        for (int i = 0; i < pruned.size() && cnt < max; i++)
+            result[cnt++] = pruned.get(i).id;
+
+        return result;
+    }
+
+    private int greedySearch(float[] query, int offset, int ep, int level) {
+        int current = ep;
+        float currentDistance = distance(query, offset, ep);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int nb : links[current][level]) {
+                float d = distance(query, offset, nb);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = nb;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return up to ef nearest elements found at the given level, nearest first
+     */
+    private List<Candidate> searchLayer(float[] query, int offset, int ep, int ef, int level) {
+        VisitedList visitedList = visited.get();
+        if (visitedList == null || visitedList.marks.length < size) {
+            visitedList = new VisitedList(size);
+            visited.set(visitedList);
+        }
+        int epoch = visitedList.next();
+        int[] marks = visitedList.marks;
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(ef * 2, NEAREST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(ef + 1, FURTHEST_FIRST);
+
+        Candidate start = new Candidate(ep, distance(query, offset, ep));
+        candidates.add(start);
+        results.add(start);
+        marks[ep] = epoch;
+
+        while (!candidates.isEmpty()) {
+            Candidate c = candidates.poll();
+            if (c.distance > results.peek().distance)
+                break;
+
+            for (int nb : links[c.id][level]) {
+                if (marks[nb] == epoch)
+                    continue;
+
+                marks[nb] = epoch;
+                float d = distance(query, offset, nb);
+                if (results.size() < ef || d < results.peek().distance) {
+                    Candidate n = new Candidate(nb, d);
+                    candidates.add(n);
+                    results.add(n);
+                    if (results.size() > ef)
+                        results.poll();
+                }
+            }
+        }
+
+        List<Candidate> list = new ArrayList<>(results);
+        Collections.sort(list, NEAREST_FIRST);
+        return list;
+    }
+
+    private float distance(float[] query, int offset, int node) {
+        int nodeOffset = node * dimension;
+        float dot = 0.0f;
+        for (int i = 0; i < dimension; i++)
+            dot += query[offset + i] * vectors[nodeOffset + i];
+
+        return 1.0f - dot;
+    }
+
+    /**
+     * This method returns indices of approximate k nearest elements for the given query, by cosine similarity
+     *
+     * @param query query vector, doesn't have to be normalized
+     * @param k     number of elements to return
+     * @param ef    size of the candidates list. Higher values give better recall at cost of speed, values below k are treated as k
+     * @return indices of nearest elements, most similar first
+     */
+    public int[] search(@NonNull float[] query, int k, int ef) {
+        if (vectors == null)
+            throw new IllegalStateException("Vectors weren't attached to this index");
+
+        if (query.length != dimension)
+            throw new IllegalArgumentException("Query length " + query.length + " doesn't match index dimension " + dimension);
+
+        if (entryPoint < 0 || k < 1)
+            return new int[0];
+
+        float[] q = query.clone();
+        normalize(q, 0, dimension);
+
+        int ep = entryPoint;
+        for (int l = maxLevel; l > 0; l--)
+            ep = greedySearch(q, 0, ep, l);
+
+        List<Candidate> found = searchLayer(q, 0, ep, Math.max(ef, k), 0);
+        int[] result = new int[Math.min(k, found.size())];
+        for (int i = 0; i < result.length; i++)
+            result[i] = found.get(i).id;
+
+        return result;
+    }
+
+    /**
+     * This method writes graph structure to the given stream. Vectors are not written.
+     */
+    public void write(@NonNull OutputStream stream) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(stream));
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(size);
+        dos.writeInt(dimension);
+        dos.writeInt(m);
+        dos.writeInt(efConstruction);
+        dos.writeInt(entryPoint);
+        dos.writeInt(maxLevel);
+        for (int n = 0; n < size; n++) {
+            dos.writeInt(levels[n]);
+            for (int l = 0; l <= levels[n]; l++) {
+                int[] nb = links[n][l];
+                dos.writeInt(nb.length);
+                for (int v : nb)
+                    dos.writeInt(v);
+            }
+        }
+        dos.flush();
+    }
+
+    /**
+     * This method reads graph structure written by {@link #write(OutputStream)}. Vectors should be attached
+     * via {@link #attach(float[])} before searching.
+     */
+    public static HnswIndex read(@NonNull InputStream stream) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(stream));
+        if (dis.readInt() != MAGIC)
+            throw new IllegalStateException("Stream doesn't contain HNSW index");
+
+        int version = dis.readInt();
+        if (version != VERSION)
+            throw new IllegalStateException("Unsupported HNSW index version: " + version);
+
+        int size = dis.readInt();
+        int dimension = dis.readInt();
+        int m = dis.readInt();
+        int efConstruction = dis.readInt();
+
+        HnswIndex index = new HnswIndex(size, dimension, m, efConstruction);
+        index.entryPoint = dis.readInt();
+        index.maxLevel = dis.readInt();
+        for (int n = 0; n < size; n++) {
+            int level = dis.readInt();
+            index.levels[n] = level;
+            index.links[n] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                int[] nb = new int[dis.readInt()];
+                for (int i = 0; i < nb.length; i++)
+                    nb[i] = dis.readInt();
+                index.links[n][l] = nb;
+            }
+        }
+
+        return index;
+    }
+
+    private static class Candidate {
+        private final int id;
+        private final float distance;
+
+        private Candidate(int id, float distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+    }
+
+    private static class VisitedList {
+        private final int[] marks;
+        private int epoch = 0;
+
+        private VisitedList(int size) {
+            this.marks = new int[size];
+        }
+
+        private int next() {
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+            return epoch;
+        }
+    }
+}
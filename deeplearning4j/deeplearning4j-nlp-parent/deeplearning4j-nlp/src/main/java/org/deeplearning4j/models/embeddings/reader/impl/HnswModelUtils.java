@@ -0,0 +1,187 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.embeddings.WeightLookupTable;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * ModelUtils implementation that answers wordsNearest queries with approximate nearest neighbours search over
+ * {@link HnswIndex}, instead of full scan over syn0 like {@link BasicModelUtils} does.
+ * Index is built lazily on first query (or explicitly via {@link #getIndex()}), and can be saved next to the model via
+ * {@link org.deeplearning4j.models.embeddings.loader.WordVectorSerializer#writeHnswIndex(HnswModelUtils, java.io.File)}
+ *
+ * PLEASE NOTE: only {@link InMemoryLookupTable} is supported, other lookup tables fall back to BasicModelUtils behavior
+ * PLEASE NOTE: index isn't updated if the model is trained further, call {@link #init(WeightLookupTable)} to rebuild it
+ */
+@Slf4j
+public class HnswModelUtils<T extends SequenceElement> extends BasicModelUtils<T> {
+    protected int m = HnswIndex.DEFAULT_M;
+    protected int efConstruction = HnswIndex.DEFAULT_EF_CONSTRUCTION;
+    protected volatile int efSearch = HnswIndex.DEFAULT_EF_SEARCH;
+    protected long seed = 119;
+
+    protected volatile HnswIndex index;
+
+    public HnswModelUtils() {
+
+    }
+
+    /**
+     * @param m              number of bi-directional links per element. Higher values give better recall at cost of memory and build time
+     * @param efConstruction size of the candidates list used during build. Higher values give better graph quality at cost of build time
+     * @param efSearch       size of the candidates list used during search. Higher values give better recall at cost of speed
+     */
+    public HnswModelUtils(int m, int efConstruction, int efSearch) {
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * This constructor allows to use previously built index, i.e. loaded via
+     * {@link org.deeplearning4j.models.embeddings.loader.WordVectorSerializer#readHnswIndex(java.io.File)}
+     *
+     * @param index    index built for the same lookup table this ModelUtils will be initialized with
+     * @param efSearch size of the candidates list used during search
+     */
+    public HnswModelUtils(@NonNull HnswIndex index, int efSearch) {
+        this.index = index;
+        this.m = index.getM();
+        this.efConstruction = index.getEfConstruction();
+        this.efSearch = efSearch;
+    }
+
+    @Override
+    public void init(@NonNull WeightLookupTable<T> lookupTable) {
+        super.init(lookupTable);
+
+        if (index != null && lookupTable instanceof InMemoryLookupTable) {
+            INDArray syn0 = ((InMemoryLookupTable<T>) lookupTable).getSyn0();
+            if (!index.isAttached() && index.getSize() == syn0.rows() && index.getDimension() == syn0.columns()) {
+                // index was loaded without vectors, so we just attach them
+                index.attach(HnswIndex.normalizedVectors(syn0));
+            } else {
+                // model was changed, so index will be rebuilt on next query
+                index = null;
+            }
+        }
+    }
+
+    /**
+     * This method allows to change recall vs. speed tradeoff at runtime
+     *
+     * @param efSearch size of the candidates list used during search
+     */
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1)
+            throw new IllegalArgumentException("efSearch should be positive value");
+
+        this.efSearch = efSearch;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    /**
+     * This method returns index, building it if it wasn't built yet
+     *
+     * @return index, or null if lookup table isn't InMemoryLookupTable
+     */
+    public HnswIndex getIndex() {
+        if (index == null && lookupTable instanceof InMemoryLookupTable) {
+            synchronized (this) {
+                if (index == null) {
+                    INDArray syn0 = ((InMemoryLookupTable<T>) lookupTable).getSyn0();
+                    log.info("Building HNSW index over {} vectors of length {}...", syn0.rows(), syn0.columns());
+                    index = HnswIndex.build(syn0, m, efConstruction, seed);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Words nearest to the given vector, found via approximate nearest neighbours search
+     * @param words vector to find nearest words for
+     * @param top   number of words to return
+     * @return words, most similar first
+     */
+    @Override
+    public Collection<String> wordsNearest(INDArray words, int top) {
+        HnswIndex idx = getIndex();
+        if (idx == null)
+            return super.wordsNearest(words, top);
+
+        words = adjustRank(words);
+        return search(idx, words.castTo(DataType.FLOAT).toFloatVector(), top);
+    }
+
+    /**
+     * Batched version of {@link #wordsNearest(INDArray, int)}: each row of the given matrix is treated as separate
+     * query, and queries are processed in parallel
+     *
+     * @param queries matrix of query vectors, one query per row
+     * @param top     number of words to return for each query
+     * @return words for each query, most similar first
+     */
+    public List<Collection<String>> wordsNearestBatch(@NonNull INDArray queries, int top) {
+        HnswIndex idx = getIndex();
+        if (queries.rank() == 1)
+            queries = queries.reshape(1, -1);
+
+        if (idx == null) {
+            List<Collection<String>> result = new ArrayList<>();
+            for (int i = 0; i < queries.rows(); i++)
+                result.add(super.wordsNearest(queries.getRow(i, true), top));
+            return result;
+        }
+
+        float[][] q = queries.castTo(DataType.FLOAT).toFloatMatrix();
+        return IntStream.range(0, q.length).parallel()
+                .mapToObj(i -> search(idx, q[i], top))
+                .collect(Collectors.toList());
+    }
+
+    protected Collection<String> search(HnswIndex idx, float[] query, int top) {
+        // UNK and STOP are excluded from results, same as BasicModelUtils does
+        int[] nearest = idx.search(query, top + 2, efSearch);
+        List<String> result = new ArrayList<>(top);
+        for (int i = 0; i < nearest.length && result.size() < top; i++) {
+            String word = vocabCache.wordAtIndex(nearest[i]);
+            if (word != null && !word.equals("UNK") && !word.equals("STOP"))
+                result.add(word);
+        }
+        return result;
+    }
+}
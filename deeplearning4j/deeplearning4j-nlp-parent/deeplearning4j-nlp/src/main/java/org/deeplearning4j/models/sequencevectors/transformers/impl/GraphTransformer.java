@@ -25,7 +25,6 @@ import org.deeplearning4j.models.sequencevectors.graph.primitives.IGraph;
 import org.deeplearning4j.models.sequencevectors.graph.walkers.GraphWalker;
 import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
-import org.deeplearning4j.models.word2vec.Huffman;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
 import org.deeplearning4j.text.labels.LabelsProvider;
 import org.slf4j.Logger;
@@ -73,11 +72,8 @@ public class GraphTransformer<T extends SequenceElement> implements Iterable<Seq
                 vocabCache.addToken(element);
         }
 
-        if (vocabCache != null) {
-            Huffman huffman = new Huffman(vocabCache.vocabWords());
-            huffman.build();
-            huffman.applyIndexes(vocabCache);
-        }
+        if (vocabCache != null)
+            vocabCache.buildHuffmanTree();
     }
 
 
@@ -22,9 +22,11 @@ package org.deeplearning4j.models.word2vec.wordstore;
 
 
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.Huffman;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
 
 
 public interface VocabCache<T extends SequenceElement> extends Serializable {
@@ -264,4 +266,41 @@ public interface VocabCache<T extends SequenceElement> extends Serializable {
      */
     void removeElement(T element);
 
+    /**
+     * This method copies Huffman codes and points of the given element into the given arrays.
+     * Implementations that don't keep elements on heap may override it to avoid boxed lists.
+     *
+     * @param element element to copy codes and points of
+     * @param codes   array to copy codes to, up to its length
+     * @param points  array to copy points to, up to its length
+     * @return code length of the element
+     */
+    default int huffmanCodes(T element, byte[] codes, int[] points) {
+        List<Byte> c = element.getCodes();
+        List<Integer> p = element.getPoints();
+        for (int i = 0; i < codes.length && i < c.size(); i++)
+            codes[i] = c.get(i);
+        for (int i = 0; i < points.length && i < p.size(); i++)
+            points[i] = p.get(i);
+        return element.getCodeLength();
+    }
+
+    /**
+     * This method resets frequencies of all elements to 0
+     */
+    default void resetWordCounters() {
+        for (T element : vocabWords())
+            element.setElementFrequency(0);
+    }
+
+    /**
+     * This method builds Huffman tree over current vocabulary, and assigns Huffman indices, codes and points
+     * to all elements
+     */
+    default void buildHuffmanTree() {
+        Huffman huffman = new Huffman(vocabWords());
+        huffman.build();
+        huffman.applyIndexes(this);
+    }
+
 }
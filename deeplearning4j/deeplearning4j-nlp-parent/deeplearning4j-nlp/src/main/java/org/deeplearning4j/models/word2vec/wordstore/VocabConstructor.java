@@ -28,7 +28,6 @@ import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.deeplearning4j.models.sequencevectors.interfaces.SequenceIterator;
 import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
-import org.deeplearning4j.models.word2vec.Huffman;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
 import org.deeplearning4j.text.invertedindex.InvertedIndex;
 import org.nd4j.common.util.ThreadUtils;
@@ -184,11 +183,8 @@ public class VocabConstructor<T extends SequenceElement> {
                     result.addWordToIndex(result.numWords(), v.getLabel());
         }
 
-        if (buildHuffman) {
-            val huffman = new Huffman(result.vocabWords());
-            huffman.build();
-            huffman.applyIndexes(result);
-        }
+        if (buildHuffman)
+            result.buildHuffmanTree();
 
         return result;
     }
@@ -399,9 +395,7 @@ public class VocabConstructor<T extends SequenceElement> {
         }
 
         if (resetCounters) {
-            for (T element : cache.vocabWords()) {
-                element.setElementFrequency(0);
-            }
+            cache.resetWordCounters();
             cache.updateWordsOccurrences();
         }
 
@@ -419,9 +413,7 @@ public class VocabConstructor<T extends SequenceElement> {
                 }
             }
             // and now we're building Huffman tree
-            val huffman = new Huffman(cache.vocabWords());
-            huffman.build();
-            huffman.applyIndexes(cache);
+            cache.buildHuffmanTree();
         }
 
         executorService.shutdown();
@@ -0,0 +1,1365 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.word2vec.wordstore.offheap;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * VocabCache implementation that keeps vocabulary in off-heap, primitive-typed columns instead of
+ * maps of VocabWord objects, so large vocabularies add next to nothing to GC pressure.<br>
+ * Elements are kept in an open-addressing table keyed by storageId, and all per-element data (frequencies,
+ * sequence counts, Huffman indices, codes and points, labels) lives in flat direct buffers.
+ * Vocabulary can be saved via {@link #save(File)} and loaded back via {@link #load(File)}: loading memory-maps
+ * the file, so it takes milliseconds regardless of vocabulary size.
+ *
+ * PLEASE NOTE: VocabWord instances returned by this cache are snapshots, built on each call. Huffman codes and points
+ * of snapshots are decoded lazily, on first access, and learning algorithms can avoid decoding them altogether via
+ * {@link #huffmanCodes(VocabWord, byte[], int[])}. Counters, locked and init flags of snapshots are written through
+ * to the cache, all other mutators throw UnsupportedOperationException: use cache methods (addWordToIndex(),
+ * {@link #buildHuffmanTree()} etc) instead.
+ */
+@Slf4j
+public class OffHeapVocabCache implements VocabCache<VocabWord> {
+    private static final long MAGIC = 0x4f4656434143484cL;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 64;
+    private static final int MAX_CODE_LENGTH = 40;
+
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+
+    private static final byte FLAG_SPECIAL = 1;
+    private static final byte FLAG_LABEL = 2;
+    private static final byte FLAG_REMOVED = 4;
+    private static final byte FLAG_LOCKED = 8;
+    private static final byte FLAG_INIT = 16;
+
+    // open addressing table: storageId -> slot + 1
+    private transient ByteBuffer tableKeys;
+    private transient ByteBuffer tableSlots;
+    private int tableCapacity;
+    private int tableUsed;
+
+    // per-slot columns
+    private transient ByteBuffer storageIds;
+    private transient ByteBuffer frequencies;
+    private transient ByteBuffer sequenceCounts;
+    private transient ByteBuffer indices;
+    private transient ByteBuffer labelOffsets;
+    private transient ByteBuffer labelLengths;
+    private transient ByteBuffer flags;
+    private transient ByteBuffer codeOffsets;
+    private transient ByteBuffer pointOffsets;
+    private transient ByteBuffer codeLengths;
+    private int slotCapacity;
+    private int numSlots;
+    private int numWords;
+
+    // Huffman index -> slot
+    private transient ByteBuffer indexToSlot;
+    private int indexCapacity;
+
+    // variable length data
+    private transient ByteBuffer labels;
+    private int labelsUsed;
+    private transient ByteBuffer codes;
+    private int codesUsed;
+    private transient ByteBuffer points;
+    private int pointsUsed;
+
+    private long totalWordCount;
+    private long documentsCounter;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    protected OffHeapVocabCache(int initialCapacity) {
+        slotCapacity = Math.max(16, initialCapacity);
+        tableCapacity = Integer.highestOneBit(slotCapacity * 2 - 1) << 1;
+        indexCapacity = slotCapacity;
+
+        tableKeys = allocate(tableCapacity * 8L);
+        tableSlots = allocate(tableCapacity * 4L);
+
+        storageIds = allocate(slotCapacity * 8L);
+        frequencies = allocate(slotCapacity * 8L);
+        sequenceCounts = allocate(slotCapacity * 8L);
+        indices = allocate(slotCapacity * 4L);
+        labelOffsets = allocate(slotCapacity * 4L);
+        labelLengths = allocate(slotCapacity * 4L);
+        flags = allocate(slotCapacity);
+        codeOffsets = allocate(slotCapacity * 4L);
+        pointOffsets = allocate(slotCapacity * 4L);
+        codeLengths = allocate(slotCapacity);
+
+        indexToSlot = allocate(indexCapacity * 4L);
+        fill(indexToSlot, 0, indexCapacity, -1);
+
+        labels = allocate(slotCapacity * 8L);
+        codes = allocate(1024);
+        points = allocate(1024 * 4);
+    }
+
+    /**
+     * This method creates OffHeapVocabCache with the same content as the given VocabCache, including Huffman indices,
+     * codes and points, if they were built
+     *
+     * @param source VocabCache to copy
+     * @return
+     */
+    public static OffHeapVocabCache from(@NonNull VocabCache<VocabWord> source) {
+        OffHeapVocabCache cache = new Builder().initialCapacity(source.numWords()).build();
+        cache.importVocabulary(source);
+        for (VocabWord element : source.vocabWords()) {
+            if (element.getIndex() >= 0)
+                cache.addWordToIndex(element.getIndex(), element.getStorageId());
+        }
+        cache.totalWordCount = source.totalWordOccurrences();
+        cache.documentsCounter = source.totalNumberOfDocs();
+        return cache;
+    }
+
+    private static ByteBuffer allocate(long bytes) {
+        if (bytes > Integer.MAX_VALUE)
+            throw new IllegalStateException("Vocabulary is too large: single column can't exceed " + Integer.MAX_VALUE + " bytes");
+
+        return ByteBuffer.allocateDirect((int) Math.max(bytes, 8)).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, long required) {
+        if (required <= buffer.capacity())
+            return buffer;
+
+        long newCapacity = Math.max(required, Math.min((long) buffer.capacity() * 2, Integer.MAX_VALUE));
+        ByteBuffer result = allocate(newCapacity);
+        ByteBuffer src = buffer.duplicate();
+        src.clear();
+        result.put(src);
+        result.clear();
+        return result;
+    }
+
+    private static void fill(ByteBuffer buffer, int from, int to, int value) {
+        for (int i = from; i < to; i++)
+            buffer.putInt(i * 4, value);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return slot for the given storageId, or -1 if there's no such element
+     */
+    private int findSlot(long storageId) {
+        int mask = tableCapacity - 1;
+        int pos = hash(storageId) & mask;
+        while (true) {
+            int s = tableSlots.getInt(pos * 4);
+            if (s == EMPTY)
+                return -1;
+
+            if (s != DELETED && tableKeys.getLong(pos * 8) == storageId)
+                return s - 1;
+
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    private int findSlot(String label) {
+        if (label == null)
+            return -1;
+
+        return findSlot(SequenceElement.getLongHash(label));
+    }
+
+    private void insertIntoTable(long storageId, int slot) {
+        if ((tableUsed + 1) * 4L > tableCapacity * 3L)
+            rehash(tableCapacity * 2);
+
+        int mask = tableCapacity - 1;
+        int pos = hash(storageId) & mask;
+        while (true) {
+            int s = tableSlots.getInt(pos * 4);
+            if (s == EMPTY || s == DELETED) {
+                if (s == EMPTY)
+                    tableUsed++;
+
+                tableKeys.putLong(pos * 8, storageId);
+                tableSlots.putInt(pos * 4, slot + 1);
+                return;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    private void removeFromTable(long storageId) {
+        int mask = tableCapacity - 1;
+        int pos = hash(storageId) & mask;
+        while (true) {
+            int s = tableSlots.getInt(pos * 4);
+            if (s == EMPTY)
+                return;
+
+            if (s != DELETED && tableKeys.getLong(pos * 8) == storageId) {
+                tableSlots.putInt(pos * 4, DELETED);
+                return;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        if (newCapacity > Integer.MAX_VALUE / 8)
+            throw new IllegalStateException("Vocabulary is too large");
+
+        tableCapacity = newCapacity;
+        tableKeys = allocate(tableCapacity * 8L);
+        tableSlots = allocate(tableCapacity * 4L);
+        tableUsed = 0;
+        for (int slot = 0; slot < numSlots; slot++) {
+            if (!isRemoved(slot))
+                insertIntoTable(storageIds.getLong(slot * 8), slot);
+        }
+    }
+
+    private void ensureSlotCapacity(int required) {
+        if (required <= slotCapacity)
+            return;
+
+        int newCapacity = (int) Math.min(Math.max((long) slotCapacity * 2, required), Integer.MAX_VALUE / 8);
+        storageIds = grow(storageIds, newCapacity * 8L);
+        frequencies = grow(frequencies, newCapacity * 8L);
+        sequenceCounts = grow(sequenceCounts, newCapacity * 8L);
+        indices = grow(indices, newCapacity * 4L);
+        labelOffsets = grow(labelOffsets, newCapacity * 4L);
+        labelLengths = grow(labelLengths, newCapacity * 4L);
+        flags = grow(flags, newCapacity);
+        codeOffsets = grow(codeOffsets, newCapacity * 4L);
+        pointOffsets = grow(pointOffsets, newCapacity * 4L);
+        codeLengths = grow(codeLengths, newCapacity);
+        slotCapacity = newCapacity;
+    }
+
+    private void ensureIndexCapacity(int index) {
+        if (index < indexCapacity)
+            return;
+
+        int newCapacity = (int) Math.min(Math.max((long) indexCapacity * 2, index + 1L), Integer.MAX_VALUE / 4);
+        indexToSlot = grow(indexToSlot, newCapacity * 4L);
+        fill(indexToSlot, indexCapacity, newCapacity, -1);
+        indexCapacity = newCapacity;
+    }
+
+    private boolean isRemoved(int slot) {
+        return (flags.get(slot) & FLAG_REMOVED) != 0;
+    }
+
+    private String label(int slot) {
+        int length = labelLengths.getInt(slot * 4);
+        byte[] bytes = new byte[length];
+        ByteBuffer src = labels.duplicate();
+        src.position(labelOffsets.getInt(slot * 4));
+        src.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private double frequency(int slot) {
+        return frequencies.getDouble(slot * 8);
+    }
+
+    private void setFrequency(int slot, double value) {
+        frequencies.putDouble(slot * 8, value);
+    }
+
+    private void setCodes(int slot, List<Byte> c, List<Integer> p, int codeLength) {
+        int numPoints = p == null ? 0 : p.size();
+        codes = grow(codes, (long) codesUsed + codeLength);
+        points = grow(points, ((long) pointsUsed + numPoints) * 4);
+
+        codeOffsets.putInt(slot * 4, codesUsed);
+        pointOffsets.putInt(slot * 4, pointsUsed);
+        codeLengths.put(slot, (byte) codeLength);
+        for (int i = 0; i < codeLength; i++)
+            codes.put(codesUsed++, i < c.size() ? c.get(i) : 0);
+
+        // number of points is stored implicitly: it's always codeLength + 1, see Huffman
+        for (int i = 0; i <= codeLength; i++)
+            points.putInt((pointsUsed++) * 4, i < numPoints ? p.get(i) : 0);
+    }
+
+    /**
+     * This method builds VocabWord snapshot for the given slot. Codes and points are decoded lazily, see {@link Snapshot}
+     */
+    protected VocabWord materialize(int slot) {
+        return new Snapshot(this, slot);
+    }
+
+    /**
+     * This method copies Huffman codes and points of the given slot into the given arrays
+     *
+     * @return code length
+     */
+    private int copyHuffman(int slot, byte[] c, int[] p) {
+        int codeLength = Math.min(codeLengths.get(slot), Math.min(c.length, p.length));
+        int codeOffset = codeOffsets.getInt(slot * 4);
+        int pointOffset = pointOffsets.getInt(slot * 4);
+        for (int i = 0; i < codeLength; i++) {
+            c[i] = codes.get(codeOffset + i);
+            p[i] = points.getInt((pointOffset + i) * 4);
+        }
+        return codeLength;
+    }
+
+    /**
+     * This method copies Huffman codes and points of the element with the given Huffman index into the given arrays,
+     * without building VocabWord or boxed lists
+     *
+     * @param index  Huffman index of the element
+     * @param codes  array to copy codes to, up to its length
+     * @param points array to copy points to, up to its length
+     * @return number of codes copied, or -1 if there's no element with the given index
+     */
+    public int huffman(int index, @NonNull byte[] codes, @NonNull int[] points) {
+        lock.readLock().lock();
+        try {
+            int slot = slotAtIndex(index);
+            return slot >= 0 ? copyHuffman(slot, codes, points) : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method copies Huffman codes and points of the given element into the given arrays, reading them directly
+     * from off-heap columns
+     */
+    @Override
+    public int huffmanCodes(@NonNull VocabWord element, @NonNull byte[] codes, @NonNull int[] points) {
+        if (element.getIndex() >= 0) {
+            int length = huffman(element.getIndex(), codes, points);
+            if (length >= 0)
+                return length;
+        }
+
+        return VocabCache.super.huffmanCodes(element, codes, points);
+    }
+
+    /**
+     * This method marks given element as locked (or unlocked), so its vector isn't updated during training
+     *
+     * @param word   label of the element
+     * @param locked locked flag
+     */
+    public void setLocked(String word, boolean locked) {
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(word);
+            if (slot >= 0)
+                setLocked(slot, locked);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void setLocked(int slot, boolean locked) {
+        setFlag(slot, FLAG_LOCKED, locked);
+    }
+
+    private void setFlag(int slot, byte flag, boolean value) {
+        byte f = flags.get(slot);
+        flags.put(slot, (byte) (value ? f | flag : f & ~flag));
+    }
+
+    /**
+     * @return true if the element with the given label is locked
+     */
+    public boolean isLocked(String word) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(word);
+            return slot >= 0 && (flags.get(slot) & FLAG_LOCKED) != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void loadVocab() {
+        // no-op, use load(File) instead
+    }
+
+    @Override
+    public boolean vocabExists() {
+        return numWords() > 0;
+    }
+
+    @Override
+    public void saveVocab() {
+        // no-op, use save(File) instead
+    }
+
+    /**
+     * Returns collection of labels available in this vocabulary. Labels are decoded lazily, during iteration
+     */
+    @Override
+    public Collection<String> words() {
+        return new SlotCollection<String>() {
+            @Override
+            protected String get(int slot) {
+                return label(slot);
+            }
+        };
+    }
+
+    @Override
+    public void incrementWordCount(String word) {
+        incrementWordCount(word, 1);
+    }
+
+    @Override
+    public void incrementWordCount(String word, int increment) {
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(word);
+            if (slot >= 0) {
+                setFrequency(slot, frequency(slot) + increment);
+                totalWordCount += increment;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int wordFrequency(@NonNull String word) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(word);
+            return slot >= 0 ? (int) frequency(slot) : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsWord(String word) {
+        lock.readLock().lock();
+        try {
+            return findSlot(word) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String wordAtIndex(int index) {
+        lock.readLock().lock();
+        try {
+            int slot = slotAtIndex(index);
+            return slot >= 0 ? label(slot) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int slotAtIndex(int index) {
+        if (index < 0 || index >= indexCapacity)
+            return -1;
+
+        return indexToSlot.getInt(index * 4);
+    }
+
+    @Override
+    public VocabWord elementAtIndex(int index) {
+        lock.readLock().lock();
+        try {
+            int slot = slotAtIndex(index);
+            return slot >= 0 ? materialize(slot) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int indexOf(String word) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(word);
+            return slot >= 0 ? indices.getInt(slot * 4) : -2;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns collection of VocabWord snapshots. Elements are built lazily, during iteration
+     */
+    @Override
+    public Collection<VocabWord> vocabWords() {
+        return new SlotCollection<VocabWord>() {
+            @Override
+            protected VocabWord get(int slot) {
+                return materialize(slot);
+            }
+        };
+    }
+
+    @Override
+    public long totalWordOccurrences() {
+        return totalWordCount;
+    }
+
+    @Override
+    public VocabWord wordFor(@NonNull String word) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(word);
+            return slot >= 0 ? materialize(slot) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public VocabWord wordFor(long id) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(id);
+            return slot >= 0 ? materialize(slot) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void addWordToIndex(int index, String word) {
+        if (index >= 0 && word != null)
+            addWordToIndex(index, SequenceElement.getLongHash(word));
+    }
+
+    @Override
+    public void addWordToIndex(int index, long elementId) {
+        if (index < 0)
+            return;
+
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(elementId);
+            if (slot >= 0) {
+                ensureIndexCapacity(index);
+                indexToSlot.putInt(index * 4, slot);
+                indices.putInt(slot * 4, index);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void putVocabWord(String word) {
+        if (!containsWord(word))
+            throw new IllegalStateException("Specified label is not present in vocabulary");
+    }
+
+    @Override
+    public int numWords() {
+        return numWords;
+    }
+
+    @Override
+    public int docAppearedIn(String word) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(word);
+            return slot >= 0 ? (int) sequenceCounts.getLong(slot * 8) : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void incrementDocCount(String word, long howMuch) {
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(word);
+            if (slot >= 0)
+                sequenceCounts.putLong(slot * 8, sequenceCounts.getLong(slot * 8) + howMuch);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void setCountForDoc(String word, long count) {
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(word);
+            if (slot >= 0)
+                sequenceCounts.putLong(slot * 8, count);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long totalNumberOfDocs() {
+        return documentsCounter;
+    }
+
+    @Override
+    public void incrementTotalDocCount() {
+        incrementTotalDocCount(1);
+    }
+
+    @Override
+    public synchronized void incrementTotalDocCount(long by) {
+        documentsCounter += by;
+    }
+
+    public synchronized void setTotalDocCount(long count) {
+        documentsCounter = count;
+    }
+
+    @Override
+    public Collection<VocabWord> tokens() {
+        return vocabWords();
+    }
+
+    /**
+     * This method adds specified element to vocabulary. If element already exists, its frequency and sequences
+     * count are merged into existing one, same as {@link org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache} does
+     *
+     * @param element the word to add
+     * @return true if element was added, false if it was merged into existing one
+     */
+    @Override
+    public boolean addToken(@NonNull VocabWord element) {
+        lock.writeLock().lock();
+        try {
+            long storageId = element.getStorageId();
+            int slot = findSlot(storageId);
+            if (slot >= 0) {
+                sequenceCounts.putLong(slot * 8, sequenceCounts.getLong(slot * 8) + element.getSequencesCount());
+                setFrequency(slot, frequency(slot) + (int) element.getElementFrequency());
+                totalWordCount += (long) frequency(slot);
+                return false;
+            }
+
+            slot = numSlots;
+            ensureSlotCapacity(slot + 1);
+            numSlots++;
+            numWords++;
+
+            byte[] label = element.getLabel().getBytes(StandardCharsets.UTF_8);
+            labels = grow(labels, (long) labelsUsed + label.length);
+            ByteBuffer dst = labels.duplicate();
+            dst.position(labelsUsed);
+            dst.put(label);
+            labelOffsets.putInt(slot * 4, labelsUsed);
+            labelLengths.putInt(slot * 4, label.length);
+            labelsUsed += label.length;
+
+            storageIds.putLong(slot * 8, storageId);
+            setFrequency(slot, element.getElementFrequency());
+            sequenceCounts.putLong(slot * 8, element.getSequencesCount());
+            indices.putInt(slot * 4, element.getIndex());
+            flags.put(slot, (byte) ((element.isSpecial() ? FLAG_SPECIAL : 0) | (element.isLabel() ? FLAG_LABEL : 0)
+                    | (element.isLocked() ? FLAG_LOCKED : 0) | (element.isInit() ? FLAG_INIT : 0)));
+
+            int codeLength = Math.min(element.getCodeLength(), MAX_CODE_LENGTH);
+            if (codeLength > 0)
+                setCodes(slot, element.getCodes(), element.getPoints(), codeLength);
+            else
+                codeLengths.put(slot, (byte) 0);
+
+            insertIntoTable(storageId, slot);
+            totalWordCount += (long) element.getElementFrequency();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public VocabWord tokenFor(String word) {
+        return wordFor(word);
+    }
+
+    @Override
+    public VocabWord tokenFor(long id) {
+        return wordFor(id);
+    }
+
+    @Override
+    public boolean hasToken(String token) {
+        return containsWord(token);
+    }
+
+    @Override
+    public void importVocabulary(@NonNull VocabCache<VocabWord> vocabCache) {
+        boolean added = false;
+        for (VocabWord element : vocabCache.vocabWords()) {
+            if (addToken(element))
+                added = true;
+        }
+
+        if (added)
+            incrementTotalDocCount(vocabCache.totalNumberOfDocs());
+    }
+
+    @Override
+    public void updateWordsOccurrences() {
+        lock.writeLock().lock();
+        try {
+            long total = 0;
+            for (int slot = 0; slot < numSlots; slot++) {
+                if (!isRemoved(slot) && frequency(slot) > 0)
+                    total += (long) frequency(slot);
+            }
+            totalWordCount = total;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Updated counter: [" + totalWordCount + "]");
+    }
+
+    /**
+     * This method resets frequencies of all elements to 0
+     */
+    @Override
+    public void resetWordCounters() {
+        lock.writeLock().lock();
+        try {
+            for (int slot = 0; slot < numSlots; slot++)
+                setFrequency(slot, 0);
+
+            totalWordCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeElement(String label) {
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(label);
+            if (slot < 0)
+                throw new IllegalStateException("Can't get label: '" + label + "'");
+
+            totalWordCount -= (long) frequency(slot);
+            int index = indices.getInt(slot * 4);
+            if (slotAtIndex(index) == slot)
+                indexToSlot.putInt(index * 4, -1);
+
+            removeFromTable(storageIds.getLong(slot * 8));
+            flags.put(slot, (byte) (flags.get(slot) | FLAG_REMOVED));
+            numWords--;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeElement(VocabWord element) {
+        removeElement(element.getLabel());
+    }
+
+    /**
+     * This method builds Huffman tree over current vocabulary, and assigns Huffman indices, codes and points to all
+     * elements. It's equivalent of {@link org.deeplearning4j.models.word2vec.Huffman#build()} followed by
+     * {@link org.deeplearning4j.models.word2vec.Huffman#applyIndexes(VocabCache)}, but works directly over
+     * off-heap columns, without materializing elements.
+     */
+    @Override
+    public void buildHuffmanTree() {
+        lock.writeLock().lock();
+        try {
+            int n = numWords;
+            int[] words = new int[n];
+            int cnt = 0;
+            for (int slot = 0; slot < numSlots; slot++) {
+                if (!isRemoved(slot))
+                    words[cnt++] = slot;
+            }
+            sortByFrequencyDescending(words);
+
+            long[] count = new long[n * 2 + 1];
+            byte[] binary = new byte[n * 2 + 1];
+            int[] parentNode = new int[n * 2 + 1];
+            byte[] code = new byte[MAX_CODE_LENGTH];
+            int[] point = new int[MAX_CODE_LENGTH];
+
+            for (int a = 0; a < n; a++)
+                count[a] = (long) frequency(words[a]);
+            for (int a = n; a < n * 2; a++)
+                count[a] = Integer.MAX_VALUE;
+
+            int pos1 = n - 1;
+            int pos2 = n;
+            int min1i, min2i;
+            for (int a = 0; a < n - 1; a++) {
+                if (pos1 >= 0 && count[pos1] < count[pos2]) {
+                    min1i = pos1--;
+                } else {
+                    min1i = pos2++;
+                }
+                if (pos1 >= 0 && count[pos1] < count[pos2]) {
+                    min2i = pos1--;
+                } else {
+                    min2i = pos2++;
+                }
+
+                count[n + a] = count[min1i] + count[min2i];
+                parentNode[min1i] = n + a;
+                parentNode[min2i] = n + a;
+                binary[min2i] = 1;
+            }
+
+            // codes are re-built from scratch
+            codesUsed = 0;
+            pointsUsed = 0;
+            fill(indexToSlot, 0, indexCapacity, -1);
+            ensureIndexCapacity(n);
+
+            List<Byte> c = new ArrayList<>(MAX_CODE_LENGTH);
+            List<Integer> p = new ArrayList<>(MAX_CODE_LENGTH + 1);
+            for (int a = 0; a < n; a++) {
+                int b = a;
+                int i = 0;
+                do {
+                    code[i] = binary[b];
+                    point[i] = b;
+                    i++;
+                    b = parentNode[b];
+                } while (b != n * 2 - 2 && i < 39);
+
+                c.clear();
+                p.clear();
+                for (int e = 0; e < i; e++) {
+                    c.add((byte) 0);
+                    p.add(0);
+                }
+                p.add(0);
+                for (b = 0; b < i; b++) {
+                    c.set(i - b - 1, code[b]);
+                    p.set(i - b, point[b] - n);
+                }
+
+                int slot = words[a];
+                setCodes(slot, c, p, i);
+                indices.putInt(slot * 4, a);
+                indexToSlot.putInt(a * 4, slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stable merge sort of slots by frequency, most frequent first
+     */
+    private void sortByFrequencyDescending(int[] slots) {
+        int n = slots.length;
+        double[] keys = new double[slots.length];
+        int[] src = slots.clone();
+        for (int i = 0; i < n; i++)
+            keys[i] = frequency(src[i]);
+
+        int[] order = new int[n];
+        int[] tmp = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n - width; lo += width * 2) {
+                int mid = lo + width;
+                int hi = Math.min(lo + width * 2, n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi)
+                    tmp[k++] = keys[order[j]] > keys[order[i]] ? order[j++] : order[i++];
+                while (i < mid)
+                    tmp[k++] = order[i++];
+                while (j < hi)
+                    tmp[k++] = order[j++];
+                System.arraycopy(tmp, lo, order, lo, hi - lo);
+            }
+        }
+
+        for (int i = 0; i < n; i++)
+            slots[i] = src[order[i]];
+    }
+
+    /**
+     * This method saves this vocabulary to the given file, in a format that can be memory-mapped by {@link #load(File)}
+     *
+     * @param file file to save vocabulary to
+     */
+    public void save(@NonNull File file) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024)) {
+            write(os);
+        }
+    }
+
+    private void write(OutputStream os) throws IOException {
+        lock.readLock().lock();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN);
+            header.putLong(MAGIC);
+            header.putInt(VERSION);
+            header.put((byte) (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1));
+            header.put(new byte[3]);
+            header.putInt(tableCapacity);
+            header.putInt(tableUsed);
+            header.putInt(numSlots);
+            header.putInt(numWords);
+            header.putInt(indexCapacity);
+            header.putInt(labelsUsed);
+            header.putInt(codesUsed);
+            header.putInt(pointsUsed);
+            header.putLong(totalWordCount);
+            header.putLong(documentsCounter);
+            os.write(header.array());
+
+            for (Section s : sections())
+                writeSection(os, s.buffer, s.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void writeSection(OutputStream os, ByteBuffer buffer, int length) throws IOException {
+        byte[] chunk = new byte[Math.min(Math.max(length, 1), 1024 * 1024)];
+        ByteBuffer src = buffer.duplicate();
+        src.clear();
+        src.limit(length);
+        while (src.hasRemaining()) {
+            int l = Math.min(chunk.length, src.remaining());
+            src.get(chunk, 0, l);
+            os.write(chunk, 0, l);
+        }
+
+        int padding = padding(length);
+        if (padding > 0)
+            os.write(new byte[padding]);
+    }
+
+    private static int padding(long length) {
+        // empty sections still occupy 8 bytes, so each one can be mapped separately
+        if (length == 0)
+            return 8;
+
+        return (int) ((8 - (length % 8)) % 8);
+    }
+
+    /**
+     * This method loads vocabulary saved via {@link #save(File)}. File is memory-mapped, so loading time doesn't
+     * depend on vocabulary size. If the file is writable, it's mapped in copy-on-write mode, so vocabulary can still
+     * be modified, without affecting the file. Otherwise vocabulary is read-only.
+     *
+     * @param file file to load vocabulary from
+     * @return
+     */
+    public static OffHeapVocabCache load(@NonNull File file) throws IOException {
+        boolean writable = Files.isWritable(file.toPath());
+        try (FileChannel channel = writable ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                                            : FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            FileChannel.MapMode mode = writable ? FileChannel.MapMode.PRIVATE : FileChannel.MapMode.READ_ONLY;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN);
+            while (header.hasRemaining())
+                if (channel.read(header, header.position()) < 0)
+                    throw new EOFException("File [" + file.getAbsolutePath() + "] is truncated");
+            header.flip();
+
+            OffHeapVocabCache cache = readHeader(header, file.getAbsolutePath());
+            long position = HEADER_LENGTH;
+            for (Section s : cache.sections()) {
+                ByteBuffer mapped = channel.map(mode, position, Math.max(s.length, 8)).order(ByteOrder.nativeOrder());
+                s.setter.set(mapped);
+                position += s.length + padding(s.length);
+            }
+            return cache;
+        }
+    }
+
+    private static OffHeapVocabCache readHeader(ByteBuffer header, String source) {
+        if (header.getLong() != MAGIC)
+            throw new IllegalStateException("[" + source + "] doesn't contain OffHeapVocabCache");
+
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new IllegalStateException("Unsupported OffHeapVocabCache version: " + version);
+
+        ByteOrder order = header.get() == 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        if (order != ByteOrder.nativeOrder())
+            throw new IllegalStateException("Vocabulary was saved with " + order + " byte order, which doesn't match native byte order");
+        header.get(new byte[3]);
+
+        OffHeapVocabCache cache = new OffHeapVocabCache(16);
+        cache.tableCapacity = header.getInt();
+        cache.tableUsed = header.getInt();
+        cache.numSlots = header.getInt();
+        cache.numWords = header.getInt();
+        cache.indexCapacity = header.getInt();
+        cache.labelsUsed = header.getInt();
+        cache.codesUsed = header.getInt();
+        cache.pointsUsed = header.getInt();
+        cache.totalWordCount = header.getLong();
+        cache.documentsCounter = header.getLong();
+        cache.slotCapacity = cache.numSlots;
+        return cache;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        write(out);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+
+        byte[] headerBytes = new byte[HEADER_LENGTH];
+        in.readFully(headerBytes);
+        readHeader(ByteBuffer.wrap(headerBytes), "stream");
+
+        // counters were already restored by defaultReadObject(), so only columns are left
+        byte[] chunk = new byte[1024 * 1024];
+        for (Section s : sections()) {
+            ByteBuffer buffer = allocate(s.length);
+            int left = s.length;
+            while (left > 0) {
+                int l = Math.min(chunk.length, left);
+                in.readFully(chunk, 0, l);
+                buffer.put(chunk, 0, l);
+                left -= l;
+            }
+            in.readFully(new byte[padding(s.length)]);
+            buffer.clear();
+            s.setter.set(buffer);
+        }
+        slotCapacity = numSlots;
+    }
+
+    private interface ColumnSetter {
+        void set(ByteBuffer buffer);
+    }
+
+    private static class Section {
+        private final ByteBuffer buffer;
+        private final int length;
+        private final ColumnSetter setter;
+
+        private Section(ByteBuffer buffer, long length, ColumnSetter setter) {
+            this.buffer = buffer;
+            this.length = (int) length;
+            this.setter = setter;
+        }
+    }
+
+    /**
+     * All off-heap columns, in the order they're stored in file
+     */
+    private List<Section> sections() {
+        return Arrays.asList(
+                new Section(tableKeys, tableCapacity * 8L, b -> tableKeys = b),
+                new Section(tableSlots, tableCapacity * 4L, b -> tableSlots = b),
+                new Section(storageIds, numSlots * 8L, b -> storageIds = b),
+                new Section(frequencies, numSlots * 8L, b -> frequencies = b),
+                new Section(sequenceCounts, numSlots * 8L, b -> sequenceCounts = b),
+                new Section(indices, numSlots * 4L, b -> indices = b),
+                new Section(labelOffsets, numSlots * 4L, b -> labelOffsets = b),
+                new Section(labelLengths, numSlots * 4L, b -> labelLengths = b),
+                new Section(flags, numSlots, b -> flags = b),
+                new Section(codeOffsets, numSlots * 4L, b -> codeOffsets = b),
+                new Section(pointOffsets, numSlots * 4L, b -> pointOffsets = b),
+                new Section(codeLengths, numSlots, b -> codeLengths = b),
+                new Section(indexToSlot, indexCapacity * 4L, b -> indexToSlot = b),
+                new Section(labels, labelsUsed, b -> labels = b),
+                new Section(codes, codesUsed, b -> codes = b),
+                new Section(points, pointsUsed * 4L, b -> points = b));
+    }
+
+    /**
+     * Read-only view over live slots, elements are built on the fly
+     */
+    private abstract class SlotCollection<E> extends AbstractCollection<E> {
+        protected abstract E get(int slot);
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Iterator<E>() {
+                private int slot = advance(0);
+
+                private int advance(int from) {
+                    while (from < numSlots && isRemoved(from))
+                        from++;
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return slot < numSlots;
+                }
+
+                @Override
+                public E next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+
+                    lock.readLock().lock();
+                    try {
+                        E result = get(slot);
+                        slot = advance(slot + 1);
+                        return result;
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return numWords;
+        }
+    }
+
+    /**
+     * VocabWord snapshot returned by this cache: Huffman codes and points are decoded from off-heap columns on first
+     * access only. Counters, {@link #setLocked(boolean)} and {@link #setInit(boolean)} are written through to the
+     * cache, all other mutators throw UnsupportedOperationException
+     */
+    public static class Snapshot extends VocabWord {
+        private static final long serialVersionUID = 4581095247410317352L;
+
+        private transient OffHeapVocabCache cache;
+        private transient int slot;
+        private transient boolean decoded;
+
+        public Snapshot() {
+            decoded = true;
+        }
+
+        protected Snapshot(OffHeapVocabCache cache, int slot) {
+            super(cache.frequency(slot), cache.label(slot), cache.storageIds.getLong(slot * 8));
+            sequencesCount.set(cache.sequenceCounts.getLong(slot * 8));
+            index = cache.indices.getInt(slot * 4);
+
+            byte f = cache.flags.get(slot);
+            special = (f & FLAG_SPECIAL) != 0;
+            isLabel = (f & FLAG_LABEL) != 0;
+            isLocked = (f & FLAG_LOCKED) != 0;
+            init = (f & FLAG_INIT) != 0;
+            codeLength = cache.codeLengths.get(slot);
+
+            this.cache = cache;
+            this.slot = slot;
+        }
+
+        private void decode() {
+            if (decoded)
+                return;
+
+            decoded = true;
+            if (cache == null || codeLength <= 0)
+                return;
+
+            byte[] c = new byte[codeLength];
+            int[] p = new int[codeLength + 1];
+            cache.lock.readLock().lock();
+            try {
+                int pointOffset = cache.pointOffsets.getInt(slot * 4);
+                cache.copyHuffman(slot, c, p);
+                // number of points is always codeLength + 1
+                p[codeLength] = cache.points.getInt((pointOffset + codeLength) * 4);
+            } finally {
+                cache.lock.readLock().unlock();
+            }
+
+            List<Byte> cl = new ArrayList<>(c.length);
+            for (byte b : c)
+                cl.add(b);
+            List<Integer> pl = new ArrayList<>(p.length);
+            for (int v : p)
+                pl.add(v);
+            codes = cl;
+            points = pl;
+        }
+
+        private void readOnly(String field) {
+            if (cache != null)
+                throw new UnsupportedOperationException("Elements of OffHeapVocabCache can't change " + field
+                        + ", use cache methods instead");
+        }
+
+        private void writeThrough(Runnable update) {
+            if (cache == null)
+                return;
+
+            cache.lock.writeLock().lock();
+            try {
+                update.run();
+            } finally {
+                cache.lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public List<Byte> getCodes() {
+            decode();
+            return super.getCodes();
+        }
+
+        @Override
+        public List<Integer> getPoints() {
+            decode();
+            return super.getPoints();
+        }
+
+        @Override
+        public void setCodes(List<Byte> codes) {
+            readOnly("Huffman codes");
+            super.setCodes(codes);
+        }
+
+        @Override
+        public void setPoints(List<Integer> points) {
+            readOnly("Huffman points");
+            super.setPoints(points);
+        }
+
+        @Override
+        public void setPoints(int[] points) {
+            readOnly("Huffman points");
+            super.setPoints(points);
+        }
+
+        @Override
+        public void setCodeLength(short codeLength) {
+            readOnly("Huffman code length");
+            super.setCodeLength(codeLength);
+        }
+
+        @Override
+        public void setIndex(int index) {
+            readOnly("Huffman index");
+            super.setIndex(index);
+        }
+
+        @Override
+        public void setSpecial(boolean special) {
+            readOnly("special flag");
+            super.setSpecial(special);
+        }
+
+        @Override
+        public void markAsLabel(boolean isLabel) {
+            readOnly("label flag");
+            super.markAsLabel(isLabel);
+        }
+
+        @Override
+        public void setWord(String word) {
+            readOnly("label");
+            super.setWord(word);
+        }
+
+        @Override
+        public void setStorageId(Long storageId) {
+            readOnly("storageId");
+            super.setStorageId(storageId);
+        }
+
+        @Override
+        public void setElementFrequency(long value) {
+            super.setElementFrequency(value);
+            writeThrough(() -> cache.setFrequency(slot, value));
+        }
+
+        @Override
+        public void increaseElementFrequency(int by) {
+            super.increaseElementFrequency(by);
+            writeThrough(() -> cache.setFrequency(slot, cache.frequency(slot) + by));
+        }
+
+        @Override
+        public void setSequencesCount(long count) {
+            super.setSequencesCount(count);
+            writeThrough(() -> cache.sequenceCounts.putLong(slot * 8, count));
+        }
+
+        @Override
+        public void incrementSequencesCount() {
+            incrementSequencesCount(1);
+        }
+
+        @Override
+        public void incrementSequencesCount(long count) {
+            super.incrementSequencesCount(count);
+            writeThrough(() -> cache.sequenceCounts.putLong(slot * 8, cache.sequenceCounts.getLong(slot * 8) + count));
+        }
+
+        @Override
+        public void setLocked(boolean locked) {
+            super.setLocked(locked);
+            writeThrough(() -> cache.setLocked(slot, locked));
+        }
+
+        @Override
+        public void setInit(boolean init) {
+            super.setInit(init);
+            writeThrough(() -> cache.setFlag(slot, FLAG_INIT, init));
+        }
+    }
+
+    public static class Builder {
+        protected int initialCapacity = 1024;
+
+        /**
+         * Number of elements to preallocate storage for. Storage grows automatically if more elements are added.
+         */
+        public Builder initialCapacity(int initialCapacity) {
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        public OffHeapVocabCache build() {
+            return new OffHeapVocabCache(initialCapacity);
+        }
+    }
+}
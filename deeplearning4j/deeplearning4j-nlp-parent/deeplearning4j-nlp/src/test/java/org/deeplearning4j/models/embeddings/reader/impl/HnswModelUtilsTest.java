@@ -0,0 +1,136 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class HnswModelUtilsTest extends BaseDL4JTest {
+
+    @TempDir
+    Path testDir;
+
+    private InMemoryLookupTable<VocabWord> buildTable(int numWords, int dimension) {
+        Nd4j.getRandom().setSeed(12345);
+        AbstractCache<VocabWord> cache = new AbstractCache.Builder<VocabWord>().build();
+        for (int i = 0; i < numWords; i++) {
+            VocabWord word = new VocabWord(1.0, "word_" + i);
+            word.setIndex(i);
+            cache.addToken(word);
+            cache.addWordToIndex(i, word.getLabel());
+        }
+
+        InMemoryLookupTable<VocabWord> table = (InMemoryLookupTable<VocabWord>) new InMemoryLookupTable.Builder<VocabWord>()
+                .cache(cache).vectorLength(dimension).build();
+        table.setSyn0(Nd4j.randn(DataType.FLOAT, numWords, dimension));
+        return table;
+    }
+
+    @Test
+    public void testRecallVsBruteForce() {
+        InMemoryLookupTable<VocabWord> table = buildTable(2000, 32);
+
+        FlatModelUtils<VocabWord> exact = new FlatModelUtils<>();
+        exact.init(table);
+
+        HnswModelUtils<VocabWord> approx = new HnswModelUtils<>(16, 100, 100);
+        approx.init(table);
+
+        int hits = 0;
+        int total = 0;
+        for (int i = 0; i < 50; i++) {
+            INDArray query = Nd4j.randn(DataType.FLOAT, 1, 32);
+            Set<String> expected = new HashSet<>(exact.wordsNearest(query, 10));
+            Collection<String> found = approx.wordsNearest(query, 10);
+            assertEquals(10, found.size());
+            for (String w : found)
+                if (expected.contains(w))
+                    hits++;
+            total += 10;
+        }
+
+        double recall = hits / (double) total;
+        assertTrue(recall >= 0.9, "Recall too low: " + recall);
+
+        // nearest word to the word itself is excluded from results
+        Collection<String> nearest = approx.wordsNearest("word_7", 5);
+        assertEquals(5, nearest.size());
+        assertFalse(nearest.contains("word_7"));
+    }
+
+    @Test
+    public void testBatchedQueries() {
+        InMemoryLookupTable<VocabWord> table = buildTable(500, 16);
+        HnswModelUtils<VocabWord> utils = new HnswModelUtils<>();
+        utils.init(table);
+
+        INDArray queries = Nd4j.randn(DataType.FLOAT, 20, 16);
+        List<Collection<String>> batched = utils.wordsNearestBatch(queries, 5);
+        assertEquals(20, batched.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(new ArrayList<>(utils.wordsNearest(queries.getRow(i, true), 5)), new ArrayList<>(batched.get(i)));
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        InMemoryLookupTable<VocabWord> table = buildTable(500, 16);
+        HnswModelUtils<VocabWord> utils = new HnswModelUtils<>();
+        utils.init(table);
+
+        File file = new File(testDir.toFile(), "index.hnsw");
+        WordVectorSerializer.writeHnswIndex(utils, file);
+
+        HnswIndex restored = WordVectorSerializer.readHnswIndex(file);
+        assertFalse(restored.isAttached());
+        assertEquals(500, restored.getSize());
+
+        HnswModelUtils<VocabWord> restoredUtils = new HnswModelUtils<>(restored, utils.getEfSearch());
+        restoredUtils.init(table);
+        assertTrue(restored == restoredUtils.getIndex());
+
+        INDArray queries = Nd4j.randn(DataType.FLOAT, 10, 16);
+        assertEquals(utils.wordsNearestBatch(queries, 5), restoredUtils.wordsNearestBatch(queries, 5));
+    }
+}
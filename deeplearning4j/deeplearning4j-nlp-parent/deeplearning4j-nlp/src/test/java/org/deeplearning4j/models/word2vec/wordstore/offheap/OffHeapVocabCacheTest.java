@@ -0,0 +1,233 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.word2vec.wordstore.offheap;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.word2vec.Huffman;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.util.SerializationUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+public class OffHeapVocabCacheTest extends BaseDL4JTest {
+
+    @Test
+    public void testBasicOps() throws Exception {
+        OffHeapVocabCache cache = new OffHeapVocabCache.Builder().initialCapacity(2).build();
+
+        assertTrue(cache.addToken(new VocabWord(1.0, "word")));
+        assertTrue(cache.addToken(new VocabWord(2.0, "test")));
+        assertTrue(cache.addToken(new VocabWord(3.0, "tester")));
+        assertFalse(cache.addToken(new VocabWord(1.0, "word")));
+
+        assertEquals(3, cache.numWords());
+        assertEquals(2, cache.wordFrequency("word"));
+        assertTrue(cache.containsWord("tester"));
+        assertFalse(cache.containsWord("missing"));
+
+        cache.incrementWordCount("test", 5);
+        assertEquals(7, cache.wordFrequency("test"));
+
+        cache.incrementDocCount("test", 2);
+        assertEquals(2, cache.docAppearedIn("test"));
+
+        Collection<String> words = cache.words();
+        assertEquals(3, words.size());
+        assertTrue(words.contains("word"));
+        assertTrue(words.contains("tester"));
+
+        cache.removeElement("tester");
+        assertEquals(2, cache.numWords());
+        assertFalse(cache.containsWord("tester"));
+        assertEquals(2, cache.words().size());
+    }
+
+    @Test
+    public void testGrowth() throws Exception {
+        OffHeapVocabCache cache = new OffHeapVocabCache.Builder().initialCapacity(4).build();
+
+        for (int i = 0; i < 10000; i++)
+            cache.addToken(new VocabWord(i + 1, "word_" + i));
+
+        assertEquals(10000, cache.numWords());
+        for (int i = 0; i < 10000; i++)
+            assertEquals(i + 1, cache.wordFrequency("word_" + i));
+    }
+
+    @Test
+    public void testHuffmanEquality() throws Exception {
+        AbstractCache<VocabWord> reference = new AbstractCache.Builder<VocabWord>().build();
+        OffHeapVocabCache cache = new OffHeapVocabCache.Builder().build();
+
+        for (int i = 0; i < 500; i++) {
+            reference.addToken(new VocabWord(1 + (i * 31) % 97, "word_" + i));
+            cache.addToken(new VocabWord(1 + (i * 31) % 97, "word_" + i));
+        }
+
+        Huffman huffman = new Huffman(reference.vocabWords());
+        huffman.build();
+        huffman.applyIndexes(reference);
+
+        cache.buildHuffmanTree();
+
+        for (VocabWord expected : reference.vocabWords()) {
+            VocabWord actual = cache.wordFor(expected.getLabel());
+            assertEquals(expected.getIndex(), actual.getIndex());
+            assertEquals(expected.getCodeLength(), actual.getCodeLength());
+            assertEquals(expected.getCodes().subList(0, expected.getCodeLength()), actual.getCodes());
+            assertEquals(expected.getPoints().subList(0, expected.getCodeLength() + 1), actual.getPoints());
+            assertEquals(expected.getLabel(), cache.wordAtIndex(expected.getIndex()));
+        }
+    }
+
+    @Test
+    public void testLockedAndHuffmanAccessors() throws Exception {
+        OffHeapVocabCache cache = new OffHeapVocabCache.Builder().build();
+        for (int i = 0; i < 50; i++)
+            cache.addToken(new VocabWord(1 + (i * 7) % 13, "word_" + i));
+
+        VocabWord locked = new VocabWord(1.0, "locked");
+        locked.setLocked(true);
+        cache.addToken(locked);
+        cache.buildHuffmanTree();
+
+        assertTrue(cache.wordFor("locked").isLocked());
+        assertFalse(cache.wordFor("word_1").isLocked());
+
+        // snapshot setter is written through, as SequenceVectors relies on that for intersected models
+        cache.wordFor("word_1").setLocked(true);
+        assertTrue(cache.isLocked("word_1"));
+        assertTrue(cache.wordFor("word_1").isLocked());
+        assertTrue(cache.elementAtIndex(cache.indexOf("word_1")).isLocked());
+
+        cache.setLocked("word_1", false);
+        assertFalse(cache.wordFor("word_1").isLocked());
+
+        for (int i = 0; i < 50; i++) {
+            VocabWord word = cache.wordFor("word_" + i);
+            byte[] codes = new byte[word.getCodeLength()];
+            int[] points = new int[word.getCodeLength()];
+            assertEquals(word.getCodeLength(), cache.huffman(word.getIndex(), codes, points));
+            for (int j = 0; j < codes.length; j++) {
+                assertEquals((byte) word.getCodes().get(j), codes[j]);
+                assertEquals((int) word.getPoints().get(j), points[j]);
+            }
+
+            byte[] codes2 = new byte[word.getCodeLength()];
+            int[] points2 = new int[word.getCodeLength()];
+            assertEquals(word.getCodeLength(), cache.huffmanCodes(word, codes2, points2));
+            assertArrayEquals(codes, codes2);
+            assertArrayEquals(points, points2);
+        }
+        assertEquals(-1, cache.huffman(1000, new byte[1], new int[1]));
+    }
+
+    @Test
+    public void testSnapshotMutators() {
+        OffHeapVocabCache cache = new OffHeapVocabCache.Builder().build();
+        cache.addToken(new VocabWord(3.0, "word"));
+        cache.addToken(new VocabWord(5.0, "test"));
+        cache.buildHuffmanTree();
+
+        VocabWord word = cache.wordFor("word");
+        word.incrementElementFrequency();
+        word.increaseElementFrequency(2);
+        assertEquals(6, cache.wordFrequency("word"));
+        word.setElementFrequency(0);
+        assertEquals(0, cache.wordFrequency("word"));
+
+        word.setSequencesCount(4);
+        word.incrementSequencesCount();
+        word.incrementSequencesCount(2);
+        assertEquals(7, cache.docAppearedIn("word"));
+
+        assertFalse(cache.wordFor("word").isInit());
+        word.setInit(true);
+        assertTrue(cache.wordFor("word").isInit());
+
+        cache.resetWordCounters();
+        assertEquals(0, cache.wordFrequency("test"));
+
+        assertThrows(UnsupportedOperationException.class, () -> word.setIndex(5));
+        assertThrows(UnsupportedOperationException.class, () -> word.setCodeLength((short) 3));
+        assertThrows(UnsupportedOperationException.class, () -> word.setPoints(new int[] {1, 2}));
+        assertThrows(UnsupportedOperationException.class, () -> word.setSpecial(true));
+        assertThrows(UnsupportedOperationException.class, () -> word.markAsLabel(true));
+        assertThrows(UnsupportedOperationException.class, () -> word.setWord("other"));
+    }
+
+    @Test
+    public void testSaveLoad(@TempDir Path testDir) throws Exception {
+        OffHeapVocabCache cache = new OffHeapVocabCache.Builder().build();
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(2.0, "test"));
+        cache.addToken(new VocabWord(3.0, "tester"));
+        cache.buildHuffmanTree();
+        cache.incrementTotalDocCount(7);
+
+        File file = new File(testDir.toFile(), "vocab.bin");
+        cache.save(file);
+
+        OffHeapVocabCache restored = OffHeapVocabCache.load(file);
+        assertEquals(cache.numWords(), restored.numWords());
+        assertEquals(cache.totalWordOccurrences(), restored.totalWordOccurrences());
+        assertEquals(7, restored.totalNumberOfDocs());
+        assertEquals("tester", restored.wordAtIndex(0));
+        assertEquals(cache.wordFor("word").getCodes(), restored.wordFor("word").getCodes());
+
+        // mapped vocabulary is still writable, without affecting the file
+        restored.addToken(new VocabWord(4.0, "testing"));
+        assertTrue(restored.containsWord("testing"));
+        assertFalse(OffHeapVocabCache.load(file).containsWord("testing"));
+
+        OffHeapVocabCache deserialized = SerializationUtils.fromByteArray(SerializationUtils.toByteArray(cache));
+        assertEquals(3, deserialized.numWords());
+        assertEquals("test", deserialized.wordAtIndex(1));
+        assertEquals(2, deserialized.wordFrequency("test"));
+    }
+
+    @Test
+    public void testFrom() throws Exception {
+        AbstractCache<VocabWord> reference = new AbstractCache.Builder<VocabWord>().build();
+        reference.addToken(new VocabWord(1.0, "word"));
+        reference.addToken(new VocabWord(2.0, "test"));
+        reference.addToken(new VocabWord(3.0, "tester"));
+
+        Huffman huffman = new Huffman(reference.vocabWords());
+        huffman.build();
+        huffman.applyIndexes(reference);
+
+        OffHeapVocabCache cache = OffHeapVocabCache.from(reference);
+        assertEquals(3, cache.numWords());
+        assertEquals(reference.totalWordOccurrences(), cache.totalWordOccurrences());
+        for (int i = 0; i < 3; i++)
+            assertEquals(reference.wordAtIndex(i), cache.wordAtIndex(i));
+    }
+}
@@ -93,6 +93,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
     protected BackpropType backpropType = BackpropType.Standard;
     protected int tbpttFwdLength = 20;
     protected int tbpttBackLength = 20;
+    protected int microBatchSize = 0;   //0: no gradient accumulation over micro-batches
+    protected int activationCheckpointInterval = 0;     //0: no activation recomputation
+    protected List<String> activationCheckpoints;       //Vertices after which a new recomputation segment starts. May be null
 
     protected NeuralNetConfiguration defaultConfiguration;
 
@@ -327,6 +330,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         conf.backpropType = backpropType;
         conf.tbpttFwdLength = tbpttFwdLength;
         conf.tbpttBackLength = tbpttBackLength;
+        conf.microBatchSize = microBatchSize;
+        conf.activationCheckpointInterval = activationCheckpointInterval;
+        conf.activationCheckpoints = (activationCheckpoints == null ? null : new ArrayList<>(activationCheckpoints));
         conf.defaultConfiguration = defaultConfiguration.clone();
         conf.trainingWorkspaceMode = trainingWorkspaceMode;
         conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
@@ -400,6 +406,16 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             }
         }
 
+        //Check activation checkpoint names
+        if(activationCheckpoints != null) {
+            for (String s : activationCheckpoints) {
+                if (!vertices.containsKey(s) && !networkInputs.contains(s)) {
+                    throw new IllegalStateException(
+                            "Invalid configuration: Activation checkpoint \"" + s + "\" is not a valid vertex");
+                }
+            }
+        }
+
         //Check that there aren't any disconnected vertices
         if(!allowDisconnected){
             //A vertex is considered disconnected if it is (a) not an output vertex, and (b) isn't used an as input
@@ -724,6 +740,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         protected BackpropType backpropType = BackpropType.Standard;
         protected int tbpttFwdLength = DEFAULT_TBPTT_LENGTH;
         protected int tbpttBackLength = DEFAULT_TBPTT_LENGTH;
+        protected int microBatchSize = 0;
+        protected int activationCheckpointInterval = 0;
+        protected List<String> activationCheckpoints;
 
         protected Map<String, InputPreProcessor> inputPreProcessors = new LinkedHashMap<>();
 
@@ -752,6 +771,10 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             this.backpropType = clonedConf.getBackpropType();
             this.tbpttFwdLength = clonedConf.getTbpttFwdLength();
             this.tbpttBackLength = clonedConf.getTbpttBackLength();
+            this.microBatchSize = clonedConf.getMicroBatchSize();
+            this.activationCheckpointInterval = clonedConf.getActivationCheckpointInterval();
+            this.activationCheckpoints = (clonedConf.getActivationCheckpoints() == null ? null :
+                    new ArrayList<>(clonedConf.getActivationCheckpoints()));
             this.globalConfiguration = globalConfiguration;
             //this.getGlobalConfiguration().setSeed(clonedConf.getDefaultConfiguration().getSeed());
         }
@@ -811,6 +834,54 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Gradient accumulation: if set to a value greater than 0, minibatches larger than this are split into
+         * micro-batches of (at most) this size during fitting. Gradients are accumulated over all micro-batches before
+         * a single updater step is applied for the full (logical) minibatch, hence peak activation memory scales with
+         * the micro-batch size rather than the minibatch size.<br>
+         * See {@link MultiLayerConfiguration.Builder#microBatchSize(int)} for details. Default: 0 (disabled)
+         *
+         * @param microBatchSize Maximum micro-batch size, or 0 to disable
+         */
+        public GraphBuilder microBatchSize(int microBatchSize) {
+            Preconditions.checkArgument(microBatchSize >= 0, "Micro-batch size must be >= 0, got %s", microBatchSize);
+            this.microBatchSize = microBatchSize;
+            return this;
+        }
+
+        /**
+         * Activation recomputation (gradient checkpointing): if set to a value greater than 0, the vertices of the graph
+         * are split (in topological order) into segments of this many vertices. During fitting, only the activations
+         * that cross segment boundaries are kept in memory after the forward pass; the activations within each segment
+         * are recomputed from these checkpoints during backprop, one segment at a time. This trades one additional
+         * forward pass for reduced activation memory; for a graph of N vertices, an interval of approximately sqrt(N)
+         * minimizes peak activation memory.<br>
+         * Can be combined with {@link #activationCheckpoints(String...)}. See
+         * {@link MultiLayerConfiguration.Builder#activationCheckpointInterval(int)} for details. Default: 0 (disabled)
+         *
+         * @param activationCheckpointInterval Number of vertices per recomputation segment, or 0 to disable
+         */
+        public GraphBuilder activationCheckpointInterval(int activationCheckpointInterval) {
+            Preconditions.checkArgument(activationCheckpointInterval >= 0, "Activation checkpoint interval must be >= 0, got %s",
+                    activationCheckpointInterval);
+            this.activationCheckpointInterval = activationCheckpointInterval;
+            return this;
+        }
+
+        /**
+         * Activation recomputation (gradient checkpointing): specify the vertices whose activations should be kept as
+         * checkpoints during fitting. A new recomputation segment starts after each of the specified vertices (in
+         * topological order); activations within each segment are discarded after the forward pass and recomputed
+         * during backprop. Typically used to checkpoint the output of each block of a ResNet-style network.<br>
+         * See {@link #activationCheckpointInterval(int)} for details.
+         *
+         * @param vertexNames Names of the vertices (layers, vertices or inputs) to checkpoint
+         */
+        public GraphBuilder activationCheckpoints(String... vertexNames) {
+            this.activationCheckpoints = new ArrayList<>(Arrays.asList(vertexNames));
+            return this;
+        }
+
         /**
          * When doing truncated backpropagation through time (tBPTT): how many steps should we do?<br>
          * Only applicable when doing backpropType(BackpropType.TruncatedBPTT)<br>
@@ -1190,6 +1261,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             conf.backpropType = backpropType;
             conf.tbpttBackLength = tbpttBackLength;
             conf.tbpttFwdLength = tbpttFwdLength;
+            conf.microBatchSize = microBatchSize;
+            conf.activationCheckpointInterval = activationCheckpointInterval;
+            conf.activationCheckpoints = activationCheckpoints;
 
             conf.networkInputs = networkInputs;
             conf.networkOutputs = networkOutputs;
@@ -34,6 +34,7 @@ import org.deeplearning4j.nn.conf.serde.JsonMappers;
 import org.deeplearning4j.nn.weights.IWeightInit;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.deeplearning4j.util.OutputLayerUtil;
+import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.activations.IActivation;
 import org.nd4j.linalg.api.buffer.DataType;
@@ -64,6 +65,8 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
     protected int tbpttFwdLength = 20;
     protected int tbpttBackLength = 20;
     protected boolean validateOutputLayerConfig = true; //Default to legacy for pre 1.0.0-beta3 networks on deserialization
+    protected int microBatchSize = 0;   //0: no gradient accumulation over micro-batches
+    protected int activationCheckpointInterval = 0;     //0: no activation recomputation
 
     @Getter
     @Setter
@@ -392,6 +395,8 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             clone.cacheMode = this.cacheMode;
             clone.validateOutputLayerConfig = this.validateOutputLayerConfig;
             clone.dataType = this.dataType;
+            clone.microBatchSize = this.microBatchSize;
+            clone.activationCheckpointInterval = this.activationCheckpointInterval;
 
             return clone;
 
@@ -479,6 +484,8 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
         protected boolean validateTbpttConfig = true;
         protected DataType dataType;
         protected boolean overrideNinUponBuild = true;
+        protected int microBatchSize = 0;
+        protected int activationCheckpointInterval = 0;
 
 
         /**
@@ -643,6 +650,46 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Gradient accumulation: if set to a value greater than 0, minibatches larger than this are split into
+         * micro-batches of (at most) this size during fitting. Gradients are accumulated over all micro-batches before
+         * a single updater step is applied for the full (logical) minibatch, hence peak activation memory scales with
+         * the micro-batch size rather than the minibatch size.<br>
+         * Mask arrays are split along with the features and labels, and the reported score is the average over all
+         * examples. Note that layers that compute statistics over the minibatch (such as batch normalization) use the
+         * micro-batch statistics in the forward pass; the batch norm global mean/variance estimates are updated once,
+         * using the micro-batch statistics averaged over the full minibatch.<br>
+         * Not applied for truncated BPTT. Default: 0 (disabled)
+         *
+         * @param microBatchSize Maximum micro-batch size, or 0 to disable
+         */
+        public Builder microBatchSize(int microBatchSize) {
+            Preconditions.checkArgument(microBatchSize >= 0, "Micro-batch size must be >= 0, got %s", microBatchSize);
+            this.microBatchSize = microBatchSize;
+            return this;
+        }
+
+        /**
+         * Activation recomputation (gradient checkpointing): if set to a value greater than 0, the layers of the network
+         * are split into segments of this many layers. During fitting, only the activations at the segment boundaries
+         * (the inputs to each segment) are kept in memory after the forward pass; the activations within each segment
+         * are recomputed from these checkpoints during backprop, one segment at a time, in the usual training
+         * workspaces. This trades one additional forward pass for reduced activation memory; for a network of N layers,
+         * an interval of approximately sqrt(N) minimizes peak activation memory.<br>
+         * The random number generator is re-seeded for each segment, so stochastic layers (such as dropout) use the same
+         * masks in the recomputed forward pass as in the original one. Note that TrainingListener.onForwardPass is not
+         * called when activation recomputation is active, as the full set of activations is never held in memory at once.<br>
+         * Not applied for truncated BPTT. Default: 0 (disabled)
+         *
+         * @param activationCheckpointInterval Number of layers per recomputation segment, or 0 to disable
+         */
+        public Builder activationCheckpointInterval(int activationCheckpointInterval) {
+            Preconditions.checkArgument(activationCheckpointInterval >= 0, "Activation checkpoint interval must be >= 0, got %s",
+                    activationCheckpointInterval);
+            this.activationCheckpointInterval = activationCheckpointInterval;
+            return this;
+        }
+
 
         public MultiLayerConfiguration build() {
             //Validate BackpropType setting
@@ -750,6 +797,8 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
             conf.cacheMode = cacheMode;
             conf.dataType = dataType;
+            conf.microBatchSize = microBatchSize;
+            conf.activationCheckpointInterval = activationCheckpointInterval;
 
             Nd4j.getRandom().setSeed(conf.getConf(0).getSeed());
 
@@ -331,6 +331,8 @@ public class NeuralNetConfiguration implements Serializable, Cloneable {
                     .inferenceWorkspaceMode(wsmTest).confs(list).validateOutputLayerConfig(validateOutputConfig)
                     .overrideNinUponBuild(overrideNinUponBuild)
                     .dataType(globalConfig.dataType)
+                    .microBatchSize(microBatchSize)
+                    .activationCheckpointInterval(activationCheckpointInterval)
                     .build();
         }
 
@@ -120,6 +120,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     //Workspaces for CUDNN. Pass to LayerWorkspaceMgr for re-use in cudnn helpers
     @Getter
     protected transient Map<String,Pointer> helperWorkspaces = new HashMap<>();
+    //Set when restored by ChunkedModelSerializer: keeps memory-mapped params alive, and holds deferred updater state
+    @Getter @Setter
+    protected transient ChunkedModelSerializer.Source chunkedModelSource;
 
     private transient final AtomicLong occupiedBy = new AtomicLong(-1);
 
@@ -204,6 +207,8 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     private transient INDArray[] labels;
     private transient INDArray[] inputMaskArrays;
     private transient INDArray[] labelMaskArrays;
+    //Gradient accumulation buffer, used when micro-batching is enabled. Not in any workspace
+    private transient INDArray gradientAccumulator;
 
     private transient int[] outputLayerIdxs;
 
@@ -1342,6 +1347,92 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
     }
 
     public void computeGradientAndScore() {
+        int microBatchSize = configuration.getMicroBatchSize();
+        if (microBatchSize > 0 && configuration.getBackpropType() != BackpropType.TruncatedBPTT
+                && labels != null && labels[0] != null && labels[0].size(0) > microBatchSize) {
+            computeGradientAndScoreMicroBatched(microBatchSize);
+        } else {
+            computeGradientAndScoreHelper();
+        }
+    }
+
+    /**
+     * Gradient accumulation: calculate the gradient and score for the current minibatch by splitting it into
+     * micro-batches of at most the specified size, and accumulating the gradients over all micro-batches.<br>
+     * Most gradients are sums over examples (division by the minibatch size happens in the updater), and are summed
+     * over micro-batches. Gradients that are not divided by the minibatch size (such as batch norm mean/variance
+     * estimates) are instead averaged, weighted by micro-batch size.
+     *
+     * @param microBatchSize Maximum micro-batch size
+     * @see ComputationGraphConfiguration.GraphBuilder#microBatchSize(int)
+     */
+    protected void computeGradientAndScoreMicroBatched(int microBatchSize) {
+        if (flattenedGradients == null) {
+            initGradientsView();
+        }
+        if (gradientAccumulator == null || gradientAccumulator.length() != flattenedGradients.length()) {
+            try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                gradientAccumulator = flattenedGradients.ulike();
+            }
+        }
+
+        INDArray[] fullInputs = inputs;
+        INDArray[] fullLabels = labels;
+        INDArray[] fMasks = inputMaskArrays;
+        INDArray[] lMasks = labelMaskArrays;
+        long n = fullLabels[0].size(0);
+        double totalScore = 0.0;
+        try {
+            for (long start = 0; start < n; start += microBatchSize) {
+                long end = Math.min(n, start + microBatchSize);
+                double fraction = (end - start) / (double) n;
+                inputs = microBatch(fullInputs, start, end);
+                labels = microBatch(fullLabels, start, end);
+                setLayerMaskArrays(microBatch(fMasks, start, end), microBatch(lMasks, start, end));
+
+                computeGradientAndScoreHelper();
+                totalScore += fraction * score;
+
+                for (GraphVertex gv : vertices) {
+                    if (!gv.hasLayer() || gv.getLayer() == null)
+                        continue;
+                    Layer l = gv.getLayer();
+                    for (String param : l.paramTable(false).keySet()) {
+                        if (!l.updaterDivideByMinibatch(param)) {
+                            INDArray g = gradient.getGradientFor(gv.getVertexName() + "_" + param);
+                            if (g != null) {
+                                g.muli(fraction);
+                            }
+                        }
+                    }
+                }
+
+                if (start == 0) {
+                    gradientAccumulator.assign(flattenedGradients);
+                } else {
+                    gradientAccumulator.addi(flattenedGradients);
+                }
+            }
+            flattenedGradients.assign(gradientAccumulator);
+            score = totalScore;
+        } finally {
+            inputs = fullInputs;
+            labels = fullLabels;
+            setLayerMaskArrays(fMasks, lMasks);
+        }
+    }
+
+    private static INDArray[] microBatch(INDArray[] arrays, long start, long end) {
+        if (arrays == null)
+            return null;
+        INDArray[] out = new INDArray[arrays.length];
+        for (int i = 0; i < arrays.length; i++) {
+            out[i] = arrays[i] == null ? null : arrays[i].get(NDArrayIndex.interval(start, end));
+        }
+        return out;
+    }
+
+    private void computeGradientAndScoreHelper() {
         synchronizeIterEpochCounts();
 
         LayerWorkspaceMgr workspaceMgr;
@@ -1367,6 +1458,15 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
         synchronizeIterEpochCounts();
 
+        int[] segmentStarts = (tbptt ? null : activationCheckpointSegments());
+        if (segmentStarts != null && segmentStarts.length > 1) {
+            computeGradientAndScoreCheckpointed(segmentStarts, workspaceMgr);
+            for(GraphVertex gv : vertices){
+                gv.clear();
+            }
+            return;
+        }
+
         //Calculate activations (which are stored in each layer, and used in backprop)
         try(MemoryWorkspace wsAllActivations = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
             Map<String, INDArray> activations = ffToLayerActivationsInWS(true, -1, getOutputLayerIndices(),
@@ -1388,23 +1488,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             score = 0.0;
             int outNum = 0;
             for (String s : configuration.getNetworkOutputs()) {
-                GraphVertex gv = verticesMap.get(s);
-                if(gv instanceof LayerVertex) {
-                    //At this point: the input to the output layer might not be set on the layer itself - just the vertex
-                    LayerVertex lv = (LayerVertex) gv;
-                    if(!lv.isSetLayerInput()) {
-                        lv.applyPreprocessorAndSetInput(workspaceMgr);
-                    }
-                }
-                Layer vertexLayer = gv.getLayer();
-                if (vertexLayer instanceof FrozenLayerWithBackprop) {
-                    vertexLayer = ((FrozenLayerWithBackprop) vertexLayer).getInsideLayer();
-                }
-                vertexLayer.setMaskArray((labelMaskArrays == null) ? null : labelMaskArrays[outNum]);
-
-                try(MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
-                    score += ((IOutputLayer) vertexLayer).computeScore(r, true, workspaceMgr);
-                }
+                score += outputLayerScore(s, outNum, r, workspaceMgr);
 
                 //Only want to add l1/l2 component once...
                 r = 0.0;
@@ -1426,6 +1510,177 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         }
     }
 
+    /**
+     * Calculate the score for the specified output layer, after backprop has been performed for it
+     */
+    private double outputLayerScore(String outputName, int outNum, double regularizationScore, LayerWorkspaceMgr workspaceMgr) {
+        GraphVertex gv = verticesMap.get(outputName);
+        if(gv instanceof LayerVertex) {
+            //At this point: the input to the output layer might not be set on the layer itself - just the vertex
+            LayerVertex lv = (LayerVertex) gv;
+            if(!lv.isSetLayerInput()) {
+                lv.applyPreprocessorAndSetInput(workspaceMgr);
+            }
+        }
+        Layer vertexLayer = gv.getLayer();
+        if (vertexLayer instanceof FrozenLayerWithBackprop) {
+            vertexLayer = ((FrozenLayerWithBackprop) vertexLayer).getInsideLayer();
+        }
+        vertexLayer.setMaskArray((labelMaskArrays == null) ? null : labelMaskArrays[outNum]);
+
+        try(MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+            return ((IOutputLayer) vertexLayer).computeScore(regularizationScore, true, workspaceMgr);
+        }
+    }
+
+    /**
+     * Get the positions in the topological order at which activation recomputation segments start, as configured
+     * via {@link ComputationGraphConfiguration.GraphBuilder#activationCheckpointInterval(int)} and
+     * {@link ComputationGraphConfiguration.GraphBuilder#activationCheckpoints(String...)}
+     *
+     * @return Segment start positions (first is always 0), or null if activation recomputation is not enabled
+     */
+    protected int[] activationCheckpointSegments() {
+        int interval = configuration.getActivationCheckpointInterval();
+        List<String> checkpoints = configuration.getActivationCheckpoints();
+        if (interval <= 0 && (checkpoints == null || checkpoints.isEmpty())) {
+            return null;
+        }
+
+        TreeSet<Integer> starts = new TreeSet<>();
+        starts.add(0);
+        if (interval > 0) {
+            for (int i = interval; i < topologicalOrder.length; i += interval) {
+                starts.add(i);
+            }
+        }
+        if (checkpoints != null) {
+            for (String s : checkpoints) {
+                int step = ArrayUtils.indexOf(topologicalOrder, verticesMap.get(s).getVertexIndex());
+                if (step + 1 < topologicalOrder.length) {
+                    starts.add(step + 1);
+                }
+            }
+        }
+
+        int[] out = new int[starts.size()];
+        int i = 0;
+        for (Integer step : starts) {
+            out[i++] = step;
+        }
+        return out;
+    }
+
+    /**
+     * Activation recomputation (gradient checkpointing): calculate the gradient and score for the current minibatch,
+     * keeping only the activations that cross segment boundaries in memory after the forward pass.<br>
+     * Each segment (a contiguous range of the topological order) is forward passed once, in its own WS_ALL_LAYERS_ACT
+     * scope; activations that are used by vertices in later segments are detached. Segments are then processed in
+     * reverse order: the forward pass for the segment is recomputed from the checkpointed activations, and backprop is
+     * performed through the segment. Activation gradients for vertices in earlier segments are detached and summed,
+     * to be used when that segment is processed. The RNG is re-seeded per segment so that dropout etc. is identical
+     * in the recomputed forward pass.
+     *
+     * @param segmentStarts Positions in the topological order at which each segment starts
+     * @param workspaceMgr  Workspace manager for the forward pass, backprop and score calculation
+     */
+    protected void computeGradientAndScoreCheckpointed(int[] segmentStarts, LayerWorkspaceMgr workspaceMgr) {
+        int nSegments = segmentStarts.length;
+        int[] outputIdxs = getOutputLayerIndices();
+
+        //Segment index for each vertex
+        int[] segmentForVertex = new int[topologicalOrder.length];
+        for (int k = 0; k < nSegments; k++) {
+            int end = (k == nSegments - 1 ? topologicalOrder.length : segmentStarts[k + 1]);
+            for (int i = segmentStarts[k]; i < end; i++) {
+                segmentForVertex[topologicalOrder[i]] = k;
+            }
+        }
+
+        setInputs(inputs);
+        setLayerMaskArrays(inputMaskArrays, labelMaskArrays);
+
+        //Checkpointed activations: network inputs, and any activations used in a later segment than they are produced
+        Map<Integer, INDArray> checkpoints = new HashMap<>();
+        for (GraphVertex gv : vertices) {
+            if (gv.isInputVertex()) {
+                checkpoints.put(gv.getVertexIndex(), inputs[gv.getVertexIndex()]);
+            }
+        }
+
+        //First: forward pass through all but the last segment, keeping only the checkpointed activations
+        long[] segmentSeeds = new long[nSegments];
+        for (int k = 0; k < nSegments; k++) {
+            segmentSeeds[k] = Nd4j.getRandom().nextLong();
+            if (k == nSegments - 1) {
+                break;
+            }
+            Nd4j.getRandom().setSeed(segmentSeeds[k]);
+            int end = segmentStarts[k + 1] - 1;
+            try (MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                Map<String, INDArray> activations = ffToLayerActivationsInWS(true, segmentStarts[k], end, outputIdxs,
+                        FwdPassType.STANDARD, false, checkpoints, false);
+                for (int i = segmentStarts[k]; i <= end; i++) {
+                    GraphVertex gv = vertices[topologicalOrder[i]];
+                    VertexIndices[] outputsTo = gv.getOutputVertices();
+                    if (gv.isInputVertex() || outputsTo == null || !activations.containsKey(gv.getVertexName())) {
+                        continue;
+                    }
+                    for (VertexIndices vi : outputsTo) {
+                        if (segmentForVertex[vi.getVertexIndex()] > k) {
+                            checkpoints.put(gv.getVertexIndex(), activations.get(gv.getVertexName()).detach());
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        long nextSeed = Nd4j.getRandom().nextLong();
+
+        //Then: recompute and backprop each segment in reverse order
+        LinkedList<Triple<String, INDArray, Character>> gradients = new LinkedList<>();
+        Map<Integer, INDArray> carriedEpsilons = new HashMap<>();
+        double r = calcRegularizationScore(true);
+        score = 0.0;
+        for (int k = nSegments - 1; k >= 0; k--) {
+            Nd4j.getRandom().setSeed(segmentSeeds[k]);
+            int end = (k == nSegments - 1 ? topologicalOrder.length - 1 : segmentStarts[k + 1] - 1);
+            try (MemoryWorkspace ws = workspaceMgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                ffToLayerActivationsInWS(true, segmentStarts[k], end, outputIdxs, FwdPassType.STANDARD, false,
+                        checkpoints, false);
+                calcBackpropGradients(segmentStarts[k], end, false, carriedEpsilons, gradients);
+
+                //Score for the output layers in this segment
+                int outNum = 0;
+                for (String s : configuration.getNetworkOutputs()) {
+                    if (segmentForVertex[verticesMap.get(s).getVertexIndex()] == k) {
+                        score += outputLayerScore(s, outNum, r, workspaceMgr);
+                        //Only want to add l1/l2 component once...
+                        r = 0.0;
+                    }
+                    outNum++;
+                }
+            }
+        }
+        Nd4j.getRandom().setSeed(nextSeed);
+
+        //Now, add the gradients in the order we need them in for flattening (same as params order)
+        Gradient gradient = new DefaultGradient(flattenedGradients);
+        for (Triple<String, INDArray, Character> tr : gradients) {
+            gradient.setGradientFor(tr.getFirst(), tr.getSecond(), tr.getThird());
+        }
+        this.gradient = gradient;
+
+        //Listeners
+        if (!trainingListeners.isEmpty()) {
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (TrainingListener tl : trainingListeners) {
+                    tl.onBackwardPass(this);
+                }
+            }
+        }
+    }
+
 
     /**
      * Conduct forward pass using a single input array. Note that this method can only be used with ComputationGraphs
@@ -2071,6 +2326,30 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         setInputs(input);
         setLayerMaskArrays(fMask, lMask);
 
+        //Do forward pass according to the topological ordering of the network
+        int stopIndex;
+        if (layerIndex > 0) {
+            stopIndex = ArrayUtils.indexOf(topologicalOrder, layerIndex);
+        } else {
+            stopIndex = topologicalOrder.length -1;
+        }
+        return ffToLayerActivationsInWS(train, 0, stopIndex, excludeIdxs, fwdPassType, storeLastForTBPTT, null, clearInputs);
+    }
+
+    /**
+     * Feed-forward through the vertices at positions fromStep to stopIndex (inclusive) of the topological order, as per
+     * {@link #ffToLayerActivationsInWS(boolean, int, int[], FwdPassType, boolean, INDArray[], INDArray[], INDArray[], boolean)}.
+     * The network inputs and mask arrays must already have been set; this is used to (re)compute a segment of the
+     * network when activation recomputation is enabled.
+     *
+     * @param fromStep      Position in the topological order to start the forward pass at
+     * @param stopIndex     Position in the topological order to stop the forward pass at (inclusive)
+     * @param segmentInputs Activations of vertices before fromStep that are required by vertices in this range, keyed
+     *                      by vertex index. These are set as inputs before the forward pass. May be null if fromStep is 0
+     */
+    protected Map<String,INDArray> ffToLayerActivationsInWS(boolean train, int fromStep, int stopIndex, int[] excludeIdxs,
+                                                            FwdPassType fwdPassType, boolean storeLastForTBPTT,
+                                                            Map<Integer,INDArray> segmentInputs, boolean clearInputs) {
         LayerWorkspaceMgr workspaceMgr;
         WorkspaceMode wsm = (train ? configuration.getTrainingWorkspaceMode() : configuration.getInferenceWorkspaceMode());
         if(wsm == WorkspaceMode.NONE){
@@ -2088,9 +2367,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
                     .build();
 
-            if(input[0].isAttached()){
+            if(inputs[0].isAttached()){
                 //Don't leverage out of async DataMultiSetIterator workspaces
-                workspaceMgr.setNoLeverageOverride(input[0].data().getParentWorkspace().getId());
+                workspaceMgr.setNoLeverageOverride(inputs[0].data().getParentWorkspace().getId());
             }
 
             if(configuration.getCacheMode() != CacheMode.NONE){
@@ -2102,15 +2381,24 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         boolean traceLog = log.isTraceEnabled();
 
-        Map<String, INDArray> activations = new HashMap<>();
-        //Do forward pass according to the topological ordering of the network
-        int stopIndex;
-        if (layerIndex > 0) {
-            stopIndex = ArrayUtils.indexOf(topologicalOrder, layerIndex);
-        } else {
-            stopIndex = topologicalOrder.length -1;
+        if(segmentInputs != null){
+            //Inputs from vertices outside of this range: set these first, in the current workspace
+            for (int i = fromStep; i <= stopIndex; i++) {
+                GraphVertex current = vertices[topologicalOrder[i]];
+                VertexIndices[] inputsFrom = current.getInputVertices();
+                if(current.isInputVertex() || inputsFrom == null)
+                    continue;
+                for (int j = 0; j < inputsFrom.length; j++) {
+                    INDArray in = segmentInputs.get(inputsFrom[j].getVertexIndex());
+                    if(in != null){
+                        current.setInput(j, in, workspaceMgr);
+                    }
+                }
+            }
         }
-        for (int i = 0; i <= stopIndex; i++) {
+
+        Map<String, INDArray> activations = new HashMap<>();
+        for (int i = fromStep; i <= stopIndex; i++) {
             GraphVertex current = vertices[topologicalOrder[i]];
             String vName = current.getVertexName();
             int vIdx = current.getVertexIndex();
@@ -2584,6 +2872,48 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
             initGradientsView();
         }
 
+        LinkedList<Triple<String, INDArray, Character>> gradients = new LinkedList<>();
+        calcBackpropGradients(0, topologicalOrder.length - 1, truncatedBPTT, null, gradients, externalEpsilons);
+
+        //Now, add the gradients in the order we need them in for flattening (same as params order)
+        Gradient gradient = new DefaultGradient(flattenedGradients);
+        for (Triple<String, INDArray, Character> tr : gradients) {
+            gradient.setGradientFor(tr.getFirst(), tr.getSecond(), tr.getThird());
+        }
+
+        this.gradient = gradient;
+
+        if(truncatedBPTT && clearTbpttState){
+            rnnClearPreviousState();
+        }
+
+        //Clear inputs and epsilons:
+        if(clearLayers) {
+            for (GraphVertex gv : vertices) {
+                gv.clear();
+            }
+        }
+    }
+
+    /**
+     * Do backprop for the vertices at positions fromStep to toStep (inclusive) of the topological order only. Used to
+     * backprop one segment of the network at a time when activation recomputation is enabled.
+     *
+     * @param fromStep           Position in the topological order to stop backprop at (inclusive)
+     * @param toStep             Position in the topological order to start backprop at
+     * @param carriedEpsilons    Activation gradients for vertices before fromStep, keyed by vertex index. Activation
+     *                           gradients for vertices in this range that are present in this map are used as the
+     *                           initial epsilons for those vertices; activation gradients for vertices before fromStep
+     *                           are detached and added to this map. May be null if fromStep is 0
+     * @param gradients          List to add the gradients to, in flattening order
+     * @param externalEpsilons   External errors, as per {@link #calcBackpropGradients(boolean, boolean, INDArray...)}
+     */
+    protected void calcBackpropGradients(int fromStep, int toStep, boolean truncatedBPTT, Map<Integer,INDArray> carriedEpsilons,
+                                         LinkedList<Triple<String, INDArray, Character>> gradients, INDArray... externalEpsilons) {
+        if (flattenedGradients == null) {
+            initGradientsView();
+        }
+
         /*
          Design for workspaces use in backprop for ComputationGraph is similar to MultiLayerNetwork and shares some
          features with outputOfLayersDetached
@@ -2637,9 +2967,19 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
             if(minStepOfInputFrom == Integer.MAX_VALUE){
                 //Input vertex, etc
-                vertexActGradsFullyConsumedByStep[idx] = 0;
+                vertexActGradsFullyConsumedByStep[idx] = fromStep;
             } else {
-                vertexActGradsFullyConsumedByStep[idx] = minStepOfInputFrom;
+                //Activation gradients for vertices before fromStep are detached as soon as they are calculated
+                vertexActGradsFullyConsumedByStep[idx] = Math.max(minStepOfInputFrom, fromStep);
+            }
+        }
+
+        //Position of each vertex in the topological order - for determining which epsilons leave this range
+        int[] stepForVertex = null;
+        if(carriedEpsilons != null){
+            stepForVertex = new int[topologicalOrder.length];
+            for( int i = 0; i < topologicalOrder.length; i++) {
+                stepForVertex[topologicalOrder[i]] = i;
             }
         }
 
@@ -2653,15 +2993,23 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         List<MemoryWorkspace>[] closeAtEndIteraton = (List<MemoryWorkspace>[])new List[topologicalOrder.length];
 
         //Do backprop, in reverse topological order
-        LinkedList<Triple<String, INDArray, Character>> gradients = new LinkedList<>();
         boolean[] setVertexEpsilon = new boolean[topologicalOrder.length]; //If true: already set epsilon for this vertex; later epsilons should be *added* to the existing one, not set
+        if(carriedEpsilons != null){
+            for(Map.Entry<Integer,INDArray> e : carriedEpsilons.entrySet()){
+                int step = stepForVertex[e.getKey()];
+                if(step >= fromStep && step <= toStep){
+                    vertices[e.getKey()].setEpsilon(e.getValue());
+                    setVertexEpsilon[e.getKey()] = true;
+                }
+            }
+        }
         MemoryWorkspace initialWorkspace = Nd4j.getMemoryManager().getCurrentWorkspace();
 
         boolean traceLog = log.isTraceEnabled();
 
         Throwable t = null;
         try {
-            for (int i = topologicalOrder.length - 1; i >= 0; i--) {
+            for (int i = toStep; i >= fromStep; i--) {
                 boolean hitFrozen = false;
                 GraphVertex current = vertices[topologicalOrder[i]];
                 int vIdx = current.getVertexIndex();
@@ -2790,6 +3138,15 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                     int j = 0;
                     for (VertexIndices v : inputVertices) {
                         GraphVertex gv = vertices[v.getVertexIndex()];
+                        if (carriedEpsilons != null && stepForVertex[gv.getVertexIndex()] < fromStep) {
+                            //Input is from a vertex before this range: carry the (detached) epsilon over
+                            INDArray eps = epsilons[j++];
+                            if (eps != null && !gv.isInputVertex()) {
+                                INDArray prev = carriedEpsilons.get(gv.getVertexIndex());
+                                carriedEpsilons.put(gv.getVertexIndex(), prev == null ? eps.detach() : prev.addi(eps));
+                            }
+                            continue;
+                        }
                         if (setVertexEpsilon[gv.getVertexIndex()]) {
                             //This vertex: must output to multiple vertices... we want to add the epsilons here
                             INDArray currentEps = gv.getEpsilon();
@@ -2860,25 +3217,6 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                 throw new RuntimeException("Error during neural network backpropagation calculation", t);
             }
         }
-
-        //Now, add the gradients in the order we need them in for flattening (same as params order)
-        Gradient gradient = new DefaultGradient(flattenedGradients);
-        for (Triple<String, INDArray, Character> tr : gradients) {
-            gradient.setGradientFor(tr.getFirst(), tr.getSecond(), tr.getThird());
-        }
-
-        this.gradient = gradient;
-
-        if(truncatedBPTT && clearTbpttState){
-            rnnClearPreviousState();
-        }
-
-        //Clear inputs and epsilons:
-        if(clearLayers) {
-            for (GraphVertex gv : vertices) {
-                gv.clear();
-            }
-        }
     }
 
     @Override
@@ -0,0 +1,555 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.inference;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.layers.ActivationLayer;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.DropoutLayer;
+import org.deeplearning4j.nn.conf.layers.LossLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.nn.graph.vertex.impl.LayerVertex;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.BatchNormalizationParamInitializer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.activations.impl.ActivationReLU;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastAddOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastMulOp;
+import org.nd4j.linalg.api.ops.impl.transforms.ReluLayer;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A precompiled inference plan for feed-forward networks, built once from a {@link MultiLayerNetwork} or a
+ * (single input, single output, linear chain) {@link ComputationGraph}.<br>
+ * At compile time, layers are converted to a short list of fused steps:<br>
+ * - Dense and output layers: matrix multiply + bias (+ ReLU) as a single op, followed by an in-place activation<br>
+ * - Batch normalization (inference mode, using the global mean/variance): folded into the weights and bias of the
+ * preceding dense layer where that layer has an identity activation, or otherwise applied as a single scale/shift<br>
+ * - Activation layers: merged into a preceding dense layer with an identity activation<br>
+ * - Dropout layers: removed (dropout is not applied at inference)<br>
+ * For each batch size used, all activation arrays (and the ops writing into them) are allocated once, outside of any
+ * workspace, and reused for every subsequent call. Buffers are kept for the most recently used batch sizes only (see
+ * {@link #setMaxCachedBatchSizes(int)}), so a stream of varying batch sizes doesn't grow memory use without bound.
+ * Workspaces, layer input/output validation and preprocessors are not used at all on the inference path.<br>
+ * Parameters are copied when the plan is compiled: changes to the network parameters after compilation are not
+ * reflected in the plan.<br>
+ * Outputs match {@link MultiLayerNetwork#output(INDArray)} up to floating point rounding differences caused by
+ * folding batch normalization into the preceding layer.<br>
+ * <b>Not thread safe</b>: use one plan per thread. The array returned by {@link #output(INDArray)} is owned by the
+ * plan and is overwritten by the next call with the same batch size; use {@link #output(INDArray, INDArray)} or dup
+ * the result if it needs to be kept.<br>
+ * Networks with layers other than those listed above (or with input preprocessors, layer normalization, etc) are
+ * not supported: use {@link #isSupported(MultiLayerNetwork)} to check, and fall back to the standard output methods
+ * otherwise.
+ */
+@Slf4j
+public class InferencePlan {
+    public static final int DEFAULT_MAX_CACHED_BATCH_SIZES = 8;
+
+    private final DataType dataType;
+    private long inputSize;
+    private final List<Step> steps;
+    private int maxCachedBatchSizes = DEFAULT_MAX_CACHED_BATCH_SIZES;
+    //Access-ordered: least recently used batch size is evicted first
+    private final Map<Integer, Buffers> buffers = new LinkedHashMap<Integer, Buffers>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Buffers> eldest) {
+            return size() > maxCachedBatchSizes;
+        }
+    };
+
+    private InferencePlan(DataType dataType, long inputSize, List<Step> steps) {
+        this.dataType = dataType;
+        this.inputSize = inputSize;
+        this.steps = steps;
+    }
+
+    /**
+     * Compile an inference plan for the given network
+     *
+     * @param net        Network to compile
+     * @param batchSizes Optional: batch sizes to pre-allocate buffers for. Buffers for other batch sizes are allocated
+     *                   on first use
+     * @return Compiled plan
+     * @throws UnsupportedOperationException If the network contains unsupported layers or configuration
+     */
+    public static InferencePlan compile(MultiLayerNetwork net, int... batchSizes) {
+        Preconditions.checkState(net.getLayers() != null, "Network must be initialized (call MultiLayerNetwork.init())");
+        Layer[] layers = net.getLayers();
+        InputPreProcessor[] preProcessors = new InputPreProcessor[layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            preProcessors[i] = net.getLayerWiseConfigurations().getInputPreProcess(i);
+        }
+        return compile(layers, preProcessors, net.getLayerWiseConfigurations().getDataType(), batchSizes);
+    }
+
+    /**
+     * Compile an inference plan for the given network. The network must have a single input, a single output and
+     * each layer must take its input from the previous layer only
+     *
+     * @param graph      Network to compile
+     * @param batchSizes Optional: batch sizes to pre-allocate buffers for. Buffers for other batch sizes are allocated
+     *                   on first use
+     * @return Compiled plan
+     * @throws UnsupportedOperationException If the network is not a chain, or contains unsupported layers or configuration
+     */
+    public static InferencePlan compile(ComputationGraph graph, int... batchSizes) {
+        List<Layer> layers = new ArrayList<>();
+        List<InputPreProcessor> preProcessors = new ArrayList<>();
+        linearize(graph, layers, preProcessors);
+        return compile(layers.toArray(new Layer[0]), preProcessors.toArray(new InputPreProcessor[0]),
+                graph.getConfiguration().getDataType(), batchSizes);
+    }
+
+    /**
+     * @return True if {@link #compile(MultiLayerNetwork, int...)} supports the given network
+     */
+    public static boolean isSupported(MultiLayerNetwork net) {
+        try {
+            for (int i = 0; i < net.getLayers().length; i++) {
+                checkSupported(net.getLayers()[i], net.getLayerWiseConfigurations().getInputPreProcess(i));
+            }
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return True if {@link #compile(ComputationGraph, int...)} supports the given network
+     */
+    public static boolean isSupported(ComputationGraph graph) {
+        try {
+            List<Layer> layers = new ArrayList<>();
+            List<InputPreProcessor> preProcessors = new ArrayList<>();
+            linearize(graph, layers, preProcessors);
+            for (int i = 0; i < layers.size(); i++) {
+                checkSupported(layers.get(i), preProcessors.get(i));
+            }
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private static void linearize(ComputationGraph graph, List<Layer> layers, List<InputPreProcessor> preProcessors) {
+        if (graph.getNumInputArrays() != 1 || graph.getNumOutputArrays() != 1) {
+            throw new UnsupportedOperationException("Only graphs with a single input and a single output are supported");
+        }
+        GraphVertex[] vertices = graph.getVertices();
+        int prev = -1;
+        for (int idx : graph.topologicalSortOrder()) {
+            GraphVertex v = vertices[idx];
+            if (v.isInputVertex()) {
+                prev = idx;
+                continue;
+            }
+            if (!(v instanceof LayerVertex)) {
+                throw new UnsupportedOperationException("Only graphs consisting of layer vertices are supported: got vertex \""
+                        + v.getVertexName() + "\" of type " + v.getClass().getSimpleName());
+            }
+            if (v.getInputVertices() == null || v.getInputVertices().length != 1
+                    || v.getInputVertices()[0].getVertexIndex() != prev) {
+                throw new UnsupportedOperationException("Only linear chains of layers are supported: vertex \""
+                        + v.getVertexName() + "\" does not take its input from the previous layer only");
+            }
+            layers.add(v.getLayer());
+            preProcessors.add(((LayerVertex) v).getLayerPreProcessor());
+            prev = idx;
+        }
+    }
+
+    private static void checkSupported(Layer layer, InputPreProcessor preProcessor) {
+        org.deeplearning4j.nn.conf.layers.Layer conf = layer.conf().getLayer();
+        if (preProcessor != null) {
+            throw new UnsupportedOperationException("Input preprocessors are not supported: layer \"" + conf.getLayerName()
+                    + "\" has preprocessor " + preProcessor.getClass().getSimpleName());
+        }
+        Class<?> c = conf.getClass();
+        if (c == DenseLayer.class) {
+            if (((DenseLayer) conf).hasLayerNorm()) {
+                throw new UnsupportedOperationException("Dense layers with layer normalization are not supported");
+            }
+        } else if (c != OutputLayer.class && c != BatchNormalization.class && c != ActivationLayer.class
+                && c != DropoutLayer.class && c != LossLayer.class) {
+            throw new UnsupportedOperationException("Layer type not supported: " + c.getSimpleName()
+                    + " (layer \"" + conf.getLayerName() + "\")");
+        }
+    }
+
+    private static InferencePlan compile(Layer[] layers, InputPreProcessor[] preProcessors, DataType dataType, int[] batchSizes) {
+        List<Step> steps = new ArrayList<>();
+        long inputSize = -1;
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            for (int i = 0; i < layers.length; i++) {
+                Layer l = layers[i];
+                checkSupported(l, preProcessors[i]);
+                org.deeplearning4j.nn.conf.layers.Layer conf = l.conf().getLayer();
+                Step last = steps.isEmpty() ? null : steps.get(steps.size() - 1);
+
+                if (conf instanceof DenseLayer || conf instanceof OutputLayer) {
+                    INDArray w = l.getParam(DefaultParamInitializer.WEIGHT_KEY).castTo(dataType).dup('c');
+                    INDArray b = l.getParam(DefaultParamInitializer.BIAS_KEY);
+                    b = b == null ? Nd4j.zeros(dataType, w.size(1)) : b.castTo(dataType).dup().reshape(w.size(1));
+                    IActivation afn = ((org.deeplearning4j.nn.conf.layers.BaseLayer) conf).getActivationFn();
+                    if (inputSize < 0 && steps.isEmpty())
+                        inputSize = w.size(0);
+                    steps.add(new DenseStep(w, b, afn));
+                } else if (conf instanceof BatchNormalization) {
+                    BatchNormalization bn = (BatchNormalization) conf;
+                    INDArray[] ss = batchNormScaleShift(l, bn, dataType);
+                    if (inputSize < 0 && steps.isEmpty())
+                        inputSize = ss[0].length();
+                    if (last instanceof DenseStep && ((DenseStep) last).isIdentity()) {
+                        ((DenseStep) last).fold(ss[0], ss[1]);
+                    } else if (last instanceof ScaleShiftStep) {
+                        ((ScaleShiftStep) last).fold(ss[0], ss[1]);
+                    } else {
+                        steps.add(new ScaleShiftStep(ss[0], ss[1]));
+                    }
+                } else if (conf instanceof ActivationLayer || conf instanceof LossLayer) {
+                    //Loss layer: output is the activation function applied to the input
+                    IActivation afn = conf instanceof ActivationLayer ? ((ActivationLayer) conf).getActivationFn()
+                            : ((LossLayer) conf).getActivationFn();
+                    if (afn instanceof ActivationIdentity)
+                        continue;
+                    if (last instanceof DenseStep && ((DenseStep) last).isIdentity()) {
+                        ((DenseStep) last).activation = afn;
+                    } else {
+                        steps.add(new ActivationStep(afn));
+                    }
+                }
+                //DropoutLayer: no-op at inference
+            }
+        }
+
+        if (steps.isEmpty()) {
+            throw new UnsupportedOperationException("Network has no layers that perform computation at inference time");
+        }
+
+        InferencePlan plan = new InferencePlan(dataType, inputSize, steps);
+        if (batchSizes != null) {
+            plan.maxCachedBatchSizes = Math.max(DEFAULT_MAX_CACHED_BATCH_SIZES, batchSizes.length);
+            for (int b : batchSizes) {
+                Preconditions.checkArgument(b > 0, "Batch sizes must be > 0: got %s", b);
+                Preconditions.checkState(inputSize > 0, "Cannot pre-allocate buffers: input size is not known until first use");
+                plan.buffersFor(b, inputSize);
+            }
+        }
+        log.debug("Compiled inference plan with {} steps from {} layers", steps.size(), layers.length);
+        return plan;
+    }
+
+    /**
+     * Get the inference-time batch normalization parameters as a per-feature scale and shift:
+     * out = in * scale + shift, with scale = gamma / sqrt(var + eps) and shift = beta - mean * scale
+     */
+    private static INDArray[] batchNormScaleShift(Layer l, BatchNormalization bn, DataType dataType) {
+        INDArray mean = l.getParam(BatchNormalizationParamInitializer.GLOBAL_MEAN).castTo(DataType.DOUBLE).reshape(-1);
+        INDArray var;
+        if (bn.isUseLogStd()) {
+            //var = (10^log10(s))^2 = exp(2 * ln(10) * log10(s))
+            INDArray log10s = l.getParam(BatchNormalizationParamInitializer.GLOBAL_LOG_STD).castTo(DataType.DOUBLE).reshape(-1);
+            var = Transforms.exp(log10s.mul(2 * Math.log(10)), false);
+        } else {
+            var = l.getParam(BatchNormalizationParamInitializer.GLOBAL_VAR).castTo(DataType.DOUBLE).reshape(-1);
+        }
+        INDArray scale = Transforms.pow(var.add(bn.getEps()), -0.5, false);
+        INDArray shift;
+        if (bn.isLockGammaBeta()) {
+            //Same logic as the BatchNormalization layer implementation: fixed gamma/beta are only applied when both
+            //differ from their defaults
+            double g = bn.getGamma();
+            double b = bn.getBeta();
+            if (g != 1.0 && b != 0.0) {
+                scale.muli(g);
+                shift = mean.mul(scale).rsubi(b);
+            } else {
+                shift = mean.mul(scale).negi();
+            }
+        } else {
+            INDArray gamma = l.getParam(BatchNormalizationParamInitializer.GAMMA).castTo(DataType.DOUBLE).reshape(-1);
+            INDArray beta = l.getParam(BatchNormalizationParamInitializer.BETA).castTo(DataType.DOUBLE).reshape(-1);
+            scale.muli(gamma);
+            shift = beta.sub(mean.mul(scale));
+        }
+        return new INDArray[]{scale, shift};
+    }
+
+    /**
+     * @return Number of (fused) steps in this plan
+     */
+    public int numSteps() {
+        return steps.size();
+    }
+
+    /**
+     * @return A short description of the steps in this plan, one per line
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < steps.size(); i++) {
+            sb.append(i).append(": ").append(steps.get(i)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Perform inference. The returned array is owned by this plan, and is overwritten by the next call with the same
+     * batch size
+     *
+     * @param input Input features, shape [batchSize, nIn]
+     * @return Network output
+     */
+    public INDArray output(INDArray input) {
+        Preconditions.checkArgument(input.rank() == 2, "Input must be rank 2, got input with shape %ndShape", input);
+        long size = input.size(1);
+        if (inputSize > 0) {
+            Preconditions.checkArgument(size == inputSize, "Invalid input: expected input with size(1) = %s, got shape %ndShape",
+                    inputSize, input);
+        }
+        if (inputSize < 0)
+            inputSize = size;
+        Buffers b = buffersFor((int) input.size(0), size);
+        return b.exec(input);
+    }
+
+    /**
+     * Perform inference, writing the network output into the provided array
+     *
+     * @param input  Input features, shape [batchSize, nIn]
+     * @param output Array to write the output to. Must have the same shape as the network output
+     */
+    public void output(INDArray input, INDArray output) {
+        output.assign(output(input));
+    }
+
+    /**
+     * Set the maximum number of batch sizes to keep buffers for. When buffers for a new batch size are needed and the
+     * limit is reached, buffers of the least recently used batch size are released.<br>
+     * Default: {@link #DEFAULT_MAX_CACHED_BATCH_SIZES}, or the number of batch sizes pre-allocated at compile time if larger
+     *
+     * @param maxCachedBatchSizes Maximum number of batch sizes to keep buffers for. Must be > 0
+     */
+    public void setMaxCachedBatchSizes(int maxCachedBatchSizes) {
+        Preconditions.checkArgument(maxCachedBatchSizes > 0, "Max cached batch sizes must be > 0, got %s", maxCachedBatchSizes);
+        this.maxCachedBatchSizes = maxCachedBatchSizes;
+        Iterator<Integer> iter = buffers.keySet().iterator();
+        while (buffers.size() > maxCachedBatchSizes && iter.hasNext()) {
+            iter.next();
+            iter.remove();
+        }
+    }
+
+    /**
+     * @return Maximum number of batch sizes buffers are kept for
+     */
+    public int getMaxCachedBatchSizes() {
+        return maxCachedBatchSizes;
+    }
+
+    /**
+     * @return Number of batch sizes buffers are currently allocated for
+     */
+    public int numCachedBatchSizes() {
+        return buffers.size();
+    }
+
+    private Buffers buffersFor(int batchSize, long inSize) {
+        Buffers b = buffers.get(batchSize);
+        if (b == null) {
+            try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                b = new Buffers(batchSize, inSize);
+            }
+            buffers.put(batchSize, b);
+        }
+        return b;
+    }
+
+    /**
+     * Pre-allocated arrays and ops for one batch size
+     */
+    private class Buffers {
+        private final INDArray inputCopy;
+        private final INDArray[] outputs;
+        private final DynamicCustomOp firstDenseOp;
+        private final Runnable[] exec;
+
+        private Buffers(int batchSize, long inSize) {
+            inputCopy = Nd4j.create(dataType, batchSize, inSize);
+            outputs = new INDArray[steps.size()];
+            exec = new Runnable[steps.size()];
+            INDArray in = inputCopy;
+            DynamicCustomOp first = null;
+            for (int i = 0; i < steps.size(); i++) {
+                Step s = steps.get(i);
+                if (s instanceof DenseStep) {
+                    DenseStep d = (DenseStep) s;
+                    INDArray out = Nd4j.create(dataType, batchSize, d.w.size(1));
+                    DynamicCustomOp op = d.fusedRelu() ? new ReluLayer(in, d.w, d.b) : new XwPlusB(new INDArray[]{in, d.w, d.b}, null);
+                    op.setOutputArgument(0, out);
+                    final IActivation afn = d.fusedRelu() || d.isIdentity() ? null : d.activation;
+                    exec[i] = () -> {
+                        Nd4j.exec(op);
+                        if (afn != null)
+                            afn.getActivation(out, false);
+                    };
+                    if (i == 0)
+                        first = op;
+                    outputs[i] = out;
+                } else if (s instanceof ScaleShiftStep) {
+                    ScaleShiftStep ss = (ScaleShiftStep) s;
+                    INDArray out = Nd4j.create(dataType, batchSize, ss.scale.length());
+                    BroadcastMulOp mul = new BroadcastMulOp(in, ss.scale.castTo(dataType), out, 1);
+                    BroadcastAddOp add = new BroadcastAddOp(out, ss.shift.castTo(dataType), out, 1);
+                    exec[i] = () -> {
+                        Nd4j.getExecutioner().exec(mul);
+                        Nd4j.getExecutioner().exec(add);
+                    };
+                    outputs[i] = out;
+                } else {
+                    ActivationStep as = (ActivationStep) s;
+                    //In place on the previous step's output, or on the copy of the input for the first step
+                    final INDArray out = in;
+                    exec[i] = () -> as.activation.getActivation(out, false);
+                    outputs[i] = out;
+                }
+                in = outputs[i];
+            }
+            firstDenseOp = first;
+        }
+
+        private INDArray exec(INDArray input) {
+            boolean direct = firstDenseOp != null && input.dataType() == dataType && input.ordering() == 'c' && !input.isView();
+            if (direct) {
+                //Dense first layer: read the input directly, no copy required
+                firstDenseOp.setInputArgument(0, input);
+            } else {
+                inputCopy.assign(input);
+            }
+            for (Runnable r : exec) {
+                r.run();
+            }
+            if (direct) {
+                //Don't retain a reference to the caller's array
+                firstDenseOp.setInputArgument(0, inputCopy);
+            }
+            return outputs[outputs.length - 1];
+        }
+    }
+
+    private interface Step {
+    }
+
+    private static class DenseStep implements Step {
+        private final INDArray w;
+        private final INDArray b;
+        private IActivation activation;
+
+        private DenseStep(INDArray w, INDArray b, IActivation activation) {
+            this.w = w;
+            this.b = b;
+            this.activation = activation;
+        }
+
+        private boolean isIdentity() {
+            return activation == null || activation instanceof ActivationIdentity;
+        }
+
+        private boolean fusedRelu() {
+            if (!(activation instanceof ActivationReLU))
+                return false;
+            ActivationReLU r = (ActivationReLU) activation;
+            return r.getMax() == null && r.getThreshold() == null && r.getNegativeSlope() == null;
+        }
+
+        /**
+         * Fold a following per-output scale and shift into this layer: (xW + b) * s + t = x(W*s) + (b*s + t)
+         */
+        private void fold(INDArray scale, INDArray shift) {
+            INDArray s = scale.castTo(w.dataType());
+            w.muliRowVector(s);
+            b.muli(s).addi(shift.castTo(b.dataType()));
+        }
+
+        @Override
+        public String toString() {
+            return "Dense(" + w.size(0) + "->" + w.size(1) + (fusedRelu() ? ", fused bias+relu" : ", fused bias")
+                    + (isIdentity() || fusedRelu() ? "" : ", activation=" + activation) + ")";
+        }
+    }
+
+    private static class ScaleShiftStep implements Step {
+        private INDArray scale;
+        private INDArray shift;
+
+        private ScaleShiftStep(INDArray scale, INDArray shift) {
+            this.scale = scale;
+            this.shift = shift;
+        }
+
+        /**
+         * Fold a following scale and shift: (x * s1 + t1) * s2 + t2 = x * (s1*s2) + (t1*s2 + t2)
+         */
+        private void fold(INDArray scale2, INDArray shift2) {
+            scale = scale.mul(scale2);
+            shift = shift.mul(scale2).addi(shift2);
+        }
+
+        @Override
+        public String toString() {
+            return "ScaleShift(" + scale.length() + ")";
+        }
+    }
+
+    private static class ActivationStep implements Step {
+        private final IActivation activation;
+
+        private ActivationStep(IActivation activation) {
+            this.activation = activation;
+        }
+
+        @Override
+        public String toString() {
+            return "Activation(" + activation + ")";
+        }
+    }
+}
@@ -0,0 +1,536 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.inference;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.api.layers.RecurrentLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.scatter.ScatterUpdate;
+import org.nd4j.linalg.api.ops.impl.shape.Gather;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Session-aware streaming inference for recurrent networks.<br>
+ * {@link MultiLayerNetwork#rnnTimeStep(INDArray)} and {@link ComputationGraph#rnnTimeStep(INDArray...)} keep the
+ * recurrent state inside the network's layers, hence one network instance can only serve one stream at a time.
+ * This class instead keeps the recurrent state of each session in an external state store: one pre-allocated
+ * (off-heap) array per layer state, with one slot (row) per session. For each forward pass, the states of the
+ * sessions in the batch are gathered from the store and set on the layers, the network is stepped once for all of
+ * the sessions, and the updated states are scattered back to the store. Consequently, a single network instance can
+ * serve a large number of concurrent sessions, with the steps from many sessions executed as one minibatch.<br>
+ * <br>
+ * Two usage modes are available:<br>
+ * - {@link #step(List, INDArray...)}: explicitly batched - one example (row) per session<br>
+ * - {@link #submit(String, INDArray...)}: one session per call, with requests from many threads collected into
+ * batches (up to {@link Builder#maxBatchSize(int)}) by a background thread<br>
+ * <br>
+ * Sessions are created on first use, and ended either explicitly ({@link #endSession(String)}), after being idle for
+ * longer than {@link Builder#idleTimeout(long, TimeUnit)}, or (if enabled) when the store is full and a slot is
+ * required for a new session, in which case the least recently used session is evicted. A session that has been
+ * evicted simply starts again from the initial (zero) state on its next step.<br>
+ * <br>
+ * Note that the network must not be used for other purposes (including rnnTimeStep) while in use by this class,
+ * and the state of the network's recurrent layers is cleared after every step.
+ */
+@Slf4j
+public class RnnSessionManager implements Closeable {
+
+    public static final int DEFAULT_MAX_SESSIONS = 1024;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    private final Model model;
+    private final RecurrentLayer[] rnnLayers;
+    private final int maxSessions;
+    private final int maxBatchSize;
+    private final long maxBatchWaitNanos;
+    private final long idleTimeoutNanos;
+    private final boolean evictWhenFull;
+
+    //Session ID -> slot index. Access ordered, for least-recently-used eviction
+    private final LinkedHashMap<String, Integer> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final long[] lastAccessNanos;
+    //Per RNN layer: state key -> [maxSessions, ...] state store. Allocated on first step, when shapes are known
+    private final List<Map<String, INDArray>> store;
+    private long evictedCount;
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private volatile Thread batchingThread;
+    private volatile boolean closed;
+
+    private RnnSessionManager(Builder b) {
+        this.model = b.model;
+        this.maxSessions = b.maxSessions;
+        this.maxBatchSize = b.maxBatchSize;
+        this.maxBatchWaitNanos = b.maxBatchWaitNanos;
+        this.idleTimeoutNanos = b.idleTimeoutNanos;
+        this.evictWhenFull = b.evictWhenFull;
+
+        Layer[] layers = model instanceof MultiLayerNetwork ? ((MultiLayerNetwork) model).getLayers() : ((ComputationGraph) model).getLayers();
+        Preconditions.checkState(layers != null, "Network must be initialized before use");
+        List<RecurrentLayer> l = new ArrayList<>();
+        for (Layer layer : layers) {
+            while (layer instanceof BaseWrapperLayer) {
+                layer = ((BaseWrapperLayer) layer).getUnderlying();
+            }
+            if (layer instanceof RecurrentLayer) {
+                l.add((RecurrentLayer) layer);
+            }
+        }
+        Preconditions.checkState(!l.isEmpty(), "Network does not have any recurrent layers");
+        this.rnnLayers = l.toArray(new RecurrentLayer[0]);
+        this.store = new ArrayList<>(rnnLayers.length);
+        for (int i = 0; i < rnnLayers.length; i++) {
+            store.add(new HashMap<>());
+        }
+        this.lastAccessNanos = new long[maxSessions];
+        for (int i = 0; i < maxSessions; i++) {
+            freeSlots.add(i);
+        }
+    }
+
+    /**
+     * Perform one or more time steps for the specified sessions, as one minibatch. Example i of the input arrays
+     * (and output arrays) corresponds to session i. A session may only appear once per call.<br>
+     * Input/output shapes are as per {@link MultiLayerNetwork#rnnTimeStep(INDArray)}
+     *
+     * @param sessionIds IDs of the sessions. New sessions are created as required
+     * @param inputs     Network inputs, with size(0) equal to the number of sessions
+     * @return Network outputs
+     */
+    public synchronized INDArray[] step(@NonNull List<String> sessionIds, @NonNull INDArray... inputs) {
+        Preconditions.checkState(!closed, "RnnSessionManager has been closed");
+        int n = sessionIds.size();
+        Preconditions.checkArgument(n > 0, "No session IDs were provided");
+        Preconditions.checkArgument(n <= maxSessions, "Cannot step %s sessions at once: maximum number of sessions is %s", n, maxSessions);
+        for (INDArray in : inputs) {
+            Preconditions.checkArgument(in.size(0) == n, "Expected inputs with size(0) = %s (number of sessions), got input with shape %ndShape", n, in);
+        }
+
+        long now = System.nanoTime();
+        evictIdle(now);
+
+        Set<String> inBatch = new HashSet<>(sessionIds);
+        Preconditions.checkArgument(inBatch.size() == n, "Session IDs must be unique within a batch: got %s", sessionIds);
+        int[] idx = new int[n];
+        for (int i = 0; i < n; i++) {
+            idx[i] = slotFor(sessionIds.get(i), inBatch);
+            lastAccessNanos[idx[i]] = now;
+        }
+
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            INDArray slotIdx = Nd4j.createFromArray(idx);
+
+            //Gather: session states from the store -> layers
+            for (int i = 0; i < rnnLayers.length; i++) {
+                Map<String, INDArray> s = store.get(i);
+                if (s.isEmpty()) {
+                    //First step: no stored state yet, all sessions start from the default (zero) state
+                    rnnLayers[i].rnnClearPreviousState();
+                } else {
+                    Map<String, INDArray> state = new HashMap<>();
+                    for (Map.Entry<String, INDArray> e : s.entrySet()) {
+                        state.put(e.getKey(), Nd4j.exec(new Gather(e.getValue(), slotIdx, 0))[0]);
+                    }
+                    rnnLayers[i].rnnSetPreviousState(state);
+                }
+            }
+
+            INDArray[] out;
+            try {
+                if (model instanceof MultiLayerNetwork) {
+                    Preconditions.checkArgument(inputs.length == 1, "MultiLayerNetwork has 1 input, got %s inputs", inputs.length);
+                    out = new INDArray[]{((MultiLayerNetwork) model).rnnTimeStep(inputs[0])};
+                } else {
+                    out = ((ComputationGraph) model).rnnTimeStep(inputs);
+                }
+
+                //Scatter: updated layer states -> store
+                for (int i = 0; i < rnnLayers.length; i++) {
+                    Map<String, INDArray> newState = rnnLayers[i].rnnGetPreviousState();
+                    if (newState == null)
+                        continue;
+                    Map<String, INDArray> s = store.get(i);
+                    for (Map.Entry<String, INDArray> e : newState.entrySet()) {
+                        INDArray update = e.getValue();
+                        INDArray arr = s.get(e.getKey());
+                        if (arr == null) {
+                            long[] shape = update.shape().clone();
+                            shape[0] = maxSessions;
+                            arr = Nd4j.create(update.dataType(), shape);
+                            s.put(e.getKey(), arr);
+                        }
+                        int[] dims = new int[update.rank() - 1];
+                        for (int d = 0; d < dims.length; d++) {
+                            dims[d] = d + 1;
+                        }
+                        Nd4j.scatterUpdate(ScatterUpdate.UpdateOp.ASSIGN, arr, slotIdx, update.castTo(arr.dataType()), dims);
+                    }
+                }
+            } finally {
+                for (RecurrentLayer l : rnnLayers) {
+                    l.rnnClearPreviousState();
+                }
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Perform one or more time steps for a single session, asynchronously. Requests from different sessions (and
+     * threads) are combined into minibatches of up to {@link Builder#maxBatchSize(int)} sessions. Requests for the
+     * same session are executed in the order they were submitted.<br>
+     * Only requests with the same input shapes can be batched together.
+     *
+     * @param sessionId ID of the session
+     * @param inputs    Network inputs, with size(0) == 1
+     * @return Future for the network outputs
+     */
+    public Future<INDArray[]> submit(@NonNull String sessionId, @NonNull INDArray... inputs) {
+        Preconditions.checkState(!closed, "RnnSessionManager has been closed");
+        for (INDArray in : inputs) {
+            Preconditions.checkArgument(in.size(0) == 1, "Expected inputs with size(0) = 1, got input with shape %ndShape", in);
+        }
+        startBatchingThread();
+        Request r = new Request(sessionId, inputs);
+        queue.add(r);
+        if (closed && queue.remove(r)) {
+            //close() may have drained the queue before this request was added: nothing else will complete it
+            r.future.completeExceptionally(new IllegalStateException("RnnSessionManager has been closed"));
+        }
+        return r.future;
+    }
+
+    /**
+     * End the specified session, releasing its slot in the state store
+     *
+     * @return True if the session existed
+     */
+    public synchronized boolean endSession(@NonNull String sessionId) {
+        Integer slot = slots.remove(sessionId);
+        if (slot == null)
+            return false;
+        freeSlots.add(slot);
+        return true;
+    }
+
+    /**
+     * @return True if the specified session currently exists (i.e., has not ended or been evicted)
+     */
+    public synchronized boolean hasSession(@NonNull String sessionId) {
+        return slots.containsKey(sessionId);
+    }
+
+    /**
+     * @return Number of sessions currently in the state store
+     */
+    public synchronized int numSessions() {
+        return slots.size();
+    }
+
+    /**
+     * @return Total number of sessions evicted so far, due to either the idle timeout or the store being full
+     */
+    public synchronized long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * Evict all sessions that have been idle for longer than the idle timeout. This is also done automatically
+     * before each step
+     *
+     * @return Number of sessions evicted
+     */
+    public synchronized int evictIdle() {
+        return evictIdle(System.nanoTime());
+    }
+
+    private int evictIdle(long now) {
+        if (idleTimeoutNanos <= 0)
+            return 0;
+        int count = 0;
+        Iterator<Map.Entry<String, Integer>> iter = slots.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<String, Integer> e = iter.next();
+            if (now - lastAccessNanos[e.getValue()] <= idleTimeoutNanos) {
+                //Access ordered: all remaining sessions were used more recently
+                break;
+            }
+            iter.remove();
+            freeSlots.add(e.getValue());
+            count++;
+        }
+        evictedCount += count;
+        return count;
+    }
+
+    private int slotFor(String sessionId, Set<String> inBatch) {
+        Integer slot = slots.get(sessionId);
+        if (slot != null)
+            return slot;
+
+        if (freeSlots.isEmpty()) {
+            if (!evictWhenFull) {
+                throw new IllegalStateException("Cannot create session \"" + sessionId + "\": maximum number of sessions ("
+                        + maxSessions + ") reached");
+            }
+            //Evict the least recently used session that is not part of the current batch
+            Iterator<Map.Entry<String, Integer>> iter = slots.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<String, Integer> e = iter.next();
+                if (!inBatch.contains(e.getKey())) {
+                    iter.remove();
+                    freeSlots.add(e.getValue());
+                    evictedCount++;
+                    log.debug("Evicted least recently used session \"{}\"", e.getKey());
+                    break;
+                }
+            }
+        }
+
+        slot = freeSlots.poll();
+        //Reset the slot to the initial (zero) state
+        for (Map<String, INDArray> s : store) {
+            for (INDArray arr : s.values()) {
+                arr.get(NDArrayIndex.point(slot)).assign(0);
+            }
+        }
+        slots.put(sessionId, slot);
+        return slot;
+    }
+
+    private synchronized void startBatchingThread() {
+        if (batchingThread != null || closed)
+            return;
+        batchingThread = new Thread(this::batchLoop, "RnnSessionManager-batching");
+        batchingThread.setDaemon(true);
+        batchingThread.start();
+    }
+
+    private void batchLoop() {
+        List<Request> pending = new ArrayList<>();
+        while (!closed) {
+            try {
+                if (pending.isEmpty()) {
+                    pending.add(queue.take());
+                }
+                long deadline = System.nanoTime() + maxBatchWaitNanos;
+                while (pending.size() < maxBatchSize) {
+                    long wait = deadline - System.nanoTime();
+                    Request r = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (r == null)
+                        break;
+                    pending.add(r);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            //Select requests for this batch: at most one per session (preserving per-session order), same input shapes
+            List<Request> batch = new ArrayList<>();
+            Set<String> sessions = new HashSet<>();
+            Iterator<Request> iter = pending.iterator();
+            while (iter.hasNext() && batch.size() < maxBatchSize) {
+                Request r = iter.next();
+                if (!sessions.add(r.sessionId))
+                    continue;
+                if (!batch.isEmpty() && !sameShapes(batch.get(0).inputs, r.inputs)) {
+                    //Later requests for this session must wait for this one
+                    continue;
+                }
+                batch.add(r);
+                iter.remove();
+            }
+
+            try {
+                List<String> ids = new ArrayList<>(batch.size());
+                INDArray[] in = new INDArray[batch.get(0).inputs.length];
+                for (Request r : batch) {
+                    ids.add(r.sessionId);
+                }
+                for (int i = 0; i < in.length; i++) {
+                    INDArray[] toConcat = new INDArray[batch.size()];
+                    for (int j = 0; j < toConcat.length; j++) {
+                        toConcat[j] = batch.get(j).inputs[i];
+                    }
+                    in[i] = toConcat.length == 1 ? toConcat[0] : Nd4j.concat(0, toConcat);
+                }
+                INDArray[] out = step(ids, in);
+                for (int j = 0; j < batch.size(); j++) {
+                    INDArray[] o = new INDArray[out.length];
+                    for (int i = 0; i < out.length; i++) {
+                        o[i] = out[i].get(NDArrayIndex.interval(j, j + 1)).dup();
+                    }
+                    batch.get(j).future.complete(o);
+                }
+            } catch (Throwable t) {
+                for (Request r : batch) {
+                    r.future.completeExceptionally(t);
+                }
+            }
+        }
+
+        RuntimeException e = new IllegalStateException("RnnSessionManager has been closed");
+        for (Request r : pending) {
+            r.future.completeExceptionally(e);
+        }
+    }
+
+    private static boolean sameShapes(INDArray[] a, INDArray[] b) {
+        if (a.length != b.length)
+            return false;
+        for (int i = 0; i < a.length; i++) {
+            if (!Arrays.equals(a[i].shape(), b[i].shape()) || a[i].dataType() != b[i].dataType())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stop the batching thread (if any), fail any pending asynchronous requests, and release the state store
+     */
+    @Override
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            //Under the lock, so no batching thread can be started after this point
+            closed = true;
+            t = batchingThread;
+        }
+        if (t != null) {
+            t.interrupt();
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        RuntimeException e = new IllegalStateException("RnnSessionManager has been closed");
+        Request r;
+        while ((r = queue.poll()) != null) {
+            r.future.completeExceptionally(e);
+        }
+        synchronized (this) {
+            slots.clear();
+            for (Map<String, INDArray> s : store) {
+                for (INDArray arr : s.values()) {
+                    arr.close();
+                }
+                s.clear();
+            }
+        }
+    }
+
+    private static class Request {
+        private final String sessionId;
+        private final INDArray[] inputs;
+        private final CompletableFuture<INDArray[]> future = new CompletableFuture<>();
+
+        private Request(String sessionId, INDArray[] inputs) {
+            this.sessionId = sessionId;
+            this.inputs = inputs;
+        }
+    }
+
+    public static class Builder {
+        private final Model model;
+        private int maxSessions = DEFAULT_MAX_SESSIONS;
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        private long maxBatchWaitNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        private long idleTimeoutNanos = 0;
+        private boolean evictWhenFull = true;
+
+        /**
+         * @param model Network to use. Must be a {@link MultiLayerNetwork} or {@link ComputationGraph}, with at
+         *              least one recurrent layer
+         */
+        public Builder(@NonNull Model model) {
+            Preconditions.checkArgument(model instanceof MultiLayerNetwork || model instanceof ComputationGraph,
+                    "Model must be a MultiLayerNetwork or ComputationGraph, got %s", model.getClass());
+            this.model = model;
+        }
+
+        /**
+         * Maximum number of sessions in the state store (default: {@link #DEFAULT_MAX_SESSIONS}). State store
+         * memory is allocated up front for this many sessions
+         */
+        public Builder maxSessions(int maxSessions) {
+            Preconditions.checkArgument(maxSessions > 0, "Max sessions must be positive, got %s", maxSessions);
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        /**
+         * Maximum number of sessions per forward pass when using {@link RnnSessionManager#submit(String, INDArray...)}
+         * (default: {@link #DEFAULT_MAX_BATCH_SIZE})
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            Preconditions.checkArgument(maxBatchSize > 0, "Max batch size must be positive, got %s", maxBatchSize);
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Maximum amount of time to wait for further requests to arrive before executing a (partial) batch, when
+         * using {@link RnnSessionManager#submit(String, INDArray...)}. Default: 1 ms
+         */
+        public Builder maxBatchWait(long time, @NonNull TimeUnit unit) {
+            Preconditions.checkArgument(time >= 0, "Max batch wait time must be non-negative, got %s", time);
+            this.maxBatchWaitNanos = unit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * Sessions that have not been stepped for longer than this are evicted. Default: 0 (no idle timeout)
+         */
+        public Builder idleTimeout(long time, @NonNull TimeUnit unit) {
+            Preconditions.checkArgument(time >= 0, "Idle timeout must be non-negative, got %s", time);
+            this.idleTimeoutNanos = unit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * If true (default): when the state store is full, the least recently used session is evicted to make room
+         * for a new session. If false: an exception is thrown instead
+         */
+        public Builder evictWhenFull(boolean evictWhenFull) {
+            this.evictWhenFull = evictWhenFull;
+            return this;
+        }
+
+        public RnnSessionManager build() {
+            return new RnnSessionManager(this);
+        }
+    }
+}
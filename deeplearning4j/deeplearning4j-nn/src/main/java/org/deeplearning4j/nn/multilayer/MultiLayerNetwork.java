@@ -128,6 +128,10 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     protected boolean clearTbpttState = true;  //Mainly for unit testing (should be enabled otherwise)
     protected transient ThreadLocal<Long> lastEtlTime = new ThreadLocal<>();
     protected INDArray mask;
+    //Most recent feature/label mask arrays set via setLayerMaskArrays - used to split masks for gradient accumulation
+    protected transient INDArray currentFeaturesMask, currentLabelsMask;
+    //Gradient accumulation buffer, used when micro-batching is enabled. Not in any workspace
+    protected transient INDArray gradientAccumulator;
 
     protected int layerIndex; //For Layer.get/setIndex()
 
@@ -135,6 +139,9 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     //Workspaces for CUDNN. Pass to LayerWorkspaceMgr for re-use in cudnn helpers
     @Getter
     protected transient Map<String,Pointer> helperWorkspaces = new HashMap<>();
+    //Set when restored by ChunkedModelSerializer: keeps memory-mapped params alive, and holds deferred updater state
+    @Getter @Setter
+    protected transient ChunkedModelSerializer.Source chunkedModelSource;
 
 
     /**
@@ -1089,7 +1096,24 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                                                                    @NonNull INDArray input, INDArray fMask, INDArray lMask){
         setInput(input);
         setLayerMaskArrays(fMask, lMask);
+        return ffToLayerActivationsInWs(0, layerIndex, fwdPassType, storeLastForTBPTT, input);
+    }
 
+    /**
+     * Feed-forward through layers fromLayer to layerIndex (inclusive) at training time, as per
+     * {@link #ffToLayerActivationsInWs(int, FwdPassType, boolean, INDArray, INDArray, INDArray)}. The network input and
+     * mask arrays must already have been set; this is used to (re)compute a segment of the network when activation
+     * recomputation is enabled.
+     *
+     * @param fromLayer         Index of the first layer to forward pass through
+     * @param layerIndex        Index (inclusive) to stop forward pass at
+     * @param fwdPassType       Type of forward pass to perform (STANDARD or RNN_ACTIVATE_WITH_STORED_STATE only)
+     * @param storeLastForTBPTT ONLY used if fwdPassType == FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE
+     * @param input             Input to layer fromLayer (i.e., activations of layer fromLayer-1, before any preprocessor)
+     * @return The input, followed by the activations of layers fromLayer to layerIndex
+     */
+    protected List<INDArray> ffToLayerActivationsInWs(int fromLayer, int layerIndex, @NonNull FwdPassType fwdPassType,
+                                                      boolean storeLastForTBPTT, @NonNull INDArray input){
         LayerWorkspaceMgr workspaceMgr;
         if(layerWiseConfigurations.getTrainingWorkspaceMode() == WorkspaceMode.NONE){
             WorkspaceUtils.assertNoWorkspacesOpen("Expected no workspace active in ffToLayerActivationsInWs when training workspace is set to NONE");
@@ -1122,7 +1146,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
 
         boolean traceLog = log.isTraceEnabled();
 
-        for( int i = 0; i <=layerIndex; i++) {
+        for( int i = fromLayer; i <=layerIndex; i++) {
             try(MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)){
                 if (getLayerWiseConfigurations().getInputPreProcess(i) != null) {
                     input = getLayerWiseConfigurations().getInputPreProcess(i).preProcess(input, getInputMiniBatchSize(), workspaceMgr);
@@ -1858,6 +1882,23 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      */
     protected Pair<Gradient, INDArray> calcBackpropGradients(INDArray epsilon, boolean withOutputLayer, boolean tbptt,
                                                              boolean returnInputActGrad) {
+        return calcBackpropGradients(0, layers.length - 1, epsilon, withOutputLayer, tbptt, returnInputActGrad);
+    }
+
+    /**
+     * Calculate gradients and errors for layers fromLayer to toLayer (inclusive) only, as per
+     * {@link #calcBackpropGradients(INDArray, boolean, boolean, boolean)}. Used to backprop one segment of the network
+     * at a time when activation recomputation is enabled.
+     *
+     * @param fromLayer          First layer to backprop through
+     * @param toLayer            Last layer to backprop through. Must be the output layer if withOutputLayer is true
+     * @param epsilon            Errors at the output of layer toLayer. Not used if withOutputLayer = true
+     * @param withOutputLayer    if true: toLayer is the output layer; calculate errors based on labels
+     * @param returnInputActGrad If true: return the activation gradients at the input of layer fromLayer (detached)
+     * @return Gradients for layers fromLayer to toLayer, and the error (epsilon) at the input of layer fromLayer
+     */
+    protected Pair<Gradient, INDArray> calcBackpropGradients(int fromLayer, int toLayer, INDArray epsilon, boolean withOutputLayer,
+                                                             boolean tbptt, boolean returnInputActGrad) {
         if (flattenedGradients == null) {
             initGradientsView();
         }
@@ -1943,7 +1984,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
 
         Throwable t = null;
         try {
-            for (int i = layers.length - 1; i >= 0; i--) {
+            for (int i = toLayer; i >= fromLayer; i--) {
                 if (layers[i] instanceof FrozenLayer) {
                     break;
                 }
@@ -1976,7 +2017,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     wsActGradTemp.setPreviousWorkspace(initialWorkspace);
                     wsBPWorking.setPreviousWorkspace(initialWorkspace);
 
-                    INDArray eps = (i == layers.length - 1 ? epsilon : currPair.getRight());  //eps is null for OutputLayer
+                    INDArray eps = (i == toLayer ? epsilon : currPair.getRight());  //eps is null for OutputLayer
 
                     if (!tbptt) {
                         //Standard case
@@ -2013,7 +2054,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                         }
                     }
 
-                    if (i == 0) {
+                    if (i == fromLayer) {
                         if (returnInputActGrad && currPair.getSecond() != null) {
                             currPair.setSecond(currPair.getSecond().detach());
                         } else {
@@ -2742,6 +2783,82 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
     }
 
     public void computeGradientAndScore() {
+        int microBatchSize = layerWiseConfigurations.getMicroBatchSize();
+        if (microBatchSize > 0 && layerWiseConfigurations.getBackpropType() != BackpropType.TruncatedBPTT
+                && labels != null && labels.size(0) > microBatchSize) {
+            computeGradientAndScoreMicroBatched(microBatchSize);
+        } else {
+            computeGradientAndScoreHelper();
+        }
+    }
+
+    /**
+     * Gradient accumulation: calculate the gradient and score for the current minibatch by splitting it into
+     * micro-batches of at most the specified size, and accumulating the gradients over all micro-batches.<br>
+     * Most gradients are sums over examples (division by the minibatch size happens in the updater), and are summed
+     * over micro-batches. Gradients that are not divided by the minibatch size (such as batch norm mean/variance
+     * estimates) are instead averaged, weighted by micro-batch size.
+     *
+     * @param microBatchSize Maximum micro-batch size
+     * @see MultiLayerConfiguration.Builder#microBatchSize(int)
+     */
+    protected void computeGradientAndScoreMicroBatched(int microBatchSize) {
+        if (flattenedGradients == null) {
+            initGradientsView();
+        }
+        if (gradientAccumulator == null || gradientAccumulator.length() != flattenedGradients.length()) {
+            try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                gradientAccumulator = flattenedGradients.ulike();
+            }
+        }
+
+        INDArray fullInput = input;
+        INDArray fullLabels = labels;
+        INDArray fMask = currentFeaturesMask;
+        INDArray lMask = currentLabelsMask;
+        long n = fullLabels.size(0);
+        double totalScore = 0.0;
+        try {
+            for (long start = 0; start < n; start += microBatchSize) {
+                long end = Math.min(n, start + microBatchSize);
+                double fraction = (end - start) / (double) n;
+                input = fullInput.get(NDArrayIndex.interval(start, end));
+                labels = fullLabels.get(NDArrayIndex.interval(start, end));
+                clearLayerMaskArrays();
+                setLayerMaskArrays(fMask == null ? null : fMask.get(NDArrayIndex.interval(start, end)),
+                        lMask == null ? null : lMask.get(NDArrayIndex.interval(start, end)));
+
+                computeGradientAndScoreHelper();
+                totalScore += fraction * score;
+
+                for (int i = 0; i < layers.length; i++) {
+                    for (String param : layers[i].paramTable(false).keySet()) {
+                        if (!layers[i].updaterDivideByMinibatch(param)) {
+                            INDArray g = gradient.getGradientFor(i + "_" + param);
+                            if (g != null) {
+                                g.muli(fraction);
+                            }
+                        }
+                    }
+                }
+
+                if (start == 0) {
+                    gradientAccumulator.assign(flattenedGradients);
+                } else {
+                    gradientAccumulator.addi(flattenedGradients);
+                }
+            }
+            flattenedGradients.assign(gradientAccumulator);
+            score = totalScore;
+        } finally {
+            input = fullInput;
+            labels = fullLabels;
+            clearLayerMaskArrays();
+            setLayerMaskArrays(fMask, lMask);
+        }
+    }
+
+    private void computeGradientAndScoreHelper() {
 
         if (!(getOutputLayer() instanceof IOutputLayer)) {
             throw new DL4JException(
@@ -2775,6 +2892,13 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         FwdPassType fwdType = (tbptt ? FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE : FwdPassType.STANDARD);
         synchronizeIterEpochCounts();
 
+        int checkpointInterval = layerWiseConfigurations.getActivationCheckpointInterval();
+        if (checkpointInterval > 0 && !tbptt && layers.length > checkpointInterval) {
+            computeGradientAndScoreCheckpointed(checkpointInterval, mgr);
+            getOutputLayer().clearNoiseWeightParams();
+            return;
+        }
+
         //Calculate activations (which are stored in each layer, and used in backprop)
         try(MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
             //First: do a feed-forward through the network
@@ -2818,6 +2942,120 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         getOutputLayer().clearNoiseWeightParams();
     }
 
+    /**
+     * Activation recomputation (gradient checkpointing): calculate the gradient and score for the current minibatch,
+     * keeping only the inputs to each segment of the specified number of layers in memory after the forward pass.<br>
+     * Each segment is forward passed once (in its own WS_ALL_LAYERS_ACT scope) to obtain the input to the next segment.
+     * Segments are then processed in reverse order: the forward pass for the segment is recomputed from its checkpointed
+     * input, and backprop is performed through the segment using the activation gradients from the segment after it.
+     * The RNG is re-seeded per segment so that dropout etc. is identical in the recomputed forward pass.
+     *
+     * @param interval Number of layers per segment
+     * @param mgr      Workspace manager, for the output layer and score calculation
+     * @see MultiLayerConfiguration.Builder#activationCheckpointInterval(int)
+     */
+    protected void computeGradientAndScoreCheckpointed(int interval, LayerWorkspaceMgr mgr) {
+        int nLayers = layers.length;
+
+        //Layers up to (and including) the last frozen layer are not backpropagated through, hence are never recomputed
+        int firstTrainable = 0;
+        for (int i = 0; i < nLayers; i++) {
+            if (layers[i] instanceof FrozenLayer) {
+                firstTrainable = i + 1;
+            }
+        }
+        if (firstTrainable >= nLayers) {
+            firstTrainable = nLayers - 1;
+        }
+
+        int nSegments = (nLayers - firstTrainable + interval - 1) / interval;
+        int[] segmentStart = new int[nSegments];
+        for (int k = 0; k < nSegments; k++) {
+            segmentStart[k] = firstTrainable + k * interval;
+        }
+        INDArray[] segmentInputs = new INDArray[nSegments];
+        long[] segmentSeeds = new long[nSegments];
+
+        setInput(input);
+        setLayerMaskArrays(mask, null);
+
+        //First: forward pass, keeping only the (detached) input to each segment
+        //Note that the activations within each segment are released when the segment's workspace scope is closed; with
+        // workspace mode NONE they remain referenced by the layers until the segment is recomputed
+        INDArray current = input;
+        if (firstTrainable > 0) {
+            try (MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                List<INDArray> acts = ffToLayerActivationsInWs(0, firstTrainable - 1, FwdPassType.STANDARD, false, current);
+                current = acts.get(acts.size() - 1).detach();
+            }
+        }
+        for (int k = 0; k < nSegments; k++) {
+            segmentInputs[k] = current;
+            segmentSeeds[k] = Nd4j.getRandom().nextLong();
+            if (k < nSegments - 1) {
+                Nd4j.getRandom().setSeed(segmentSeeds[k]);
+                try (MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                    List<INDArray> acts = ffToLayerActivationsInWs(segmentStart[k], segmentStart[k + 1] - 1,
+                            FwdPassType.STANDARD, false, current);
+                    current = acts.get(acts.size() - 1).detach();
+                }
+            }
+        }
+        long nextSeed = Nd4j.getRandom().nextLong();
+
+        //Then: recompute and backprop each segment in reverse order
+        Gradient[] segmentGradients = new Gradient[nSegments];
+        INDArray epsilon = null;
+        for (int k = nSegments - 1; k >= 0; k--) {
+            Nd4j.getRandom().setSeed(segmentSeeds[k]);
+            boolean last = (k == nSegments - 1);
+            int from = segmentStart[k];
+            int to = (last ? nLayers - 2 : segmentStart[k + 1] - 1);
+            try (MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS)) {
+                List<INDArray> acts = ffToLayerActivationsInWs(from, to, FwdPassType.STANDARD, false, segmentInputs[k]);
+                Pair<Gradient, INDArray> pair;
+                if (last) {
+                    INDArray inputToOutputLayer = acts.get(acts.size() - 1);
+                    if (layerWiseConfigurations.getInputPreProcess(nLayers - 1) != null) {
+                        inputToOutputLayer = layerWiseConfigurations.getInputPreProcess(nLayers - 1)
+                                .preProcess(inputToOutputLayer, getInputMiniBatchSize(), mgr);
+                    }
+                    getOutputLayer().setInput(inputToOutputLayer, mgr);
+                    pair = calcBackpropGradients(from, nLayers - 1, null, true, false, k > 0);
+
+                    //Calculate score
+                    try (MemoryWorkspace wsFF = mgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                        double r = calcRegularizationScore(true);
+                        score = ((IOutputLayer) getOutputLayer()).computeScore(r, true, mgr);
+                    }
+                } else {
+                    pair = calcBackpropGradients(from, to, epsilon, false, false, k > 0);
+                }
+                segmentGradients[k] = pair.getFirst();
+                epsilon = pair.getSecond();
+            }
+        }
+        Nd4j.getRandom().setSeed(nextSeed);
+
+        //Combine the per-segment gradients, in the same order as the parameters
+        Gradient g = new DefaultGradient(flattenedGradients);
+        for (Gradient sg : segmentGradients) {
+            for (Map.Entry<String, INDArray> e : sg.gradientForVariable().entrySet()) {
+                g.setGradientFor(e.getKey(), e.getValue(), sg.flatteningOrderForVariable(e.getKey()));
+            }
+        }
+        this.gradient = g;
+
+        //Listeners
+        if (!trainingListeners.isEmpty()) {
+            try (MemoryWorkspace workspace = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+                for (TrainingListener tl : trainingListeners) {
+                    tl.onBackwardPass(this);
+                }
+            }
+        }
+    }
+
     /**
      * Clear the inputs. Clears optimizer state.
      */
@@ -3299,6 +3537,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      */
     public void setLayerMaskArrays(INDArray featuresMaskArray, INDArray labelsMaskArray) {
         if (featuresMaskArray != null) {
+            currentFeaturesMask = featuresMaskArray;
 
             if (featuresMaskArray.size(0) > Integer.MAX_VALUE)
                 throw new ND4JArraySizeException();
@@ -3329,6 +3568,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         if (labelsMaskArray != null) {
             if (!(getOutputLayer() instanceof IOutputLayer))
                 return;
+            currentLabelsMask = labelsMaskArray;
             layers[layers.length - 1].setMaskArray(labelsMaskArray);
         }
     }
@@ -3340,6 +3580,8 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         for (Layer layer : layers) {
             layer.setMaskArray(null);
         }
+        currentFeaturesMask = null;
+        currentLabelsMask = null;
     }
 
     /**
@@ -39,6 +39,7 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.deeplearning4j.nn.workspace.ArrayType;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.util.ChunkedModelSerializer;
 import org.nd4j.linalg.learning.config.IUpdater;
 
 import java.util.*;
@@ -138,6 +139,11 @@ public abstract class BaseMultiLayerUpdater<T extends Model> implements Updater
             }
         }
 
+        //Networks restored by ChunkedModelSerializer load saved updater state on first updater creation only
+        if (updaterState == null && updaterStateSize > 0) {
+            updaterState = ChunkedModelSerializer.loadDeferredUpdaterState(network, updaterStateSize);
+        }
+
         //Initialize the updater state, if required
         boolean updaterRequiresInit = false;
         if (updaterState != null) {
@@ -0,0 +1,661 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.util;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.preprocessor.Normalizer;
+import org.nd4j.linalg.dataset.api.preprocessor.serializer.NormalizerSerializer;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Alternative to {@link ModelSerializer}, designed for fast loading of large models.<br>
+ * Unlike zip files written by ModelSerializer, parameters and updater state are stored as raw array data, split into
+ * fixed size chunks:
+ * <ul>
+ *     <li>Uncompressed files (default) are memory-mapped on restore, and the mapped file is used directly as network
+ *     parameters: no deserialization or copying happens, and pages are loaded on first access</li>
+ *     <li>Compressed files are decompressed chunk by chunk by multiple threads, directly into network parameters</li>
+ *     <li>Updater state isn't loaded on restore: it's loaded when the updater is first created, i.e. on first
+ *     fit() call, so inference-only users never pay for it</li>
+ * </ul>
+ * File layout (header fields are big-endian, array data uses native byte order of the machine that wrote the file):
+ * <pre>
+ * magic (8 bytes), version (int), byte order (byte), model type (byte)
+ * configuration JSON (int length + UTF-8 bytes), normalizer (int length + bytes, 0 if absent)
+ * params section, updater state section
+ * </pre>
+ * Each section is: present flag (byte), data type (UTF), shape (int rank + longs), compression (byte), chunk size
+ * in bytes (int), number of chunks (int), chunk table (long offset + int stored length per chunk), followed by
+ * chunk data aligned to {@link #ALIGNMENT} bytes.
+ *
+ * PLEASE NOTE: memory-mapped files are mapped in copy-on-write mode, so fitting a restored network never modifies the
+ * file. If the file is read-only, parameters are read into heap memory instead of being mapped. Files must not be
+ * modified or deleted while restored networks are in use.<br>
+ * Files written by this class can only be restored via this class, not via ModelSerializer: use
+ * {@link #isChunkedModelFile(File)} if both formats need to be supported.
+ */
+@Slf4j
+public class ChunkedModelSerializer {
+    public static final long MAGIC = 0x444C344A434D444CL;     // "DL4JCMDL"
+    public static final int VERSION = 1;
+    public static final int ALIGNMENT = 64;
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    protected static final byte ORDER_BIG_ENDIAN = 0;
+    protected static final byte ORDER_LITTLE_ENDIAN = 1;
+    protected static final byte TYPE_MULTI_LAYER_NETWORK = 0;
+    protected static final byte TYPE_COMPUTATION_GRAPH = 1;
+    protected static final byte COMPRESSION_NONE = 0;
+    protected static final byte COMPRESSION_DEFLATE = 1;
+
+    private ChunkedModelSerializer() {}
+
+    /**
+     * Write a model to a file, without compression, so it can be memory-mapped on restore
+     *
+     * @param model       the model to write
+     * @param file        the file to write to
+     * @param saveUpdater whether to save the updater state or not
+     */
+    public static void writeModel(@NonNull Model model, @NonNull File file, boolean saveUpdater) throws IOException {
+        writeModel(model, file, saveUpdater, null, false, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Write a model to a file
+     *
+     * @param model         the model to write
+     * @param file          the file to write to
+     * @param saveUpdater   whether to save the updater state or not
+     * @param normalizer    the normalizer to save (may be null)
+     * @param compress      if true, chunks are compressed: files are smaller, but can't be memory-mapped on restore
+     * @param chunkSize     chunk size in bytes. Chunks are the unit of parallelism for decompression
+     */
+    public static void writeModel(@NonNull Model model, @NonNull File file, boolean saveUpdater, Normalizer<?> normalizer,
+                                  boolean compress, int chunkSize) throws IOException {
+        Preconditions.checkArgument(chunkSize >= ALIGNMENT && chunkSize % ALIGNMENT == 0,
+                "Chunk size must be positive multiple of %s, got %s", ALIGNMENT, chunkSize);
+
+        byte type;
+        String json;
+        INDArray updaterState = null;
+        if (model instanceof MultiLayerNetwork) {
+            MultiLayerNetwork net = (MultiLayerNetwork) model;
+            type = TYPE_MULTI_LAYER_NETWORK;
+            json = net.getLayerWiseConfigurations().toJson();
+            if (saveUpdater && net.getUpdater() != null)
+                updaterState = net.getUpdater().getStateViewArray();
+        } else if (model instanceof ComputationGraph) {
+            ComputationGraph cg = (ComputationGraph) model;
+            type = TYPE_COMPUTATION_GRAPH;
+            json = cg.getConfiguration().toJson();
+            if (saveUpdater && cg.getUpdater() != null)
+                updaterState = cg.getUpdater().getStateViewArray();
+        } else {
+            throw new IllegalArgumentException("Only MultiLayerNetwork and ComputationGraph are supported, got " + model.getClass().getName());
+        }
+
+        byte[] normalizerBytes = new byte[0];
+        if (normalizer != null) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            NormalizerSerializer.getDefault().write(normalizer, baos);
+            normalizerBytes = baos.toByteArray();
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.writeLong(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeByte(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? ORDER_LITTLE_ENDIAN : ORDER_BIG_ENDIAN);
+            raf.writeByte(type);
+
+            byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+            raf.writeInt(jsonBytes.length);
+            raf.write(jsonBytes);
+            raf.writeInt(normalizerBytes.length);
+            raf.write(normalizerBytes);
+
+            writeSection(raf, model.params(), compress, chunkSize);
+            writeSection(raf, updaterState != null && updaterState.length() > 0 ? updaterState : null, compress, chunkSize);
+
+            // padding, so the whole file can be mapped in chunks of ALIGNMENT bytes
+            raf.setLength(align(raf.length()));
+        }
+    }
+
+    protected static void writeSection(RandomAccessFile raf, INDArray array, boolean compress, int chunkSize) throws IOException {
+        if (array == null) {
+            raf.writeByte(0);
+            return;
+        }
+
+        if (array.isView())
+            array = array.dup();
+
+        Nd4j.getAffinityManager().ensureLocation(array, AffinityManager.Location.HOST);
+
+        long bytes = array.length() * array.dataType().width();
+        int numChunks = (int) ((bytes + chunkSize - 1) / chunkSize);
+
+        raf.writeByte(1);
+        raf.writeUTF(array.dataType().name());
+        long[] shape = array.shape();
+        raf.writeInt(shape.length);
+        for (long s : shape)
+            raf.writeLong(s);
+        raf.writeByte(compress ? COMPRESSION_DEFLATE : COMPRESSION_NONE);
+        raf.writeInt(chunkSize);
+        raf.writeInt(numChunks);
+
+        // chunk table is filled once chunks are written
+        long tablePosition = raf.getFilePointer();
+        long[] offsets = new long[numChunks];
+        int[] lengths = new int[numChunks];
+        raf.seek(align(tablePosition + numChunks * 12L));
+
+        BytePointer source = new BytePointer(array.data().addressPointer());
+        byte[] buffer = new byte[(int) Math.min(chunkSize, bytes)];
+        byte[] compressed = compress ? new byte[buffer.length + 1024] : null;
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            for (int c = 0; c < numChunks; c++) {
+                long start = (long) c * chunkSize;
+                int length = (int) Math.min(chunkSize, bytes - start);
+                source.position(start).get(buffer, 0, length);
+
+                offsets[c] = raf.getFilePointer();
+                if (compress) {
+                    deflater.reset();
+                    deflater.setInput(buffer, 0, length);
+                    deflater.finish();
+                    int stored = 0;
+                    while (!deflater.finished()) {
+                        if (stored == compressed.length)
+                            compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                        stored += deflater.deflate(compressed, stored, compressed.length - stored);
+                    }
+                    raf.write(compressed, 0, stored);
+                    lengths[c] = stored;
+                } else {
+                    raf.write(buffer, 0, length);
+                    lengths[c] = length;
+                }
+            }
+        } finally {
+            if (deflater != null)
+                deflater.end();
+        }
+
+        long end = raf.getFilePointer();
+        raf.seek(tablePosition);
+        for (int c = 0; c < numChunks; c++) {
+            raf.writeLong(offsets[c]);
+            raf.writeInt(lengths[c]);
+        }
+        raf.seek(end);
+    }
+
+    /**
+     * Restore a MultiLayerNetwork, memory-mapping parameters if possible. Updater state is loaded on first fit
+     *
+     * @param file the file to load from
+     */
+    public static MultiLayerNetwork restoreMultiLayerNetwork(@NonNull File file) throws IOException {
+        return restoreMultiLayerNetwork(file, true, true, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Restore a MultiLayerNetwork
+     *
+     * @param file        the file to load from
+     * @param memoryMap   if true, and the file isn't compressed, parameters are memory-mapped instead of being read
+     * @param loadUpdater if true, updater state will be loaded when the updater is first created
+     * @param numThreads  number of threads used to read and decompress parameters
+     */
+    public static MultiLayerNetwork restoreMultiLayerNetwork(@NonNull File file, boolean memoryMap, boolean loadUpdater,
+                                                             int numThreads) throws IOException {
+        Header header = readHeader(file);
+        if (header.type != TYPE_MULTI_LAYER_NETWORK)
+            throw new IllegalStateException("File [" + file.getAbsolutePath() + "] contains a ComputationGraph - use restoreComputationGraph instead");
+
+        MultiLayerConfiguration conf = MultiLayerConfiguration.fromJson(header.json);
+        INDArray params = loadParams(header, memoryMap, numThreads);
+        if (params != null)
+            conf.setDataType(params.dataType());
+
+        MultiLayerNetwork network = new MultiLayerNetwork(conf);
+        network.init(params, false);
+        network.setChunkedModelSource(new Source(header, loadUpdater, numThreads));
+        return network;
+    }
+
+    /**
+     * Restore a ComputationGraph, memory-mapping parameters if possible. Updater state is loaded on first fit
+     *
+     * @param file the file to load from
+     */
+    public static ComputationGraph restoreComputationGraph(@NonNull File file) throws IOException {
+        return restoreComputationGraph(file, true, true, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Restore a ComputationGraph
+     *
+     * @param file        the file to load from
+     * @param memoryMap   if true, and the file isn't compressed, parameters are memory-mapped instead of being read
+     * @param loadUpdater if true, updater state will be loaded when the updater is first created
+     * @param numThreads  number of threads used to read and decompress parameters
+     */
+    public static ComputationGraph restoreComputationGraph(@NonNull File file, boolean memoryMap, boolean loadUpdater,
+                                                           int numThreads) throws IOException {
+        Header header = readHeader(file);
+        if (header.type != TYPE_COMPUTATION_GRAPH)
+            throw new IllegalStateException("File [" + file.getAbsolutePath() + "] contains a MultiLayerNetwork - use restoreMultiLayerNetwork instead");
+
+        ComputationGraphConfiguration conf = ComputationGraphConfiguration.fromJson(header.json);
+        INDArray params = loadParams(header, memoryMap, numThreads);
+        if (params != null)
+            conf.setDataType(params.dataType());
+
+        ComputationGraph cg = new ComputationGraph(conf);
+        cg.init(params, false);
+        cg.setChunkedModelSource(new Source(header, loadUpdater, numThreads));
+        return cg;
+    }
+
+    /**
+     * Restore the normalizer saved with the model, if any
+     *
+     * @param file the file to load from
+     * @return the normalizer, or null if the model was saved without one
+     */
+    public static <T extends Normalizer> T restoreNormalizer(@NonNull File file) throws IOException {
+        Header header = readHeader(file);
+        if (header.normalizer.length == 0)
+            return null;
+
+        try {
+            return NormalizerSerializer.getDefault().restore(new ByteArrayInputStream(header.normalizer));
+        } catch (Exception e) {
+            throw new IOException("Error restoring normalizer from [" + file.getAbsolutePath() + "]", e);
+        }
+    }
+
+    /**
+     * @return true if the file was written by this class, false otherwise (i.e. for zip files written by {@link ModelSerializer})
+     */
+    public static boolean isChunkedModelFile(@NonNull File file) {
+        if (!file.isFile() || file.length() < 8)
+            return false;
+
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            return dis.readLong() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Loads deferred updater state of a network restored by this class. Called when the updater is first created
+     *
+     * @param model  network to load updater state for
+     * @param length expected updater state length
+     * @return updater state, or null if there's nothing to load
+     */
+    public static INDArray loadDeferredUpdaterState(@NonNull Model model, long length) {
+        Source source = null;
+        if (model instanceof MultiLayerNetwork)
+            source = ((MultiLayerNetwork) model).getChunkedModelSource();
+        else if (model instanceof ComputationGraph)
+            source = ((ComputationGraph) model).getChunkedModelSource();
+
+        if (source == null)
+            return null;
+
+        return source.takeUpdaterState(length);
+    }
+
+    protected static Header readHeader(File file) throws IOException {
+        Header header = new Header();
+        header.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             DataInputStream dis = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+            if (dis.readLong() != MAGIC)
+                throw new IllegalStateException("File [" + file.getAbsolutePath() + "] isn't a chunked model file");
+
+            int version = dis.readInt();
+            if (version != VERSION)
+                throw new IllegalStateException("Unsupported chunked model file version: " + version);
+
+            header.order = dis.readByte() == ORDER_LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            header.type = dis.readByte();
+
+            byte[] json = new byte[dis.readInt()];
+            dis.readFully(json);
+            header.json = new String(json, StandardCharsets.UTF_8);
+
+            header.normalizer = new byte[dis.readInt()];
+            dis.readFully(header.normalizer);
+
+            header.params = readSection(dis);
+            header.updater = readSection(dis);
+        }
+        return header;
+    }
+
+    protected static Section readSection(DataInputStream dis) throws IOException {
+        if (dis.readByte() == 0)
+            return null;
+
+        Section s = new Section();
+        s.dataType = DataType.valueOf(dis.readUTF());
+        s.shape = new long[dis.readInt()];
+        for (int i = 0; i < s.shape.length; i++)
+            s.shape[i] = dis.readLong();
+        s.compression = dis.readByte();
+        s.chunkSize = dis.readInt();
+        int numChunks = dis.readInt();
+        s.offsets = new long[numChunks];
+        s.lengths = new int[numChunks];
+        for (int c = 0; c < numChunks; c++) {
+            s.offsets[c] = dis.readLong();
+            s.lengths[c] = dis.readInt();
+        }
+        return s;
+    }
+
+    protected static INDArray loadParams(Header header, boolean memoryMap, int numThreads) throws IOException {
+        Section s = header.params;
+        if (s == null)
+            return null;
+
+        if (memoryMap) {
+            if (s.compression != COMPRESSION_NONE) {
+                log.info("Model file [{}] is compressed, parameters will be read instead of being memory-mapped", header.file.getAbsolutePath());
+            } else if (header.order != ByteOrder.nativeOrder()) {
+                log.info("Model file [{}] was written with {} byte order, parameters will be read instead of being memory-mapped", header.file.getAbsolutePath(), header.order);
+            } else if (s.bytes() > Integer.MAX_VALUE) {
+                log.info("Parameters in model file [{}] are too large to be mapped: {} bytes, parameters will be read instead", header.file.getAbsolutePath(), s.bytes());
+            } else if (!Files.isWritable(header.file.toPath())) {
+                // parameters are modified in place during training, which would crash on a read-only mapping
+                log.info("Model file [{}] is read-only, parameters will be read instead of being memory-mapped", header.file.getAbsolutePath());
+            } else {
+                return map(header, s);
+            }
+        }
+
+        return read(header, s, numThreads);
+    }
+
+    protected static INDArray map(Header header, Section s) throws IOException {
+        File file = header.file;
+        MappedByteBuffer buffer;
+        // copy-on-write mapping: parameter updates are private to this process, and never reach the file
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // mapping stays valid after the channel is closed
+            long offset = s.offsets.length > 0 ? s.offsets[0] : 0;
+            buffer = channel.map(FileChannel.MapMode.PRIVATE, offset, s.bytes());
+        }
+
+        // mapped buffer must stay reachable while the network uses it
+        header.mapped = buffer;
+
+        long length = s.length();
+        if (length == 0)
+            return Nd4j.create(s.dataType, s.shape);
+
+        ByteBuffer bb = buffer.duplicate().order(ByteOrder.nativeOrder());
+        DataBuffer data = Nd4j.createBuffer(new Pointer(bb), length, s.dataType);
+        return Nd4j.create(data, s.shape, Nd4j.getStrides(s.shape, 'c'), 0, 'c', s.dataType);
+    }
+
+    protected static INDArray read(final Header header, final Section s, int numThreads) throws IOException {
+        INDArray array = Nd4j.createUninitializedDetached(s.dataType, s.shape);
+        if (s.offsets.length == 0)
+            return array;
+
+        if (header.order != ByteOrder.nativeOrder())
+            throw new IllegalStateException("Model file [" + header.file.getAbsolutePath() + "] was written with " + header.order
+                    + " byte order, which doesn't match native byte order");
+
+        final Pointer pointer = array.data().addressPointer();
+        final long bytes = s.bytes();
+
+        try (final FileChannel channel = FileChannel.open(header.file.toPath(), StandardOpenOption.READ)) {
+            int threads = Math.max(1, Math.min(numThreads, s.offsets.length));
+            if (threads == 1) {
+                ChunkReader reader = new ChunkReader(channel, s, pointer, bytes);
+                for (int c = 0; c < s.offsets.length; c++)
+                    reader.read(c);
+            } else {
+                ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+                    Thread t = new Thread(r, "ChunkedModelSerializer reader");
+                    t.setDaemon(true);
+                    return t;
+                });
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+                    final ThreadLocal<ChunkReader> readers = ThreadLocal.withInitial(() -> new ChunkReader(channel, s, pointer, bytes));
+                    for (int c = 0; c < s.offsets.length; c++) {
+                        final int chunk = c;
+                        futures.add(executor.submit(() -> {
+                            readers.get().read(chunk);
+                            return null;
+                        }));
+                    }
+
+                    for (Future<?> f : futures)
+                        f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException)
+                        throw (IOException) e.getCause();
+                    throw new RuntimeException(e.getCause());
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+        }
+
+        Nd4j.getAffinityManager().tagLocation(array, AffinityManager.Location.HOST);
+        return array;
+    }
+
+    private static long align(long position) {
+        long rem = position % ALIGNMENT;
+        return rem == 0 ? position : position + ALIGNMENT - rem;
+    }
+
+    /**
+     * Reads chunks of one section directly into array memory. Not thread safe: one instance per thread
+     */
+    protected static class ChunkReader {
+        private final FileChannel channel;
+        private final Section section;
+        private final long bytes;
+        private final BytePointer target;
+        private final Inflater inflater;
+        private byte[] stored;
+        private byte[] decoded;
+
+        protected ChunkReader(FileChannel channel, Section section, Pointer pointer, long bytes) {
+            this.channel = channel;
+            this.section = section;
+            this.bytes = bytes;
+            this.target = new BytePointer(pointer);
+            this.inflater = section.compression == COMPRESSION_DEFLATE ? new Inflater() : null;
+        }
+
+        protected void read(int chunk) throws IOException {
+            long start = (long) chunk * section.chunkSize;
+            int length = (int) Math.min(section.chunkSize, bytes - start);
+            int storedLength = section.lengths[chunk];
+
+            if (stored == null || stored.length < storedLength)
+                stored = new byte[storedLength];
+
+            // positional reads are safe for concurrent use of the same channel
+            ByteBuffer bb = ByteBuffer.wrap(stored, 0, storedLength);
+            long position = section.offsets[chunk];
+            while (bb.hasRemaining()) {
+                int read = channel.read(bb, position + bb.position());
+                if (read < 0)
+                    throw new EOFException("Model file is truncated: chunk " + chunk + " is incomplete");
+            }
+
+            byte[] data = stored;
+            if (inflater != null) {
+                if (decoded == null || decoded.length < length)
+                    decoded = new byte[length];
+                inflater.reset();
+                inflater.setInput(stored, 0, storedLength);
+                try {
+                    int total = 0;
+                    while (total < length && !inflater.finished()) {
+                        int n = inflater.inflate(decoded, total, length - total);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                            break;
+                        total += n;
+                    }
+                    if (total != length)
+                        throw new IOException("Chunk " + chunk + " is corrupted: expected " + length + " bytes, got " + total);
+                } catch (DataFormatException e) {
+                    throw new IOException("Chunk " + chunk + " is corrupted", e);
+                }
+                data = decoded;
+            } else if (storedLength != length) {
+                throw new IOException("Chunk " + chunk + " is corrupted: expected " + length + " bytes, got " + storedLength);
+            }
+
+            target.position(start).put(data, 0, length);
+        }
+    }
+
+    protected static class Header {
+        private File file;
+        private ByteOrder order;
+        private byte type;
+        private String json;
+        private byte[] normalizer;
+        private Section params;
+        private Section updater;
+        private MappedByteBuffer mapped;
+    }
+
+    protected static class Section {
+        private DataType dataType;
+        private long[] shape;
+        private byte compression;
+        private int chunkSize;
+        private long[] offsets;
+        private int[] lengths;
+
+        protected long length() {
+            long length = 1;
+            for (long s : shape)
+                length *= s;
+            return length;
+        }
+
+        protected long bytes() {
+            return length() * dataType.width();
+        }
+    }
+
+    /**
+     * Backing file of a restored network: keeps memory-mapped parameters reachable, and holds the location of
+     * updater state that wasn't loaded yet
+     */
+    public static class Source {
+        private final Header header;
+        private final int numThreads;
+        private Section updater;
+
+        protected Source(Header header, boolean loadUpdater, int numThreads) {
+            this.header = header;
+            this.numThreads = numThreads;
+            this.updater = loadUpdater ? header.updater : null;
+        }
+
+        /**
+         * @return the file this network was restored from
+         */
+        public File getFile() {
+            return header.file;
+        }
+
+        /**
+         * @return true if updater state is saved in the file, and wasn't loaded yet
+         */
+        public synchronized boolean hasDeferredUpdaterState() {
+            return updater != null;
+        }
+
+        protected synchronized INDArray takeUpdaterState(long length) {
+            Section s = updater;
+            updater = null;
+            if (s == null)
+                return null;
+
+            if (s.length() != length)
+                throw new IllegalStateException("Invalid updater state in model file [" + header.file.getAbsolutePath()
+                        + "]: view arrays differ in length. Expected length " + length + ", got length " + s.length());
+
+            try {
+                return read(header, s, numThreads).reshape(1, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error loading updater state from [" + header.file.getAbsolutePath() + "]", e);
+            }
+        }
+    }
+}
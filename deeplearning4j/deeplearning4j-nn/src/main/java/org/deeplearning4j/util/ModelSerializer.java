@@ -55,6 +55,11 @@ import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+/**
+ * Writes and restores models in the zip based model format.<br>
+ * Files written by {@link ChunkedModelSerializer} use a different format, and can only be restored via
+ * {@link ChunkedModelSerializer}
+ */
 @Slf4j
 public class ModelSerializer {
 
@@ -35,6 +35,7 @@ import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.FutureInferenceObserver;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
@@ -45,7 +46,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -58,6 +63,7 @@ public class ParallelInference {
     protected int batchLimit;
     protected InferenceMode inferenceMode;
     protected int queueLimit;
+    protected long queueDelayNanos;
     protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
 
     // this queue holds data for inference
@@ -137,7 +143,7 @@ public class ParallelInference {
 
         if (inferenceMode == InferenceMode.BATCHED) {
             log.info("Initializing ObservablesProvider...");
-            provider = new ObservablesProvider(nanos, batchLimit, observables);
+            provider = new ObservablesProvider(nanos, batchLimit, queueDelayNanos, observables);
         }
     }
 
@@ -162,6 +168,9 @@ public class ParallelInference {
         }
         zoo = null;
 
+        if (provider != null)
+            provider.shutdown();
+
         System.gc();
     }
 
@@ -258,6 +267,48 @@ public class ParallelInference {
         return observable.getOutput();
     }
 
+    /**
+     * Generate predictions/output from the network without blocking the calling thread
+     *
+     * @param input Input to the network
+     * @return Future that will be completed with the output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray... input) {
+        return outputAsync(input, null);
+    }
+
+    /**
+     * Generate predictions/outputs from the network without blocking the calling thread, optionally using input masks.
+     * The returned future is completed from the inference worker thread, so dependent stages should not do heavy work
+     * unless they're attached via one of the *Async methods of CompletableFuture.
+     *
+     * PLEASE NOTE: In BATCHED mode the request is subject to the same batching policy as {@link #output(INDArray[], INDArray[])},
+     * see {@link Builder#batchLimit(int)} and {@link Builder#maxQueueDelay(long, TimeUnit)}
+     *
+     * @param input      Input to the network
+     * @param inputMasks Input masks for the network. May be null.
+     * @return Future that will be completed with the output from the network, or exceptionally if inference failed
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input, INDArray[] inputMasks) {
+        Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
+
+        CompletableFuture<INDArray[]> future = new CompletableFuture<>();
+        if (inferenceMode == InferenceMode.SEQUENTIAL) {
+            InferenceObservable observable = new BasicInferenceObservable(input, inputMasks);
+            observable.addObserver(new FutureInferenceObserver(future));
+            try {
+                observables.put(observable);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+            }
+        } else {
+            provider.setInputAsync(future, input, inputMasks);
+        }
+
+        return future;
+    }
+
     /**
      * This method does forward pass and returns output provided by OutputAdapter
      *
@@ -289,6 +340,7 @@ public class ParallelInference {
         private int batchLimit = DEFAULT_BATCH_LIMIT;
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
+        private long queueDelayNanos = 0;
         protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
 
         public Builder(@NonNull Model model) {
@@ -359,6 +411,30 @@ public class ParallelInference {
             return this;
         }
 
+        /**
+         * This method defines, how long the first input of a batch may wait for more inputs before the batch is
+         * sent to workers. Batch is sent as soon as either batchLimit inputs were collected, or this delay has
+         * expired, whichever comes first. This keeps latency bounded at low load, while still producing full batches
+         * under high load.
+         *
+         * Default value: 0, which means batch is sent to the queue right away, and collects inputs only until
+         * some worker picks it up.
+         *
+         * PLEASE NOTE: This value has no effect in
+         * SEQUENTIAL and INPLACE inference modes
+         *
+         * @param delay
+         * @param timeUnit
+         * @return
+         */
+        public Builder maxQueueDelay(long delay, @NonNull TimeUnit timeUnit) {
+            if (delay < 0)
+                throw new IllegalStateException("Queue delay should be non-negative value");
+
+            this.queueDelayNanos = timeUnit.toNanos(delay);
+            return this;
+        }
+
         /**
          * This method defines buffer queue size.
          *
@@ -395,6 +471,7 @@ public class ParallelInference {
                 ParallelInference inference = new ParallelInference();
                 inference.batchLimit = this.batchLimit;
                 inference.queueLimit = this.queueLimit;
+                inference.queueDelayNanos = this.queueDelayNanos;
                 inference.inferenceMode = this.inferenceMode;
                 inference.model = this.model;
                 inference.workers = this.workers;
@@ -575,13 +652,49 @@ public class ParallelInference {
         private long nanos;
         private int batchLimit;
 
+        private long queueDelayNanos;
+
         private volatile BatchedInferenceObservable currentObservable;
         private final Object locker = new Object();
 
+        // this executor flushes partially filled batches once their queue delay has expired
+        private ScheduledExecutorService flusher;
+
         protected ObservablesProvider(long nanos, int batchLimit, @NonNull BlockingQueue<InferenceObservable> queue) {
+            this(nanos, batchLimit, 0, queue);
+        }
+
+        protected ObservablesProvider(long nanos, int batchLimit, long queueDelayNanos, @NonNull BlockingQueue<InferenceObservable> queue) {
             this.targetQueue = queue;
             this.nanos = nanos;
             this.batchLimit = batchLimit;
+            this.queueDelayNanos = queueDelayNanos;
+
+            if (queueDelayNanos > 0) {
+                this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "InferenceBatchFlusher");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+        }
+
+        protected void shutdown() {
+            if (flusher != null)
+                flusher.shutdownNow();
+
+            // workers are stopped at this point, so requests that weren't picked up yet would never be completed
+            List<InferenceObservable> pending = new ArrayList<>();
+            synchronized (locker) {
+                if (queueDelayNanos > 0 && currentObservable != null)
+                    pending.add(currentObservable);
+
+                currentObservable = null;
+                targetQueue.drainTo(pending);
+            }
+
+            for (InferenceObservable observable : pending)
+                observable.setOutputException(new IllegalStateException("ParallelInference was shut down before request was processed"));
         }
 
         protected InferenceObservable setInput(@NonNull Observer observer, INDArray input){
@@ -593,6 +706,9 @@ public class ParallelInference {
         }
 
         protected InferenceObservable setInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask) {
+            if (queueDelayNanos > 0)
+                return setInputDelayed(observer, input, inputMask);
+
             synchronized (locker) {
                 boolean isNew = false;
                 if (currentObservable == null || currentObservable.getCounter() >= batchLimit
@@ -615,5 +731,72 @@ public class ParallelInference {
                 return currentObservable;
             }
         }
+
+        protected InferenceObservable setInputAsync(@NonNull CompletableFuture<INDArray[]> future, INDArray[] input, INDArray[] inputMask) {
+            if (queueDelayNanos > 0)
+                return setInputDelayed(future, input, inputMask);
+
+            synchronized (locker) {
+                if (currentObservable == null || currentObservable.getCounter() >= batchLimit
+                                || currentObservable.isLocked()) {
+                    currentObservable = new BatchedInferenceObservable();
+                    currentObservable.addObserver(new FutureInferenceObserver(future, 0));
+                    currentObservable.addInput(input, inputMask);
+
+                    try {
+                        targetQueue.put(currentObservable);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        future.completeExceptionally(e);
+                    }
+                } else {
+                    // observer goes first: worker can't pick this batch up before addInput releases the read lock
+                    currentObservable.addObserver(new FutureInferenceObserver(future, currentObservable.getCounter()));
+                    currentObservable.addInput(input, inputMask);
+                }
+
+                return currentObservable;
+            }
+        }
+
+        private InferenceObservable setInputDelayed(@NonNull Object observerOrFuture, INDArray[] input, INDArray[] inputMask) {
+            synchronized (locker) {
+                if (currentObservable == null) {
+                    final BatchedInferenceObservable batch = new BatchedInferenceObservable();
+                    currentObservable = batch;
+                    flusher.schedule(() -> flush(batch), queueDelayNanos, TimeUnit.NANOSECONDS);
+                }
+
+                // batch isn't visible to workers until it's flushed, so there's no need for read locks here
+                BatchedInferenceObservable batch = currentObservable;
+                if (observerOrFuture instanceof CompletableFuture)
+                    batch.addObserver(new FutureInferenceObserver((CompletableFuture<INDArray[]>) observerOrFuture, batch.getCounter()));
+                else
+                    batch.addObserver((Observer) observerOrFuture);
+
+                batch.addInput(input, inputMask);
+
+                if (batch.getCounter() >= batchLimit)
+                    flush(batch);
+
+                return batch;
+            }
+        }
+
+        private void flush(BatchedInferenceObservable batch) {
+            synchronized (locker) {
+                // batch might be flushed already, if it was filled up before delay expired
+                if (currentObservable != batch)
+                    return;
+
+                currentObservable = null;
+                try {
+                    targetQueue.put(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    batch.setOutputException(e);
+                }
+            }
+        }
     }
 }
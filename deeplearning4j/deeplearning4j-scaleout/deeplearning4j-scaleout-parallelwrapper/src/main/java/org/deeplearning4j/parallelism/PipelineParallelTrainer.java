@@ -0,0 +1,725 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.api.layers.IOutputLayer;
+import org.deeplearning4j.nn.gradient.DefaultGradient;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.graph.vertex.GraphVertex;
+import org.deeplearning4j.nn.graph.vertex.VertexIndices;
+import org.deeplearning4j.nn.graph.vertex.impl.FrozenVertex;
+import org.deeplearning4j.nn.graph.vertex.impl.LayerVertex;
+import org.deeplearning4j.nn.layers.FrozenLayer;
+import org.deeplearning4j.nn.layers.FrozenLayerWithBackprop;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.optimize.api.TrainingListener;
+import org.deeplearning4j.optimize.solvers.BaseOptimizer;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.primitives.Pair;
+import org.nd4j.common.primitives.Triple;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.adapter.MultiDataSetIteratorAdapter;
+import org.nd4j.linalg.dataset.api.DataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Thread-level pipelined training for {@link ComputationGraph}, on a single device.<br>
+ * Unlike {@link ParallelWrapper} (data parallelism: one full model replica per worker), this class partitions the
+ * graph's topological order into a number of contiguous stages. Each stage is executed by its own worker thread.
+ * Each minibatch is split into micro-batches that are streamed through the stages: while stage 2 processes micro-batch 0, stage 1 processes micro-batch 1, and so on. Parameter gradients are
+ * accumulated over all micro-batches, and a single updater step is applied per minibatch - hence (up to floating
+ * point precision and dropout randomness) training is equivalent to standard training with the full minibatch, for
+ * networks whose layers process each example independently.<br>
+ * Batch normalization layers are the exception: they normalize using the statistics of each micro-batch rather than
+ * those of the full minibatch (as with GPipe), so results differ from standard training. The global mean/variance
+ * estimates are updated once per minibatch using the average of the micro-batch statistics, weighted by micro-batch
+ * size.<br>
+ * <br>
+ * Two schedules are available (see {@link Schedule}):<br>
+ * - {@link Schedule#GPIPE}: all forward passes, then all backward passes<br>
+ * - {@link Schedule#ONE_F_ONE_B}: after a short warmup, each stage alternates between one forward and one backward
+ * pass, which bounds the number of micro-batches in flight (and hence the memory required) per stage<br>
+ * <br>
+ * To keep per-stage memory bounded, each stage only retains its <i>inputs</i> for micro-batches in flight, and
+ * re-computes its own forward pass immediately before the corresponding backward pass (activation re-materialization,
+ * as per GPipe). The random number generator is re-seeded so that the re-computed forward pass uses the same dropout
+ * masks as the original forward pass.<br>
+ * <br>
+ * Stages are either determined automatically (balancing the number of parameters per stage) or specified explicitly
+ * via {@link Builder#stageBoundaries(String...)}. Stages may have skip connections to any later stage.<br>
+ * <br>
+ * Note that this is <i>not</i> model parallelism: all stages share the network's single parameter, gradient and updater
+ * state arrays, on the device the network was created on, and gradients are accumulated in one additional
+ * gradient-sized buffer. Memory required for the parameters therefore increases slightly rather than being split
+ * across stages, and this class does not help with networks that do not fit in the memory of one device. The benefit
+ * is throughput: on multi-core and multi-socket CPU systems, stages execute concurrently on different micro-batches,
+ * which keeps more cores busy than a single training thread does for networks with many small layers. With first-touch
+ * memory allocation, a stage's activations and epsilons stay local to the socket executing it.<br>
+ * <br>
+ * Limitations: only supervised training with output layers ({@link IOutputLayer}) is supported; feature/label mask
+ * arrays and truncated BPTT are not supported. Workspaces are not used for the pipeline forward/backward passes.
+ */
+@Slf4j
+public class PipelineParallelTrainer implements AutoCloseable {
+
+    /**
+     * Micro-batch schedule. See {@link PipelineParallelTrainer} for details
+     */
+    public enum Schedule {GPIPE, ONE_F_ONE_B}
+
+    private static final long POLL_MS = 100;
+
+    private final ComputationGraph model;
+    private final int numMicroBatches;
+    private final Schedule schedule;
+    private final List<Stage> stages;
+    private final ExecutorService executor;
+    private final Random seedRng;
+
+    private PipelineParallelTrainer(Builder b) {
+        this.model = b.model;
+        this.numMicroBatches = b.numMicroBatches;
+        this.schedule = b.schedule;
+        this.seedRng = new Random(b.seed);
+
+        if (model.getGradientsViewArray() == null) {
+            model.initGradientsView();
+        }
+        //Force updater initialization (and hence solver) before training
+        model.getUpdater();
+
+        this.stages = partition(b.numStages, b.stageBoundaries);
+
+        //All stages use the network's parameters, so stage threads use the device the parameters are on
+        final int device = Nd4j.getAffinityManager().getDeviceForArray(model.params());
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(stages.size(), r -> {
+            Thread t = new Thread(() -> {
+                Nd4j.getAffinityManager().unsafeSetDevice(device);
+                r.run();
+            }, "PipelineParallelTrainer-stage-" + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+
+        if (log.isDebugEnabled()) {
+            for (int i = 0; i < stages.size(); i++) {
+                log.debug("Pipeline stage {}: {} vertices, {} parameters", i, stages.get(i).vertices.size(), stages.get(i).numParams);
+            }
+        }
+    }
+
+    /**
+     * @return Number of pipeline stages
+     */
+    public int numStages() {
+        return stages.size();
+    }
+
+    /**
+     * @return Names of the vertices in each stage, in execution order
+     */
+    public List<List<String>> getStageVertexNames() {
+        List<List<String>> out = new ArrayList<>();
+        for (Stage s : stages) {
+            List<String> l = new ArrayList<>();
+            for (GraphVertex gv : s.vertices) {
+                l.add(gv.getVertexName());
+            }
+            out.add(l);
+        }
+        return out;
+    }
+
+    private List<Stage> partition(int numStages, String[] boundaries) {
+        GraphVertex[] vertices = model.getVertices();
+        List<GraphVertex> order = new ArrayList<>();
+        for (int idx : model.topologicalSortOrder()) {
+            if (!vertices[idx].isInputVertex()) {
+                order.add(vertices[idx]);
+            }
+        }
+
+        //Determine the first vertex (position in order) of each stage
+        List<Integer> starts = new ArrayList<>();
+        if (boundaries != null) {
+            starts.add(0);
+            for (String s : boundaries) {
+                int pos = -1;
+                for (int i = 0; i < order.size(); i++) {
+                    if (order.get(i).getVertexName().equals(s)) {
+                        pos = i;
+                        break;
+                    }
+                }
+                Preconditions.checkArgument(pos >= 0, "Stage boundary vertex \"%s\" does not exist or is an input", s);
+                Preconditions.checkArgument(pos > starts.get(starts.size() - 1), "Stage boundaries must be distinct," +
+                        " in topological order, and must not include the first vertex: got %s", Arrays.toString(boundaries));
+                starts.add(pos);
+            }
+        } else {
+            Preconditions.checkArgument(numStages <= order.size(), "Cannot split %s vertices into %s stages", order.size(), numStages);
+            //Balance number of parameters (plus 1 per vertex, so vertices without parameters are spread out too)
+            long[] cost = new long[order.size()];
+            long total = 0;
+            for (int i = 0; i < cost.length; i++) {
+                cost[i] = 1 + numParams(order.get(i));
+                total += cost[i];
+            }
+            starts.add(0);
+            long cumulative = 0;
+            for (int i = 0; i < cost.length && starts.size() < numStages; i++) {
+                //Leave at least one vertex for each remaining stage
+                int remainingStages = numStages - starts.size();
+                boolean mustSplit = order.size() - i - 1 == remainingStages;
+                cumulative += cost[i];
+                if (mustSplit || cumulative >= total * starts.size() / numStages) {
+                    starts.add(i + 1);
+                }
+            }
+        }
+
+        List<Stage> out = new ArrayList<>();
+        for (int s = 0; s < starts.size(); s++) {
+            int end = s == starts.size() - 1 ? order.size() : starts.get(s + 1);
+            out.add(new Stage(s, order.subList(starts.get(s), end)));
+        }
+
+        //Determine which activations must be sent from each stage to later stages
+        for (int s = 0; s < out.size(); s++) {
+            for (GraphVertex gv : out.get(s).vertices) {
+                for (VertexIndices vi : gv.getInputVertices()) {
+                    int src = vi.getVertexIndex();
+                    //Activation from source vertex needs to be passed from its stage through all stages up to s
+                    for (int t = 0; t < s; t++) {
+                        if (vertices[src].isInputVertex() || stageOf(out, src) <= t) {
+                            out.get(t).sendForward.add(src);
+                        }
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    private static int stageOf(List<Stage> stages, int vertexIdx) {
+        for (Stage s : stages) {
+            if (s.vertexIdxs.contains(vertexIdx))
+                return s.idx;
+        }
+        return -1;
+    }
+
+    private static long numParams(GraphVertex gv) {
+        if (!gv.hasLayer() || gv.getLayer() == null)
+            return 0;
+        return gv.getLayer().numParams();
+    }
+
+    /**
+     * Fit the network for one epoch on the given data
+     */
+    public void fit(@NonNull DataSetIterator iterator) {
+        fit(new MultiDataSetIteratorAdapter(iterator));
+    }
+
+    /**
+     * Fit the network for one epoch on the given data
+     */
+    public void fit(@NonNull MultiDataSetIterator iterator) {
+        if (iterator.resetSupported()) {
+            iterator.reset();
+        }
+        while (iterator.hasNext()) {
+            fit(iterator.next());
+        }
+        model.incrementEpochCount();
+    }
+
+    /**
+     * Perform one training iteration (one updater step) on the given minibatch
+     */
+    public void fit(@NonNull DataSet dataSet) {
+        fit(new org.nd4j.linalg.dataset.MultiDataSet(dataSet.getFeatures(), dataSet.getLabels(),
+                dataSet.getFeaturesMaskArray(), dataSet.getLabelsMaskArray()));
+    }
+
+    /**
+     * Perform one training iteration (one updater step) on the given minibatch
+     */
+    public void fit(@NonNull MultiDataSet mds) {
+        Preconditions.checkState(!executor.isShutdown(), "PipelineParallelTrainer has been closed");
+        Preconditions.checkArgument(!mds.hasMaskArrays(), "Mask arrays are not supported for pipeline parallel training");
+        Preconditions.checkArgument(mds.getFeatures().length == model.getNumInputArrays() && mds.getLabels().length == model.getNumOutputArrays(),
+                "Expected %s features and %s labels arrays, got %s and %s", model.getNumInputArrays(), model.getNumOutputArrays(),
+                mds.getFeatures().length, mds.getLabels().length);
+
+        long n = mds.getFeatures(0).size(0);
+        int m = (int) Math.min(numMicroBatches, n);
+        long microSize = (n + m - 1) / m;
+        m = (int) ((n + microSize - 1) / microSize);
+        if (n % microSize != 0 && hasPreProcessors()) {
+            throw new IllegalArgumentException("Minibatch size (" + n + ") must be divisible by the micro-batch size (" + microSize
+                    + ") for networks with input preprocessors");
+        }
+
+        MicroBatch[] micro = new MicroBatch[m];
+        for (int k = 0; k < m; k++) {
+            long start = k * microSize;
+            long end = Math.min(n, start + microSize);
+            micro[k] = new MicroBatch(k, slice(mds.getFeatures(), start, end), slice(mds.getLabels(), start, end),
+                    (end - start) / (double) n, seedRng.nextLong());
+        }
+
+        //Used by preprocessors to determine the minibatch size
+        model.setInputs(micro[0].features);
+        model.setLabels(micro[0].labels);
+
+        //Queues: forward into stage s, backward into stage s
+        List<BlockingQueue<Message>> fwdQueues = new ArrayList<>();
+        List<BlockingQueue<Message>> bwdQueues = new ArrayList<>();
+        for (int s = 0; s < stages.size(); s++) {
+            fwdQueues.add(new LinkedBlockingQueue<>());
+            bwdQueues.add(new LinkedBlockingQueue<>());
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        double[] scores = new double[m];
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (Stage s : stages) {
+            futures.add(executor.submit(() -> {
+                try {
+                    runStage(s, micro, fwdQueues, bwdQueues, scores, failure);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                failure.compareAndSet(null, e.getCause());
+            }
+        }
+        for (Stage s : stages) {
+            for (GraphVertex gv : s.vertices) {
+                gv.clear();
+            }
+        }
+        model.clearLayersStates();
+        if (failure.get() != null) {
+            throw new RuntimeException("Error during pipeline parallel training", failure.get());
+        }
+
+        applyUpdate(n, micro, scores);
+    }
+
+    private boolean hasPreProcessors() {
+        for (Stage s : stages) {
+            for (GraphVertex gv : s.vertices) {
+                if (gv instanceof LayerVertex && ((LayerVertex) gv).getLayerPreProcessor() != null)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static INDArray[] slice(INDArray[] arrs, long start, long end) {
+        INDArray[] out = new INDArray[arrs.length];
+        for (int i = 0; i < arrs.length; i++) {
+            out[i] = arrs[i].get(NDArrayIndex.interval(start, end)).dup();
+        }
+        return out;
+    }
+
+    private void runStage(Stage s, MicroBatch[] micro, List<BlockingQueue<Message>> fwdQueues,
+                          List<BlockingQueue<Message>> bwdQueues, double[] scores, AtomicReference<Throwable> failure) throws InterruptedException {
+        boolean last = s.idx == stages.size() - 1;
+        int m = micro.length;
+        LayerWorkspaceMgr mgr = LayerWorkspaceMgr.noWorkspaces();
+        s.resetAccumulators();
+
+        //Inputs of in-flight micro-batches (for re-computation during backprop)
+        Map<Integer, Map<Integer, INDArray>> stash = new HashMap<>();
+        int nextFwd = 0;
+        int nextBwd = 0;
+        int warmup = schedule == Schedule.GPIPE ? m : Math.min(m, stages.size() - s.idx - 1);
+
+        while (nextBwd < m) {
+            boolean doForward;
+            if (last) {
+                doForward = true;   //Forward, immediately followed by backward for the same micro-batch
+            } else if (nextFwd < warmup) {
+                doForward = true;
+            } else if (nextFwd >= m) {
+                doForward = false;
+            } else {
+                //Steady state 1F1B: alternate, starting with forward
+                doForward = (nextFwd - warmup) == (nextBwd);
+            }
+
+            if (doForward) {
+                MicroBatch mb = micro[nextFwd];
+                Map<Integer, INDArray> available;
+                if (s.idx == 0) {
+                    available = new HashMap<>();
+                    for (int i = 0; i < model.getNumInputArrays(); i++) {
+                        available.put(inputVertexIdx(i), mb.features[i]);
+                    }
+                } else {
+                    available = take(fwdQueues.get(s.idx), nextFwd, failure).arrays;
+                }
+
+                Map<Integer, INDArray> activations = forward(s, mb, available, mgr, scores);
+                if (last) {
+                    backward(s, mb, new HashMap<>(), bwdQueues, mgr);
+                    nextBwd++;
+                } else {
+                    stash.put(nextFwd, available);
+                    Map<Integer, INDArray> send = new HashMap<>();
+                    for (Integer idx : stages.get(s.idx).sendForward) {
+                        INDArray a = activations.containsKey(idx) ? activations.get(idx) : available.get(idx);
+                        send.put(idx, a);
+                    }
+                    fwdQueues.get(s.idx + 1).add(new Message(nextFwd, send));
+                }
+                nextFwd++;
+            } else {
+                Message msg = take(bwdQueues.get(s.idx), nextBwd, failure);
+                MicroBatch mb = micro[nextBwd];
+                //Re-compute this stage's forward pass, then backprop
+                forward(s, mb, stash.remove(nextBwd), mgr, null);
+                backward(s, mb, msg.arrays, bwdQueues, mgr);
+                nextBwd++;
+            }
+        }
+    }
+
+    private int inputVertexIdx(int inputNum) {
+        String name = model.getConfiguration().getNetworkInputs().get(inputNum);
+        return model.getVertex(name).getVertexIndex();
+    }
+
+    private Map<Integer, INDArray> forward(Stage s, MicroBatch mb, Map<Integer, INDArray> available,
+                                           LayerWorkspaceMgr mgr, double[] scores) {
+        //Same seed for the original and re-computed forward pass, so dropout masks match
+        Nd4j.getRandom().setSeed(mb.seed + s.idx);
+        Map<Integer, INDArray> activations = new HashMap<>();
+        for (GraphVertex gv : s.vertices) {
+            VertexIndices[] inputs = gv.getInputVertices();
+            for (int j = 0; j < inputs.length; j++) {
+                int src = inputs[j].getVertexIndex();
+                INDArray in = activations.containsKey(src) ? activations.get(src) : available.get(src);
+                gv.setInput(j, in, mgr);
+            }
+            if (gv.isOutputVertex()) {
+                IOutputLayer ol = outputLayer(gv);
+                ol.setLabels(mb.labels[model.getConfiguration().getNetworkOutputs().indexOf(gv.getVertexName())]);
+            }
+            activations.put(gv.getVertexIndex(), gv.doForward(true, mgr));
+            if (gv.isOutputVertex() && scores != null) {
+                //Regularization score is added once for the full minibatch
+                double score = outputLayer(gv).computeScore(0.0, true, mgr);
+                synchronized (scores) {
+                    scores[mb.idx] += score;
+                }
+            }
+        }
+        return activations;
+    }
+
+    private IOutputLayer outputLayer(GraphVertex gv) {
+        Layer l = gv.getLayer();
+        if (l instanceof FrozenLayerWithBackprop) {
+            l = ((FrozenLayerWithBackprop) l).getInsideLayer();
+        }
+        if (!(l instanceof IOutputLayer)) {
+            throw new UnsupportedOperationException("Pipeline parallel training requires all network outputs to be output layers:" +
+                    " vertex \"" + gv.getVertexName() + "\" is not an output layer");
+        }
+        return (IOutputLayer) l;
+    }
+
+    private void backward(Stage s, MicroBatch mb, Map<Integer, INDArray> epsilons, List<BlockingQueue<Message>> bwdQueues,
+                          LayerWorkspaceMgr mgr) {
+        Map<Integer, INDArray> eps = new HashMap<>(epsilons);
+        for (int i = s.vertices.size() - 1; i >= 0; i--) {
+            GraphVertex gv = s.vertices.get(i);
+            if ((gv.hasLayer() && gv.getLayer() instanceof FrozenLayer) || gv instanceof FrozenVertex) {
+                //As per ComputationGraph: no backprop through frozen vertices
+                continue;
+            }
+            if (!gv.isOutputVertex()) {
+                INDArray e = eps.remove(gv.getVertexIndex());
+                if (e == null) {
+                    //Activations not used by any (non-frozen) vertex
+                    continue;
+                }
+                gv.setEpsilon(e);
+            }
+
+            Pair<Gradient, INDArray[]> p = gv.doBackward(false, mgr);
+            VertexIndices[] inputs = gv.getInputVertices();
+            for (int j = 0; j < inputs.length; j++) {
+                INDArray e = p.getSecond()[j];
+                int src = inputs[j].getVertexIndex();
+                if (e == null || model.getVertices()[src].isInputVertex())
+                    continue;
+                INDArray existing = eps.get(src);
+                eps.put(src, existing == null ? e.dup() : existing.addi(e));
+            }
+
+            if (p.getFirst() != null) {
+                s.accumulate(gv, p.getFirst(), mb.fraction);
+            }
+        }
+
+        if (s.idx > 0) {
+            //Remaining epsilons: for activations from earlier stages
+            bwdQueues.get(s.idx - 1).add(new Message(mb.idx, eps));
+        }
+    }
+
+    private Message take(BlockingQueue<Message> queue, int expectedIdx, AtomicReference<Throwable> failure) throws InterruptedException {
+        while (true) {
+            if (failure.get() != null) {
+                throw new IllegalStateException("Aborting pipeline stage: another stage failed");
+            }
+            Message msg = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            if (msg != null) {
+                Preconditions.checkState(msg.idx == expectedIdx, "Expected micro-batch %s, got %s", expectedIdx, msg.idx);
+                return msg;
+            }
+        }
+    }
+
+    private void applyUpdate(long batchSize, MicroBatch[] micro, double[] scores) {
+        //Set the accumulated gradients in the network's gradient view array, then perform the standard updater step
+        INDArray flatGradients = model.getGradientsViewArray();
+        flatGradients.assign(0);
+        List<Triple<String, INDArray, Character>> gradients = new ArrayList<>();
+        for (Stage s : stages) {
+            for (Map.Entry<String, INDArray> e : s.accumulatedGradients.entrySet()) {
+                INDArray view = s.gradientViews.get(e.getKey());
+                view.assign(e.getValue());
+                gradients.add(new Triple<>(e.getKey(), view, s.gradientOrders.get(e.getKey())));
+            }
+        }
+        Gradient g = new DefaultGradient(flatGradients);
+        for (Triple<String, INDArray, Character> t : gradients) {
+            g.setGradientFor(t.getFirst(), t.getSecond(), t.getThird());
+        }
+
+        double score = 0.0;
+        for (int k = 0; k < micro.length; k++) {
+            score += scores[k] * micro[k].labels[0].size(0) / batchSize;
+        }
+        score += model.calcRegularizationScore(true);
+        model.setScore(score);
+
+        int iteration = model.getIterationCount();
+        int epoch = model.getEpochCount();
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            model.getUpdater().update(g, iteration, epoch, (int) batchSize, LayerWorkspaceMgr.noWorkspaces());
+            model.params().subi(flatGradients);
+            for (TrainingListener l : model.getListeners()) {
+                l.iterationDone(model, iteration, epoch);
+            }
+        }
+        BaseOptimizer.incrementIterationCount(model, 1);
+        model.applyConstraints(iteration, epoch);
+    }
+
+    /**
+     * Shut down the stage worker threads
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static class Stage {
+        private final int idx;
+        private final List<GraphVertex> vertices;
+        private final Set<Integer> vertexIdxs = new HashSet<>();
+        private final long numParams;
+        //Activations (vertex indices, including inputs) to send to the next stage
+        private final Set<Integer> sendForward = new LinkedHashSet<>();
+        //Key: vertexName_paramName, as per ComputationGraph gradients
+        private final Map<String, INDArray> accumulatedGradients = new LinkedHashMap<>();
+        private final Map<String, INDArray> gradientViews = new HashMap<>();
+        private final Map<String, Character> gradientOrders = new HashMap<>();
+
+        private Stage(int idx, List<GraphVertex> vertices) {
+            this.idx = idx;
+            this.vertices = new ArrayList<>(vertices);
+            long p = 0;
+            for (GraphVertex gv : vertices) {
+                vertexIdxs.add(gv.getVertexIndex());
+                p += numParams(gv);
+            }
+            this.numParams = p;
+        }
+
+        private void resetAccumulators() {
+            for (INDArray arr : accumulatedGradients.values()) {
+                arr.assign(0);
+            }
+        }
+
+        private void accumulate(GraphVertex gv, Gradient g, double fraction) {
+            //Layer gradients are sums over the examples in the micro-batch (division by minibatch size happens in the
+            //updater), hence summing over micro-batches gives the gradient for the full minibatch. Parameters that are
+            //not divided by minibatch size (such as batch norm mean/variance estimates) are instead averaged over the
+            //micro-batches, as per ComputationGraph gradient accumulation
+            for (Map.Entry<String, INDArray> e : g.gradientForVariable().entrySet()) {
+                String key = gv.getVertexName() + "_" + e.getKey();
+                INDArray grad = e.getValue();
+                boolean average = !gv.updaterDivideByMinibatch(e.getKey());
+                INDArray acc = accumulatedGradients.get(key);
+                if (acc == null) {
+                    acc = average ? grad.mul(fraction) : grad.dup();
+                    accumulatedGradients.put(key, acc);
+                    gradientViews.put(key, grad);
+                    gradientOrders.put(key, g.flatteningOrderForVariable(e.getKey()));
+                } else if (average) {
+                    acc.addi(grad.mul(fraction));
+                } else {
+                    acc.addi(grad);
+                }
+            }
+        }
+    }
+
+    private static class MicroBatch {
+        private final int idx;
+        private final INDArray[] features;
+        private final INDArray[] labels;
+        //Fraction of the minibatch's examples in this micro-batch
+        private final double fraction;
+        private final long seed;
+
+        private MicroBatch(int idx, INDArray[] features, INDArray[] labels, double fraction, long seed) {
+            this.idx = idx;
+            this.features = features;
+            this.labels = labels;
+            this.fraction = fraction;
+            this.seed = seed;
+        }
+    }
+
+    private static class Message {
+        private final int idx;
+        private final Map<Integer, INDArray> arrays;
+
+        private Message(int idx, Map<Integer, INDArray> arrays) {
+            this.idx = idx;
+            this.arrays = arrays;
+        }
+    }
+
+    public static class Builder {
+        private final ComputationGraph model;
+        private int numStages = 2;
+        private String[] stageBoundaries;
+        private int numMicroBatches = 4;
+        private Schedule schedule = Schedule.ONE_F_ONE_B;
+        private long seed = System.currentTimeMillis();
+
+        /**
+         * @param model Network to train. Must be initialized
+         */
+        public Builder(@NonNull ComputationGraph model) {
+            Preconditions.checkState(model.getVertices() != null, "Network must be initialized (call ComputationGraph.init())");
+            this.model = model;
+        }
+
+        /**
+         * Number of pipeline stages (default: 2). Vertices are split into stages (in topological order) such that
+         * the number of parameters in each stage is approximately equal.
+         * Not used if {@link #stageBoundaries(String...)} is set
+         */
+        public Builder numStages(int numStages) {
+            Preconditions.checkArgument(numStages > 0, "Number of stages must be positive, got %s", numStages);
+            this.numStages = numStages;
+            return this;
+        }
+
+        /**
+         * Explicitly define the pipeline stages: each of the specified vertices is the first vertex of a new stage.
+         * Vertices must be specified in topological order (see {@link ComputationGraph#topologicalSortOrder()}).
+         * For example, boundaries "dense1", "out" gives 3 stages: [all vertices before "dense1"],
+         * ["dense1" up to "out"], ["out" and later]
+         */
+        public Builder stageBoundaries(@NonNull String... firstVertexOfStage) {
+            this.stageBoundaries = firstVertexOfStage;
+            return this;
+        }
+
+        /**
+         * Number of micro-batches to split each minibatch into (default: 4). Should usually be at least the number
+         * of stages, to keep all stages busy
+         */
+        public Builder numMicroBatches(int numMicroBatches) {
+            Preconditions.checkArgument(numMicroBatches > 0, "Number of micro-batches must be positive, got %s", numMicroBatches);
+            this.numMicroBatches = numMicroBatches;
+            return this;
+        }
+
+        /**
+         * Micro-batch schedule (default: {@link Schedule#ONE_F_ONE_B})
+         */
+        public Builder schedule(@NonNull Schedule schedule) {
+            this.schedule = schedule;
+            return this;
+        }
+
+        /**
+         * Random seed, used for the per-micro-batch dropout seeds
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public PipelineParallelTrainer build() {
+            return new PipelineParallelTrainer(this);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hosts multiple named {@link SameDiff} models for inference. Each model is served by its own
+ * {@link SameDiffParallelInference} instance, so every model has a separate worker pool, request queue and batching
+ * policy, and a slow model doesn't delay requests to other models.<br>
+ * Models can be replaced at runtime via {@link #update(String, SameDiff)} without dropping requests.
+ *
+ * Example:
+ * <pre>
+ * {@code
+ * SameDiffModelHost host = new SameDiffModelHost();
+ * host.deploy("bert", new SameDiffParallelInference.Builder(bert, "logits").workers(4).batchLimit(64).padding(true));
+ * host.deploy("resnet", new SameDiffParallelInference.Builder(resnet, "probabilities").maxQueueDelay(2, TimeUnit.MILLISECONDS));
+ *
+ * CompletableFuture<Map<String, INDArray>> out = host.outputAsync("resnet", Collections.singletonMap("input", image));
+ * }
+ * </pre>
+ */
+@Slf4j
+public class SameDiffModelHost {
+    private final Map<String, SameDiffParallelInference> models = new ConcurrentHashMap<>();
+
+    /**
+     * Deploys a model under the given name
+     *
+     * @param name    name of the model
+     * @param builder serving configuration of the model
+     * @return the inference instance serving this model
+     */
+    public synchronized SameDiffParallelInference deploy(@NonNull String name, @NonNull SameDiffParallelInference.Builder builder) {
+        if (models.containsKey(name))
+            throw new IllegalStateException("Model \"" + name + "\" is already deployed. Use update() to replace it");
+
+        SameDiffParallelInference inference = builder.build();
+        models.put(name, inference);
+        log.info("Deployed model \"{}\"", name);
+        return inference;
+    }
+
+    /**
+     * Replaces the model deployed under the given name. Requests that are queued or being executed aren't dropped:
+     * batches that are already running finish on the previous model, and all subsequent batches use the new one
+     *
+     * @param name  name of the model
+     * @param model the new model. Must accept the same placeholders and produce the same outputs as the previous one
+     */
+    public void update(@NonNull String name, @NonNull SameDiff model) {
+        get(name).updateModel(model);
+        log.info("Updated model \"{}\"", name);
+    }
+
+    /**
+     * Removes the model deployed under the given name. New requests to this model are rejected immediately, queued
+     * requests are executed before the model's workers stop
+     *
+     * @param name name of the model
+     */
+    public void undeploy(@NonNull String name) {
+        SameDiffParallelInference inference;
+        synchronized (this) {
+            inference = models.remove(name);
+        }
+        if (inference == null)
+            throw new IllegalStateException("Model \"" + name + "\" isn't deployed");
+
+        inference.shutdown(true);
+        log.info("Undeployed model \"{}\"", name);
+    }
+
+    /**
+     * @return names of all deployed models
+     */
+    public Set<String> getModelNames() {
+        return new TreeSet<>(models.keySet());
+    }
+
+    /**
+     * @return the inference instance serving the given model
+     */
+    public SameDiffParallelInference get(@NonNull String name) {
+        SameDiffParallelInference inference = models.get(name);
+        if (inference == null)
+            throw new IllegalStateException("Model \"" + name + "\" isn't deployed. Deployed models: " + getModelNames());
+        return inference;
+    }
+
+    /**
+     * Generate outputs of the given model, blocking until they're available
+     */
+    public Map<String, INDArray> output(@NonNull String name, @NonNull Map<String, INDArray> placeholders) {
+        return get(name).output(placeholders);
+    }
+
+    /**
+     * Generate outputs of the given model without blocking the calling thread
+     */
+    public CompletableFuture<Map<String, INDArray>> outputAsync(@NonNull String name, @NonNull Map<String, INDArray> placeholders) {
+        SameDiffParallelInference inference = models.get(name);
+        if (inference == null) {
+            CompletableFuture<Map<String, INDArray>> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("Model \"" + name + "\" isn't deployed"));
+            return future;
+        }
+        return inference.outputAsync(placeholders);
+    }
+
+    /**
+     * Stops all models. Queued requests are executed before workers stop
+     */
+    public synchronized void shutdown() {
+        for (Map.Entry<String, SameDiffParallelInference> e : models.entrySet())
+            e.getValue().shutdown(true);
+        models.clear();
+    }
+}
@@ -0,0 +1,532 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ParallelInference} counterpart for {@link SameDiff} models, i.e. imported TensorFlow or ONNX graphs.<br>
+ * Requests submitted from any number of threads are coalesced by worker threads into dynamic batches along the
+ * leading (minibatch) dimension: a batch is executed once {@link Builder#batchLimit(int)} examples are collected,
+ * or {@link Builder#maxQueueDelay(long, TimeUnit)} elapses, whichever comes first. Outputs are split back into
+ * per-request results.<br>
+ * Requests can only be batched together if they have the same placeholders, with the same data types and the same
+ * shapes apart from the leading dimension. With {@link Builder#padding(boolean)} enabled, requests with different
+ * shapes (i.e. variable-length sequences) are batched as well: inputs are zero-padded to the largest shape in the batch.
+ * Zero padding is also the right padding for mask placeholders, so models with masks produce correct results; outputs
+ * of padded requests keep the padded shape.<br>
+ * The model can be replaced at runtime via {@link #updateModel(SameDiff)}: batches that are already running complete
+ * on the old model, and all subsequent batches use the new one, so no request is dropped.
+ *
+ * Outputs without leading dimension equal to the batch size (i.e. scalars) are returned to every request as is.
+ */
+@Slf4j
+public class SameDiffParallelInference {
+    public final static int DEFAULT_NUM_WORKERS = Nd4j.getAffinityManager().getNumberOfDevices();
+    public final static int DEFAULT_BATCH_LIMIT = 32;
+    public final static int DEFAULT_QUEUE_LIMIT = 64;
+
+    protected volatile SameDiff model;
+    protected String[] outputs;
+    protected int workers;
+    protected int batchLimit;
+    protected int queueLimit;
+    protected long queueDelayNanos;
+    protected boolean padding;
+
+    protected BlockingQueue<Request> queue;
+    protected Worker[] zoo;
+    protected volatile boolean shutdown;
+    protected volatile boolean stopWorkers;
+    protected volatile boolean draining;
+    protected final AtomicLong batches = new AtomicLong();
+    protected final AtomicLong requests = new AtomicLong();
+
+    protected SameDiffParallelInference() {
+        //
+    }
+
+    protected void init() {
+        queue = new LinkedBlockingQueue<>(queueLimit);
+
+        int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
+        zoo = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            zoo[i] = new Worker(i, i % numDevices);
+            zoo[i].setDaemon(true);
+            zoo[i].start();
+        }
+    }
+
+    /**
+     * Replaces the model used for inference, without dropping queued or in-flight requests.
+     * Batches already being executed finish on the previous model.
+     *
+     * @param model the new model. Must accept the same placeholders and produce the same outputs
+     */
+    public void updateModel(@NonNull SameDiff model) {
+        this.model = model;
+    }
+
+    /**
+     * @return the model currently used for new batches
+     */
+    public SameDiff getModel() {
+        return model;
+    }
+
+    /**
+     * @return number of batches executed so far
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * @return number of requests completed so far
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of requests waiting in the queue
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Generate outputs for the given placeholders, blocking until they're available
+     *
+     * @param placeholders Placeholder values, with the minibatch as the leading dimension
+     * @return Outputs, keyed by output name
+     */
+    public Map<String, INDArray> output(@NonNull Map<String, INDArray> placeholders) {
+        try {
+            return outputAsync(placeholders).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Generate outputs for the given placeholders without blocking the calling thread. The returned future is
+     * completed from the inference worker thread
+     *
+     * @param placeholders Placeholder values, with the minibatch as the leading dimension
+     * @return Future that will be completed with outputs keyed by output name, or exceptionally if inference failed
+     */
+    public CompletableFuture<Map<String, INDArray>> outputAsync(@NonNull Map<String, INDArray> placeholders) {
+        CompletableFuture<Map<String, INDArray>> future = new CompletableFuture<>();
+        if (shutdown) {
+            future.completeExceptionally(new IllegalStateException("SameDiffParallelInference was shut down"));
+            return future;
+        }
+
+        Request request;
+        try {
+            request = new Request(placeholders, future);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
+        try {
+            // bounded waits, so callers blocked on a full queue don't wait forever once the workers have stopped
+            while (!queue.offer(request, 100, TimeUnit.MILLISECONDS)) {
+                if (shutdown) {
+                    future.completeExceptionally(new IllegalStateException("SameDiffParallelInference was shut down"));
+                    return future;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        // shutdown may have happened while this request was being queued: the workers (and failQueued) may be done
+        // already, so it's rejected here unless a worker has picked it up - even when draining
+        if (shutdown && queue.remove(request))
+            future.completeExceptionally(new IllegalStateException("SameDiffParallelInference was shut down"));
+        return future;
+    }
+
+    /**
+     * Stops all workers once batches that are being executed are finished. Requests that are still queued are
+     * completed exceptionally
+     */
+    public synchronized void shutdown() {
+        shutdown(false);
+    }
+
+    /**
+     * Stops all workers
+     *
+     * @param drain if true, requests that are already queued are executed before workers stop.
+     *              Otherwise they're completed exceptionally. Batches that are being executed are always finished.
+     *              Requests submitted concurrently with shutdown may be completed exceptionally in either case
+     */
+    public synchronized void shutdown(boolean drain) {
+        if (shutdown)
+            return;
+        shutdown = true;
+        draining = drain;
+        stopWorkers = true;
+
+        for (Worker w : zoo) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        failQueued();
+    }
+
+    protected void failQueued() {
+        List<Request> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (Request r : left)
+            r.future.completeExceptionally(new IllegalStateException("SameDiffParallelInference was shut down"));
+    }
+
+    /**
+     * Concatenates inputs of all requests along the leading dimension, padding them if required
+     */
+    protected Map<String, INDArray> merge(List<Request> batch) {
+        if (batch.size() == 1)
+            return batch.get(0).placeholders;
+
+        Map<String, INDArray> merged = new HashMap<>();
+        for (String name : batch.get(0).placeholders.keySet()) {
+            INDArray[] arrays = new INDArray[batch.size()];
+            for (int i = 0; i < arrays.length; i++)
+                arrays[i] = batch.get(i).placeholders.get(name);
+
+            if (padding) {
+                long[] max = arrays[0].shape().clone();
+                for (INDArray a : arrays) {
+                    for (int d = 1; d < max.length; d++)
+                        max[d] = Math.max(max[d], a.size(d));
+                }
+
+                for (int i = 0; i < arrays.length; i++)
+                    arrays[i] = pad(arrays[i], max);
+            }
+
+            merged.put(name, Nd4j.concat(0, arrays));
+        }
+        return merged;
+    }
+
+    protected static INDArray pad(INDArray array, long[] shape) {
+        boolean same = true;
+        for (int d = 1; d < shape.length; d++)
+            same &= array.size(d) == shape[d];
+        if (same)
+            return array;
+
+        long[] target = shape.clone();
+        target[0] = array.size(0);
+        INDArray padded = Nd4j.create(array.dataType(), target);
+        INDArrayIndex[] idx = new INDArrayIndex[target.length];
+        for (int d = 0; d < idx.length; d++)
+            idx[d] = NDArrayIndex.interval(0, array.size(d));
+        padded.get(idx).assign(array);
+        return padded;
+    }
+
+    /**
+     * Splits outputs along the leading dimension, and completes futures of all requests in the batch
+     */
+    protected void split(List<Request> batch, long total, Map<String, INDArray> out) {
+        if (batch.size() == 1) {
+            batch.get(0).future.complete(out);
+            return;
+        }
+
+        long offset = 0;
+        for (Request r : batch) {
+            Map<String, INDArray> result = new HashMap<>();
+            for (Map.Entry<String, INDArray> e : out.entrySet()) {
+                INDArray arr = e.getValue();
+                if (arr == null || arr.rank() == 0 || arr.size(0) != total) {
+                    result.put(e.getKey(), arr);
+                } else {
+                    result.put(e.getKey(), arr.get(NDArrayIndex.interval(offset, offset + r.size)).dup());
+                }
+            }
+            offset += r.size;
+            r.future.complete(result);
+        }
+    }
+
+    public static class Builder {
+        private SameDiff model;
+        private String[] outputs;
+        private int workers = DEFAULT_NUM_WORKERS;
+        private int batchLimit = DEFAULT_BATCH_LIMIT;
+        private int queueLimit = DEFAULT_QUEUE_LIMIT;
+        private long queueDelayNanos = 0;
+        private boolean padding = false;
+
+        /**
+         * @param model   the model to serve
+         * @param outputs names of the variables to return
+         */
+        public Builder(@NonNull SameDiff model, @NonNull String... outputs) {
+            Preconditions.checkArgument(outputs.length > 0, "At least one output must be specified");
+            this.model = model;
+            this.outputs = outputs;
+        }
+
+        /**
+         * This method defines, how many worker threads will be used for inference.
+         *
+         * Default value: number of devices
+         */
+        public Builder workers(int workers) {
+            if (workers < 1)
+                throw new IllegalStateException("Workers should be positive value");
+
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * This method defines the maximum number of examples (sum of leading dimensions of all requests) in a single batch.
+         * A single request larger than this limit is executed as is.
+         *
+         * Default value: 32
+         */
+        public Builder batchLimit(int limit) {
+            if (limit < 1)
+                throw new IllegalStateException("Batch limit should be positive value");
+
+            this.batchLimit = limit;
+            return this;
+        }
+
+        /**
+         * This method defines how long a worker waits for more requests after it received the first request of a batch.
+         *
+         * Default value: 0, which means only requests that are already queued are batched together
+         */
+        public Builder maxQueueDelay(long delay, @NonNull TimeUnit timeUnit) {
+            if (delay < 0)
+                throw new IllegalStateException("Queue delay should be non-negative value");
+
+            this.queueDelayNanos = timeUnit.toNanos(delay);
+            return this;
+        }
+
+        /**
+         * This method defines buffer queue size.
+         *
+         * Default value: 64
+         */
+        public Builder queueLimit(int limit) {
+            if (limit < 1)
+                throw new IllegalStateException("Queue limit should be positive value");
+
+            this.queueLimit = limit;
+            return this;
+        }
+
+        /**
+         * If true, requests with different non-leading dimensions are batched together, and zero-padded to the
+         * largest shape in the batch.
+         *
+         * Default value: false
+         */
+        public Builder padding(boolean padding) {
+            this.padding = padding;
+            return this;
+        }
+
+        public SameDiffParallelInference build() {
+            SameDiffParallelInference inference = new SameDiffParallelInference();
+            inference.model = this.model;
+            inference.outputs = this.outputs;
+            inference.workers = this.workers;
+            inference.batchLimit = this.batchLimit;
+            inference.queueLimit = this.queueLimit;
+            inference.queueDelayNanos = this.queueDelayNanos;
+            inference.padding = this.padding;
+
+            inference.init();
+
+            return inference;
+        }
+    }
+
+    protected static class Request {
+        private final Map<String, INDArray> placeholders;
+        private final CompletableFuture<Map<String, INDArray>> future;
+        private final long size;
+
+        protected Request(Map<String, INDArray> placeholders, CompletableFuture<Map<String, INDArray>> future) {
+            Preconditions.checkArgument(!placeholders.isEmpty(), "At least one placeholder is required");
+            long size = -1;
+            for (Map.Entry<String, INDArray> e : placeholders.entrySet()) {
+                INDArray arr = e.getValue();
+                Preconditions.checkArgument(arr != null && arr.rank() > 0, "Placeholder \"%s\" must have a leading minibatch dimension", e.getKey());
+                if (size < 0)
+                    size = arr.size(0);
+                Preconditions.checkArgument(arr.size(0) == size, "All placeholders must have the same minibatch size: " +
+                        "got %s for placeholder \"%s\", expected %s", arr.size(0), e.getKey(), size);
+            }
+
+            this.placeholders = placeholders;
+            this.future = future;
+            this.size = size;
+        }
+
+        /**
+         * @return true if this request can be executed in the same batch as the other request
+         */
+        protected boolean compatible(Request other, boolean padding) {
+            if (!placeholders.keySet().equals(other.placeholders.keySet()))
+                return false;
+
+            for (Map.Entry<String, INDArray> e : placeholders.entrySet()) {
+                INDArray a = e.getValue();
+                INDArray b = other.placeholders.get(e.getKey());
+                if (a.dataType() != b.dataType() || a.rank() != b.rank())
+                    return false;
+
+                if (!padding) {
+                    for (int d = 1; d < a.rank(); d++) {
+                        if (a.size(d) != b.size(d))
+                            return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Worker thread: collects a batch from the queue, and executes it with the current model
+     */
+    protected class Worker extends Thread {
+        private final int deviceId;
+        // request that didn't fit into previous batch
+        private Request carry;
+
+        protected Worker(int id, int deviceId) {
+            this.deviceId = deviceId;
+            this.setName("SameDiffParallelInference worker " + id);
+        }
+
+        /**
+         * @return next batch, or null if no requests arrived within polling interval
+         */
+        protected List<Request> collect() throws InterruptedException {
+            Request first = carry != null ? carry : queue.poll(100, TimeUnit.MILLISECONDS);
+            carry = null;
+            if (first == null)
+                return null;
+
+            List<Request> batch = new ArrayList<>();
+            batch.add(first);
+            long size = first.size;
+            long deadline = System.nanoTime() + queueDelayNanos;
+            while (size < batchLimit) {
+                Request r;
+                long wait = deadline - System.nanoTime();
+                if (wait > 0)
+                    r = queue.poll(wait, TimeUnit.NANOSECONDS);
+                else
+                    r = queue.poll();
+
+                if (r == null)
+                    break;
+
+                if (size + r.size > batchLimit || !first.compatible(r, padding)) {
+                    carry = r;
+                    break;
+                }
+
+                batch.add(r);
+                size += r.size;
+            }
+            return batch;
+        }
+
+        @Override
+        public void run() {
+            Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+            while (true) {
+                if (stopWorkers && carry == null && (!draining || queue.isEmpty()))
+                    break;
+
+                List<Request> batch;
+                try {
+                    batch = collect();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (batch == null)
+                    continue;
+
+                long total = 0;
+                for (Request r : batch)
+                    total += r.size;
+
+                // model is read once per batch: if it's replaced meanwhile, this batch still completes on the old one
+                SameDiff sd = model;
+                try {
+                    Map<String, INDArray> out = sd.output(merge(batch), outputs);
+                    Nd4j.getExecutioner().commit();
+                    batches.incrementAndGet();
+                    split(batch, total, out);
+                    requests.addAndGet(batch.size());
+                } catch (Throwable t) {
+                    for (Request r : batch)
+                        r.future.completeExceptionally(t);
+                }
+            }
+        }
+    }
+}
@@ -236,7 +236,18 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
     @Override
     public INDArray[] getOutput() {
         // basically we should take care of splits here: each client should get its own part of output, wrt order number
+        return getOutput(position.get());
+    }
+
+    /**
+     * This method returns output for the input added at the given position within this batch.
+     * Unlike {@link #getOutput()} it doesn't depend on the thread that added the input
+     *
+     * @param position position of the input, as returned by {@link #getCounter()} right before it was added
+     * @return
+     */
+    public INDArray[] getOutput(int position) {
         checkOutputException();
-        return outputs.get(position.get());
+        return outputs.get(position);
     }
 }
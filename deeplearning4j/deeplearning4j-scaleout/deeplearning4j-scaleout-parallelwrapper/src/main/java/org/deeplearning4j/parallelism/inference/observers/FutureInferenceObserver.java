@@ -0,0 +1,70 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference.observers;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Observer that completes a {@link CompletableFuture} once the observed request has been processed, instead of
+ * parking the calling thread like {@link BasicInferenceObserver} does.
+ *
+ * For batched requests the observer keeps the position of its own input within the batch, since the output is
+ * delivered from the inference worker thread rather than from the thread that submitted the input.
+ */
+@Slf4j
+public class FutureInferenceObserver implements Observer {
+    private final CompletableFuture<INDArray[]> future;
+    private final int position;
+
+    public FutureInferenceObserver(@NonNull CompletableFuture<INDArray[]> future) {
+        this(future, 0);
+    }
+
+    public FutureInferenceObserver(@NonNull CompletableFuture<INDArray[]> future, int position) {
+        this.future = future;
+        this.position = position;
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+        try {
+            INDArray[] output;
+            if (o instanceof BatchedInferenceObservable) {
+                output = ((BatchedInferenceObservable) o).getOutput(position);
+            } else {
+                output = ((BasicInferenceObservable) o).getOutput();
+            }
+            future.complete(output);
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+
+    public CompletableFuture<INDArray[]> getFuture() {
+        return future;
+    }
+}
@@ -55,8 +55,11 @@ import org.nd4j.common.resources.Resources;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -350,6 +353,109 @@ public class ParallelInferenceTest extends BaseDL4JTest {
     }
 
 
+    @Test
+    public void testProviderDelayed1() throws Exception {
+        LinkedBlockingQueue queue = new LinkedBlockingQueue();
+        ParallelInference.ObservablesProvider provider =
+                        new ParallelInference.ObservablesProvider(10000000L, 3, TimeUnit.MILLISECONDS.toNanos(50), queue);
+
+        try {
+            CompletableFuture<INDArray[]> f1 = new CompletableFuture<>();
+            CompletableFuture<INDArray[]> f2 = new CompletableFuture<>();
+            InferenceObservable observable1 = provider.setInputAsync(f1, new INDArray[]{Nd4j.create(1, 100).assign(1.0)}, null);
+            InferenceObservable observable2 = provider.setInputAsync(f2, new INDArray[]{Nd4j.create(1, 100).assign(2.0)}, null);
+
+            // batch isn't full, so it should be held back until delay expires
+            assertTrue(observable1 == observable2);
+            assertEquals(0, queue.size());
+
+            InferenceObservable flushed = (InferenceObservable) queue.poll(5, TimeUnit.SECONDS);
+            assertTrue(observable1 == flushed);
+
+            List<Pair<INDArray[], INDArray[]>> l = flushed.getInputBatches();
+            assertEquals(1, l.size());
+            INDArray input = l.get(0).getFirst()[0];
+            assertArrayEquals(new long[]{2, 100}, input.shape());
+
+            flushed.setOutputBatches(Collections.singletonList(new INDArray[]{input}));
+            assertEquals(1.0f, f1.get(5, TimeUnit.SECONDS)[0].meanNumber().floatValue(), 0.001);
+            assertEquals(2.0f, f2.get(5, TimeUnit.SECONDS)[0].meanNumber().floatValue(), 0.001);
+
+            // new input should start new batch
+            InferenceObservable observable3 = provider.setInputAsync(new CompletableFuture<>(), new INDArray[]{Nd4j.create(1, 100)}, null);
+            assertTrue(observable1 != observable3);
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @Test
+    public void testProviderDelayed2() throws Exception {
+        LinkedBlockingQueue queue = new LinkedBlockingQueue();
+        ParallelInference.ObservablesProvider provider =
+                        new ParallelInference.ObservablesProvider(10000000L, 2, TimeUnit.SECONDS.toNanos(60), queue);
+
+        try {
+            InferenceObservable observable1 = provider.setInputAsync(new CompletableFuture<>(), new INDArray[]{Nd4j.create(1, 100)}, null);
+            InferenceObservable observable2 = provider.setInputAsync(new CompletableFuture<>(), new INDArray[]{Nd4j.create(1, 100)}, null);
+
+            // full batch should be sent right away, without waiting for delay
+            assertTrue(observable1 == observable2);
+            assertEquals(1, queue.size());
+            assertTrue(observable1 == queue.poll());
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @Test
+    public void testProviderDelayedShutdown() throws Exception {
+        LinkedBlockingQueue queue = new LinkedBlockingQueue();
+        ParallelInference.ObservablesProvider provider =
+                        new ParallelInference.ObservablesProvider(10000000L, 3, TimeUnit.SECONDS.toNanos(60), queue);
+
+        CompletableFuture<INDArray[]> f1 = new CompletableFuture<>();
+        CompletableFuture<INDArray[]> f2 = new CompletableFuture<>();
+        provider.setInputAsync(f1, new INDArray[]{Nd4j.create(1, 100)}, null);
+        provider.setInputAsync(f2, new INDArray[]{Nd4j.create(1, 100)}, null);
+        assertEquals(0, queue.size());
+
+        // pending batch won't ever be flushed after shutdown, so its futures must fail instead of hanging forever
+        provider.shutdown();
+        assertThrows(ExecutionException.class, () -> f1.get(5, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> f2.get(5, TimeUnit.SECONDS));
+        assertEquals(0, queue.size());
+    }
+
+    @Test()
+    @Timeout(30000)
+    public void testInferenceAsync1() throws Exception {
+        for (InferenceMode mode : new InferenceMode[]{InferenceMode.SEQUENTIAL, InferenceMode.BATCHED, InferenceMode.INPLACE}) {
+            ParallelInference inf = new ParallelInference.Builder(model).inferenceMode(mode).batchLimit(8)
+                    .maxQueueDelay(2, TimeUnit.MILLISECONDS).workers(2).build();
+            try {
+                iterator = new MnistDataSetIterator(1, false, 12345);
+
+                List<INDArray> inputs = new ArrayList<>();
+                List<CompletableFuture<INDArray[]>> futures = new ArrayList<>();
+                for (int i = 0; i < 20 && iterator.hasNext(); i++) {
+                    INDArray features = iterator.next().getFeatures();
+                    inputs.add(features);
+                    futures.add(inf.outputAsync(features));
+                }
+
+                for (int i = 0; i < futures.size(); i++) {
+                    INDArray[] out = futures.get(i).get(10, TimeUnit.SECONDS);
+                    assertEquals(1, out.length);
+                    assertEquals(model.output(inputs.get(i)), out[0], mode.toString());
+                }
+            } finally {
+                inf.shutdown();
+            }
+        }
+    }
+
+
     protected void evalClassifcationSingleThread(@NonNull ParallelInference inf, @NonNull DataSetIterator iterator) {
         DataSet ds = iterator.next();
         log.info("NumColumns: {}", ds.getLabels().columns());
@@ -0,0 +1,194 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.BatchNormalization;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class PipelineParallelTrainerTest extends BaseDL4JTest {
+
+    @Override
+    public DataType getDataType() {
+        return DataType.DOUBLE;
+    }
+
+    private static ComputationGraph getNet() {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Sgd(0.1))
+                .l2(1e-4)
+                .graphBuilder()
+                .addInputs("in")
+                .layer("d0", new DenseLayer.Builder().nOut(8).activation(Activation.TANH).build(), "in")
+                .layer("d1", new DenseLayer.Builder().nOut(8).activation(Activation.TANH).build(), "d0")
+                .layer("d2", new DenseLayer.Builder().nOut(8).activation(Activation.TANH).build(), "d1")
+                //Skip connection: d0 (stage 0) -> add (stage 2)
+                .addVertex("add", new ElementWiseVertex(ElementWiseVertex.Op.Add), "d0", "d2")
+                .layer("out", new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "add")
+                .setOutputs("out")
+                .setInputTypes(InputType.feedForward(5))
+                .build();
+        ComputationGraph cg = new ComputationGraph(conf);
+        cg.init();
+        return cg;
+    }
+
+    private static DataSet getData(int n) {
+        INDArray labels = Nd4j.create(DataType.DOUBLE, n, 3);
+        for (int i = 0; i < n; i++) {
+            labels.putScalar(i, i % 3, 1.0);
+        }
+        return new DataSet(Nd4j.rand(DataType.DOUBLE, n, 5), labels);
+    }
+
+    @Test
+    public void testMatchesStandardTraining() {
+        Nd4j.getRandom().setSeed(12345);
+        for (PipelineParallelTrainer.Schedule schedule : PipelineParallelTrainer.Schedule.values()) {
+            ComputationGraph reference = getNet();
+            ComputationGraph net = getNet();
+            assertEquals(reference.params(), net.params());
+
+            try (PipelineParallelTrainer trainer = new PipelineParallelTrainer.Builder(net)
+                    .stageBoundaries("d1", "d2")
+                    .numMicroBatches(4)
+                    .schedule(schedule)
+                    .build()) {
+                assertEquals(3, trainer.numStages());
+                List<List<String>> names = trainer.getStageVertexNames();
+                assertEquals(Arrays.asList("d0"), names.get(0));
+                assertEquals(Arrays.asList("d1"), names.get(1));
+
+                for (int i = 0; i < 5; i++) {
+                    //Includes a minibatch that doesn't divide evenly into micro-batches
+                    DataSet ds = getData(i == 4 ? 14 : 16);
+                    reference.fit(ds);
+                    trainer.fit(ds);
+                    assertEquals(reference.score(), net.score(), 1e-8, schedule.toString());
+                    assertTrue(reference.params().equalsWithEps(net.params(), 1e-8), schedule + ", iteration " + i);
+                }
+                assertEquals(reference.getIterationCount(), net.getIterationCount());
+            }
+        }
+    }
+
+    @Test
+    public void testAutomaticPartitioning() {
+        ComputationGraph net = getNet();
+        try (PipelineParallelTrainer trainer = new PipelineParallelTrainer.Builder(net).numStages(3).build()) {
+            assertEquals(3, trainer.numStages());
+            int count = 0;
+            for (List<String> l : trainer.getStageVertexNames()) {
+                assertFalse(l.isEmpty());
+                count += l.size();
+            }
+            assertEquals(5, count);
+
+            //Smoke test: training should reduce the score
+            DataSet ds = getData(32);
+            net.setInputs(ds.getFeatures());
+            net.setLabels(ds.getLabels());
+            net.computeGradientAndScore();
+            double before = net.score();
+            for (int i = 0; i < 20; i++) {
+                trainer.fit(ds);
+            }
+            assertTrue(net.score() < before);
+        }
+    }
+
+    @Test
+    public void testBatchNormGlobalStats() {
+        Nd4j.getRandom().setSeed(12345);
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .dataType(DataType.DOUBLE)
+                .seed(12345)
+                .updater(new Sgd(0.1))
+                .graphBuilder()
+                .addInputs("in")
+                .layer("bn", new BatchNormalization.Builder().build(), "in")
+                .layer("d0", new DenseLayer.Builder().nOut(8).activation(Activation.TANH).build(), "bn")
+                .layer("out", new OutputLayer.Builder().nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build(), "d0")
+                .setOutputs("out")
+                .setInputTypes(InputType.feedForward(5))
+                .build();
+
+        for (int numMicroBatches : new int[]{1, 4}) {
+            ComputationGraph reference = new ComputationGraph(conf.clone());
+            reference.init();
+            ComputationGraph net = new ComputationGraph(conf.clone());
+            net.init();
+
+            try (PipelineParallelTrainer trainer = new PipelineParallelTrainer.Builder(net)
+                    .stageBoundaries("d0")
+                    .numMicroBatches(numMicroBatches)
+                    .build()) {
+                for (int i = 0; i < 5; i++) {
+                    DataSet ds = getData(i == 4 ? 14 : 16);
+                    ds.getFeatures().muli(4).addi(2);
+                    reference.fit(ds);
+                    trainer.fit(ds);
+
+                    //Batch norm directly follows the input: the global mean estimate (weighted average of the
+                    //micro-batch means) matches standard training, and is not scaled by the number of micro-batches
+                    INDArray expMean = reference.getParam("bn_mean");
+                    INDArray actMean = net.getParam("bn_mean");
+                    assertTrue(expMean.equalsWithEps(actMean, 1e-8), numMicroBatches + ", iteration " + i);
+
+                    if (numMicroBatches == 1) {
+                        assertTrue(reference.params().equalsWithEps(net.params(), 1e-8), "Iteration " + i);
+                    } else {
+                        //Variance estimate is based on the micro-batch variances, hence differs from standard training
+                        assertTrue(net.getParam("bn_var").minNumber().doubleValue() > 0);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.jupiter.api.Test;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.junit.jupiter.api.Tag;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+@NativeTag
+@Tag(TagNames.SAMEDIFF)
+public class SameDiffParallelInferenceTest extends BaseDL4JTest {
+
+    private static SameDiff mlp(double scale) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 3).muli(scale));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 3));
+        sd.nn.softmax("out", in.mmul(w).add(b));
+        return sd;
+    }
+
+    @Test
+    public void testBatchedOutput() throws Exception {
+        SameDiff sd = mlp(1.0);
+        SameDiffParallelInference inf = new SameDiffParallelInference.Builder(sd, "out")
+                .workers(2).batchLimit(16).maxQueueDelay(20, TimeUnit.MILLISECONDS).build();
+
+        List<INDArray> inputs = new ArrayList<>();
+        List<CompletableFuture<Map<String, INDArray>>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            INDArray in = Nd4j.rand(DataType.FLOAT, 1 + i % 3, 4);
+            inputs.add(in);
+            futures.add(inf.outputAsync(Collections.singletonMap("in", in)));
+        }
+
+        for (int i = 0; i < inputs.size(); i++) {
+            INDArray exp = sd.outputSingle(Collections.singletonMap("in", inputs.get(i)), "out");
+            INDArray act = futures.get(i).get().get("out");
+            assertEquals(exp, act);
+        }
+
+        assertEquals(40, inf.getRequestCount());
+        assertTrue(inf.getBatchCount() < 40, "Requests were not batched: " + inf.getBatchCount() + " batches");
+        inf.shutdown();
+    }
+
+    @Test
+    public void testPadding() throws Exception {
+        // sum over variable length sequences: zero padding doesn't change the result
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, -1);
+        sd.sum("out", in, 1);
+
+        SameDiffParallelInference inf = new SameDiffParallelInference.Builder(sd, "out")
+                .workers(1).batchLimit(8).maxQueueDelay(50, TimeUnit.MILLISECONDS).padding(true).build();
+
+        List<INDArray> inputs = new ArrayList<>();
+        List<CompletableFuture<Map<String, INDArray>>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            INDArray arr = Nd4j.rand(DataType.FLOAT, 1, 2 + i);
+            inputs.add(arr);
+            futures.add(inf.outputAsync(Collections.singletonMap("in", arr)));
+        }
+
+        for (int i = 0; i < inputs.size(); i++) {
+            INDArray act = futures.get(i).get().get("out");
+            assertEquals(inputs.get(i).sumNumber().doubleValue(), act.getDouble(0), 1e-5);
+        }
+        assertTrue(inf.getBatchCount() < 8);
+        inf.shutdown();
+    }
+
+    @Test
+    public void testModelHostAndUpdate() throws Exception {
+        SameDiff first = mlp(1.0);
+        SameDiff second = mlp(2.0);
+        SameDiff sum = SameDiff.create();
+        sum.sum("out", sum.placeHolder("in", DataType.FLOAT, -1, 4), 1);
+
+        SameDiffModelHost host = new SameDiffModelHost();
+        host.deploy("mlp", new SameDiffParallelInference.Builder(first, "out").workers(2));
+        host.deploy("sum", new SameDiffParallelInference.Builder(sum, "out").workers(1));
+        assertEquals(new TreeSet<>(Arrays.asList("mlp", "sum")), host.getModelNames());
+
+        INDArray in = Nd4j.rand(DataType.FLOAT, 3, 4);
+        Map<String, INDArray> ph = Collections.singletonMap("in", in);
+        assertEquals(first.outputSingle(ph, "out"), host.output("mlp", ph).get("out"));
+        assertEquals(in.sum(1), host.output("sum", ph).get("out"));
+
+        // requests submitted while the model is being replaced must all complete, on either model
+        List<CompletableFuture<Map<String, INDArray>>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(host.outputAsync("mlp", ph));
+            if (i == 25)
+                host.update("mlp", second);
+        }
+        INDArray expFirst = first.outputSingle(ph, "out");
+        INDArray expSecond = second.outputSingle(ph, "out");
+        for (CompletableFuture<Map<String, INDArray>> f : futures) {
+            INDArray out = f.get().get("out");
+            assertTrue(out.equals(expFirst) || out.equals(expSecond));
+        }
+        assertEquals(expSecond, host.output("mlp", ph).get("out"));
+
+        host.undeploy("sum");
+        assertEquals(Collections.singleton("mlp"), host.getModelNames());
+        assertThrows(Exception.class, () -> host.outputAsync("sum", ph).get());
+
+        host.shutdown();
+    }
+
+    @Test
+    public void testSubmitConcurrentWithShutdown() throws Exception {
+        SameDiff sd = mlp(1.0);
+        for (int attempt = 0; attempt < 5; attempt++) {
+            // small queue, so submitting threads also block on a full queue while shutdown happens
+            SameDiffParallelInference inf = new SameDiffParallelInference.Builder(sd, "out")
+                    .workers(2).batchLimit(4).queueLimit(4).build();
+            int nThreads = 4;
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService exec = Executors.newFixedThreadPool(nThreads);
+            List<Future<List<CompletableFuture<Map<String, INDArray>>>>> submitted = new ArrayList<>();
+            for (int t = 0; t < nThreads; t++) {
+                submitted.add(exec.submit(() -> {
+                    List<CompletableFuture<Map<String, INDArray>>> l = new ArrayList<>();
+                    start.await();
+                    for (int i = 0; i < 50; i++)
+                        l.add(inf.outputAsync(Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 1, 4))));
+                    return l;
+                }));
+            }
+            start.countDown();
+            inf.shutdown(true);
+
+            // every request completes - with outputs or exceptionally - and none hangs
+            for (Future<List<CompletableFuture<Map<String, INDArray>>>> f : submitted) {
+                for (CompletableFuture<Map<String, INDArray>> r : f.get(30, TimeUnit.SECONDS)) {
+                    try {
+                        assertNotNull(r.get(30, TimeUnit.SECONDS).get("out"));
+                    } catch (ExecutionException e) {
+                        assertTrue(e.getCause() instanceof IllegalStateException, String.valueOf(e.getCause()));
+                    }
+                }
+            }
+            exec.shutdown();
+        }
+    }
+}
@@ -44,9 +44,12 @@ import org.nd4j.autodiff.samediff.config.EvaluationConfig;
 import org.nd4j.autodiff.samediff.config.FitConfig;
 import org.nd4j.autodiff.samediff.config.OutputConfig;
 import org.nd4j.autodiff.samediff.internal.InferenceSession;
+import org.nd4j.autodiff.samediff.internal.InterOpPool;
 import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.SessionMemMgr;
 import org.nd4j.autodiff.samediff.internal.TrainingSession;
 import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.autodiff.samediff.internal.profiler.SessionProfiler;
 import org.nd4j.autodiff.samediff.ops.*;
 import org.nd4j.autodiff.samediff.serde.FlatBuffersMapper;
 import org.nd4j.common.base.Preconditions;
@@ -98,6 +101,7 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -145,6 +149,33 @@ public class SameDiff extends SDBaseOps {
     @Setter
     private boolean eagerMode = false;
 
+    //Optional low overhead per-op profiler, shared by inference sessions of all threads. Null if profiling is disabled
+    @Getter
+    private SessionProfiler sessionProfiler;
+    //Name this graph's stats are recorded under by the session profiler
+    @Getter
+    private String sessionProfilerGraph = SessionProfiler.DEFAULT_GRAPH;
+
+    //Optional memory manager, shared by inference sessions of all threads. If null, each session creates its own
+    @Getter
+    private SessionMemMgr sessionMemMgr;
+
+    //Optional worker pool executing independent ops concurrently, shared by inference sessions of all threads.
+    // Null if ops are executed sequentially (default). Replaced as a whole, so sessions see a consistent pool
+    @Getter
+    private volatile InterOpPool interOpPool;
+
+    //Incremented on every change to the structure of the graph, so that cached execution plans can detect changes
+    @Getter
+    private long graphVersion;
+
+    //If true, inference sessions compile and cache an execution plan for each set of outputs and placeholder shapes
+    @Getter
+    private boolean executionPlanCaching;
+    //If true, intermediate arrays of execution plans are placed in pre-allocated arenas, as per a static memory plan
+    @Getter
+    private boolean staticMemoryPlanning;
+
     ///////////////////////////////////////
     //Fields related to training
     @Getter
@@ -666,6 +697,7 @@ public class SameDiff extends SDBaseOps {
      * @param function the function
      */
     public void putOpForId(String id, DifferentialFunction function) {
+        markGraphModified();
         if (ops.containsKey(id) && ops.get(id).getOp() == null) {
             throw new ND4JIllegalStateException("Function by id already exists!");
         }
@@ -1057,6 +1089,7 @@ public class SameDiff extends SDBaseOps {
      * @param function Differential function
      */
     public void addOutgoingFor(String[] varNames, DifferentialFunction function) {
+        markGraphModified();
 
         if (function.getOwnName() == null)
             throw new ND4JIllegalStateException("Instance id can not be null. Function not initialized properly");
@@ -1176,6 +1209,7 @@ public class SameDiff extends SDBaseOps {
      * @param function  Function
      */
     public void addArgsFor(String[] variables, DifferentialFunction function) {
+        markGraphModified();
 
         ArgumentInterceptor interceptor = getArgumentInterceptorToUse();
 
@@ -1236,6 +1270,7 @@ public class SameDiff extends SDBaseOps {
      * Does not use (or remove) ArgumentInterceptor stuff
      */
     public void replaceArgFor(int i, @NonNull SDVariable newArg, @NonNull DifferentialFunction function) {
+        markGraphModified();
 
         Preconditions.checkArgument(i < function.args().length, "Index out of range: function " +
                 function.getOwnName() + " only has " + function.args().length + " args but you are trying" +
@@ -2656,6 +2691,134 @@ public class SameDiff extends SDBaseOps {
         return ret;
     }
 
+    /**
+     * Set the profiler to be used by inference sessions of all threads, recording stats under
+     * {@link SessionProfiler#DEFAULT_GRAPH}.
+     *
+     * @param sessionProfiler Profiler to use, or null to disable profiling
+     * @see #setSessionProfiler(SessionProfiler, String)
+     */
+    public void setSessionProfiler(SessionProfiler sessionProfiler) {
+        setSessionProfiler(sessionProfiler, SessionProfiler.DEFAULT_GRAPH);
+    }
+
+    /**
+     * Set the profiler to be used by inference sessions of all threads. When single profiler is shared between
+     * different graphs, each graph should be given its own name, since op names are unique within a graph only.
+     *
+     * @param sessionProfiler Profiler to use, or null to disable profiling
+     * @param graph           Name to record this graph's op and variable stats under
+     */
+    public void setSessionProfiler(SessionProfiler sessionProfiler, @NonNull String graph) {
+        this.sessionProfilerGraph = graph;
+        this.sessionProfiler = sessionProfiler;
+    }
+
+    /**
+     * Set the memory manager to be used by inference sessions of all threads, i.e.
+     * {@link org.nd4j.autodiff.samediff.internal.memory.SizeClassMemoryMgr}. Memory manager must be thread safe.
+     * Any existing sessions are discarded, so the new memory manager is used from the next execution onward.
+     *
+     * @param sessionMemMgr Memory manager to use, or null to use a new ArrayCacheMemoryMgr for each session (default)
+     */
+    public void setSessionMemMgr(SessionMemMgr sessionMemMgr) {
+        this.sessionMemMgr = sessionMemMgr;
+        sessions.clear();
+    }
+
+    /**
+     * Record a change to the structure of the graph - ops or variables added, removed, renamed or rewired, or variable
+     * types changed. This invalidates any cached {@link org.nd4j.autodiff.samediff.internal.ExecutionPlan}s.<br>
+     * The SameDiff methods that modify the graph call this automatically; code that modifies the op and variable maps
+     * from {@link #getOps()} and {@link #getVariables()} directly must call it after doing so.
+     */
+    public void markGraphModified() {
+        graphVersion++;
+    }
+
+    /**
+     * Enable or disable execution plan caching for inference. When enabled, the first {@link #output(Map, String...)} call
+     * for a given set of requested outputs and placeholder datatypes/shapes is executed as usual, and the executed ops
+     * are compiled into a flat, integer indexed {@link org.nd4j.autodiff.samediff.internal.ExecutionPlan}. Subsequent calls
+     * with the same outputs and placeholder shapes replay the plan, without the dependency tracking and name based
+     * lookups otherwise performed for every call. This mainly benefits small graphs executed at high rates.<br>
+     * Plans are only compiled for graphs without control flow (loops, conditions) or tensor array ops, and are not
+     * used for calls with listeners, a session profiler or inter-op parallelism, or during training.
+     * Plans are discarded when the graph is modified, see {@link #markGraphModified()}.
+     *
+     * @param executionPlanCaching If true: cache and replay execution plans
+     */
+    public void setExecutionPlanCaching(boolean executionPlanCaching) {
+        this.executionPlanCaching = executionPlanCaching;
+        sessions.clear();
+    }
+
+    /**
+     * Enable or disable static memory planning for inference. Static memory planning requires (and enables) execution
+     * plan caching, see {@link #setExecutionPlanCaching(boolean)}.<br>
+     * When enabled, liveness analysis is used to assign all intermediate arrays of each execution plan an offset in a
+     * pre-allocated arena (one per datatype), with arrays whose lifetimes don't overlap sharing the same memory. The
+     * arena is allocated once, after the first execution of the plan, so later calls with the same outputs and
+     * placeholder shapes don't allocate or release any memory for intermediate arrays. Requested outputs are allocated
+     * as usual, so they remain valid after the call.<br>
+     * This is intended for serving graphs with fixed shapes: each set of placeholder shapes has its own plan and arena.
+     * The planned peak memory can be compared to the memory required without reuse using
+     * {@link org.nd4j.autodiff.samediff.internal.InferenceSession#getStaticMemoryPlan(List, Map)}.
+     *
+     * @param staticMemoryPlanning If true: use static memory planning (and execution plan caching)
+     */
+    public void setStaticMemoryPlanning(boolean staticMemoryPlanning) {
+        this.staticMemoryPlanning = staticMemoryPlanning;
+        if (staticMemoryPlanning)
+            this.executionPlanCaching = true;
+        sessions.clear();
+    }
+
+    /**
+     * Set the inter-op parallelism for inference. With interOpThreads > 1, ops that don't depend on each other (i.e.,
+     * separate branches of the graph) are dispatched to a pool of interOpThreads worker threads as soon as their inputs
+     * are available, instead of being executed one at a time on the calling thread. Dependency tracking and memory
+     * management remain on the calling thread, so any {@link SessionMemMgr} may be used, and the results are identical
+     * to sequential execution.<br>
+     * Ops in control flow frames (loops), ops with listeners and ops executed with a session profiler or during training
+     * are always executed sequentially.<br>
+     * The number of threads used within each op is a process wide setting, and is not changed by this method: see
+     * {@link org.nd4j.linalg.factory.Environment#setMaxMasterThreads(int)}. interOpThreads * maxMasterThreads should
+     * usually not exceed the number of physical cores.<br>
+     * This method may be called while other threads are executing inference: executions in progress complete on the
+     * previous worker pool, which is shut down afterwards. Worker threads are daemon threads, and are stopped after
+     * being idle for a few seconds. Call this method with interOpThreads = 1 to shut down the worker pool.
+     *
+     * @param interOpThreads Maximum number of ops executed concurrently. 1 to execute all ops sequentially (default)
+     */
+    public void setInterOpParallelism(int interOpThreads) {
+        Preconditions.checkArgument(interOpThreads >= 1, "Number of inter-op threads must be >= 1, got %s", interOpThreads);
+        InterOpPool previous;
+        synchronized (this) {
+            previous = interOpPool;
+            interOpPool = interOpThreads > 1 ? new InterOpPool(interOpThreads) : null;
+        }
+        if (previous != null)
+            previous.retire();
+    }
+
+    /**
+     * @return Executor used to execute independent ops concurrently, or null if ops are executed sequentially.
+     * See {@link #setInterOpParallelism(int)}
+     */
+    public ExecutorService getInterOpExecutor() {
+        InterOpPool pool = interOpPool;
+        return pool == null ? null : pool.getExecutor();
+    }
+
+    /**
+     * @return Maximum number of ops executed concurrently during inference. See {@link #setInterOpParallelism(int)}
+     */
+    public int getInterOpThreads() {
+        InterOpPool pool = interOpPool;
+        return pool == null ? 1 : pool.getThreads();
+    }
+
     /**
      * Do inference for the given variables for a single batch, with training information
      */
@@ -2803,6 +2966,7 @@ public class SameDiff extends SDBaseOps {
 
         SDVariable v = new SDVariable(name, VariableType.CONSTANT, this, constant.shape(), constant.dataType());
         name = v.name();
+        markGraphModified();
         variables.put(name, Variable.builder().name(name).variable(v).build());
         constantArrays.setArray(name, constant);
         return v;
@@ -2821,6 +2985,7 @@ public class SameDiff extends SDBaseOps {
      */
     public SDVariable placeHolder(@NonNull String name, org.nd4j.linalg.api.buffer.DataType dataType, long... shape) {
         SDVariable ret = new SDVariable(name, VariableType.PLACEHOLDER, this, shape, dataType);
+        markGraphModified();
         variables.put(name, Variable.builder().name(name).variable(ret).build());
         return ret;
     }
@@ -3144,6 +3309,7 @@ public class SameDiff extends SDBaseOps {
      * @return The (now constant) SDVariables
      */
     public void convertToConstants(List<SDVariable> variables) {
+        markGraphModified();
         if (variables.size() == 0)
             return;
         boolean allConst = true;
@@ -3242,6 +3408,7 @@ public class SameDiff extends SDBaseOps {
      * See also: {@link VariableType}
      */
     public void convertToVariables(@NonNull List<SDVariable> constants) {
+        markGraphModified();
         if (constants.size() == 0)
             return;
         boolean allConst = true;
@@ -3431,6 +3598,7 @@ public class SameDiff extends SDBaseOps {
      * @param to   The new name for the variable - no variable with this name must already exist
      */
     public void renameVariable(SameDiffOp opToReName,String from, String to) {
+        markGraphModified();
         if(!variables.containsKey(from)) {
             log.debug("Failed to rename variable {} to {}, no variable found",from,to);
             return;
@@ -3597,6 +3765,7 @@ public class SameDiff extends SDBaseOps {
      * @param function the function to remove the argument from
      */
     public void removeArgFromOp(String varName, DifferentialFunction function) {
+        markGraphModified();
         val args = function.args();
 
         for (int i = 0; i < args.length; i++) {
@@ -3902,6 +4071,7 @@ public class SameDiff extends SDBaseOps {
      * @param variable Variable to add
      */
     public SDVariable addVariable(SDVariable variable) {
+        markGraphModified();
         Preconditions.checkState(variable.getSameDiff() == this, "Samediff instance must be the same.");
 
         if (variables.containsKey(variable.name()) && !variables.get(variable.name()).getVariable().equals(variable)) {
@@ -5780,6 +5950,7 @@ public class SameDiff extends SDBaseOps {
      */
     public SameDiff freeze(boolean inPlace) {
         SameDiff clone = inPlace ? this : dup();
+        clone.markGraphModified();
         for(Map.Entry<String,Variable> varEntry : clone.variables.entrySet()) {
             Variable varMetaData = varEntry.getValue();
             SDVariable currVar = varMetaData.getVariable();
@@ -5808,6 +5979,7 @@ public class SameDiff extends SDBaseOps {
      *
      */
     public void convertConstantsToVariables() {
+        markGraphModified();
         for(Map.Entry<String,Variable> varEntry : variables.entrySet()) {
             Variable varMetaData = varEntry.getValue();
             SDVariable currVar = varMetaData.getVariable();
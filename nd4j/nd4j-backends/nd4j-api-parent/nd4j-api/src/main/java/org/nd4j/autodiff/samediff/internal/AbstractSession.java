@@ -34,6 +34,11 @@ import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.common.function.Predicate;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 
 import static org.nd4j.imports.VariableUtils.stripVarSuffix;
 
@@ -250,7 +255,23 @@ public abstract class AbstractSession<T, O> {
         int currentFrameIter = 0;
         FrameIter currParentFrame = null;
         ExecStepPredicate predicate = new ExecStepPredicate();
+
+        //Optional inter-op parallelism: ops are dispatched to the worker pool as soon as their inputs are available.
+        //Dependency tracking, op parameterization and memory management all stay on this thread - workers only
+        // execute the already parameterized ops
+        ExecutorService executor = getInterOpExecutor(listeners);
+        int maxConcurrentOps = executor == null ? 0 : getMaxConcurrentOps();
+        CompletionService<AsyncOpExec> completion = executor == null ? null : new ExecutorCompletionService<AsyncOpExec>(executor);
+        int inFlight = 0;
         while (allExecuted.size() < allRequired.size()) {
+            if (inFlight > 0 && (inFlight >= maxConcurrentOps || !dt.hasNewAllSatisfied())) {
+                //Wait for one of the dispatched ops to complete - this may make new ops available for execution
+                AsyncOpExec done = awaitAsyncOp(completion, inFlight--);
+                completeAsyncOp(done, at, batch, reqOutputVariablesSet, userRequestedUnique, allRequired, out, allExecuted);
+                step++;
+                continue;
+            }
+
             if (!dt.hasNewAllSatisfied()) {
                 //Haven't got all of the outputs the user requested, but there's nothing left that we can execute. Should not happen.
                 execFailed(userRequestedUnique, out, allRequired, allExecuted, step);
@@ -384,31 +405,14 @@ public abstract class AbstractSession<T, O> {
                 // (a) "Parameterize" the op - i.e., find and set the arrays on the op, allocate outputs, etc ready for execution
                 // (b) actually execute the operation
                 O parameterizedOp = getAndParameterizeOp(opName, outFrameIter, inputs, allIterInputs, constAndPhInputs, placeholderValues, reqOutputVariablesSet);
-                T[] opOutputValues = getOutputs(parameterizedOp, outFrameIter, inputs, allIterInputs, constAndPhInputs, listeners, at, batch, reqOutputVariablesSet);
-                List<String> opOutVarNames = op.getOutputsOfOp();
-
-                Preconditions.checkState(opOutputValues.length == opOutVarNames.size(), "Unexpected number of outputs from executed op %s:" +
-                                " got %s outputs when %s outputs were expected (%s)", parameterizedOp.getClass().getSimpleName(), opOutputValues.length,
-                        opOutVarNames.size(), opOutVarNames);
-
-                //Store the op outputs
-                for (int i = 0; i < opOutputValues.length; i++) {
-                    if (opOutputValues[i] == null && op.getOp() instanceof Switch) {
-                        //Switch op only forwards the input to one of the outputs
-                        continue;
-                    }
-
-                    String n = opOutVarNames.get(i);
-                    VarId vid = new VarId(n, outFrameIter.getFrame(), outFrameIter.getIteration(), outFrameIter.getParentFrame());
-                    nodeOutputs.put(vid, opOutputValues[i]);
-
-                    if (userRequestedUnique.contains(n)) {
-                        out.put(n, opOutputValues[i]);
-                    }
-                    if(allRequired.contains(n)){
-                        allExecuted.add(n);
-                    }
+                if (completion != null && OUTER_FRAME.equals(outFrameIter.getFrame()) && canExecuteAsync(parameterizedOp)) {
+                    //Dependencies are updated once the op has completed, in completeAsyncOp
+                    completion.submit(new AsyncOpExec(es, outFrameIter, parameterizedOp, inputs, allIterInputs, constAndPhInputs));
+                    inFlight++;
+                    continue;
                 }
+                T[] opOutputValues = getOutputs(parameterizedOp, outFrameIter, inputs, allIterInputs, constAndPhInputs, listeners, at, batch, reqOutputVariablesSet);
+                storeOpOutputs(op, outFrameIter, opOutputValues, userRequestedUnique, allRequired, out, allExecuted);
 
                 //Post execution: update dependency tracker so we know what is available to execute next, given we now
                 // have these new values
@@ -460,13 +464,7 @@ public abstract class AbstractSession<T, O> {
                 TODO double check that this is exactly the same behaviour as TF - otherwise this approach might fail in
                      some rare cases that rely on the constant/variable not being available
                  */
-                List<String> cdFor = op.getControlDepFor();
-                if (cdFor != null) {
-                    ExecStep cdEs = new ExecStep(ExecType.CONTROL_DEP, opName, null);
-                    if (!dt.isSatisfied(cdEs)) {
-                        dt.markSatisfied(cdEs, true);
-                    }
-                }
+                markControlDepSatisfied(op);
 
             } else {
                 //Should never happen
@@ -484,12 +482,109 @@ public abstract class AbstractSession<T, O> {
             step++;
         }
 
+        //Ops that were dispatched but turned out to not be required for the requested outputs: wait for them to complete,
+        // so that no worker still uses the session arrays, and they can be released as usual
+        while (inFlight > 0) {
+            AsyncOpExec done = awaitAsyncOp(completion, inFlight--);
+            completeAsyncOp(done, at, batch, reqOutputVariablesSet, userRequestedUnique, allRequired, out, allExecuted);
+        }
+
         //TODO we should clear the node outputs map to get rid of the invalid (closed, out of workspace, etc) arrays
 
         out = postProcessOutput(out);   //Hook-in for subclass sessions, if needed
         return out;
     }
 
+    /**
+     * Store the outputs of the executed op, and record those that were requested by the user
+     */
+    protected void storeOpOutputs(SameDiffOp op, FrameIter outFrameIter, T[] opOutputValues, Set<String> userRequestedUnique,
+                                  Set<String> allRequired, Map<String, T> out, Set<String> allExecuted) {
+        List<String> opOutVarNames = op.getOutputsOfOp();
+        Preconditions.checkState(opOutputValues.length == opOutVarNames.size(), "Unexpected number of outputs from executed op %s:" +
+                        " got %s outputs when %s outputs were expected (%s)", op.getName(), opOutputValues.length,
+                opOutVarNames.size(), opOutVarNames);
+
+        for (int i = 0; i < opOutputValues.length; i++) {
+            if (opOutputValues[i] == null && op.getOp() instanceof Switch) {
+                //Switch op only forwards the input to one of the outputs
+                continue;
+            }
+
+            String n = opOutVarNames.get(i);
+            VarId vid = new VarId(n, outFrameIter.getFrame(), outFrameIter.getIteration(), outFrameIter.getParentFrame());
+            nodeOutputs.put(vid, opOutputValues[i]);
+
+            if (userRequestedUnique.contains(n)) {
+                out.put(n, opOutputValues[i]);
+            }
+            if(allRequired.contains(n)){
+                allExecuted.add(n);
+            }
+        }
+    }
+
+    /**
+     * Mark the control dependencies of the executed op (if any) as satisfied
+     */
+    protected void markControlDepSatisfied(SameDiffOp op) {
+        List<String> cdFor = op.getControlDepFor();
+        if (cdFor != null) {
+            ExecStep cdEs = new ExecStep(ExecType.CONTROL_DEP, op.getName(), null);
+            if (!dt.isSatisfied(cdEs)) {
+                dt.markSatisfied(cdEs, true);
+            }
+        }
+    }
+
+    /**
+     * Wait for the next of the dispatched ops to complete. If execution of the op failed, the remaining dispatched ops
+     * are awaited before the exception is rethrown
+     *
+     * @param inFlight Number of ops dispatched and not yet completed
+     */
+    protected AsyncOpExec awaitAsyncOp(CompletionService<AsyncOpExec> completion, int inFlight) {
+        try {
+            return completion.take().get();
+        } catch (ExecutionException e) {
+            for (int i = 1; i < inFlight; i++) {
+                try {
+                    completion.take().get();
+                } catch (InterruptedException e2) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e2) {
+                    //Already failing, report the first exception
+                }
+            }
+            Throwable t = e.getCause();
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            throw new RuntimeException(t);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for op execution to complete", e);
+        }
+    }
+
+    /**
+     * Finish the execution step of the op executed on a worker thread: store the outputs and update the dependencies,
+     * as is done for ops executed on the session thread
+     */
+    protected void completeAsyncOp(AsyncOpExec exec, At at, MultiDataSet batch, Set<String> reqOutputVariablesSet, Set<String> userRequestedUnique,
+                                   Set<String> allRequired, Map<String, T> out, Set<String> allExecuted) {
+        ExecStep es = exec.getStep();
+        FrameIter outFrameIter = exec.getOutFrameIter();
+        SameDiffOp op = sameDiff.getOps().get(es.getName());
+        T[] opOutputValues = completeAsync(exec.getOp(), outFrameIter, exec.getOutputs(), at, batch, reqOutputVariablesSet);
+        storeOpOutputs(op, outFrameIter, opOutputValues, userRequestedUnique, allRequired, out, allExecuted);
+        markControlDepSatisfied(op);
+        updateDescendantDeps(es, outFrameIter);
+        dt.markSatisfied(es, true);
+    }
+
     /**
      * Add the control dependency from Op -> variable
      *
@@ -901,6 +996,53 @@ public abstract class AbstractSession<T, O> {
     public abstract T[] getOutputs(O op, FrameIter outputFrameIter, Set<VarId> inputs, Set<VarId> allIterInputs, Set<String> constAndPhInputs,
                                    List<Listener> listeners, At at, MultiDataSet batch, Set<String> allReqVariables);
 
+    /**
+     * Get the executor used to execute independent ops concurrently. If null (default), all ops are executed sequentially
+     * on the calling thread
+     *
+     * @param listeners Listeners for the current execution, if any
+     */
+    protected ExecutorService getInterOpExecutor(List<Listener> listeners) {
+        return null;
+    }
+
+    /**
+     * @return Maximum number of ops executing concurrently on the executor from {@link #getInterOpExecutor(List)}
+     */
+    protected int getMaxConcurrentOps() {
+        return 1;
+    }
+
+    /**
+     * Whether the parameterized op may be executed on a worker thread, via {@link #execAsync(Object, FrameIter, Set, Set, Set)}.
+     * Ops that access the session state (node outputs, tensor arrays, memory manager, etc) during execution must
+     * return false here
+     */
+    protected boolean canExecuteAsync(O op) {
+        return false;
+    }
+
+    /**
+     * Execute the parameterized op on a worker thread. Must not modify any session state: that is done afterwards
+     * by {@link #completeAsync(Object, FrameIter, Object[], At, MultiDataSet, Set)} on the session thread
+     *
+     * @return The outputs of the op
+     */
+    protected T[] execAsync(O op, FrameIter outputFrameIter, Set<VarId> inputs, Set<VarId> allIterInputs, Set<String> constAndPhInputs) {
+        throw new UnsupportedOperationException("Asynchronous op execution is not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Complete the execution of an op executed by {@link #execAsync(Object, FrameIter, Set, Set, Set)}. Called on the
+     * session thread, does everything {@link #getOutputs(Object, FrameIter, Set, Set, Set, List, At, MultiDataSet, Set)}
+     * does after the op execution
+     *
+     * @return The outputs of the op
+     */
+    protected T[] completeAsync(O op, FrameIter outputFrameIter, T[] outputs, At at, MultiDataSet batch, Set<String> allReqVariables) {
+        throw new UnsupportedOperationException("Asynchronous op execution is not supported by " + getClass().getSimpleName());
+    }
+
     /**
      * Get the VarId from the specified name. The VarId should be in one or the other of the collections,
      * and only one VarId with that name should exist
@@ -1024,4 +1166,33 @@ public abstract class AbstractSession<T, O> {
     }
 
     ;
+
+    /**
+     * An op dispatched for execution on a worker thread of the inter-op executor, along with its outputs once executed
+     */
+    @Getter
+    protected class AsyncOpExec implements Callable<AsyncOpExec> {
+        protected final ExecStep step;
+        protected final FrameIter outFrameIter;
+        protected final O op;
+        protected final Set<VarId> inputs;
+        protected final Set<VarId> allIterInputs;
+        protected final Set<String> constAndPhInputs;
+        protected T[] outputs;
+
+        protected AsyncOpExec(ExecStep step, FrameIter outFrameIter, O op, Set<VarId> inputs, Set<VarId> allIterInputs, Set<String> constAndPhInputs) {
+            this.step = step;
+            this.outFrameIter = outFrameIter;
+            this.op = op;
+            this.inputs = inputs;
+            this.allIterInputs = allIterInputs;
+            this.constAndPhInputs = constAndPhInputs;
+        }
+
+        @Override
+        public AsyncOpExec call() {
+            outputs = execAsync(op, outFrameIter, inputs, allIterInputs, constAndPhInputs);
+            return this;
+        }
+    }
 }
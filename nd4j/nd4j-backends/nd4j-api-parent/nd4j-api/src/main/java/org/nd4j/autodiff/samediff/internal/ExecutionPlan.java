@@ -0,0 +1,309 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Identity;
+
+import java.util.*;
+
+/**
+ * A flat, integer indexed execution plan for a static (no control flow) SameDiff graph, for a fixed set of requested
+ * outputs.<br>
+ * Every array used during execution - constants, variables, placeholders and op outputs - is assigned a slot index.
+ * For each op, in execution order, the plan stores the slots of its inputs and outputs, and the slots whose arrays can
+ * be released once the op has been executed. Executing the plan therefore needs no dependency tracking and no
+ * name based lookups: see {@link InferenceSession}.<br>
+ * Identity ops forward their input array, so their output slots are aliases of the input slot: an array is only
+ * released once the last use of any of its aliases has been executed.<br>
+ * Plans are compiled from the op order of a previous (dynamic) execution using {@link #compile(SameDiff, List, Collection)},
+ * and are immutable.
+ */
+public class ExecutionPlan {
+
+    @Getter
+    private final int numSlots;
+    @Getter
+    private final String[] slotNames;
+    private final SDVariable[] constOrVar;      //Per slot: non-null for constant and variable slots
+    @Getter
+    private final int[] placeholderSlots;
+    @Getter
+    private final String[] placeholderNames;
+    @Getter
+    private final SameDiffOp[] ops;
+    private final boolean[] identity;
+    private final int[][] inputSlots;
+    private final int[][] outputSlots;
+    private final int[][] releaseAfter;         //Per op: slots of the arrays that are no longer required after its execution
+    @Getter
+    private final int[] aliasOf;                //Per slot: slot of the array it is an alias of (itself, if not an alias)
+    @Getter
+    private final String[] outputNames;
+    private final int[] outputNameSlots;
+    @Getter
+    private final Set<String> outputSet;
+
+    //Graph size when the plan was compiled, used to detect structure changes
+    private final long graphVersion;
+    private final int graphNumOps;
+    private final int graphNumVariables;
+
+    private ExecutionPlan(SameDiff sd, String[] slotNames, SDVariable[] constOrVar, int[] placeholderSlots, String[] placeholderNames,
+                          SameDiffOp[] ops, int[][] inputSlots, int[][] outputSlots, int[][] releaseAfter, int[] aliasOf,
+                          String[] outputNames, int[] outputNameSlots) {
+        this.numSlots = slotNames.length;
+        this.slotNames = slotNames;
+        this.constOrVar = constOrVar;
+        this.placeholderSlots = placeholderSlots;
+        this.placeholderNames = placeholderNames;
+        this.ops = ops;
+        this.inputSlots = inputSlots;
+        this.outputSlots = outputSlots;
+        this.releaseAfter = releaseAfter;
+        this.aliasOf = aliasOf;
+        this.outputNames = outputNames;
+        this.outputNameSlots = outputNameSlots;
+        this.outputSet = new HashSet<>(Arrays.asList(outputNames));
+        this.identity = new boolean[ops.length];
+        for (int i = 0; i < ops.length; i++) {
+            identity[i] = ops[i].getOp() instanceof Identity;
+        }
+        this.graphVersion = sd.getGraphVersion();
+        this.graphNumOps = sd.getOps().size();
+        this.graphNumVariables = sd.getVariables().size();
+    }
+
+    /**
+     * @return Number of ops executed by this plan
+     */
+    public int numOps() {
+        return ops.length;
+    }
+
+    /**
+     * @return Slots of the inputs of the specified op, in the order of its arguments
+     */
+    public int[] inputSlots(int op) {
+        return inputSlots[op];
+    }
+
+    /**
+     * @return Slots of the outputs of the specified op
+     */
+    public int[] outputSlots(int op) {
+        return outputSlots[op];
+    }
+
+    /**
+     * @return Slots of the arrays that may be released after the specified op has been executed
+     */
+    public int[] releaseAfter(int op) {
+        return releaseAfter[op];
+    }
+
+    /**
+     * @return True if the specified op is an identity op, whose output is the input array
+     */
+    public boolean isIdentity(int op) {
+        return identity[op];
+    }
+
+    /**
+     * @return The constant or variable for the specified slot, or null if the slot is not a constant or variable
+     */
+    public SDVariable constOrVar(int slot) {
+        return constOrVar[slot];
+    }
+
+    /**
+     * @return The slot containing the requested output with the specified index in {@link #getOutputNames()}
+     */
+    public int outputSlot(int output) {
+        return outputNameSlots[output];
+    }
+
+    /**
+     * Check whether the plan can still be used for the SameDiff instance: the graph must not have been modified since
+     * the plan was compiled (see {@link SameDiff#markGraphModified()}). The number of ops and variables is also checked,
+     * to catch additions and removals made directly via the op and variable maps
+     */
+    public boolean isValidFor(SameDiff sd) {
+        return sd.getGraphVersion() == graphVersion && sd.getOps().size() == graphNumOps &&
+                sd.getVariables().size() == graphNumVariables;
+    }
+
+    /**
+     * Compile the execution plan
+     *
+     * @param sd      SameDiff instance
+     * @param opOrder Names of the ops to execute, in a valid execution order. Must not contain control flow or tensor array ops
+     * @param outputs Names of the requested outputs
+     * @return The execution plan
+     */
+    public static ExecutionPlan compile(@NonNull SameDiff sd, @NonNull List<String> opOrder, @NonNull Collection<String> outputs) {
+        Map<String, Integer> slots = new HashMap<>();
+        List<String> slotNames = new ArrayList<>();
+        List<Integer> aliases = new ArrayList<>();
+        List<Integer> phSlots = new ArrayList<>();
+
+        int n = opOrder.size();
+        SameDiffOp[] ops = new SameDiffOp[n];
+        int[][] inputSlots = new int[n][];
+        int[][] outputSlots = new int[n][];
+        for (int i = 0; i < n; i++) {
+            SameDiffOp op = sd.getOps().get(opOrder.get(i));
+            Preconditions.checkState(op != null, "No op with name \"%s\" exists", opOrder.get(i));
+            ops[i] = op;
+            DifferentialFunction df = op.getOp();
+
+            String[] argNames = df.argNames();
+            int[] in = new int[argNames == null ? 0 : argNames.length];
+            for (int j = 0; j < in.length; j++) {
+                Integer s = slots.get(argNames[j]);
+                if (s == null) {
+                    //Must be a constant, variable or placeholder - any op outputs have been assigned a slot already
+                    s = addInputSlot(sd, argNames[j], slots, slotNames, aliases, phSlots);
+                }
+                in[j] = s;
+            }
+            inputSlots[i] = in;
+
+            List<String> outNames = op.getOutputsOfOp();
+            int[] out = new int[outNames == null ? 0 : outNames.size()];
+            for (int j = 0; j < out.length; j++) {
+                String name = outNames.get(j);
+                Preconditions.checkState(!slots.containsKey(name), "Variable \"%s\" is calculated more than once", name);
+                int s = slotNames.size();
+                slots.put(name, s);
+                slotNames.add(name);
+                //Identity op: output is the input array
+                aliases.add(df instanceof Identity ? aliases.get(in[0]) : s);
+                out[j] = s;
+            }
+            outputSlots[i] = out;
+        }
+
+        String[] outputNames = outputs.toArray(new String[0]);
+        int[] outputNameSlots = new int[outputNames.length];
+        for (int i = 0; i < outputNames.length; i++) {
+            Integer s = slots.get(outputNames[i]);
+            if (s == null) {
+                s = addInputSlot(sd, outputNames[i], slots, slotNames, aliases, phSlots);
+            }
+            outputNameSlots[i] = s;
+        }
+
+        int numSlots = slotNames.size();
+        int[] aliasOf = new int[numSlots];
+        SDVariable[] constOrVar = new SDVariable[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            aliasOf[i] = aliases.get(i);
+            SDVariable v = sd.getVariable(slotNames.get(i));
+            if (v.getVariableType() == VariableType.CONSTANT || v.getVariableType() == VariableType.VARIABLE) {
+                constOrVar[i] = v;
+            }
+        }
+
+        //Liveness: an op output array may be released after the last op using it (or any of its aliases) has been
+        // executed - or immediately, if no op uses it. Constants, variables, placeholders and requested outputs are
+        // never released
+        boolean[] releasable = new boolean[numSlots];
+        for (int i = 0; i < n; i++) {
+            for (int s : outputSlots[i]) {
+                releasable[aliasOf[s]] = true;
+            }
+        }
+        for (int i = 0; i < numSlots; i++) {
+            if (constOrVar[i] != null || sd.getVariable(slotNames.get(i)).isPlaceHolder()) {
+                releasable[aliasOf[i]] = false;
+            }
+        }
+        for (int s : outputNameSlots) {
+            releasable[aliasOf[s]] = false;
+        }
+
+        int[] lastUse = new int[numSlots];
+        Arrays.fill(lastUse, -1);
+        for (int i = 0; i < n; i++) {
+            for (int s : outputSlots[i]) {
+                lastUse[aliasOf[s]] = Math.max(lastUse[aliasOf[s]], i);
+            }
+            for (int s : inputSlots[i]) {
+                lastUse[aliasOf[s]] = Math.max(lastUse[aliasOf[s]], i);
+            }
+        }
+
+        List<List<Integer>> release = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            release.add(new ArrayList<Integer>());
+        }
+        for (int s = 0; s < numSlots; s++) {
+            if (releasable[s] && aliasOf[s] == s && lastUse[s] >= 0) {
+                release.get(lastUse[s]).add(s);
+            }
+        }
+        int[][] releaseAfter = new int[n][];
+        for (int i = 0; i < n; i++) {
+            releaseAfter[i] = toIntArray(release.get(i));
+        }
+
+        int[] placeholderSlots = toIntArray(phSlots);
+        String[] placeholderNames = new String[placeholderSlots.length];
+        for (int i = 0; i < placeholderSlots.length; i++) {
+            placeholderNames[i] = slotNames.get(placeholderSlots[i]);
+        }
+
+        return new ExecutionPlan(sd, slotNames.toArray(new String[0]), constOrVar, placeholderSlots, placeholderNames, ops,
+                inputSlots, outputSlots, releaseAfter, aliasOf, outputNames, outputNameSlots);
+    }
+
+    private static int addInputSlot(SameDiff sd, String name, Map<String, Integer> slots, List<String> slotNames,
+                                    List<Integer> aliases, List<Integer> phSlots) {
+        SDVariable v = sd.getVariable(name);
+        Preconditions.checkState(v != null, "No variable with name \"%s\" exists", name);
+        VariableType vt = v.getVariableType();
+        Preconditions.checkState(vt == VariableType.CONSTANT || vt == VariableType.VARIABLE || vt == VariableType.PLACEHOLDER,
+                "Variable \"%s\" of type %s is used before the op calculating it is executed", name, vt);
+        int s = slotNames.size();
+        slots.put(name, s);
+        slotNames.add(name);
+        aliases.add(s);
+        if (vt == VariableType.PLACEHOLDER) {
+            phSlots.add(s);
+        }
+        return s;
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] out = new int[list.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = list.get(i);
+        }
+        return out;
+    }
+}
@@ -29,6 +29,9 @@ import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.VariableType;
 import org.nd4j.autodiff.samediff.internal.memory.ArrayCacheMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.SizeClassMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.StaticMemoryPlan;
+import org.nd4j.autodiff.samediff.internal.profiler.SessionProfiler;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.memory.MemoryWorkspace;
@@ -54,6 +57,7 @@ import org.nd4j.common.primitives.Pair;
 import org.nd4j.common.util.ArrayUtil;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 import static org.nd4j.imports.VariableUtils.stripVarSuffix;
 
@@ -64,6 +68,11 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
 
     protected static final String KERAS_TRAIN_TEST = "keras_learning_phase";
 
+    /**
+     * Maximum number of execution plans cached per session, see {@link SameDiff#setExecutionPlanCaching(boolean)}
+     */
+    public static final int MAX_CACHED_PLANS = 32;
+
     @Getter
     @Setter
     private SessionMemMgr mmgr;     //Used for allocating and deallocating memory
@@ -78,9 +87,263 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
 
     private Map<String,OpContext> opContexts = new HashMap<>();
 
+    //Memory manager cache counters at the start of the current op, used only when session profiler is set
+    private long profilerCacheHits;
+    private long profilerCacheMisses;
+
+    //Compiled execution plans, used only when execution plan caching is enabled. Key: see planKey
+    private final Map<String, ExecutionPlan> plans = new LinkedHashMap<String, ExecutionPlan>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ExecutionPlan> eldest) {
+            if (size() > MAX_CACHED_PLANS) {
+                planOpContexts.remove(eldest.getValue());
+                memoryPlans.remove(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Map<ExecutionPlan, OpContext[]> planOpContexts = new IdentityHashMap<>();
+    //Static memory plans for the cached execution plans, used only when static memory planning is enabled
+    private final Map<ExecutionPlan, StaticMemoryPlan> memoryPlans = new IdentityHashMap<>();
+    //Ops executed in the current execution, if it is being recorded for compilation into an execution plan
+    private List<String> planRecord;
+    private boolean planCompilable;
+
+    //Inter-op worker pool acquired for the current execution, if any
+    private InterOpPool interOpPool;
+
     public InferenceSession(@NonNull SameDiff sameDiff) {
         super(sameDiff);
-        mmgr = new ArrayCacheMemoryMgr();
+        mmgr = sameDiff.getSessionMemMgr() != null ? sameDiff.getSessionMemMgr() : new ArrayCacheMemoryMgr();
+    }
+
+    @Override
+    public Map<String, INDArray> output(@NonNull List<String> variables, Map<String, INDArray> placeholderValues, MultiDataSet batch,
+                                        Collection<String> requiredActivations, List<Listener> listeners, At at) {
+        //The pool may be replaced concurrently via SameDiff.setInterOpParallelism: hold on to the one acquired here
+        // until the execution completes, so it isn't shut down while ops are still being dispatched to it
+        InterOpPool pool = sameDiff.getInterOpPool();
+        while (pool != null && !pool.acquire()) {
+            pool = sameDiff.getInterOpPool();
+        }
+        interOpPool = pool;
+        try {
+            return outputHelper(variables, placeholderValues, batch, requiredActivations, listeners, at);
+        } finally {
+            interOpPool = null;
+            if (pool != null)
+                pool.release();
+        }
+    }
+
+    private Map<String, INDArray> outputHelper(List<String> variables, Map<String, INDArray> placeholderValues, MultiDataSet batch,
+                                               Collection<String> requiredActivations, List<Listener> listeners, At at) {
+        if (!useExecutionPlans(requiredActivations, listeners)) {
+            return super.output(variables, placeholderValues, batch, requiredActivations, listeners, at);
+        }
+
+        String key = planKey(variables, placeholderValues);
+        ExecutionPlan plan = plans.get(key);
+        if (plan != null && plan.isValidFor(sameDiff)) {
+            return execPlan(plan, placeholderValues, at);
+        }
+
+        //No valid plan: execute as usual, recording the executed ops so the plan can be compiled from them
+        if (plan != null) {
+            plans.remove(key);
+            planOpContexts.remove(plan);
+            memoryPlans.remove(plan);
+        }
+        planRecord = new ArrayList<>();
+        planCompilable = true;
+        Map<String, INDArray> out;
+        List<String> record;
+        try {
+            out = super.output(variables, placeholderValues, batch, requiredActivations, listeners, at);
+        } finally {
+            record = planRecord;
+            planRecord = null;
+        }
+        if (planCompilable) {
+            plans.put(key, ExecutionPlan.compile(sameDiff, record, variables));
+        }
+        return out;
+    }
+
+    /**
+     * Whether the outputs should be calculated using a cached {@link ExecutionPlan}
+     */
+    protected boolean useExecutionPlans(Collection<String> requiredActivations, List<Listener> listeners) {
+        //Plans only execute ops: listeners, the profiler and inter-op scheduling need the full session
+        return sameDiff.isExecutionPlanCaching() && (requiredActivations == null || requiredActivations.isEmpty()) &&
+                (listeners == null || listeners.isEmpty()) && sameDiff.getSessionProfiler() == null &&
+                interOpPool == null;
+    }
+
+    /**
+     * Get the static memory plan used to calculate the specified outputs with placeholders of the same datatypes and
+     * shapes as the specified placeholders, if any. See {@link SameDiff#setStaticMemoryPlanning(boolean)}
+     *
+     * @return The static memory plan, or null if no plan has been compiled (yet)
+     */
+    public StaticMemoryPlan getStaticMemoryPlan(@NonNull List<String> outputs, Map<String, INDArray> placeholderValues) {
+        ExecutionPlan plan = plans.get(planKey(outputs, placeholderValues));
+        return plan == null ? null : memoryPlans.get(plan);
+    }
+
+    /**
+     * Key for the execution plan cache: the requested outputs and the datatype and shape of each placeholder
+     */
+    protected String planKey(List<String> variables, Map<String, INDArray> placeholderValues) {
+        StringBuilder sb = new StringBuilder();
+        for (String s : variables) {
+            sb.append(s).append(',');
+        }
+        if (placeholderValues != null && !placeholderValues.isEmpty()) {
+            String[] names = placeholderValues.keySet().toArray(new String[0]);
+            Arrays.sort(names);
+            for (String s : names) {
+                INDArray arr = placeholderValues.get(s);
+                sb.append('|').append(s).append(':');
+                if (arr != null) {
+                    sb.append(arr.dataType()).append(Arrays.toString(arr.shape()));
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Calculate the requested outputs by executing the compiled execution plan. Arrays are looked up by slot index,
+     * and released at the precomputed points, without dependency tracking.<br>
+     * With static memory planning, the op output shapes are recorded during the first execution of the plan, and the
+     * {@link StaticMemoryPlan} is compiled from them: later executions use its arena arrays for all intermediate
+     * op outputs, and release nothing but the (unplanned) arrays allocated by the memory manager
+     */
+    protected Map<String, INDArray> execPlan(ExecutionPlan plan, Map<String, INDArray> placeholderValues, At at) {
+        nodeOutputs.clear();
+        tensorArrays.clear();
+        arrayUseTracker.clear();
+
+        INDArray[] arrs = new INDArray[plan.getNumSlots()];
+        for (int i = 0; i < arrs.length; i++) {
+            SDVariable v = plan.constOrVar(i);
+            if (v != null) {
+                arrs[i] = v.getArr();
+            }
+        }
+
+        //Placeholders: cast to the placeholder datatype if required, as in preprocessPlaceholders
+        List<INDArray> castArrays = null;
+        int[] phSlots = plan.getPlaceholderSlots();
+        String[] phNames = plan.getPlaceholderNames();
+        for (int i = 0; i < phSlots.length; i++) {
+            String name = phNames[i];
+            INDArray arr = placeholderValues == null ? null : placeholderValues.get(name);
+            DataType dt = sameDiff.getVariable(name).dataType();
+            if (arr == null && name.endsWith(KERAS_TRAIN_TEST)) {
+                arr = mmgr.allocate(false, DataType.BOOL).assign(at.operation().isTrainingPhase());
+            } else {
+                Preconditions.checkState(arr != null, "An input placeholder \"%s\" is required to calculate the requested outputs," +
+                        " but a placeholder value was not provided", name);
+                validatePlaceholderWorkspace(name, arr);
+                if (arr.dataType() == dt) {
+                    arrs[phSlots[i]] = arr;
+                    continue;
+                }
+                INDArray cast = mmgr.allocate(false, dt, arr.shape());
+                cast.assign(arr);
+                arr = cast;
+            }
+            if (castArrays == null)
+                castArrays = new ArrayList<>();
+            castArrays.add(arr);
+            arrs[phSlots[i]] = arr;
+        }
+
+        OpContext[] contexts = planOpContexts.get(plan);
+        if (contexts == null) {
+            contexts = new OpContext[plan.numOps()];
+            for (int i = 0; i < contexts.length; i++) {
+                contexts[i] = getOpContext(plan.getOps()[i].getName());
+            }
+            planOpContexts.put(plan, contexts);
+        }
+
+        StaticMemoryPlan memPlan = null;
+        LongShapeDescriptor[] slotShapes = null;
+        if (sameDiff.isStaticMemoryPlanning()) {
+            memPlan = memoryPlans.get(plan);
+            if (memPlan == null)
+                slotShapes = new LongShapeDescriptor[plan.getNumSlots()];   //Record the shapes to compile the memory plan from
+        }
+
+        Set<String> outputSet = plan.getOutputSet();
+        SameDiffOp[] ops = plan.getOps();
+        FrameIter frameIter = new FrameIter(OUTER_FRAME, 0, null);
+        for (int i = 0; i < ops.length; i++) {
+            int[] inSlots = plan.inputSlots(i);
+            INDArray[] args = new INDArray[inSlots.length];
+            for (int j = 0; j < args.length; j++) {
+                args[j] = arrs[inSlots[j]];
+            }
+
+            INDArray[] out;
+            DifferentialFunction df = ops[i].getOp();
+            if (plan.isIdentity(i)) {
+                out = args;
+            } else {
+                Pair<SameDiffOp, OpContext> p = parameterizeOp(ops[i], contexts[i], args, outputSet, memPlan == null ? null : memPlan.opOutputs(i));
+                out = doExec(df, p.getSecond(), frameIter, null, null, null);
+                df.clearArrays();
+                p.getSecond().purge();
+            }
+
+            int[] outSlots = plan.outputSlots(i);
+            Preconditions.checkState(out.length == outSlots.length, "Unexpected number of outputs from executed op %s:" +
+                    " got %s outputs when %s outputs were expected", ops[i].getName(), out.length, outSlots.length);
+            for (int j = 0; j < out.length; j++) {
+                arrs[outSlots[j]] = out[j];
+                if (slotShapes != null && out[j] != null)
+                    slotShapes[outSlots[j]] = out[j].shapeDescriptor();
+            }
+
+            for (int s : plan.releaseAfter(i)) {
+                //Arena arrays are never released. If an op didn't use its planned array (i.e., its output shape depends
+                // on the input values and has changed) the array allocated instead is left to the garbage collector
+                if (memPlan == null || !memPlan.isPlanned(s))
+                    mmgr.release(arrs[s]);
+            }
+        }
+
+        if (slotShapes != null) {
+            memPlan = StaticMemoryPlan.compile(plan, slotShapes);
+            memoryPlans.put(plan, memPlan);
+            log.debug("Compiled static memory plan for outputs {}: {} arrays, planned peak {} bytes vs. {} bytes without reuse",
+                    Arrays.toString(plan.getOutputNames()), memPlan.getNumPlannedArrays(), memPlan.getPeakBytes(), memPlan.getNaiveBytes());
+        }
+
+        Map<String, INDArray> out = new HashMap<>();
+        String[] outNames = plan.getOutputNames();
+        for (int i = 0; i < outNames.length; i++) {
+            INDArray arr = arrs[plan.outputSlot(i)];
+            out.put(outNames[i], arr);
+            nodeOutputs.put(new VarId(outNames[i], OUTER_FRAME, 0, null), arr);
+        }
+
+        if (castArrays != null) {
+            for (INDArray arr : castArrays) {
+                //Cast placeholders requested as outputs are returned to the user
+                boolean isOutput = false;
+                for (INDArray o : out.values()) {
+                    isOutput |= (o == arr);
+                }
+                if (!isOutput)
+                    mmgr.release(arr);
+            }
+        }
+        return out;
     }
 
     @Override
@@ -130,22 +393,7 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
                     "No variable/placeholder with name %s exists", e.getKey());
             INDArray arr = e.getValue();
             //First: check workspaces
-            if (arr.isAttached()) {
-                MemoryWorkspace ws = arr.data() == null ? null : arr.data().getParentWorkspace();
-                if (ws != null && ws.getWorkspaceType() != MemoryWorkspace.Type.CIRCULAR) {
-                    if (!ws.isScopeActive()) {
-                        throw new ND4JIllegalStateException("Placeholder \"" + e.getKey() + "\" array uses leaked workspace pointer from workspace ["
-                                + ws.getId() + "]: Workspace the array was defined in is no longer open.\nAll open workspaces: " + DefaultOpExecutioner.allOpenWorkspaces()
-                                + "\n" + SCOPE_PANIC_MSG);
-                    }
-
-                    if (ws.getGenerationId() != arr.data().getGenerationId())
-                        throw new ND4JIllegalStateException("Placeholder \"" + e.getKey() + "\" array uses outdated workspace pointer from workspace ["
-                                + ws.getId() + "]: Workspace array was defined in has been closed and reopened at least once since array creation. Array WS iteration: " +
-                                arr.data().getGenerationId() + ". Workspace current iteration: " +
-                                ws.getGenerationId() + "\nAll open workspaces: " + DefaultOpExecutioner.allOpenWorkspaces() + "\n" + SCOPE_PANIC_MSG);
-                }
-            }
+            validatePlaceholderWorkspace(e.getKey(), arr);
 
 
             //Second: cast the input to the required type
@@ -170,6 +418,28 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
         return out;
     }
 
+    /**
+     * Check that the placeholder array, if it is attached to a workspace, is still valid
+     */
+    protected void validatePlaceholderWorkspace(String name, INDArray arr) {
+        if (arr.isAttached()) {
+            MemoryWorkspace ws = arr.data() == null ? null : arr.data().getParentWorkspace();
+            if (ws != null && ws.getWorkspaceType() != MemoryWorkspace.Type.CIRCULAR) {
+                if (!ws.isScopeActive()) {
+                    throw new ND4JIllegalStateException("Placeholder \"" + name + "\" array uses leaked workspace pointer from workspace ["
+                            + ws.getId() + "]: Workspace the array was defined in is no longer open.\nAll open workspaces: " + DefaultOpExecutioner.allOpenWorkspaces()
+                            + "\n" + SCOPE_PANIC_MSG);
+                }
+
+                if (ws.getGenerationId() != arr.data().getGenerationId())
+                    throw new ND4JIllegalStateException("Placeholder \"" + name + "\" array uses outdated workspace pointer from workspace ["
+                            + ws.getId() + "]: Workspace array was defined in has been closed and reopened at least once since array creation. Array WS iteration: " +
+                            arr.data().getGenerationId() + ". Workspace current iteration: " +
+                            ws.getGenerationId() + "\nAll open workspaces: " + DefaultOpExecutioner.allOpenWorkspaces() + "\n" + SCOPE_PANIC_MSG);
+            }
+        }
+    }
+
     @Override
     protected Map<String, INDArray> postProcessOutput(Map<String, INDArray> output) {
 
@@ -211,8 +481,61 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
             }
         }
 
+        SessionProfiler profiler = sameDiff.getSessionProfiler();
+        long start = profiler == null ? 0 : System.nanoTime();
+
         INDArray[] out = doExec(op.getOp(), opPair.getRight(), outputFrameIter, opInputs, allIterInputs, constAndPhInputs);
 
+        if (profiler != null) {
+            long execNanos = System.nanoTime() - start;
+            //Output arrays are allocated in getAndParameterizeOp, so we count from there
+            profiler.record(sameDiff.getSessionProfilerGraph(), op, execNanos, out, cacheHits() - profilerCacheHits, cacheMisses() - profilerCacheMisses);
+        }
+
+        return afterExec(opPair, outputFrameIter, out, listeners, at, batch, allReqVariables);
+    }
+
+    @Override
+    protected ExecutorService getInterOpExecutor(List<Listener> listeners) {
+        //Listeners and the profiler observe the ops one at a time, in execution order - so execute sequentially for these
+        if ((listeners != null && !listeners.isEmpty()) || sameDiff.getSessionProfiler() != null)
+            return null;
+        return interOpPool == null ? null : interOpPool.getExecutor();
+    }
+
+    @Override
+    protected int getMaxConcurrentOps() {
+        return interOpPool == null ? 1 : interOpPool.getThreads();
+    }
+
+    @Override
+    protected boolean canExecuteAsync(Pair<SameDiffOp, OpContext> opPair) {
+        //Only ops executed purely from their op context - control flow, tensor array and identity ops read the node
+        // outputs, and external errors/gradient marker ops allocate from the memory manager during execution
+        DifferentialFunction df = opPair.getFirst().getOp();
+        return opPair.getSecond() != null && !(df instanceof Identity) && !(df instanceof ExternalErrorsFunction) &&
+                !(df instanceof GradientBackwardsMarker);
+    }
+
+    @Override
+    protected INDArray[] execAsync(Pair<SameDiffOp, OpContext> opPair, FrameIter outputFrameIter, Set<VarId> opInputs,
+                                   Set<VarId> allIterInputs, Set<String> constAndPhInputs) {
+        return doExec(opPair.getFirst().getOp(), opPair.getSecond(), outputFrameIter, opInputs, allIterInputs, constAndPhInputs);
+    }
+
+    @Override
+    protected INDArray[] completeAsync(Pair<SameDiffOp, OpContext> opPair, FrameIter outputFrameIter, INDArray[] outputs, At at,
+                                       MultiDataSet batch, Set<String> allReqVariables) {
+        return afterExec(opPair, outputFrameIter, outputs, null, at, batch, allReqVariables);
+    }
+
+    /**
+     * Post execution part of {@link #getOutputs(Pair, FrameIter, Set, Set, Set, List, At, MultiDataSet, Set)}: call the
+     * listeners, record the array uses and release the arrays that are no longer required
+     */
+    protected INDArray[] afterExec(Pair<SameDiffOp,OpContext> opPair, FrameIter outputFrameIter, INDArray[] out, List<Listener> listeners,
+                                   At at, MultiDataSet batch, Set<String> allReqVariables) {
+        SameDiffOp op = opPair.getFirst();
         if (log.isTraceEnabled()) {
             StringBuilder sb = new StringBuilder();
             sb.append(op.getName()).append(" - ").append(outputFrameIter).append(" outputs: ");
@@ -341,6 +664,28 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
         return out;
     }
 
+    /**
+     * @return Number of allocations served from memory manager cache, for the current thread, if known
+     */
+    protected long cacheHits() {
+        if (mmgr instanceof ArrayCacheMemoryMgr)
+            return ((ArrayCacheMemoryMgr) mmgr).getCacheHits();
+        if (mmgr instanceof SizeClassMemoryMgr)
+            return ((SizeClassMemoryMgr) mmgr).getCurrentThreadHits();
+        return 0;
+    }
+
+    /**
+     * @return Number of allocations not served from memory manager cache, for the current thread, if known
+     */
+    protected long cacheMisses() {
+        if (mmgr instanceof ArrayCacheMemoryMgr)
+            return ((ArrayCacheMemoryMgr) mmgr).getCacheMisses();
+        if (mmgr instanceof SizeClassMemoryMgr)
+            return ((SizeClassMemoryMgr) mmgr).getCurrentThreadMisses();
+        return 0;
+    }
+
     public INDArray[] doExec(DifferentialFunction op, OpContext opContext, FrameIter outputFrameIter, Set<VarId> opInputs, Set<VarId> allIterInputs,
                              Set<String> constAndPhInputs) {
 
@@ -786,10 +1131,25 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
         SameDiffOp sdo = sameDiff.getOps().get(opName);
         DifferentialFunction df = sdo.getOp();
 
+        if (sameDiff.getSessionProfiler() != null) {
+            profilerCacheHits = cacheHits();
+            profilerCacheMisses = cacheMisses();
+        }
+
         //TODO Switch to OpContext - and make sure executing like that is thread safe (i.e., array fields in ops are not used etc)
 
         Preconditions.checkNotNull(df, "No differential function found with name \"%s\"", opName);
 
+        if (planRecord != null) {
+            //Recording for execution plan compilation: only possible for ops in the outer frame, executed from the op context
+            if (!OUTER_FRAME.equals(frameIter.getFrame()) || df instanceof LoopCond || df instanceof Enter || df instanceof Exit ||
+                    df instanceof NextIteration || df instanceof Merge || df instanceof Switch || df instanceof BaseTensorOp ||
+                    df instanceof ExternalErrorsFunction || df instanceof GradientBackwardsMarker) {
+                planCompilable = false;
+            }
+            planRecord.add(opName);
+        }
+
         if (df instanceof LoopCond || df instanceof Enter || df instanceof Exit || df instanceof NextIteration ||
                 df instanceof Merge || df instanceof Switch || df instanceof BaseTensorOp) {
             //Control dependencies and tensor ops (like TensorArray, TensorArrayRead etc) don't need inputs set, execution is a special case
@@ -846,12 +1206,44 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
         //TODO let's find a way to use in-place modification for loops where possible to reduce memory requirements
         boolean isLoop = !frameIter.getFrame().equals(OUTER_FRAME) && frameIter.getIteration() > 0;
 
+        return parameterizeOp(sdo, getOpContext(opName), args, allReqVariables);
+    }
+
+    /**
+     * Get the (reused) op context for the specified op, creating it if necessary
+     */
+    protected OpContext getOpContext(String opName) {
         OpContext oc = opContexts.get(opName);
         if(oc == null){
             oc = Nd4j.getExecutioner().buildContext();
             opContexts.put(opName, oc);
         }
+        return oc;
+    }
 
+    /**
+     * Set the input arrays and arguments on the op context, and allocate the output arrays, ready for execution
+     *
+     * @param sdo             Op to parameterize
+     * @param oc              Op context for the op
+     * @param args            Input arrays, in the order of the op arguments
+     * @param allReqVariables Requested outputs. Output arrays for these are allocated as outputs by the memory manager
+     */
+    protected Pair<SameDiffOp,OpContext> parameterizeOp(SameDiffOp sdo, OpContext oc, INDArray[] args, Set<String> allReqVariables) {
+        return parameterizeOp(sdo, oc, args, allReqVariables, null);
+    }
+
+    /**
+     * As per {@link #parameterizeOp(SameDiffOp, OpContext, INDArray[], Set)}, using preallocated output arrays where
+     * available
+     *
+     * @param preallocated Preallocated output arrays, from a {@link StaticMemoryPlan}. May be null, or contain null
+     *                     entries. Preallocated arrays are only used if their datatype and shape match the calculated
+     *                     output shape; otherwise the output array is allocated by the memory manager
+     */
+    protected Pair<SameDiffOp,OpContext> parameterizeOp(SameDiffOp sdo, OpContext oc, INDArray[] args, Set<String> allReqVariables,
+                                                        INDArray[] preallocated) {
+        DifferentialFunction df = sdo.getOp();
         if (df instanceof CustomOp) {
             DynamicCustomOp customOp = (DynamicCustomOp) df;
             if (args != null) {
@@ -891,7 +1283,9 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
 
                 //Always allocate new output array, rely on memory manager for efficient memory management and array reuse etc
                 boolean isOutput = allReqVariables.contains(outNames[i]);
-                INDArray out = mmgr.allocate(isOutput, reqShape);
+                INDArray out = preallocatedOutput(preallocated, i, reqShape);
+                if (out == null)
+                    out = mmgr.allocate(isOutput, reqShape);
                 if(reqShape.isEmpty() && !out.isEmpty()) {
                     throw new IllegalStateException("Output shape was empty, but created array was not.");
                 }
@@ -908,7 +1302,7 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
                 SDVariable axisArgVar = df.arg(1);
                 Preconditions.checkState(axisArgVar.dataType().isIntType(), "Legacy op %s input 1 (axis) was expected to be an integer type, is %s", df.getClass(), axisArgVar.dataType());
 
-                INDArray arr = getArray(axisArgVar, opInputs, allIterInputs);
+                INDArray arr = args[1];
                 Preconditions.checkState(arr != null, "Could not get axis argument for op %s: %s", df.getOwnName(), df.getClass());
                 if (!arr.isEmpty()) {
                     int[] axis = arr.toIntVector();
@@ -926,8 +1320,7 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
                 axisArg = true;
             } else if (op instanceof ScalarOp && df.argNames().length == 2) {
                 //Scalar ops: 2nd input should be treated as scalar...
-                SDVariable scalarVar = df.arg(1);
-                INDArray scalar = getArray(scalarVar, opInputs, allIterInputs);
+                INDArray scalar = args[1];
                 Preconditions.checkState(scalar != null, "Could not get scalar argument for op %s: %s", df.getOwnName(), df.getClass());
                 Preconditions.checkState(scalar.isScalar(), "Scalar argument for op %s (%s) is not a scalar: has shape %ndShape", df.getOwnName(), df.getClass(), scalar);
                 ((ScalarOp) op).setScalar(scalar);
@@ -951,7 +1344,9 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
                 List<LongShapeDescriptor> outputShape = ((BaseOp) op).calculateOutputShape(oc);
                 Preconditions.checkState(outputShape != null && outputShape.size() == 1, "Could not calculate output shape for op: %s", op.getClass());
                 LongShapeDescriptor lsd = outputShape.get(0);
-                INDArray z = mmgr.allocate(isOutput, lsd);
+                INDArray z = preallocatedOutput(preallocated, 0, lsd);
+                if (z == null)
+                    z = mmgr.allocate(isOutput, lsd);
                 oc.setOutputArray(0, z);
             }
         }
@@ -959,6 +1354,15 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
         return new Pair<>(sdo, oc);
     }
 
+    private static INDArray preallocatedOutput(INDArray[] preallocated, int i, LongShapeDescriptor shape) {
+        if (preallocated == null || preallocated[i] == null)
+            return null;
+        INDArray arr = preallocated[i];
+        if (arr.dataType() == shape.dataType() && arr.ordering() == shape.getOrder() && Arrays.equals(arr.shape(), shape.getShape()))
+            return arr;
+        return null;
+    }
+
 
     protected INDArray getArray(SDVariable sdv, Collection<VarId> opInputs, Collection<VarId> allIterInputs) {
         String n = sdv.name();
@@ -0,0 +1,89 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal;
+
+import lombok.Getter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worker pool used by {@link InferenceSession} to execute independent ops concurrently, see
+ * {@link org.nd4j.autodiff.samediff.SameDiff#setInterOpParallelism(int)}.<br>
+ * Sessions {@link #acquire()} the pool for the duration of an execution. A pool that has been replaced is
+ * {@link #retire() retired}: it can't be acquired anymore, and its executor is shut down once the last execution
+ * using it has {@link #release() released} it, so executions in progress are never rejected.
+ */
+public class InterOpPool {
+    @Getter
+    private final ExecutorService executor;
+    @Getter
+    private final int threads;
+
+    private int executions;
+    private boolean retired;
+
+    public InterOpPool(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "SameDiff-inter-op-" + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        //Don't keep idle threads alive for graphs that are no longer used
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+        this.threads = threads;
+    }
+
+    /**
+     * Register an execution using this pool
+     *
+     * @return False if the pool has been retired, and must not be used
+     */
+    public synchronized boolean acquire() {
+        if (retired)
+            return false;
+        executions++;
+        return true;
+    }
+
+    /**
+     * Unregister an execution previously registered via {@link #acquire()}
+     */
+    public synchronized void release() {
+        if (--executions == 0 && retired)
+            executor.shutdown();
+    }
+
+    /**
+     * Stop handing out this pool, shutting down the executor once no execution uses it anymore
+     */
+    public synchronized void retire() {
+        retired = true;
+        if (executions == 0)
+            executor.shutdown();
+    }
+}
@@ -39,6 +39,7 @@ import org.nd4j.common.primitives.AtomicDouble;
 import org.nd4j.common.primitives.Pair;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 @Slf4j
 public class TrainingSession extends InferenceSession {
@@ -154,6 +155,19 @@ public class TrainingSession extends InferenceSession {
         return loss;
     }
 
+    @Override
+    protected ExecutorService getInterOpExecutor(List<Listener> listeners) {
+        //Parameters are updated in-place as soon as their gradients are available, while other ops may still read them:
+        // always execute sequentially, so the result does not depend on the op timing
+        return null;
+    }
+
+    @Override
+    protected boolean useExecutionPlans(Collection<String> requiredActivations, List<Listener> listeners) {
+        //Gradients are calculated and applied during execution, which requires the full session
+        return false;
+    }
+
     @Override
     public INDArray[] getOutputs(Pair<SameDiffOp, OpContext> opPair, FrameIter outputFrameIter, Set<VarId> opInputs, Set<VarId> allIterInputs,
                                  Set<String> constAndPhInputs, List<Listener> listeners, At at, MultiDataSet batch, Set<String> allReqVariables) {
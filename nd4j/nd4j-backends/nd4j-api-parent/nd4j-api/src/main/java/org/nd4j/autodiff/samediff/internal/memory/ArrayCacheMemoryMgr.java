@@ -48,6 +48,10 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
     private LinkedHashSet<Long> lruCache = new LinkedHashSet<>();
     private Map<Long,INDArray> lruCacheValues = new HashMap<>();
 
+    //Number of allocations served from / not found in the cache, used for profiling
+    private long cacheHits = 0;
+    private long cacheMisses = 0;
+
     /**
      * Create an ArrayCacheMemoryMgr with default settings as per {@link ArrayCacheMemoryMgr}
      */
@@ -94,12 +98,14 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
             if (arr != null) {
                 //Decrement cache size
                 currentCacheSize -= dataType.width() * arr.data().length();
+                cacheHits++;
 
                 return arr; //Allocated from cache
             }
         }
 
         //Allocation failed, allocate new array
+        cacheMisses++;
         return Nd4j.createUninitializedDetached(dataType, shape);
     }
 
@@ -126,12 +132,14 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
             if (arr != null) {
                 //Decrement cache size
                 currentCacheSize -= dataType.width() * arr.data().length();
+                cacheHits++;
 
                 return arr; //Allocated from cache
             }
         }
 
         //Allocation failed, allocate new array
+        cacheMisses++;
         return Nd4j.createUninitializedDetached(dataType, shape);
     }
 
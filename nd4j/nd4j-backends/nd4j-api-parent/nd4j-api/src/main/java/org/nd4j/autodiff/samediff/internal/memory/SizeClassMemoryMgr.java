@@ -0,0 +1,360 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.util.ArrayUtil;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Session memory manager, that pools data buffers in power of two size classes instead of caching arrays by their
+ * exact length, as {@link ArrayCacheMemoryMgr} does.<br>
+ * Any allocation request is rounded up to the next size class, and served as a view of pooled buffer, so requests
+ * with different logical shapes (i.e. variable length sequences) reuse the same buffers. Released arrays are returned
+ * to the free list of the current thread, so single instance can be shared between sessions of all threads
+ * (see {@link org.nd4j.autodiff.samediff.SameDiff#setSessionMemMgr(org.nd4j.autodiff.samediff.internal.SessionMemMgr)})
+ * without contention. Once per-thread free lists exceed their limit, buffers are moved to the shared pool, available
+ * to all threads.<br>
+ * Trade-off is memory: up to 2x of requested size may be used for each array.<br>
+ * Pooled arrays are views of larger buffers (i.e. {@link INDArray#isView()} returns true for them), so detached arrays
+ * - the ones that may be returned to the user - are never taken from the pools, and are allocated with exact length
+ * instead. Free lists of terminated threads are moved to the shared pool whenever a new thread starts using this
+ * memory manager, or {@link #getBytesRetained()} / {@link #close()} is called.
+ */
+@Slf4j
+public class SizeClassMemoryMgr extends AbstractMemoryMgr {
+
+    @Getter
+    private final int minClassBits;
+    @Getter
+    private final int maxClassBits;
+    @Getter
+    private final long maxThreadBytes;
+    @Getter
+    private final long maxSharedBytes;
+
+    private final ThreadLocal<Pool> threadPools;
+    //Owner thread -> pool, used to find pools of terminated threads
+    private final Map<Thread, Pool> allPools = new IdentityHashMap<>();
+    private final Pool sharedPool;
+
+    private final LongAdder threadHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong bytesRetained = new AtomicLong();
+
+    /**
+     * Create SizeClassMemoryMgr with default settings: size classes from 16 to 2^28 elements, 256MB per thread
+     * and 1GB in shared pool
+     */
+    public SizeClassMemoryMgr() {
+        this(4, 28, 256L * 1024 * 1024, 1024L * 1024 * 1024);
+    }
+
+    /**
+     * @param minClassBits   Smallest size class is 2^minClassBits elements
+     * @param maxClassBits   Largest size class is 2^maxClassBits elements, larger arrays are not pooled
+     * @param maxThreadBytes Maximum number of bytes retained in free lists of single thread
+     * @param maxSharedBytes Maximum number of bytes retained in shared pool
+     */
+    public SizeClassMemoryMgr(int minClassBits, int maxClassBits, long maxThreadBytes, long maxSharedBytes) {
+        Preconditions.checkArgument(minClassBits >= 0 && minClassBits <= maxClassBits && maxClassBits < 62,
+                "Invalid size classes: min bits %s, max bits %s", minClassBits, maxClassBits);
+        Preconditions.checkArgument(maxThreadBytes >= 0 && maxSharedBytes >= 0, "Pool limits must be >= 0");
+        this.minClassBits = minClassBits;
+        this.maxClassBits = maxClassBits;
+        this.maxThreadBytes = maxThreadBytes;
+        this.maxSharedBytes = maxSharedBytes;
+        this.sharedPool = new Pool(maxSharedBytes);
+        this.threadPools = ThreadLocal.withInitial(() -> {
+            Pool p = new Pool(this.maxThreadBytes);
+            synchronized (allPools) {
+                pruneTerminatedThreads();
+                allPools.put(Thread.currentThread(), p);
+            }
+            return p;
+        });
+    }
+
+    @Override
+    public INDArray allocate(boolean detached, DataType dataType, long... shape) {
+        if (detached)
+            return Nd4j.createUninitializedDetached(dataType, shape);
+
+        return allocate(dataType, shape, Nd4j.order());
+    }
+
+    @Override
+    public INDArray allocate(boolean detached, LongShapeDescriptor descriptor) {
+        if (descriptor.isEmpty()) {
+            INDArray ret = Nd4j.create(descriptor);
+            return detached ? ret.detach() : ret;
+        }
+
+        if (detached)
+            return Nd4j.createUninitializedDetached(descriptor.dataType(), descriptor.getOrder(), descriptor.getShape());
+
+        return allocate(descriptor.dataType(), descriptor.getShape(), descriptor.getOrder());
+    }
+
+    protected INDArray allocate(DataType dataType, long[] shape, char order) {
+        long length = shape.length == 0 ? 1 : ArrayUtil.prod(shape);
+        if (dataType == DataType.UTF8 || length == 0)
+            return Nd4j.createUninitializedDetached(dataType, shape);
+
+        int cls = sizeClass(length);
+        if (cls > maxClassBits) {
+            threadPools.get().misses++;
+            misses.increment();
+            return Nd4j.createUninitializedDetached(dataType, shape);
+        }
+
+        Pool local = threadPools.get();
+        DataBuffer buffer = local.poll(dataType, cls);
+        if (buffer != null) {
+            local.hits++;
+            threadHits.increment();
+        } else {
+            buffer = sharedPool.poll(dataType, cls);
+            if (buffer != null) {
+                local.hits++;
+                sharedHits.increment();
+            }
+        }
+
+        if (buffer == null) {
+            local.misses++;
+            misses.increment();
+            buffer = Nd4j.createUninitializedDetached(dataType, 1L << cls).data();
+        }
+
+        return Nd4j.create(buffer, shape, Nd4j.getStrides(shape, order), 0, order, dataType);
+    }
+
+    @Override
+    public void release(@NonNull INDArray array) {
+        if (array.wasClosed() || array.isEmpty() || array.isS() || array.isAttached())
+            return;
+
+        DataBuffer buffer = array.data();
+        if (buffer == null || buffer.originalDataBuffer() != null || array.offset() != 0) {
+            //View of some other array - we don't own this memory
+            return;
+        }
+
+        //Buffer can serve all requests up to its own length, so we use the class below
+        int cls = 63 - Long.numberOfLeadingZeros(buffer.length());
+        if (cls < minClassBits || cls > maxClassBits) {
+            if (array.closeable())
+                array.close();
+            return;
+        }
+
+        if (!threadPools.get().offer(buffer, cls) && !sharedPool.offer(buffer, cls)) {
+            //Both pools are full: leave buffer to GC
+            log.trace("Pools are full, dropping buffer of length {}", buffer.length());
+        }
+    }
+
+    protected int sizeClass(long length) {
+        int cls = 64 - Long.numberOfLeadingZeros(length - 1);
+        return Math.max(cls, minClassBits);
+    }
+
+    /**
+     * @return Number of allocations served from per-thread free lists or shared pool
+     */
+    public long getHits() {
+        return threadHits.sum() + sharedHits.sum();
+    }
+
+    /**
+     * @return Number of allocations served from the shared pool
+     */
+    public long getSharedHits() {
+        return sharedHits.sum();
+    }
+
+    /**
+     * @return Number of allocations that required new buffer
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0.0 : h / (double) total;
+    }
+
+    /**
+     * @return Number of allocations served from pools for the current thread
+     */
+    public long getCurrentThreadHits() {
+        return threadPools.get().hits;
+    }
+
+    /**
+     * @return Number of allocations that required new buffer for the current thread
+     */
+    public long getCurrentThreadMisses() {
+        return threadPools.get().misses;
+    }
+
+    /**
+     * @return Total size of all buffers retained in free lists, in bytes
+     */
+    public long getBytesRetained() {
+        synchronized (allPools) {
+            pruneTerminatedThreads();
+        }
+        return bytesRetained.get();
+    }
+
+    /**
+     * Moves buffers retained by terminated threads to the shared pool, and drops their pools. Must be called while
+     * holding the lock on {@link #allPools}
+     */
+    protected void pruneTerminatedThreads() {
+        Iterator<Map.Entry<Thread, Pool>> iter = allPools.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Thread, Pool> e = iter.next();
+            if (!e.getKey().isAlive()) {
+                e.getValue().drainTo(sharedPool);
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Releases buffers retained for the calling thread, and in the shared pool. Free lists of other live threads may be
+     * in use concurrently, so they're left as is: they're released by the GC once their threads terminate.
+     */
+    @Override
+    public void close() {
+        synchronized (allPools) {
+            pruneTerminatedThreads();
+        }
+        threadPools.get().clear();
+        sharedPool.clear();
+    }
+
+    /**
+     * Free lists for all data types and size classes. Methods are synchronized, but per-thread pools are never contended
+     */
+    protected class Pool {
+        private final long maxBytes;
+        private final Map<DataType, ArrayDeque<DataBuffer>[]> freeLists = new EnumMap<>(DataType.class);
+        //Guards against the same buffer being pooled twice, i.e. released via different arrays
+        private final Set<DataBuffer> pooled = Collections.newSetFromMap(new IdentityHashMap<>());
+        private long bytes;
+        private long hits;
+        private long misses;
+
+        protected Pool(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        protected synchronized DataBuffer poll(DataType dataType, int cls) {
+            ArrayDeque<DataBuffer>[] lists = freeLists.get(dataType);
+            if (lists == null || lists[cls] == null)
+                return null;
+
+            DataBuffer buffer = lists[cls].pollLast();
+            if (buffer != null) {
+                pooled.remove(buffer);
+                long b = buffer.length() * dataType.width();
+                bytes -= b;
+                bytesRetained.addAndGet(-b);
+            }
+            return buffer;
+        }
+
+        @SuppressWarnings("unchecked")
+        protected synchronized boolean offer(DataBuffer buffer, int cls) {
+            long b = buffer.length() * buffer.dataType().width();
+            if (bytes + b > maxBytes)
+                return false;
+
+            if (!pooled.add(buffer)) {
+                log.trace("Buffer was already released, ignoring");
+                return true;
+            }
+
+            ArrayDeque<DataBuffer>[] lists = freeLists.computeIfAbsent(buffer.dataType(), dt -> new ArrayDeque[maxClassBits + 1]);
+            if (lists[cls] == null)
+                lists[cls] = new ArrayDeque<>();
+            lists[cls].addLast(buffer);
+            bytes += b;
+            bytesRetained.addAndGet(b);
+            return true;
+        }
+
+        /**
+         * Moves all buffers to the target pool, up to its limit. Buffers that don't fit are closed
+         */
+        protected synchronized void drainTo(Pool target) {
+            for (ArrayDeque<DataBuffer>[] lists : freeLists.values()) {
+                for (int cls = 0; cls < lists.length; cls++) {
+                    if (lists[cls] == null)
+                        continue;
+                    for (DataBuffer buffer : lists[cls]) {
+                        if (!target.offer(buffer, cls) && buffer.closeable())
+                            buffer.close();
+                    }
+                    lists[cls].clear();
+                }
+            }
+            pooled.clear();
+            bytesRetained.addAndGet(-bytes);
+            bytes = 0;
+        }
+
+        protected synchronized void clear() {
+            for (ArrayDeque<DataBuffer>[] lists : freeLists.values()) {
+                for (ArrayDeque<DataBuffer> l : lists) {
+                    if (l == null)
+                        continue;
+                    for (DataBuffer buffer : l) {
+                        if (buffer.closeable())
+                            buffer.close();
+                    }
+                    l.clear();
+                }
+            }
+            pooled.clear();
+            bytesRetained.addAndGet(-bytes);
+            bytes = 0;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.autodiff.samediff.internal.ExecutionPlan;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.util.ArrayUtil;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+
+/**
+ * A static memory plan for an {@link ExecutionPlan}: all intermediate (non-output) op output arrays are placed in a
+ * single pre-allocated arena per datatype, with arrays whose lifetimes don't overlap sharing the same memory.<br>
+ * The lifetime of an array runs from the op calculating it to the last op using it, as per the liveness analysis of
+ * the execution plan ({@link ExecutionPlan#releaseAfter(int)}). Offsets are assigned greedily, largest array first,
+ * to the lowest offset that doesn't overlap any already placed array with an overlapping lifetime.<br>
+ * Arrays are views of the arena, created once when the plan is compiled, so executing the plan requires no memory
+ * allocation (or release) for intermediate arrays at all. Requested outputs, placeholders and empty arrays are not
+ * planned, and are allocated as usual.<br>
+ * As plans are specific to the array shapes, they can only be used with an execution plan compiled for fixed
+ * placeholder shapes. Arena arrays are not thread safe: each session has its own memory plans.
+ */
+public class StaticMemoryPlan {
+
+    /**
+     * Alignment for array offsets within the arena, in bytes
+     */
+    public static final int ALIGNMENT_BYTES = 64;
+
+    private final INDArray[] slotArrays;        //Per execution plan slot: arena view, or null if not planned
+    private final INDArray[][] opOutputs;       //Per execution plan op: arena views for each output, or null if none are planned
+    @Getter
+    private final Map<DataType, INDArray> arenas;
+    @Getter
+    private final int numPlannedArrays;
+    @Getter
+    private final long naiveBytes;
+    @Getter
+    private final long peakBytes;
+
+    private StaticMemoryPlan(INDArray[] slotArrays, INDArray[][] opOutputs, Map<DataType, INDArray> arenas,
+                             int numPlannedArrays, long naiveBytes, long peakBytes) {
+        this.slotArrays = slotArrays;
+        this.opOutputs = opOutputs;
+        this.arenas = arenas;
+        this.numPlannedArrays = numPlannedArrays;
+        this.naiveBytes = naiveBytes;
+        this.peakBytes = peakBytes;
+    }
+
+    /**
+     * @return The arena view for the outputs of the specified op of the execution plan - null entries for outputs that
+     * are not planned - or null if none of its outputs are planned
+     */
+    public INDArray[] opOutputs(int op) {
+        return opOutputs[op];
+    }
+
+    /**
+     * @return True if the array for the specified execution plan slot is planned, i.e., is a view of an arena. Arrays
+     * for planned slots must not be released to the session memory manager
+     */
+    public boolean isPlanned(int slot) {
+        return slotArrays[slot] != null;
+    }
+
+    /**
+     * @return Memory saved by the plan, as a fraction of the memory required without reuse: 1 - peak/naive
+     */
+    public double getSavingFraction() {
+        return naiveBytes == 0 ? 0.0 : 1.0 - peakBytes / (double) naiveBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "StaticMemoryPlan(arrays=" + numPlannedArrays + ", peakBytes=" + peakBytes + ", naiveBytes=" + naiveBytes +
+                ", arenas=" + arenas.keySet() + ")";
+    }
+
+    /**
+     * Compile the static memory plan and allocate the arenas
+     *
+     * @param plan       Execution plan
+     * @param slotShapes Shape and datatype of each op output array of the execution plan, indexed by slot, as recorded
+     *                   during an execution of the plan. Null for slots that should not be planned
+     * @return The memory plan
+     */
+    public static StaticMemoryPlan compile(@NonNull ExecutionPlan plan, @NonNull LongShapeDescriptor[] slotShapes) {
+        Preconditions.checkArgument(slotShapes.length == plan.getNumSlots(), "Expected %s slot shapes, got %s",
+                plan.getNumSlots(), slotShapes.length);
+        int numSlots = plan.getNumSlots();
+        int numOps = plan.numOps();
+
+        //Liveness interval of each releasable array: [op calculating it, last op using it]. Arrays that are never
+        // released (outputs, placeholders, constants, variables and their aliases) are not planned
+        int[] first = new int[numSlots];
+        int[] last = new int[numSlots];
+        Arrays.fill(first, -1);
+        Arrays.fill(last, -1);
+        for (int i = 0; i < numOps; i++) {
+            for (int s : plan.outputSlots(i)) {
+                first[s] = i;
+            }
+            for (int s : plan.releaseAfter(i)) {
+                last[s] = i;
+            }
+        }
+
+        List<Integer> planned = new ArrayList<>();
+        long[] bytes = new long[numSlots];
+        long naive = 0;
+        for (int s = 0; s < numSlots; s++) {
+            LongShapeDescriptor d = slotShapes[s];
+            if (first[s] < 0 || last[s] < 0 || d == null || d.isEmpty() || d.dataType() == DataType.UTF8)
+                continue;
+            long length = ArrayUtil.prodLong(d.getShape());
+            if (length == 0)
+                continue;
+            bytes[s] = align(length * d.dataType().width());
+            naive += bytes[s];
+            planned.add(s);
+        }
+
+        //Greedy by size: place the largest arrays first, each at the lowest offset (in its datatype's arena) that
+        // doesn't overlap an already placed array with an overlapping lifetime
+        Collections.sort(planned, (a, b) -> bytes[a] != bytes[b] ? Long.compare(bytes[b], bytes[a]) : Integer.compare(first[a], first[b]));
+        long[] offsets = new long[numSlots];
+        Map<DataType, List<Integer>> placed = new HashMap<>();
+        Map<DataType, Long> arenaBytes = new HashMap<>();
+        for (int s : planned) {
+            DataType dt = slotShapes[s].dataType();
+            List<Integer> inArena = placed.get(dt);
+            if (inArena == null) {
+                inArena = new ArrayList<>();
+                placed.put(dt, inArena);
+            }
+
+            List<long[]> conflicts = new ArrayList<>();
+            for (int p : inArena) {
+                if (first[p] <= last[s] && first[s] <= last[p]) {
+                    conflicts.add(new long[]{offsets[p], offsets[p] + bytes[p]});
+                }
+            }
+            Collections.sort(conflicts, (a, b) -> Long.compare(a[0], b[0]));
+            long offset = 0;
+            for (long[] c : conflicts) {
+                if (offset + bytes[s] <= c[0])
+                    break;      //Fits in the gap before this array
+                offset = Math.max(offset, c[1]);
+            }
+
+            offsets[s] = offset;
+            inArena.add(s);
+            Long curr = arenaBytes.get(dt);
+            arenaBytes.put(dt, Math.max(curr == null ? 0 : curr, offset + bytes[s]));
+        }
+
+        //Allocate the arenas, and create the views for each array
+        Map<DataType, INDArray> arenas = new HashMap<>();
+        long peak = 0;
+        for (Map.Entry<DataType, Long> e : arenaBytes.entrySet()) {
+            long width = e.getKey().width();
+            arenas.put(e.getKey(), Nd4j.createUninitializedDetached(e.getKey(), e.getValue() / width));
+            peak += e.getValue();
+        }
+
+        INDArray[] slotArrays = new INDArray[numSlots];
+        for (int s : planned) {
+            LongShapeDescriptor d = slotShapes[s];
+            INDArray arena = arenas.get(d.dataType());
+            long[] shape = d.getShape();
+            char order = d.getOrder();
+            slotArrays[s] = Nd4j.create(arena.data(), shape, Nd4j.getStrides(shape, order), offsets[s] / d.dataType().width(), order, d.dataType());
+        }
+
+        INDArray[][] opOutputs = new INDArray[numOps][];
+        for (int i = 0; i < numOps; i++) {
+            int[] outSlots = plan.outputSlots(i);
+            INDArray[] arrs = null;
+            for (int j = 0; j < outSlots.length; j++) {
+                if (slotArrays[outSlots[j]] != null) {
+                    if (arrs == null)
+                        arrs = new INDArray[outSlots.length];
+                    arrs[j] = slotArrays[outSlots[j]];
+                }
+            }
+            opOutputs[i] = arrs;
+        }
+
+        return new StaticMemoryPlan(slotArrays, opOutputs, arenas, planned.size(), naive, peak);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + ALIGNMENT_BYTES - 1) / ALIGNMENT_BYTES * ALIGNMENT_BYTES;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.profiler;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics collected by {@link SessionProfiler} for single op, or single variable.<br>
+ * For variables, execution time is the execution time of the op that produced the variable, and cache counters
+ * are not tracked (they're tracked at op level only).
+ */
+@Getter
+public class ExecStats {
+    /**
+     * Name of the graph the op or variable belongs to
+     */
+    private final String graph;
+    private final String name;
+    /**
+     * Op type (i.e. "matmul") for op stats, or name of producing op for variable stats
+     */
+    private final String type;
+    private final Histogram execTimeNanos;
+    private final Histogram outputBytes;
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    public ExecStats(String graph, String name, String type, int precisionBits) {
+        this.graph = graph;
+        this.name = name;
+        this.type = type;
+        this.execTimeNanos = new Histogram(precisionBits, Histogram.DEFAULT_MAX_EXPONENT);
+        this.outputBytes = new Histogram(precisionBits, Histogram.DEFAULT_MAX_EXPONENT);
+    }
+
+    public long getCount() {
+        return execTimeNanos.getCount();
+    }
+
+    public void reset() {
+        execTimeNanos.reset();
+        outputBytes.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.profiler;
+
+import org.nd4j.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative long values (nanoseconds, bytes), with log-linear (HDR style) buckets.<br>
+ * Each power of two range is split into 2^precisionBits linear sub-buckets, so relative error of any reported
+ * percentile is bounded by 1/2^precisionBits (~3% for default 5 bits). Values outside of [0, 2^maxExponent) are clamped.<br>
+ * Buckets for each power of two range are allocated lazily, on first use, so histogram of values that stay within a few
+ * orders of magnitude takes a few hundred bytes only.
+ */
+public class Histogram {
+    public static final int DEFAULT_PRECISION_BITS = 5;
+    public static final int DEFAULT_MAX_EXPONENT = 44;
+
+    private final int precisionBits;
+    private final int subBucketCount;
+    private final long maxValue;
+    // chunk 0 covers [0, subBucketCount) with unit buckets, chunk i covers [2^(precisionBits + i - 1), 2^(precisionBits + i))
+    private final AtomicReferenceArray<AtomicLongArray> chunks;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+
+    public Histogram() {
+        this(DEFAULT_PRECISION_BITS, DEFAULT_MAX_EXPONENT);
+    }
+
+    /**
+     * @param precisionBits number of linear sub-buckets per power of two range is 2^precisionBits
+     * @param maxExponent   values above 2^maxExponent - 1 are clamped
+     */
+    public Histogram(int precisionBits, int maxExponent) {
+        Preconditions.checkArgument(precisionBits >= 1 && precisionBits <= 16, "Precision bits must be between 1 and 16, got %s", precisionBits);
+        Preconditions.checkArgument(maxExponent > precisionBits && maxExponent <= 62, "Max exponent must be between %s and 62, got %s", precisionBits + 1, maxExponent);
+        this.precisionBits = precisionBits;
+        this.subBucketCount = 1 << precisionBits;
+        this.maxValue = (1L << maxExponent) - 1;
+        this.chunks = new AtomicReferenceArray<>(maxExponent - precisionBits + 1);
+    }
+
+    /**
+     * Records single value
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        else if (value > maxValue)
+            value = maxValue;
+
+        int chunk;
+        int sub;
+        if (value < subBucketCount) {
+            chunk = 0;
+            sub = (int) value;
+        } else {
+            int shift = 63 - Long.numberOfLeadingZeros(value) - precisionBits;
+            chunk = shift + 1;
+            sub = (int) ((value >>> shift) - subBucketCount);
+        }
+
+        AtomicLongArray c = chunks.get(chunk);
+        if (c == null) {
+            chunks.compareAndSet(chunk, null, new AtomicLongArray(subBucketCount));
+            c = chunks.get(chunk);
+        }
+        c.incrementAndGet(sub);
+
+        count.increment();
+        sum.add(value);
+
+        long m;
+        while (value < (m = min.get()) && !min.compareAndSet(m, value)) ;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) ;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMin() {
+        return getCount() == 0 ? 0 : min.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long c = getCount();
+        return c == 0 ? 0.0 : getSum() / (double) c;
+    }
+
+    /**
+     * Returns value at the given percentile, i.e. 99.0 for p99. Reported value is the highest value, equivalent to
+     * the bucket percentile falls into.
+     *
+     * @param percentile Percentile, between 0 and 100
+     */
+    public long getPercentile(double percentile) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100, got %s", percentile);
+
+        // buckets are updated concurrently, so we use sum of buckets instead of count here
+        long total = 0;
+        for (int i = 0; i < chunks.length(); i++) {
+            AtomicLongArray c = chunks.get(i);
+            if (c != null)
+                for (int j = 0; j < subBucketCount; j++)
+                    total += c.get(j);
+        }
+        if (total == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < chunks.length(); i++) {
+            AtomicLongArray c = chunks.get(i);
+            if (c == null)
+                continue;
+
+            for (int j = 0; j < subBucketCount; j++) {
+                seen += c.get(j);
+                if (seen >= target)
+                    return Math.min(upperBound(i, j), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    private long upperBound(int chunk, int sub) {
+        if (chunk == 0)
+            return sub;
+
+        int shift = chunk - 1;
+        return ((long) (sub + subBucketCount + 1) << shift) - 1;
+    }
+
+    /**
+     * Resets all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < chunks.length(); i++)
+            chunks.set(i, null);
+        count.reset();
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.profiler;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.shade.jackson.core.JsonProcessingException;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+import org.nd4j.shade.jackson.databind.SerializationFeature;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low overhead, always-on profiler for {@link org.nd4j.autodiff.samediff.internal.InferenceSession}.<br>
+ * Unlike {@link org.nd4j.linalg.profiler.OpProfiler} or {@link org.nd4j.autodiff.listeners.profiler.ProfilingListener},
+ * it doesn't log or store individual events: per-op and per-variable execution time and output size are aggregated
+ * into lock-free histograms, so it can be left enabled on production traffic. Single instance may be shared between
+ * sessions of all threads, and between multiple SameDiff instances.<br>
+ * Stats are keyed by graph name and op (or variable) name, since op names are unique within a single graph only. The
+ * graph name is given when the profiler is attached, see {@link org.nd4j.autodiff.samediff.SameDiff#setSessionProfiler(SessionProfiler, String)}.
+ * Graphs attached under the same name are aggregated together: that's intended for copies of the same graph (i.e.
+ * per-thread duplicates), so different graphs sharing a profiler should be attached under different names.<br>
+ * Usage:
+ * <pre>
+ * {@code
+ * SessionProfiler profiler = new SessionProfiler();
+ * sd.setSessionProfiler(profiler, "encoder");
+ * ...
+ * String prometheusSnapshot = profiler.toPrometheus();
+ * }
+ * </pre>
+ */
+public class SessionProfiler {
+    public static final double[] DEFAULT_QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    public static final String DEFAULT_GRAPH = "default";
+
+    //Graph name -> op/variable name -> stats
+    private final Map<String, Map<String, ExecStats>> opStats = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, ExecStats>> variableStats = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    @Getter
+    private final boolean trackVariables;
+    @Getter
+    private final int precisionBits;
+
+    public SessionProfiler() {
+        this(true, Histogram.DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * @param trackVariables If true, stats are collected for every op output variable, in addition to ops
+     * @param precisionBits  Histogram precision, see {@link Histogram}
+     */
+    public SessionProfiler(boolean trackVariables, int precisionBits) {
+        this.trackVariables = trackVariables;
+        this.precisionBits = precisionBits;
+    }
+
+    /**
+     * Records single op execution
+     *
+     * @param graph       Name of the graph the op belongs to
+     * @param op          Executed op
+     * @param execNanos   Execution time, in nanoseconds
+     * @param outputs     Op outputs, may contain nulls
+     * @param cacheHits   Number of output arrays allocated from the session memory manager cache
+     * @param cacheMisses Number of output arrays the session memory manager had to allocate
+     */
+    public void record(@NonNull String graph, @NonNull SameDiffOp op, long execNanos, INDArray[] outputs, long cacheHits, long cacheMisses) {
+        Map<String, ExecStats> graphOps = graphStats(opStats, graph);
+        ExecStats s = graphOps.get(op.getName());
+        if (s == null)
+            s = graphOps.computeIfAbsent(op.getName(), n -> new ExecStats(graph, n, opType(op), precisionBits));
+
+        long totalBytes = 0;
+        if (outputs != null) {
+            List<String> outNames = op.getOutputsOfOp();
+            for (int i = 0; i < outputs.length; i++) {
+                long bytes = bytes(outputs[i]);
+                totalBytes += bytes;
+
+                if (trackVariables && outNames != null && i < outNames.size() && outputs[i] != null) {
+                    String varName = outNames.get(i);
+                    Map<String, ExecStats> graphVars = graphStats(variableStats, graph);
+                    ExecStats vs = graphVars.get(varName);
+                    if (vs == null)
+                        vs = graphVars.computeIfAbsent(varName, n -> new ExecStats(graph, n, op.getName(), precisionBits));
+                    vs.getExecTimeNanos().record(execNanos);
+                    vs.getOutputBytes().record(bytes);
+                }
+            }
+        }
+
+        s.getExecTimeNanos().record(execNanos);
+        s.getOutputBytes().record(totalBytes);
+        if (cacheHits > 0) {
+            s.getCacheHits().add(cacheHits);
+            this.cacheHits.add(cacheHits);
+        }
+        if (cacheMisses > 0) {
+            s.getCacheMisses().add(cacheMisses);
+            this.cacheMisses.add(cacheMisses);
+        }
+    }
+
+    private static Map<String, ExecStats> graphStats(Map<String, Map<String, ExecStats>> stats, String graph) {
+        Map<String, ExecStats> m = stats.get(graph);
+        if (m == null)
+            m = stats.computeIfAbsent(graph, g -> new ConcurrentHashMap<>());
+        return m;
+    }
+
+    private static String opType(SameDiffOp op) {
+        try {
+            return op.getOp().opName();
+        } catch (UnsupportedOperationException e) {
+            return op.getOp().getClass().getSimpleName();
+        }
+    }
+
+    private static long bytes(INDArray arr) {
+        if (arr == null || arr.isEmpty() || arr.data() == null)
+            return 0;
+
+        return arr.length() * arr.dataType().width();
+    }
+
+    /**
+     * @return Names of all graphs with ops executed so far
+     */
+    public Set<String> getGraphs() {
+        return Collections.unmodifiableSet(new TreeSet<>(opStats.keySet()));
+    }
+
+    /**
+     * @return Stats for all ops of the {@link #DEFAULT_GRAPH} graph executed so far, keyed by op name
+     */
+    public Map<String, ExecStats> getOpStats() {
+        return getOpStats(DEFAULT_GRAPH);
+    }
+
+    /**
+     * @param graph Graph name
+     * @return Stats for all ops of the given graph executed so far, keyed by op name
+     */
+    public Map<String, ExecStats> getOpStats(@NonNull String graph) {
+        Map<String, ExecStats> m = opStats.get(graph);
+        return m == null ? Collections.emptyMap() : Collections.unmodifiableMap(m);
+    }
+
+    /**
+     * @return Stats for all variables of the {@link #DEFAULT_GRAPH} graph produced so far, keyed by variable name.
+     * Empty if variable tracking is disabled
+     */
+    public Map<String, ExecStats> getVariableStats() {
+        return getVariableStats(DEFAULT_GRAPH);
+    }
+
+    /**
+     * @param graph Graph name
+     * @return Stats for all variables of the given graph produced so far, keyed by variable name. Empty if variable
+     * tracking is disabled
+     */
+    public Map<String, ExecStats> getVariableStats(@NonNull String graph) {
+        Map<String, ExecStats> m = variableStats.get(graph);
+        return m == null ? Collections.emptyMap() : Collections.unmodifiableMap(m);
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * @return Op stats of all graphs, sorted by given percentile of execution time, slowest first
+     */
+    public List<ExecStats> slowestOps(double percentile, int limit) {
+        List<ExecStats> list = sorted(opStats);
+        list.sort((a, b) -> Long.compare(b.getExecTimeNanos().getPercentile(percentile), a.getExecTimeNanos().getPercentile(percentile)));
+        return list.subList(0, Math.min(limit, list.size()));
+    }
+
+    /**
+     * Resets all collected stats
+     */
+    public void reset() {
+        opStats.clear();
+        variableStats.clear();
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+
+    /**
+     * @return JSON snapshot of all collected stats
+     */
+    public String toJson() {
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("cacheHits", getCacheHits());
+        root.put("cacheMisses", getCacheMisses());
+        root.put("ops", toJsonList(opStats, "type"));
+        if (trackVariables)
+            root.put("variables", toJsonList(variableStats, "op"));
+
+        try {
+            return new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(root);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error converting profiler stats to JSON", e);
+        }
+    }
+
+    private static List<ExecStats> sorted(Map<String, Map<String, ExecStats>> stats) {
+        List<ExecStats> out = new ArrayList<>();
+        for (Map<String, ExecStats> m : new TreeMap<>(stats).values())
+            out.addAll(new TreeMap<>(m).values());
+        return out;
+    }
+
+    private static List<Map<String, Object>> toJsonList(Map<String, Map<String, ExecStats>> stats, String typeKey) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (ExecStats s : sorted(stats)) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("graph", s.getGraph());
+            m.put("name", s.getName());
+            m.put(typeKey, s.getType());
+            m.put("count", s.getCount());
+            m.put("execTimeNanos", toJson(s.getExecTimeNanos()));
+            m.put("outputBytes", toJson(s.getOutputBytes()));
+            if ("type".equals(typeKey)) {
+                m.put("cacheHits", s.getCacheHits().sum());
+                m.put("cacheMisses", s.getCacheMisses().sum());
+            }
+            out.add(m);
+        }
+        return out;
+    }
+
+    private static Map<String, Object> toJson(Histogram h) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("min", h.getMin());
+        m.put("mean", h.getMean());
+        for (double q : DEFAULT_QUANTILES)
+            m.put("p" + quantileName(q), h.getPercentile(q * 100));
+        m.put("max", h.getMax());
+        m.put("sum", h.getSum());
+        return m;
+    }
+
+    private static String quantileName(double q) {
+        String s = String.valueOf(q * 100);
+        if (s.endsWith(".0"))
+            s = s.substring(0, s.length() - 2);
+        return s.replace('.', '_');
+    }
+
+    /**
+     * @return Snapshot of all collected stats in Prometheus text exposition format. Histograms are exported as
+     * summaries, with times in seconds
+     */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        List<ExecStats> ops = sorted(opStats);
+        summary(sb, "samediff_op_exec_time_seconds", "SameDiff op execution time", ops, "op", "type", true);
+        summary(sb, "samediff_op_output_bytes", "SameDiff op output arrays size", ops, "op", "type", false);
+
+        sb.append("# HELP samediff_op_cache_hits_total Op output arrays allocated from session memory manager cache\n");
+        sb.append("# TYPE samediff_op_cache_hits_total counter\n");
+        for (ExecStats s : ops)
+            sb.append("samediff_op_cache_hits_total{graph=\"").append(escape(s.getGraph())).append("\",op=\"").append(escape(s.getName()))
+                    .append("\"} ").append(s.getCacheHits().sum()).append('\n');
+
+        sb.append("# HELP samediff_op_cache_misses_total Op output arrays not found in session memory manager cache\n");
+        sb.append("# TYPE samediff_op_cache_misses_total counter\n");
+        for (ExecStats s : ops)
+            sb.append("samediff_op_cache_misses_total{graph=\"").append(escape(s.getGraph())).append("\",op=\"").append(escape(s.getName()))
+                    .append("\"} ").append(s.getCacheMisses().sum()).append('\n');
+
+        if (trackVariables) {
+            List<ExecStats> vars = sorted(variableStats);
+            summary(sb, "samediff_variable_exec_time_seconds", "Execution time of the op producing SameDiff variable", vars, "variable", "op", true);
+            summary(sb, "samediff_variable_output_bytes", "SameDiff variable array size", vars, "variable", "op", false);
+        }
+        return sb.toString();
+    }
+
+    private static void summary(StringBuilder sb, String metric, String help, List<ExecStats> stats, String nameLabel,
+                                String typeLabel, boolean time) {
+        sb.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(metric).append(" summary\n");
+        for (ExecStats s : stats) {
+            Histogram h = time ? s.getExecTimeNanos() : s.getOutputBytes();
+            String labels = "graph=\"" + escape(s.getGraph()) + "\"," + nameLabel + "=\"" + escape(s.getName()) + "\","
+                    + typeLabel + "=\"" + escape(s.getType()) + "\"";
+            for (double q : DEFAULT_QUANTILES) {
+                sb.append(metric).append('{').append(labels).append(",quantile=\"").append(q).append("\"} ")
+                        .append(value(h.getPercentile(q * 100), time)).append('\n');
+            }
+            sb.append(metric).append("_sum{").append(labels).append("} ").append(value(h.getSum(), time)).append('\n');
+            sb.append(metric).append("_count{").append(labels).append("} ").append(h.getCount()).append('\n');
+        }
+    }
+
+    private static String value(long v, boolean nanosToSeconds) {
+        return nanosToSeconds ? String.valueOf(v / 1e9) : String.valueOf(v);
+    }
+
+    private static String escape(String s) {
+        if (s == null)
+            return "";
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.optimize.debug;
+
+import lombok.NonNull;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.optimize.Optimizer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link OptimizationDebugger} that validates the graph after every optimization that was applied: the outputs of
+ * the graph being optimized are calculated and compared to the outputs of the original (unoptimized) graph.<br>
+ * An IllegalStateException is thrown, naming the optimization and op, as soon as any output differs by more than the
+ * specified epsilon, or can't be calculated.<br>
+ * This is useful for testing and debugging new optimizations - but as the outputs are calculated after every
+ * optimization, it is slow for large graphs.
+ */
+public class OutputValidationDebugger implements OptimizationDebugger {
+
+    private final Map<String, INDArray> placeholders;
+    private final List<String> outputs;
+    private final double eps;
+    private final Map<String, INDArray> expected;
+
+    /**
+     * @param original     Original (unoptimized) graph
+     * @param placeholders Placeholder values to calculate the outputs with. May be null if there are no placeholders
+     * @param outputs      Outputs to validate
+     * @param eps          Maximum allowed absolute difference per element - see {@link INDArray#equalsWithEps(Object, double)}
+     */
+    public OutputValidationDebugger(@NonNull SameDiff original, Map<String, INDArray> placeholders, @NonNull List<String> outputs, double eps) {
+        this.placeholders = placeholders;
+        this.outputs = outputs;
+        this.eps = eps;
+        this.expected = original.output(placeholders, outputs);
+    }
+
+    @Override
+    public void beforeOptimizationCheck(SameDiff sd, SameDiffOp op, Optimizer o) {
+        //No op
+    }
+
+    @Override
+    public void afterOptimizationsCheck(SameDiff sd, SameDiffOp op, Optimizer o, boolean wasApplied) {
+        if (!wasApplied)
+            return;
+
+        //Sessions (and any cached execution plans) are for the graph structure before the optimization was applied
+        sd.getSessions().clear();
+        Map<String, INDArray> actual;
+        try {
+            actual = sd.output(placeholders, outputs);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to calculate outputs after applying optimization " + o.getClass().getName()
+                    + " to op \"" + op.getName() + "\"", t);
+        }
+
+        for (String s : outputs) {
+            INDArray exp = expected.get(s);
+            INDArray act = actual.get(s);
+            if (act == null || !exp.equalsWithEps(act, eps)) {
+                throw new IllegalStateException("Output \"" + s + "\" differs from the output of the original graph after applying optimization "
+                        + o.getClass().getName() + " to op \"" + op.getName() + "\"\nExpected: " + exp + "\nActual: " + act);
+            }
+        }
+    }
+}
@@ -0,0 +1,544 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.optimize.optimizations;
+
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.ArrayHolder;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.autodiff.samediff.optimize.OptimizationHelper;
+import org.nd4j.autodiff.samediff.optimize.Optimizer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.BaseScalarOp;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.impl.broadcast.BiasAdd;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.BatchNorm;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.scalar.*;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Negative;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Operator fusion optimizations, for inference:
+ * <ul>
+ *     <li>Fold inference batch normalization (with constant mean, variance, gamma and beta) into the weights and bias
+ *     of the preceding Conv2D or dense (matmul / xw_plus_b) layer, if these are constants</li>
+ *     <li>Fuse bias add into the preceding Conv2D (conv2d bias input) or matmul (xw_plus_b op)</li>
+ *     <li>Fuse ReLU into the preceding xw_plus_b op (relu_layer op)</li>
+ *     <li>Merge chains of scalar add/subtract/multiply/divide and negation ops into at most one multiply and one add op.
+ *     Chains that reduce to the identity are removed, and their consumers use the chain's input directly</li>
+ * </ul>
+ * Intermediate variables are only fused away if they are not used by any other op, and are not a required output.
+ * Note that folding and merging changes the order of floating point operations, so the outputs may differ from the
+ * unoptimized graph by rounding errors.
+ */
+public class FusionOptimizations extends BaseOptimizerSet {
+
+    @Override
+    public List<Optimizer> getOptimizers() {
+        //Order matters here: bias fusion first produces the conv2d(x,w,b) and xw_plus_b ops that batch norm is folded into,
+        // and that ReLU is fused into
+        return Arrays.<Optimizer>asList(
+                new FuseConv2DBias(),
+                new FuseMatMulBias(),
+                new FoldBatchNormIntoConv2D(),
+                new FoldBatchNormIntoDense(),
+                new FuseDenseRelu(),
+                new FuseScalarChains()
+        );
+    }
+
+    /**
+     * Fuse [conv2d(x, w) -> biasAdd(b)] into conv2d(x, w, b)
+     */
+    public static class FuseConv2DBias implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            String biasName = biasAddBias(sd, op);
+            if(biasName == null)
+                return false;
+
+            String in = op.getInputsToOp().get(0);
+            SameDiffOp conv = fusableProducer(sd, helper, in, Conv2D.class);
+            if(conv == null || conv.getInputsToOp().size() != 2)
+                return false;
+
+            //Channels must be the dimension the bias is added to
+            Boolean convNchw = conv2dNchw((Conv2D) conv.getOp());
+            if(convNchw == null)
+                return false;
+            if(op.getOp() instanceof BiasAdd){
+                boolean[] b = ((BiasAdd) op.getOp()).bArgs();
+                if(b == null || b.length == 0 || b[0] != convNchw)
+                    return false;
+            } else if(convNchw){
+                return false;   //add(conv, b) only broadcasts b over channels for NHWC
+            }
+
+            OptimizationUtils.addOpInput(sd, conv.getName(), biasName);
+            String out = op.getOutputsOfOp().get(0);
+            OptimizationUtils.removeOp(sd, op.getName());
+            OptimizationUtils.replaceVariable(sd, out, in);
+            return true;
+        }
+    }
+
+    /**
+     * Fuse [mmul(x, w) -> biasAdd(b)] into xw_plus_b(x, w, b)
+     */
+    public static class FuseMatMulBias implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            String biasName = biasAddBias(sd, op);
+            if(biasName == null)
+                return false;
+
+            String in = op.getInputsToOp().get(0);
+            SameDiffOp mmul = fusableProducer(sd, helper, in, Mmul.class);
+            if(mmul == null || !isPlainMatMul(sd, mmul))
+                return false;
+
+            SDVariable x = sd.getVariable(mmul.getInputsToOp().get(0));
+            SDVariable w = sd.getVariable(mmul.getInputsToOp().get(1));
+            SDVariable fused = sd.nn.linear(x, w, sd.getVariable(biasName));
+
+            String out = op.getOutputsOfOp().get(0);
+            OptimizationUtils.removeOp(sd, op.getName());
+            OptimizationUtils.removeOp(sd, mmul.getName());
+            OptimizationUtils.removeVariable(sd, in);
+            OptimizationUtils.replaceVariable(sd, out, fused.name());
+            return true;
+        }
+    }
+
+    /**
+     * Fold [conv2d(x, w, [b]) -> batchNorm(mean, var, gamma, beta)] into conv2d(x, w', b'), where<br>
+     * w' = w * gamma / sqrt(var + eps) and b' = (b - mean) * gamma / sqrt(var + eps) + beta<br>
+     * Weights, bias and batch norm parameters must all be constants
+     */
+    public static class FoldBatchNormIntoConv2D implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if(!(op.getOp() instanceof BatchNorm) || !allConstant(sd, op.getInputsToOp(), 1))
+                return false;
+
+            String in = op.getInputsToOp().get(0);
+            SameDiffOp conv = fusableProducer(sd, helper, in, Conv2D.class);
+            if(conv == null || !allConstant(sd, conv.getInputsToOp(), 1))
+                return false;
+
+            Boolean nchw = conv2dNchw((Conv2D) conv.getOp());
+            Integer axis = batchNormAxis((BatchNorm) op.getOp(), 4);
+            if(nchw == null || axis == null || axis != (nchw ? 1 : 3))
+                return false;
+
+            INDArray w = sd.getVariable(conv.getInputsToOp().get(1)).getArr();
+            INDArray b = conv.getInputsToOp().size() > 2 ? sd.getVariable(conv.getInputsToOp().get(2)).getArr() : null;
+            INDArray[] scaleShift = batchNormScaleShift(sd, op);
+            INDArray scale = scaleShift[0];
+            long c = scale.length();
+
+            //Output channels dimension: last for YXIO weights, first for OIYX and OYXI weights
+            long[] scaleShape = weightsFormatOrdinal((Conv2D) conv.getOp()) == 0 ? new long[]{1, 1, 1, c} : new long[]{c, 1, 1, 1};
+            INDArray newW = w.castTo(scale.dataType()).mul(scale.reshape(scaleShape)).castTo(w.dataType());
+            INDArray newB = foldedBias(b, scaleShift).castTo(w.dataType());
+
+            setFoldedParams(sd, conv, newW, newB);
+            String out = op.getOutputsOfOp().get(0);
+            OptimizationUtils.removeOp(sd, op.getName());
+            OptimizationUtils.replaceVariable(sd, out, in);
+            return true;
+        }
+    }
+
+    /**
+     * Fold [xw_plus_b(x, w, b) -> batchNorm(mean, var, gamma, beta)] or [mmul(x, w) -> batchNorm(mean, var, gamma, beta)]
+     * into xw_plus_b(x, w', b'), where<br>
+     * w' = w * gamma / sqrt(var + eps) and b' = (b - mean) * gamma / sqrt(var + eps) + beta<br>
+     * Weights, bias and batch norm parameters must all be constants
+     */
+    public static class FoldBatchNormIntoDense implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if(!(op.getOp() instanceof BatchNorm) || !allConstant(sd, op.getInputsToOp(), 1))
+                return false;
+
+            String in = op.getInputsToOp().get(0);
+            SameDiffOp dense = fusableProducer(sd, helper, in, XwPlusB.class);
+            if(dense == null) {
+                dense = fusableProducer(sd, helper, in, Mmul.class);
+                if(dense == null || !isPlainMatMul(sd, dense))
+                    return false;
+            }
+            if(!allConstant(sd, dense.getInputsToOp(), 1))
+                return false;
+            Integer axis = batchNormAxis((BatchNorm) op.getOp(), 2);
+            if(axis == null || axis != 1)
+                return false;
+
+            INDArray w = sd.getVariable(dense.getInputsToOp().get(1)).getArr();
+            INDArray b = dense.getInputsToOp().size() > 2 ? sd.getVariable(dense.getInputsToOp().get(2)).getArr() : null;
+            INDArray[] scaleShift = batchNormScaleShift(sd, op);
+            INDArray scale = scaleShift[0];
+
+            //Weights are [nIn, nOut]
+            INDArray newW = w.castTo(scale.dataType()).mul(scale.reshape(1, scale.length())).castTo(w.dataType());
+            INDArray newB = foldedBias(b, scaleShift).castTo(w.dataType());
+
+            String out = op.getOutputsOfOp().get(0);
+            if(dense.getOp() instanceof Mmul) {
+                //No bias input: replace mmul by xw_plus_b
+                SDVariable x = sd.getVariable(dense.getInputsToOp().get(0));
+                SDVariable wVar = sd.constant(sd.generateDistinctCustomVariableName(dense.getInputsToOp().get(1) + "_bn_folded"), newW);
+                SDVariable bVar = sd.constant(sd.generateDistinctCustomVariableName(out + "_bn_folded_bias"), newB);
+                SDVariable fused = sd.nn.linear(x, wVar, bVar);
+                OptimizationUtils.removeOp(sd, op.getName());
+                OptimizationUtils.removeOp(sd, dense.getName());
+                OptimizationUtils.removeVariable(sd, in);
+                OptimizationUtils.replaceVariable(sd, out, fused.name());
+            } else {
+                setFoldedParams(sd, dense, newW, newB);
+                OptimizationUtils.removeOp(sd, op.getName());
+                OptimizationUtils.replaceVariable(sd, out, in);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Fuse [xw_plus_b(x, w, b) -> relu(0)] into relu_layer(x, w, b)
+     */
+    public static class FuseDenseRelu implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if(!(op.getOp() instanceof RectifiedLinear) || op.getInputsToOp().size() != 1)
+                return false;
+            INDArray cutoff = ((RectifiedLinear) op.getOp()).scalar();
+            if(cutoff == null || cutoff.getDouble(0) != 0.0)
+                return false;
+
+            String in = op.getInputsToOp().get(0);
+            SameDiffOp dense = fusableProducer(sd, helper, in, XwPlusB.class);
+            //Exact class only: relu_layer is a subclass of xw_plus_b
+            if(dense == null || dense.getOp().getClass() != XwPlusB.class || dense.getInputsToOp().size() != 3)
+                return false;
+
+            List<String> denseIn = dense.getInputsToOp();
+            SDVariable fused = sd.nn.reluLayer(sd.getVariable(denseIn.get(0)), sd.getVariable(denseIn.get(1)), sd.getVariable(denseIn.get(2)));
+
+            String out = op.getOutputsOfOp().get(0);
+            OptimizationUtils.removeOp(sd, op.getName());
+            OptimizationUtils.removeOp(sd, dense.getName());
+            OptimizationUtils.removeVariable(sd, in);
+            OptimizationUtils.replaceVariable(sd, out, fused.name());
+            return true;
+        }
+    }
+
+    /**
+     * Merge chains of element-wise scalar ops - add, subtract, reverse subtract, multiply, divide, and negation - into
+     * at most 2 ops: y = x * a + b<br>
+     * For example, [x -> mul(2) -> add(1) -> mul(3) -> sub(2)] is replaced by [x -> mul(6) -> add(1)]
+     */
+    public static class FuseScalarChains implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if(!isAffineScalarOp(sd, op))
+                return false;
+
+            //Only apply at the end of a chain, to merge the whole chain at once
+            String out = op.getOutputsOfOp().get(0);
+            if(fusableProducer(sd, helper, out, DifferentialFunction.class) != null){
+                SameDiffOp next = sd.getOps().get(sd.getVariables().get(out).getInputsForOp().get(0));
+                if(isAffineScalarOp(sd, next))
+                    return false;
+            }
+
+            //Walk backwards from the last op in the chain
+            List<SameDiffOp> chain = new ArrayList<>();
+            chain.add(op);
+            String in = op.getInputsToOp().get(0);
+            while(true){
+                SameDiffOp prev = fusableProducer(sd, helper, in, DifferentialFunction.class);
+                if(prev == null || !isAffineScalarOp(sd, prev))
+                    break;
+                chain.add(prev);
+                in = prev.getInputsToOp().get(0);
+            }
+            Collections.reverse(chain);
+
+            //Compose y = a*x + b
+            double a = 1.0;
+            double b = 0.0;
+            for(SameDiffOp o : chain){
+                DifferentialFunction df = o.getOp();
+                double c = df instanceof Negative ? 0.0 : ((BaseScalarOp) df).scalar().getDouble(0);
+                if(df instanceof ScalarAdd){
+                    b += c;
+                } else if(df instanceof ScalarSubtraction){
+                    b -= c;
+                } else if(df instanceof ScalarReverseSubtraction){
+                    a = -a;
+                    b = c - b;
+                } else if(df instanceof ScalarMultiplication){
+                    a *= c;
+                    b *= c;
+                } else if(df instanceof ScalarDivision){
+                    a /= c;
+                    b /= c;
+                } else {
+                    //Negative
+                    a = -a;
+                    b = -b;
+                }
+            }
+
+            boolean identity = a == 1.0 && b == 0.0;
+            Variable outVar = sd.getVariables().get(out);
+            //Identity chain: remove it entirely, unless the output variable itself must be kept
+            boolean rewire = identity && !helper.isRequiredOutput(out) && !isEmpty(outVar.getInputsForOp()) &&
+                    isEmpty(outVar.getControlDeps()) && isEmpty(outVar.getControlDepsForOp()) && isEmpty(outVar.getControlDepsForVar());
+
+            int numFused = rewire ? 0 : identity ? 1 : (a != 1.0 ? 1 : 0) + (b != 0.0 ? 1 : 0);
+            if(chain.size() <= numFused)
+                return false;   //Nothing to gain
+
+            SDVariable fused = null;
+            if(!rewire){
+                fused = sd.getVariable(in);
+                if(identity)
+                    fused = sd.identity(fused);
+                if(a != 1.0)
+                    fused = fused.mul(a);
+                if(b != 0.0)
+                    fused = fused.add(b);
+            }
+
+            for(SameDiffOp o : chain){
+                OptimizationUtils.removeOp(sd, o.getName());
+            }
+            for(SameDiffOp o : chain){
+                String oOut = o.getOutputsOfOp().get(0);
+                if(!oOut.equals(out))
+                    OptimizationUtils.removeVariable(sd, oOut);
+            }
+
+            if(rewire){
+                for(String opName : new ArrayList<>(outVar.getInputsForOp())){
+                    int numInputs = sd.getOps().get(opName).getInputsToOp().size();
+                    for(int i = 0; i < numInputs; i++){
+                        if(out.equals(sd.getOps().get(opName).getInputsToOp().get(i)))
+                            OptimizationUtils.replaceOpInput(sd, opName, i, in);
+                    }
+                }
+                OptimizationUtils.removeVariable(sd, out);
+            } else {
+                OptimizationUtils.replaceVariable(sd, out, fused.name());
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * @return The op calculating the variable, if it is of the specified type, and the variable is not needed for
+     * anything other than the op it is fused into (no other ops, control dependencies, or required outputs)
+     */
+    protected static SameDiffOp fusableProducer(SameDiff sd, OptimizationHelper helper, String varName, Class<?> opType){
+        Variable v = sd.getVariables().get(varName);
+        if(v == null || v.getOutputOfOp() == null || helper.isRequiredOutput(varName))
+            return null;
+        if(v.getInputsForOp() == null || v.getInputsForOp().size() != 1)
+            return null;
+        if(!isEmpty(v.getControlDeps()) || !isEmpty(v.getControlDepsForOp()) || !isEmpty(v.getControlDepsForVar()))
+            return null;
+        SameDiffOp op = sd.getOps().get(v.getOutputOfOp());
+        if(op == null || !opType.isAssignableFrom(op.getOp().getClass()) || op.getOutputsOfOp().size() != 1)
+            return null;
+        if(!isEmpty(op.getControlDeps()) || !isEmpty(op.getVarControlDeps()) || !isEmpty(op.getControlDepFor()))
+            return null;
+        return op;
+    }
+
+    /**
+     * @return Name of the bias variable, if the op is biasAdd(x, b) or add(x, b) with b a rank 1 constant or variable;
+     * null otherwise
+     */
+    protected static String biasAddBias(SameDiff sd, SameDiffOp op){
+        if(!(op.getOp() instanceof BiasAdd || op.getOp() instanceof AddOp) || op.getInputsToOp().size() != 2)
+            return null;
+        if(!isEmpty(op.getControlDeps()) || !isEmpty(op.getVarControlDeps()) || !isEmpty(op.getControlDepFor()))
+            return null;
+        SDVariable b = sd.getVariable(op.getInputsToOp().get(1));
+        if(b.getVariableType() != VariableType.CONSTANT && b.getVariableType() != VariableType.VARIABLE)
+            return null;
+        long[] shape = b.getShape();
+        return shape != null && shape.length == 1 ? b.name() : null;
+    }
+
+    /**
+     * @return True if the op is a matrix multiply of x with rank 2 weights, without transposes or scaling
+     */
+    protected static boolean isPlainMatMul(SameDiff sd, SameDiffOp op){
+        DynamicCustomOp mmul = (DynamicCustomOp) op.getOp();
+        for(long l : mmul.iArgs()){
+            if(l != 0)
+                return false;
+        }
+        double[] t = mmul.tArgs();
+        if(t != null && t.length >= 2 && (t[0] != 1.0 || t[1] != 0.0))
+            return false;
+        long[] xShape = sd.getVariable(op.getInputsToOp().get(0)).getShape();
+        long[] wShape = sd.getVariable(op.getInputsToOp().get(1)).getShape();
+        //Input shape is often unknown; mmul with rank 2 weights requires rank 2 input other than for vectors
+        return (xShape == null || xShape.length == 2) && wShape != null && wShape.length == 2;
+    }
+
+    protected static boolean isAffineScalarOp(SameDiff sd, SameDiffOp op){
+        DifferentialFunction df = op.getOp();
+        boolean scalarOp = df instanceof ScalarAdd || df instanceof ScalarSubtraction || df instanceof ScalarReverseSubtraction ||
+                df instanceof ScalarMultiplication || df instanceof ScalarDivision;
+        if(!scalarOp && !(df instanceof Negative))
+            return false;
+        if(op.getInputsToOp().size() != 1 || op.getOutputsOfOp().size() != 1)
+            return false;
+        if(scalarOp && ((BaseScalarOp) df).scalar() == null)
+            return false;
+        //Floating point only: integer division and overflow would change the results
+        DataType inType = sd.getVariable(op.getInputsToOp().get(0)).dataType();
+        DataType outType = sd.getVariable(op.getOutputsOfOp().get(0)).dataType();
+        return inType.isFPType() && inType == outType;
+    }
+
+    /**
+     * @return True if all of the variables from index start onward are constants
+     */
+    protected static boolean allConstant(SameDiff sd, List<String> vars, int start){
+        for(int i = start; i < vars.size(); i++){
+            if(!sd.getVariable(vars.get(i)).isConstant())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return True if conv2d uses NCHW data format, false for NHWC, null if unknown
+     */
+    protected static Boolean conv2dNchw(Conv2D conv){
+        long[] iArgs = conv.iArgs();
+        if(iArgs == null || iArgs.length < 10)
+            return null;
+        return iArgs[9] == 0;
+    }
+
+    /**
+     * @return Ordinal of the conv2d {@link org.nd4j.enums.WeightsFormat}
+     */
+    protected static long weightsFormatOrdinal(Conv2D conv){
+        long[] iArgs = conv.iArgs();
+        return iArgs.length < 11 ? 0 : iArgs[10];
+    }
+
+    /**
+     * @return The (non-negative) batch norm axis for the input of the specified rank, or null if batch norm is over
+     * multiple axes
+     */
+    protected static Integer batchNormAxis(BatchNorm bn, int rank){
+        //iArgs: applyGamma, applyBeta, axis...
+        long[] iArgs = bn.iArgs();
+        if(iArgs.length > 3)
+            return null;
+        long axis = iArgs.length == 3 ? iArgs[2] : rank - 1;
+        return (int) (axis < 0 ? axis + rank : axis);
+    }
+
+    /**
+     * @return [scale, shift] such that batchNorm(x) = x * scale + shift
+     */
+    protected static INDArray[] batchNormScaleShift(SameDiff sd, SameDiffOp op){
+        BatchNorm bn = (BatchNorm) op.getOp();
+        long[] iArgs = bn.iArgs();
+        boolean applyGamma = iArgs[0] != 0;
+        boolean applyBeta = iArgs[1] != 0;
+        double eps = bn.tArgs()[0];
+        List<String> in = op.getInputsToOp();
+
+        INDArray mean = sd.getVariable(in.get(1)).getArr();
+        DataType dt = mean.dataType().isFPType() ? mean.dataType() : DataType.FLOAT;
+        if(dt != DataType.DOUBLE)
+            dt = DataType.FLOAT;    //Calculate in float or higher precision
+        long c = mean.length();
+        mean = mean.castTo(dt).reshape(c);
+        INDArray var = sd.getVariable(in.get(2)).getArr().castTo(dt).reshape(c);
+        INDArray scale = Transforms.sqrt(var.add(eps), false).rdivi(1.0);
+        int idx = 3;
+        if(applyGamma)
+            scale.muli(sd.getVariable(in.get(idx++)).getArr().castTo(dt).reshape(c));
+        INDArray shift = mean.mul(scale).negi();
+        if(applyBeta)
+            shift.addi(sd.getVariable(in.get(idx)).getArr().castTo(dt).reshape(c));
+        return new INDArray[]{scale, shift};
+    }
+
+    /**
+     * @return b * scale + shift, or shift if there is no bias
+     */
+    protected static INDArray foldedBias(INDArray b, INDArray[] scaleShift){
+        if(b == null)
+            return scaleShift[1].dup();
+        return b.castTo(scaleShift[0].dataType()).reshape(scaleShift[0].length()).mul(scaleShift[0]).addi(scaleShift[1]);
+    }
+
+    /**
+     * Replace the weights (and bias, or add it if there is no bias) of the op by new constants. The original constants
+     * are left unchanged, as they might be used elsewhere
+     */
+    protected static void setFoldedParams(SameDiff sd, SameDiffOp op, INDArray newW, INDArray newB){
+        List<String> in = op.getInputsToOp();
+        String wName = sd.generateDistinctCustomVariableName(in.get(1) + "_bn_folded");
+        sd.constant(wName, newW);
+        OptimizationUtils.replaceOpInput(sd, op.getName(), 1, wName);
+
+        String bName = sd.generateDistinctCustomVariableName((in.size() > 2 ? in.get(2) : op.getOutputsOfOp().get(0)) + "_bn_folded_bias");
+        sd.constant(bName, newB);
+        if(in.size() > 2) {
+            OptimizationUtils.replaceOpInput(sd, op.getName(), 2, bName);
+        } else {
+            OptimizationUtils.addOpInput(sd, op.getName(), bName);
+        }
+    }
+
+    private static boolean isEmpty(List<String> l){
+        return l == null || l.isEmpty();
+    }
+}
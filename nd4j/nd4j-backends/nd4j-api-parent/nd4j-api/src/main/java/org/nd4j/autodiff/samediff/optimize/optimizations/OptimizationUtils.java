@@ -36,6 +36,7 @@ public class OptimizationUtils {
     public static void replaceOpInputsWith(SameDiff sd, @NonNull String replaceInput, @NonNull String newInput){
         if(replaceInput.equals(newInput))
             return;
+        sd.markGraphModified();
 
         //Update op input structure: Replace all instances replaceInput->X with newInput->X
         Collection<SameDiffOp> ops = sd.getOps().values();
@@ -56,6 +57,7 @@ public class OptimizationUtils {
     }
 
     public static void removeOp(@NonNull SameDiff sd, @NonNull String opToRemove){
+        sd.markGraphModified();
         SameDiffOp op = sd.getOps().remove(opToRemove);
         for(String s : op.getInputsToOp()){
             Variable v = sd.getVariables().get(s);
@@ -64,7 +66,67 @@ public class OptimizationUtils {
     }
 
     public static void removeVariable(@NonNull SameDiff sd, @NonNull String varToRemove){
+        sd.markGraphModified();
         sd.getVariables().remove(varToRemove);
     }
 
+    /**
+     * Replace the input with the specified index of the specified op only
+     */
+    public static void replaceOpInput(@NonNull SameDiff sd, @NonNull String opName, int idx, @NonNull String newInput){
+        sd.markGraphModified();
+        SameDiffOp op = sd.getOps().get(opName);
+        List<String> l = new ArrayList<>(op.getInputsToOp());
+        String old = l.set(idx, newInput);
+        op.setInputsToOp(l);
+        if(!l.contains(old)) {
+            sd.getVariables().get(old).getInputsForOp().remove(opName);
+        }
+        addInputForOp(sd, newInput, opName);
+    }
+
+    /**
+     * Add an input to the specified op, after the existing inputs
+     */
+    public static void addOpInput(@NonNull SameDiff sd, @NonNull String opName, @NonNull String newInput){
+        sd.markGraphModified();
+        SameDiffOp op = sd.getOps().get(opName);
+        List<String> l = new ArrayList<>(op.getInputsToOp());
+        l.add(newInput);
+        op.setInputsToOp(l);
+        addInputForOp(sd, newInput, opName);
+    }
+
+    /**
+     * Replace a variable by another (usually newly created) variable: all ops using the variable use the new variable
+     * instead, the variable is removed, and the new variable is renamed to its name - so outputs keep their names.
+     * The op calculating the replaced variable must have been removed already
+     */
+    public static void replaceVariable(@NonNull SameDiff sd, @NonNull String replaceVar, @NonNull String newVar){
+        Variable v = sd.getVariables().get(replaceVar);
+        List<String> inputsFor = v.getInputsForOp();
+        if(inputsFor != null){
+            for(String opName : inputsFor){
+                SameDiffOp o = sd.getOps().get(opName);
+                List<String> l = new ArrayList<>(o.getInputsToOp());
+                while(l.contains(replaceVar)){
+                    l.set(l.indexOf(replaceVar), newVar);
+                }
+                o.setInputsToOp(l);
+                addInputForOp(sd, newVar, opName);
+            }
+        }
+        v.setInputsForOp(new ArrayList<String>());
+        removeVariable(sd, replaceVar);
+        sd.renameVariable(newVar, replaceVar);
+    }
+
+    private static void addInputForOp(SameDiff sd, String varName, String opName){
+        Variable v = sd.getVariables().get(varName);
+        if(v.getInputsForOp() == null)
+            v.setInputsForOp(new ArrayList<String>());
+        if(!v.getInputsForOp().contains(opName))
+            v.getInputsForOp().add(opName);
+    }
+
 }
@@ -60,6 +60,7 @@ public class UnusedFunctionOptimizations extends BaseOptimizerSet {
                         });
 
                         sd.getVariables().remove(v.getName());
+                        sd.markGraphModified();
                         log.info("Removed unused constant: {}", v.getName());
                         anyRemoved = true;
                     }
@@ -0,0 +1,79 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.quantization;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * The range of values of an activation array, collected over the calibration batches of a
+ * {@link PostTrainingQuantizer}, and the asymmetric INT8 quantization parameters derived from it:<br>
+ * q = clip(round(x / scale) + zeroPoint, -128, 127) and x = (q - zeroPoint) * scale.<br>
+ * The range is always extended to include 0, so that 0 is represented exactly (as required for padding, ReLU outputs etc).
+ */
+@Data
+@NoArgsConstructor
+public class ActivationRange {
+    public static final int QMIN = -128;
+    public static final int QMAX = 127;
+
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private long count;
+
+    public ActivationRange(double min, double max) {
+        this.min = min;
+        this.max = max;
+        this.count = 1;
+    }
+
+    /**
+     * Update the range with the values of the specified array
+     */
+    public void update(@NonNull INDArray arr) {
+        if (arr.isEmpty())
+            return;
+        min = Math.min(min, arr.minNumber().doubleValue());
+        max = Math.max(max, arr.maxNumber().doubleValue());
+        count++;
+    }
+
+    /**
+     * @return Quantization scale: the size of one quantization step
+     */
+    public double scale() {
+        double lo = Math.min(min, 0.0);
+        double hi = Math.max(max, 0.0);
+        double s = (hi - lo) / (QMAX - QMIN);
+        return s > 0 ? s : 1.0;
+    }
+
+    /**
+     * @return Quantization zero point: the quantized value representing 0.0
+     */
+    public int zeroPoint() {
+        double lo = Math.min(min, 0.0);
+        long zp = Math.round(QMIN - lo / scale());
+        return (int) Math.max(QMIN, Math.min(QMAX, zp));
+    }
+}
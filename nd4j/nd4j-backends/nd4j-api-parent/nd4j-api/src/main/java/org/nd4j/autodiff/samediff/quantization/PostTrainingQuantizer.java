@@ -0,0 +1,364 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.quantization;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.autodiff.samediff.optimize.optimizations.OptimizationUtils;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.primitives.Pair;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.BooleanIndexing;
+import org.nd4j.linalg.indexing.conditions.Conditions;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.*;
+
+/**
+ * Post-training INT8 quantization of SameDiff graphs for inference.<br>
+ * Quantization is done in 3 steps:
+ * <ol>
+ *     <li>Calibration ({@link #calibrate(SameDiff, Iterable)}): calibration batches are passed through the graph, and
+ *     the range of values of the activation inputs of each quantizable op (mmul, xw_plus_b, relu_layer and conv2d ops
+ *     with constant or variable weights) is collected</li>
+ *     <li>Rewriting ({@link #quantize(SameDiff, Map, QuantizationReport)}): a copy of the graph is created, in which
+ *     the weights of each quantizable op are replaced by INT8 constants with per output channel (or per array) scales,
+ *     and the activation inputs are quantized to INT8 using the calibrated ranges. Each INT8 array is dequantized
+ *     ("quantize/dequantize" boundaries) directly before the op using it</li>
+ *     <li>Evaluation ({@link #evaluate(SameDiff, SameDiff, Iterable, List, QuantizationReport)}): the outputs of the
+ *     original and quantized graphs are compared on held-out evaluation batches, and the accuracy difference is
+ *     summarized in a {@link QuantizationReport}. Evaluation batches should not overlap the calibration batches: the
+ *     calibrated ranges fit the calibration data, so the accuracy on it overestimates the accuracy on unseen data</li>
+ * </ol>
+ * The quantized graph gives the same results as INT8 kernels for the quantized ops would (up to floating point rounding),
+ * stores its quantized weights as INT8 arrays - including when saved using {@link SameDiff#save(java.io.File, boolean)} -
+ * and identifies each op that can be executed using INT8 inputs by its quantize/dequantize boundaries.<br>
+ * Note that the quantized graph is intended for inference only: weights variables that are quantized are removed from
+ * the graph.
+ */
+@Slf4j
+public class PostTrainingQuantizer {
+
+    private final QuantizationConfig config;
+
+    /**
+     * Create a quantizer with the default configuration
+     */
+    public PostTrainingQuantizer() {
+        this(QuantizationConfig.builder().build());
+    }
+
+    public PostTrainingQuantizer(@NonNull QuantizationConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Calibrate the quantization ranges using the calibration batches, quantize the graph, and evaluate the accuracy
+     * difference of the quantized graph on the (separate) evaluation batches
+     *
+     * @param sd                 Graph to quantize. Not modified
+     * @param calibrationBatches Calibration batches: placeholder values for each batch
+     * @param evaluationBatches  Evaluation batches: placeholder values for each batch. Should not overlap the
+     *                           calibration batches
+     * @param outputs            Outputs to evaluate the accuracy difference for
+     * @return The quantized graph, and the quantization report
+     */
+    public Pair<SameDiff, QuantizationReport> quantize(@NonNull SameDiff sd, @NonNull Iterable<Map<String, INDArray>> calibrationBatches,
+                                                      @NonNull Iterable<Map<String, INDArray>> evaluationBatches,
+                                                      @NonNull List<String> outputs) {
+        Map<String, ActivationRange> ranges = calibrate(sd, calibrationBatches);
+        QuantizationReport report = new QuantizationReport();
+        SameDiff quantized = quantize(sd, ranges, report);
+        evaluate(sd, quantized, evaluationBatches, outputs, report);
+        log.info("Post-training quantization:\n{}", report);
+        return new Pair<>(quantized, report);
+    }
+
+    /**
+     * Collect the range of values of the activation (i.e., non-weight) inputs of all quantizable ops, over all
+     * calibration batches
+     *
+     * @param sd                 Graph to calibrate
+     * @param calibrationBatches Calibration batches: placeholder values for each batch
+     * @return Range of values for each activation, by variable name
+     */
+    public Map<String, ActivationRange> calibrate(@NonNull SameDiff sd, @NonNull Iterable<Map<String, INDArray>> calibrationBatches) {
+        Set<String> activations = new LinkedHashSet<>();
+        Set<String> placeholders = new LinkedHashSet<>();
+        for (QuantizableOp op : findQuantizableOps(sd)) {
+            SDVariable x = sd.getVariable(op.getActivation());
+            if (x.isPlaceHolder()) {
+                placeholders.add(x.name());
+            } else if (x.getVariableType() == VariableType.ARRAY) {
+                activations.add(x.name());
+            }
+        }
+
+        Map<String, ActivationRange> ranges = new LinkedHashMap<>();
+        List<String> toCalculate = new ArrayList<>(activations);
+        int batches = 0;
+        for (Map<String, INDArray> batch : calibrationBatches) {
+            if (!toCalculate.isEmpty()) {
+                Map<String, INDArray> out = sd.output(batch, toCalculate);
+                for (String s : toCalculate) {
+                    range(ranges, s).update(out.get(s));
+                }
+            }
+            for (String s : placeholders) {
+                INDArray arr = batch.get(s);
+                Preconditions.checkState(arr != null, "No value for placeholder \"%s\" was provided in calibration batch %s", s, batches);
+                range(ranges, s).update(arr);
+            }
+            batches++;
+        }
+        Preconditions.checkState(batches > 0, "No calibration batches were provided");
+        return ranges;
+    }
+
+    /**
+     * Create a quantized copy of the graph, using the activation ranges from {@link #calibrate(SameDiff, Iterable)}
+     *
+     * @param sd     Graph to quantize. Not modified
+     * @param ranges Activation ranges
+     * @param report Report to add the quantized ops and weights sizes to. May be null
+     * @return The quantized graph
+     */
+    public SameDiff quantize(@NonNull SameDiff sd, @NonNull Map<String, ActivationRange> ranges, QuantizationReport report) {
+        SameDiff q = sd.dup();
+        if (report == null)
+            report = new QuantizationReport();
+
+        Map<String, SDVariable> dequantizedActivations = new HashMap<>();
+        Map<String, SDVariable> dequantizedWeights = new HashMap<>();      //Key: weights name and channel axis
+        Set<String> replacedWeights = new HashSet<>();
+        for (QuantizableOp qo : findQuantizableOps(q)) {
+            SDVariable x = q.getVariable(qo.getActivation());
+            if (config.isQuantizeActivations() && (x.isPlaceHolder() || x.getVariableType() == VariableType.ARRAY)) {
+                SDVariable dq = dequantizedActivations.get(x.name());
+                if (dq == null) {
+                    ActivationRange r = ranges.get(x.name());
+                    Preconditions.checkState(r != null && r.getCount() > 0, "No calibrated range is available for activation \"%s\", input" +
+                            " to op \"%s\"", x.name(), qo.getOpName());
+                    dq = quantizeDequantize(q, x, r);
+                    dequantizedActivations.put(x.name(), dq);
+                }
+                OptimizationUtils.replaceOpInput(q, qo.getOpName(), 0, dq.name());
+            }
+
+            String key = qo.getWeights() + "/" + qo.getChannelAxis();
+            SDVariable dw = dequantizedWeights.get(key);
+            if (dw == null) {
+                dw = quantizeWeights(q, q.getVariable(qo.getWeights()), qo.getChannelAxis(), report);
+                dequantizedWeights.put(key, dw);
+            }
+            OptimizationUtils.replaceOpInput(q, qo.getOpName(), 1, dw.name());
+            replacedWeights.add(qo.getWeights());
+            report.getQuantizedOps().add(qo.getOpName());
+        }
+
+        //Remove the floating point weights, unless they are still used by ops that weren't quantized
+        for (String s : replacedWeights) {
+            Variable v = q.getVariables().get(s);
+            if (v.getInputsForOp() == null || v.getInputsForOp().isEmpty()) {
+                VariableType vt = v.getVariable().getVariableType();
+                q.getVariables().remove(s);
+                if (vt == VariableType.CONSTANT) {
+                    q.getConstantArrays().removeArray(s);
+                } else {
+                    q.getVariablesArrays().removeArray(s);
+                }
+            }
+        }
+        return q;
+    }
+
+    /**
+     * Compare the outputs of the original and quantized graphs, adding the accuracy difference statistics to the report
+     *
+     * @param original  Original (floating point) graph
+     * @param quantized Quantized graph
+     * @param batches   Batches to evaluate on: placeholder values for each batch. Should not overlap the calibration batches
+     * @param outputs   Outputs to compare
+     * @param report    Report to add the statistics to
+     * @return The report
+     */
+    public QuantizationReport evaluate(@NonNull SameDiff original, @NonNull SameDiff quantized, @NonNull Iterable<Map<String, INDArray>> batches,
+                                       @NonNull List<String> outputs, @NonNull QuantizationReport report) {
+        int count = 0;
+        for (Map<String, INDArray> batch : batches) {
+            count++;
+            Map<String, INDArray> exp = original.output(batch, outputs);
+            Map<String, INDArray> act = quantized.output(batch, outputs);
+            for (String s : outputs) {
+                QuantizationReport.OutputStats stats = report.getOutputStats().get(s);
+                if (stats == null) {
+                    stats = new QuantizationReport.OutputStats();
+                    report.getOutputStats().put(s, stats);
+                }
+                INDArray e = exp.get(s);
+                INDArray a = act.get(s);
+                stats.update(e, a.dataType() == e.dataType() ? a : a.castTo(e.dataType()));
+            }
+        }
+        //Also catches single use iterables that were already consumed
+        Preconditions.checkState(count > 0, "No evaluation batches were provided");
+        return report;
+    }
+
+    /**
+     * @return The ops of the graph that can be quantized, given the configuration
+     */
+    public List<QuantizableOp> findQuantizableOps(@NonNull SameDiff sd) {
+        List<QuantizableOp> out = new ArrayList<>();
+        for (SameDiffOp op : sd.getOps().values()) {
+            DifferentialFunction df = op.getOp();
+            List<String> in = op.getInputsToOp();
+            if (in == null || in.size() < 2 || in.get(0).equals(in.get(1)))
+                continue;
+
+            int channelAxis;
+            int weightsRank;
+            if (df instanceof Mmul && config.isQuantizeMatMul()) {
+                //iArgs: transposeA, transposeB, transposeResult
+                long[] iArgs = ((DynamicCustomOp) df).iArgs();
+                if ((iArgs.length > 0 && iArgs[0] != 0) || (iArgs.length > 2 && iArgs[2] != 0))
+                    continue;
+                channelAxis = iArgs.length > 1 && iArgs[1] != 0 ? 0 : 1;
+                weightsRank = 2;
+            } else if (df instanceof XwPlusB && config.isQuantizeMatMul()) {
+                boolean transposed = false;
+                for (long l : ((DynamicCustomOp) df).iArgs()) {
+                    transposed |= l != 0;
+                }
+                if (transposed)
+                    continue;
+                channelAxis = 1;
+                weightsRank = 2;
+            } else if (df instanceof Conv2D && config.isQuantizeConv2d()) {
+                //Output channels are last for YXIO weights (default), first for OIYX and OYXI weights
+                long[] iArgs = ((Conv2D) df).iArgs();
+                channelAxis = iArgs.length < 11 || iArgs[10] == 0 ? 3 : 0;
+                weightsRank = 4;
+            } else {
+                continue;
+            }
+
+            SDVariable x = sd.getVariable(in.get(0));
+            SDVariable w = sd.getVariable(in.get(1));
+            if (w.getVariableType() != VariableType.CONSTANT && w.getVariableType() != VariableType.VARIABLE)
+                continue;
+            INDArray wArr = w.getArr();
+            if (wArr == null || !wArr.dataType().isFPType() || wArr.rank() != weightsRank || wArr.length() < Math.max(1, config.getMinWeightsLength()))
+                continue;
+            if (!x.dataType().isFPType())
+                continue;
+
+            out.add(new QuantizableOp(op.getName(), x.name(), w.name(), channelAxis));
+        }
+        return out;
+    }
+
+    /**
+     * Add the quantize/dequantize ops for the activation to the graph:
+     * x -> clip(round(x / scale) + zeroPoint, -128, 127) -> cast to INT8 -> cast to float -> (q - zeroPoint) * scale
+     *
+     * @return The dequantized activation
+     */
+    protected SDVariable quantizeDequantize(SameDiff sd, SDVariable x, ActivationRange range) {
+        double scale = range.scale();
+        int zeroPoint = range.zeroPoint();
+        SDVariable q = sd.math.round(x.div(scale)).add(zeroPoint);
+        q = sd.math.clipByValue(q, ActivationRange.QMIN, ActivationRange.QMAX);
+        SDVariable q8 = q.castTo(sd.generateDistinctCustomVariableName(x.name() + "_int8"), DataType.INT8);
+        return q8.castTo(x.dataType()).sub(zeroPoint).mul(sd.generateDistinctCustomVariableName(x.name() + "_dequantized"), scale);
+    }
+
+    /**
+     * Quantize the weights to symmetric INT8 (-127 to 127), with one scale per output channel (or one for the whole
+     * array), and add the INT8 weights, their scales and the dequantize ops to the graph
+     *
+     * @return The dequantized weights
+     */
+    protected SDVariable quantizeWeights(SameDiff sd, SDVariable weights, int channelAxis, QuantizationReport report) {
+        INDArray w = weights.getArr();
+        DataType dt = w.dataType();
+        INDArray scale;
+        if (config.isPerChannelWeights()) {
+            int[] reduce = new int[w.rank() - 1];
+            int j = 0;
+            for (int i = 0; i < w.rank(); i++) {
+                if (i != channelAxis)
+                    reduce[j++] = i;
+            }
+            long[] bShape = new long[w.rank()];
+            Arrays.fill(bShape, 1);
+            bShape[channelAxis] = w.size(channelAxis);
+            scale = Transforms.abs(w, true).max(reduce).divi(127.0).reshape(bShape);
+        } else {
+            scale = Nd4j.scalar(dt, Transforms.abs(w, true).maxNumber().doubleValue() / 127.0);
+        }
+        BooleanIndexing.replaceWhere(scale, 1.0, Conditions.equals(0.0));      //All zero weights
+        INDArray q8 = Transforms.round(w.div(scale), false).castTo(DataType.INT8);
+
+        String name = weights.name();
+        SDVariable qv = sd.constant(sd.generateDistinctCustomVariableName(name + "_int8"), q8);
+        SDVariable sv = sd.constant(sd.generateDistinctCustomVariableName(name + "_scale"), scale);
+        report.setFloatWeightsBytes(report.getFloatWeightsBytes() + w.length() * dt.width());
+        report.setQuantizedWeightsBytes(report.getQuantizedWeightsBytes() + q8.length() + scale.length() * dt.width());
+        return qv.castTo(dt).mul(sd.generateDistinctCustomVariableName(name + "_dequantized"), sv);
+    }
+
+    private static ActivationRange range(Map<String, ActivationRange> ranges, String name) {
+        ActivationRange r = ranges.get(name);
+        if (r == null) {
+            r = new ActivationRange();
+            ranges.put(name, r);
+        }
+        return r;
+    }
+
+    /**
+     * An op that can be quantized: its activation input (input 0) and weights (input 1), and the output channel axis
+     * of the weights
+     */
+    @Data
+    @AllArgsConstructor
+    public static class QuantizableOp {
+        private String opName;
+        private String activation;
+        private String weights;
+        private int channelAxis;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.quantization;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Configuration for {@link PostTrainingQuantizer}
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuantizationConfig {
+
+    /**
+     * If true (default): weights are quantized with one scale per output channel. If false: one scale per weights array
+     */
+    @Builder.Default
+    private boolean perChannelWeights = true;
+
+    /**
+     * If true (default): the (non-weight) inputs of quantized ops are quantized using the activation ranges collected
+     * during calibration. If false: only weights are quantized
+     */
+    @Builder.Default
+    private boolean quantizeActivations = true;
+
+    /**
+     * Quantize matrix multiply ops: mmul, xw_plus_b and relu_layer. Default: true
+     */
+    @Builder.Default
+    private boolean quantizeMatMul = true;
+
+    /**
+     * Quantize 2d convolution ops. Default: true
+     */
+    @Builder.Default
+    private boolean quantizeConv2d = true;
+
+    /**
+     * Weights arrays with fewer elements than this are not quantized. Default: 0 (quantize all)
+     */
+    @Builder.Default
+    private long minWeightsLength = 0;
+
+}
@@ -0,0 +1,104 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.quantization;
+
+import lombok.Data;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summary of the quantization of a graph by {@link PostTrainingQuantizer}: the ops that were quantized, the memory
+ * used by their weights before and after quantization, and the accuracy difference between the outputs of the
+ * original (floating point) and quantized graphs.
+ */
+@Data
+public class QuantizationReport {
+
+    private List<String> quantizedOps = new ArrayList<>();
+    private long floatWeightsBytes;
+    private long quantizedWeightsBytes;
+    private Map<String, OutputStats> outputStats = new LinkedHashMap<>();
+
+    /**
+     * Accuracy difference statistics for one output, over all evaluation batches
+     */
+    @Data
+    public static class OutputStats {
+        private long count;                 //Number of values compared
+        private double maxAbsError;
+        private double sumAbsError;
+        private double sumAbsReference;
+        private long rows;                  //Number of examples compared for top-1 agreement: rank 2 outputs only
+        private long top1Matches;
+
+        protected void update(INDArray reference, INDArray quantized) {
+            INDArray absDiff = Transforms.abs(reference.sub(quantized), false);
+            count += reference.length();
+            maxAbsError = Math.max(maxAbsError, absDiff.maxNumber().doubleValue());
+            sumAbsError += absDiff.sumNumber().doubleValue();
+            sumAbsReference += Transforms.abs(reference, true).sumNumber().doubleValue();
+            if (reference.rank() == 2 && reference.size(1) > 1) {
+                INDArray refMax = reference.argMax(1);
+                INDArray qMax = quantized.argMax(1);
+                rows += reference.size(0);
+                top1Matches += refMax.eq(qMax).castTo(refMax.dataType()).sumNumber().longValue();
+            }
+        }
+
+        public double getMeanAbsError() {
+            return count == 0 ? 0.0 : sumAbsError / count;
+        }
+
+        /**
+         * @return Sum of absolute errors, relative to the sum of the absolute values of the reference output
+         */
+        public double getRelativeError() {
+            return sumAbsReference == 0 ? 0.0 : sumAbsError / sumAbsReference;
+        }
+
+        /**
+         * @return Fraction of examples where the index of the maximum value (i.e., the predicted class) is the same for
+         * both graphs, or NaN if the output is not rank 2
+         */
+        public double getTop1Agreement() {
+            return rows == 0 ? Double.NaN : top1Matches / (double) rows;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Quantized ops: ").append(quantizedOps.size()).append("\n");
+        sb.append("Weights: ").append(floatWeightsBytes).append(" bytes -> ").append(quantizedWeightsBytes).append(" bytes\n");
+        sb.append(String.format("%-30s %-14s %-14s %-14s %-14s%n", "Output", "MaxAbsError", "MeanAbsError", "RelativeError", "Top1Agreement"));
+        for (Map.Entry<String, OutputStats> e : outputStats.entrySet()) {
+            OutputStats s = e.getValue();
+            sb.append(String.format("%-30s %-14.6g %-14.6g %-14.6g %-14.6g%n", e.getKey(), s.getMaxAbsError(), s.getMeanAbsError(),
+                    s.getRelativeError(), s.getTop1Agreement()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.evaluation.classification;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.shade.jackson.annotation.JsonIgnore;
+import org.nd4j.shade.jackson.annotation.JsonProperty;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A fixed-size, mergeable quantile sketch for probabilities in the range [0, 1], used by the sketch mode of
+ * {@link ROC} (and hence {@link ROCBinary} and {@link ROCMultiClass}).<br>
+ * Values are counted in logarithmically sized buckets based on the distance to the nearest end of the range: a value
+ * {@code p} is bucketed according to {@code min(p, 1-p)}, with bucket boundaries at powers of
+ * {@code gamma = (1+a)/(1-a)} for relative accuracy {@code a}. Hence resolution is highest near 0 and 1, where
+ * thresholded ROC is least accurate. Values closer than {@code minDistance} to either end share a single bucket.<br>
+ * The sketch uses {@code O(log(1/minDistance) / a)} memory, independent of the number of values added. Merging adds
+ * bucket counts, so results are independent of the order in which values are added and sketches are merged.
+ */
+@EqualsAndHashCode(of = {"relativeAccuracy", "minDistance", "counts"})
+public class ProbabilitySketch implements Serializable {
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    public static final double DEFAULT_MIN_DISTANCE = 1e-12;
+
+    @Getter
+    private final double relativeAccuracy;
+    @Getter
+    private final double minDistance;
+    @Getter
+    private final long[] counts;
+
+    private transient double logGamma;
+    private transient int kMin;
+    private transient int kMax;
+    private transient int numHalf;
+
+    public ProbabilitySketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MIN_DISTANCE);
+    }
+
+    /**
+     * @param relativeAccuracy Relative accuracy, in the range (0, 1): each bucket covers values whose distance to the
+     *                         nearest end of the [0, 1] range differs by at most this (relative) fraction
+     * @param minDistance      Values closer than this to 0 or 1 are not distinguished from 0 or 1
+     */
+    public ProbabilitySketch(double relativeAccuracy, double minDistance) {
+        this(relativeAccuracy, minDistance, null);
+    }
+
+    public ProbabilitySketch(@JsonProperty("relativeAccuracy") double relativeAccuracy,
+                             @JsonProperty("minDistance") double minDistance, @JsonProperty("counts") long[] counts) {
+        Preconditions.checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1,
+                "Relative accuracy must be in range (0, 1): got %s", relativeAccuracy);
+        Preconditions.checkArgument(minDistance > 0 && minDistance < 0.5,
+                "Minimum distance must be in range (0, 0.5): got %s", minDistance);
+        this.relativeAccuracy = relativeAccuracy;
+        this.minDistance = minDistance;
+        init();
+        if (counts == null) {
+            counts = new long[2 * numHalf];
+        }
+        Preconditions.checkArgument(counts.length == 2 * numHalf, "Invalid counts array: expected length %s, got %s",
+                2 * numHalf, counts.length);
+        this.counts = counts;
+    }
+
+    private void init() {
+        logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+        kMin = (int) Math.floor(Math.log(minDistance) / logGamma);
+        kMax = (int) Math.ceil(Math.log(0.5) / logGamma);
+        numHalf = kMax - kMin + 1;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        init();
+    }
+
+    /**
+     * @return Number of buckets
+     */
+    @JsonIgnore
+    public int numBuckets() {
+        return counts.length;
+    }
+
+    /**
+     * Get the bucket index for the given value. Bucket indices are ordered by value: a larger value never has a
+     * smaller bucket index. Values outside of [0, 1] are clamped to that range
+     *
+     * @param p Value
+     * @return Bucket index
+     */
+    public int bucketIndex(double p) {
+        if (p <= 0.5) {
+            return k(p) - kMin;
+        } else {
+            return numHalf + (kMax - k(1.0 - p));
+        }
+    }
+
+    private int k(double d) {
+        if (d <= minDistance)
+            return kMin;
+        int k = (int) Math.ceil(Math.log(d) / logGamma);
+        return Math.max(kMin, Math.min(kMax, k));
+    }
+
+    /**
+     * @param bucket Bucket index
+     * @return Lower bound of the values in the specified bucket
+     */
+    public double bucketLowerBound(int bucket) {
+        if (bucket == 0)
+            return 0.0;
+        if (bucket < numHalf) {
+            return Math.exp((bucket + kMin - 1) * logGamma);
+        }
+        int k = kMax - (bucket - numHalf);
+        return Math.max(0.5, 1.0 - Math.exp(k * logGamma));
+    }
+
+    public void add(double p) {
+        counts[bucketIndex(p)]++;
+    }
+
+    public void add(double p, long count) {
+        counts[bucketIndex(p)] += count;
+    }
+
+    /**
+     * @return Total number of values added to this sketch
+     */
+    @JsonIgnore
+    public long getTotalCount() {
+        long sum = 0;
+        for (long c : counts)
+            sum += c;
+        return sum;
+    }
+
+    /**
+     * Add the counts from the other sketch to this one
+     *
+     * @param other Sketch to merge. Must have the same relative accuracy and minimum distance
+     */
+    public void merge(ProbabilitySketch other) {
+        Preconditions.checkArgument(relativeAccuracy == other.relativeAccuracy && minDistance == other.minDistance,
+                "Cannot merge sketches with different configurations: relative accuracy %s vs %s, minimum distance %s vs %s",
+                relativeAccuracy, other.relativeAccuracy, minDistance, other.minDistance);
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    /**
+     * Estimate the value at the specified quantile
+     *
+     * @param q Quantile, in range [0, 1]
+     * @return Approximate value at the quantile, or NaN if the sketch is empty
+     */
+    public double quantile(double q) {
+        Preconditions.checkArgument(q >= 0 && q <= 1, "Quantile must be in range [0, 1]: got %s", q);
+        long total = getTotalCount();
+        if (total == 0)
+            return Double.NaN;
+        long rank = (long) Math.ceil(q * total);
+        long cum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cum += counts[i];
+            if (cum >= rank && counts[i] > 0) {
+                double lower = bucketLowerBound(i);
+                double upper = i + 1 < counts.length ? bucketLowerBound(i + 1) : 1.0;
+                return (lower + upper) / 2.0;
+            }
+        }
+        return 1.0;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0L);
+    }
+}
@@ -93,10 +93,13 @@ public class ROC extends BaseEvaluation<ROC> {
 
     private boolean isExact;
     private INDArray probAndLabel;
-    private int exampleCount = 0;
+    private long exampleCount = 0;
     private boolean rocRemoveRedundantPts;
     private int exactAllocBlockSize;
     protected int axis = 1;
+    private double sketchRelativeAccuracy;
+    private ProbabilitySketch sketchPositive;
+    private ProbabilitySketch sketchNegative;
 
 
 
@@ -153,6 +156,44 @@ public class ROC extends BaseEvaluation<ROC> {
         this.exactAllocBlockSize = exactAllocBlockSize;
     }
 
+    /**
+     * Create a ROC instance that uses sketch mode with the default relative accuracy of
+     * {@link ProbabilitySketch#DEFAULT_RELATIVE_ACCURACY}. See {@link #sketch(double)}
+     */
+    public static ROC sketch() {
+        return sketch(ProbabilitySketch.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * Create a ROC instance that uses sketch mode. Instead of storing every prediction (exact mode) or counting
+     * predictions at fixed thresholds (thresholded mode), the distributions of the predicted probabilities for the
+     * positive and negative examples are stored in a pair of fixed size {@link ProbabilitySketch} instances.<br>
+     * Memory use is bounded and independent of the number of examples, resolution is highest for probabilities
+     * near 0 and 1, and instances can be merged cheaply (for example, across parallel inference workers or Spark
+     * partitions). ROC and precision-recall curves have one point per non-empty sketch bucket; AUROC and AUPRC
+     * differ from exact mode only due to examples within the same bucket, which are treated as ties.<br>
+     * Predictions are expected to be probabilities: values outside of the range [0, 1] are clamped to that range.
+     *
+     * @param relativeAccuracy Relative accuracy of the sketch - see {@link ProbabilitySketch}
+     */
+    public static ROC sketch(double relativeAccuracy) {
+        Preconditions.checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1,
+                "Relative accuracy must be in range (0, 1): got %s", relativeAccuracy);
+        ROC r = new ROC(0);
+        r.isExact = false;
+        r.sketchRelativeAccuracy = relativeAccuracy;
+        r.sketchPositive = new ProbabilitySketch(relativeAccuracy, ProbabilitySketch.DEFAULT_MIN_DISTANCE);
+        r.sketchNegative = new ProbabilitySketch(relativeAccuracy, ProbabilitySketch.DEFAULT_MIN_DISTANCE);
+        return r;
+    }
+
+    /**
+     * @return True if this instance uses sketch mode - see {@link #sketch(double)}
+     */
+    public boolean isSketchMode() {
+        return sketchRelativeAccuracy > 0;
+    }
+
     public static ROC fromJson(String json) {
         return fromJson(json, ROC.class);
     }
@@ -267,6 +308,46 @@ public class ROC extends BaseEvaluation<ROC> {
 
             this.rocCurve = new RocCurve(tOut, x_fpr_out, y_tpr_out);
 
+            return rocCurve;
+        } else if (isSketchMode()) {
+            //Same as exact mode, but with one point per (non-empty) bucket: values within a bucket are treated as ties
+            long[] pos = sketchPositive.getCounts();
+            long[] neg = sketchNegative.getCounts();
+            int n = 0;
+            for (int b = 0; b < pos.length; b++) {
+                if (pos[b] > 0 || neg[b] > 0)
+                    n++;
+            }
+
+            double[] tOut = new double[n + 2];
+            double[] x_fpr_out = new double[n + 2];
+            double[] y_tpr_out = new double[n + 2];
+            tOut[0] = 1.0;
+            long cumPos = 0;
+            long cumNeg = 0;
+            int j = 1;
+            for (int b = pos.length - 1; b >= 0; b--) {
+                if (pos[b] == 0 && neg[b] == 0)
+                    continue;
+                cumPos += pos[b];
+                cumNeg += neg[b];
+                tOut[j] = sketchPositive.bucketLowerBound(b);
+                x_fpr_out[j] = cumNeg / (double) countActualNegative;
+                y_tpr_out[j] = cumPos / (double) countActualPositive;
+                j++;
+            }
+            x_fpr_out[n + 1] = 1.0;
+            y_tpr_out[n + 1] = 1.0;
+
+            if (rocRemoveRedundantPts) {
+                Pair<double[][], int[][]> p = removeRedundant(tOut, x_fpr_out, y_tpr_out, null, null, null);
+                double[][] temp = p.getFirst();
+                tOut = temp[0];
+                x_fpr_out = temp[1];
+                y_tpr_out = temp[2];
+            }
+
+            this.rocCurve = new RocCurve(tOut, x_fpr_out, y_tpr_out);
             return rocCurve;
         } else {
 
@@ -468,6 +549,70 @@ public class ROC extends BaseEvaluation<ROC> {
             ArrayUtils.reverse(fpCountOut);
             ArrayUtils.reverse(fnCountOut);
 
+            if (rocRemoveRedundantPts) {
+                Pair<double[][], int[][]> pair = removeRedundant(thresholdOut, precisionOut, recallOut, tpCountOut,
+                        fpCountOut, fnCountOut);
+                double[][] temp = pair.getFirst();
+                int[][] temp2 = pair.getSecond();
+                thresholdOut = temp[0];
+                precisionOut = temp[1];
+                recallOut = temp[2];
+                tpCountOut = temp2[0];
+                fpCountOut = temp2[1];
+                fnCountOut = temp2[2];
+            }
+        } else if (isSketchMode()) {
+            //As per exact mode: points from highest to lowest threshold, then reversed
+            long[] pos = sketchPositive.getCounts();
+            long[] neg = sketchNegative.getCounts();
+            int n = 0;
+            for (int b = 0; b < pos.length; b++) {
+                if (pos[b] > 0 || neg[b] > 0)
+                    n++;
+            }
+
+            thresholdOut = new double[n + 2];
+            precisionOut = new double[n + 2];
+            recallOut = new double[n + 2];
+            tpCountOut = new int[n + 2];
+            fpCountOut = new int[n + 2];
+            fnCountOut = new int[n + 2];
+
+            //Edge case: first idx -> threshold of 1.0, all predictions negative
+            thresholdOut[0] = 1.0;
+            precisionOut[0] = 1.0;
+            fnCountOut[0] = saturatedCount(countActualPositive);
+
+            long cumPos = 0;
+            long cumNeg = 0;
+            int j = 1;
+            for (int b = pos.length - 1; b >= 0; b--) {
+                if (pos[b] == 0 && neg[b] == 0)
+                    continue;
+                cumPos += pos[b];
+                cumNeg += neg[b];
+                thresholdOut[j] = sketchPositive.bucketLowerBound(b);
+                precisionOut[j] = cumPos / (double) (cumPos + cumNeg);
+                recallOut[j] = cumPos / (double) countActualPositive;
+                tpCountOut[j] = saturatedCount(cumPos);
+                fpCountOut[j] = saturatedCount(cumNeg);
+                fnCountOut[j] = saturatedCount(countActualPositive - cumPos);
+                j++;
+            }
+
+            //Edge case: last idx -> threshold of 0.0, all predicted positive
+            precisionOut[n + 1] = countActualPositive / (double) exampleCount;
+            recallOut[n + 1] = 1.0;
+            tpCountOut[n + 1] = saturatedCount(countActualPositive);
+            fpCountOut[n + 1] = saturatedCount(countActualNegative);
+
+            ArrayUtils.reverse(thresholdOut);
+            ArrayUtils.reverse(precisionOut);
+            ArrayUtils.reverse(recallOut);
+            ArrayUtils.reverse(tpCountOut);
+            ArrayUtils.reverse(fpCountOut);
+            ArrayUtils.reverse(fnCountOut);
+
             if (rocRemoveRedundantPts) {
                 Pair<double[][], int[][]> pair = removeRedundant(thresholdOut, precisionOut, recallOut, tpCountOut,
                         fpCountOut, fnCountOut);
@@ -516,18 +661,26 @@ public class ROC extends BaseEvaluation<ROC> {
                 precisionOut[i] = precision;
                 recallOut[i] = recall;
 
-                tpCountOut[i] = (int) tpCount;
-                fpCountOut[i] = (int) fpCount;
-                fnCountOut[i] = (int) (countActualPositive - tpCount);
+                tpCountOut[i] = saturatedCount(tpCount);
+                fpCountOut[i] = saturatedCount(fpCount);
+                fnCountOut[i] = saturatedCount(countActualPositive - tpCount);
                 i++;
             }
         }
 
         prCurve = new PrecisionRecallCurve(thresholdOut, precisionOut, recallOut, tpCountOut, fpCountOut, fnCountOut,
-                exampleCount);
+                saturatedCount(exampleCount));
         return prCurve;
     }
 
+    /**
+     * Counts in sketch and thresholded modes may exceed Integer.MAX_VALUE, unlike the int counts of
+     * {@link PrecisionRecallCurve}: saturate instead of overflowing to negative counts
+     */
+    private static int saturatedCount(long count) {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
     @AllArgsConstructor
     @Data
     @NoArgsConstructor
@@ -635,6 +788,30 @@ public class ROC extends BaseEvaluation<ROC> {
             int countClass1CurrMinibatch = labelClass1.sumNumber().intValue();
             countActualPositive += countClass1CurrMinibatch;
             countActualNegative += labels2d.size(0) - countClass1CurrMinibatch;
+        } else if (isSketchMode()) {
+            INDArray probClass1;
+            INDArray labelClass1;
+            if (singleOutput) {
+                probClass1 = predictions2d;
+                labelClass1 = labels2d;
+            } else {
+                probClass1 = predictions2d.getColumn(1, true);
+                labelClass1 = labels2d.getColumn(1, true);
+            }
+            double[] prob = probClass1.castTo(DataType.DOUBLE).dup().data().asDouble();
+            double[] label = labelClass1.castTo(DataType.DOUBLE).dup().data().asDouble();
+            long countPos = 0;
+            for (int i = 0; i < prob.length; i++) {
+                //As per exact mode: label value of 1 is positive, anything else is negative
+                if (label[i] == 1.0) {
+                    sketchPositive.add(prob[i]);
+                    countPos++;
+                } else {
+                    sketchNegative.add(prob[i]);
+                }
+            }
+            countActualPositive += countPos;
+            countActualNegative += prob.length - countPos;
         } else {
             //Thresholded approach
             INDArray positivePredictedClassColumn;
@@ -725,6 +902,11 @@ public class ROC extends BaseEvaluation<ROC> {
                     "Cannot merge ROC instances with different numbers of threshold steps ("
                             + this.thresholdSteps + " vs. " + other.thresholdSteps + ")");
         }
+        if (this.sketchRelativeAccuracy != other.sketchRelativeAccuracy) {
+            throw new UnsupportedOperationException("Cannot merge ROC instances with different modes or sketch accuracy ("
+                    + (isSketchMode() ? "sketch, relative accuracy " + sketchRelativeAccuracy : "not sketch") + " vs. "
+                    + (other.isSketchMode() ? "sketch, relative accuracy " + other.sketchRelativeAccuracy : "not sketch") + ")");
+        }
         this.countActualPositive += other.countActualPositive;
         this.countActualNegative += other.countActualNegative;
         this.auc = null;
@@ -756,6 +938,9 @@ public class ROC extends BaseEvaluation<ROC> {
             probAndLabel.put(new INDArrayIndex[]{
                             interval(exampleCount, exampleCount + other.exampleCount), all()},
                     toPut);
+        } else if (isSketchMode()) {
+            sketchPositive.merge(other.sketchPositive);
+            sketchNegative.merge(other.sketchNegative);
         } else {
             for (Double d : this.counts.keySet()) {
                 CountsForThreshold cft = this.counts.get(d);
@@ -776,6 +961,9 @@ public class ROC extends BaseEvaluation<ROC> {
 
         if (isExact) {
             probAndLabel = null;
+        } else if (isSketchMode()) {
+            sketchPositive.reset();
+            sketchNegative.reset();
         } else {
             double step = 1.0 / thresholdSteps;
             for (int i = 0; i <= thresholdSteps; i++) {
@@ -787,6 +975,8 @@ public class ROC extends BaseEvaluation<ROC> {
         exampleCount = 0;
         auc = null;
         auprc = null;
+        rocCurve = null;
+        prCurve = null;
     }
 
     @Override
@@ -798,7 +988,11 @@ public class ROC extends BaseEvaluation<ROC> {
         StringBuilder sb = new StringBuilder();
         sb.append("AUC (Area under ROC Curve):                ").append(calculateAUC()).append("\n");
         sb.append("AUPRC (Area under Precision/Recall Curve): ").append(calculateAUCPR());
-        if (!isExact) {
+        if (isSketchMode()) {
+            sb.append("\n");
+            sb.append("[Note: Sketch AUC/AUPRC calculation used with relative accuracy ").append(sketchRelativeAccuracy)
+                    .append("]");
+        } else if (!isExact) {
             sb.append("\n");
             sb.append("[Note: Thresholded AUC/AUPRC calculation used with ").append(thresholdSteps)
                     .append(" steps); accuracy may reduced compared to exact mode]");
@@ -832,6 +1026,12 @@ public class ROC extends BaseEvaluation<ROC> {
 
     @Override
     public ROC newInstance() {
+        if (isSketchMode()) {
+            ROC r = sketch(sketchRelativeAccuracy);
+            r.rocRemoveRedundantPts = rocRemoveRedundantPts;
+            r.axis = axis;
+            return r;
+        }
         return new ROC(thresholdSteps, rocRemoveRedundantPts, exactAllocBlockSize, axis);
     }
 }
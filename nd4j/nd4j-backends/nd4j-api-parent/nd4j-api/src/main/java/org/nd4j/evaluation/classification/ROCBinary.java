@@ -23,6 +23,7 @@ package org.nd4j.evaluation.classification;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.val;
+import org.nd4j.common.base.Preconditions;
 import org.nd4j.evaluation.BaseEvaluation;
 import org.nd4j.evaluation.IEvaluation;
 import org.nd4j.evaluation.IMetric;
@@ -69,6 +70,7 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
 
     @EqualsAndHashCode.Exclude      //Exclude axis: otherwise 2 Evaluation instances could contain identical stats and fail equality
     protected int axis = 1;
+    private double sketchRelativeAccuracy;
 
     protected ROCBinary(int axis, int thresholdSteps, boolean rocRemoveRedundantPts, List<String> labels) {
         this.thresholdSteps = thresholdSteps;
@@ -97,6 +99,37 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
         this.rocRemoveRedundantPts = rocRemoveRedundantPts;
     }
 
+    /**
+     * Create a ROCBinary instance that uses sketch mode for each output, with the default relative accuracy of
+     * {@link ProbabilitySketch#DEFAULT_RELATIVE_ACCURACY}. See {@link ROC#sketch(double)} for details
+     */
+    public static ROCBinary sketch() {
+        return sketch(ProbabilitySketch.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * Create a ROCBinary instance that uses sketch mode (bounded memory, mergeable) for each output. See
+     * {@link ROC#sketch(double)} for details
+     *
+     * @param relativeAccuracy Relative accuracy of the sketch - see {@link ProbabilitySketch}
+     */
+    public static ROCBinary sketch(double relativeAccuracy) {
+        Preconditions.checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1,
+                "Relative accuracy must be in range (0, 1): got %s", relativeAccuracy);
+        ROCBinary r = new ROCBinary(0);
+        r.sketchRelativeAccuracy = relativeAccuracy;
+        return r;
+    }
+
+    private ROC newUnderlying() {
+        if (sketchRelativeAccuracy > 0) {
+            ROC r = ROC.sketch(sketchRelativeAccuracy);
+            r.setRocRemoveRedundantPts(rocRemoveRedundantPts);
+            return r;
+        }
+        return new ROC(thresholdSteps, rocRemoveRedundantPts);
+    }
+
     /**
      * Set the axis for evaluation - this is the dimension along which the probability (and label independent binary classes) are present.<br>
      * For DL4J, this can be left as the default setting (axis = 1).<br>
@@ -149,7 +182,7 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
         if (underlying == null) {
             underlying = new ROC[n];
             for (int i = 0; i < n; i++) {
-                underlying[i] = new ROC(thresholdSteps, rocRemoveRedundantPts);
+                underlying[i] = newUnderlying();
             }
         }
 
@@ -392,7 +425,11 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
                                 getCountActualNegative(i)));
             }
 
-            if(thresholdSteps > 0){
+            if(sketchRelativeAccuracy > 0){
+                sb.append("\n");
+                sb.append("[Note: Sketch AUC/AUPRC calculation used with relative accuracy ").append(sketchRelativeAccuracy)
+                        .append("]");
+            } else if(thresholdSteps > 0){
                 sb.append("\n");
                 sb.append("[Note: Thresholded AUC/AUPRC calculation used with ").append(thresholdSteps)
                         .append(" steps); accuracy may reduced compared to exact mode]");
@@ -437,6 +474,8 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
 
     @Override
     public ROCBinary newInstance() {
-        return new ROCBinary(axis, thresholdSteps, rocRemoveRedundantPts, labels);
+        ROCBinary r = new ROCBinary(axis, thresholdSteps, rocRemoveRedundantPts, labels);
+        r.sketchRelativeAccuracy = sketchRelativeAccuracy;
+        return r;
     }
 }
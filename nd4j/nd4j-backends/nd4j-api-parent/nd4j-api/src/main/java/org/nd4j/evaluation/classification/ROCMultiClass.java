@@ -67,6 +67,7 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
 
     @EqualsAndHashCode.Exclude      //Exclude axis: otherwise 2 Evaluation instances could contain identical stats and fail equality
     protected int axis = 1;
+    private double sketchRelativeAccuracy;
 
     protected ROCMultiClass(int axis, int thresholdSteps, boolean rocRemoveRedundantPts, List<String> labels) {
         this.thresholdSteps = thresholdSteps;
@@ -96,6 +97,37 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
         this.rocRemoveRedundantPts = rocRemoveRedundantPts;
     }
 
+    /**
+     * Create a ROCMultiClass instance that uses sketch mode for each output, with the default relative accuracy of
+     * {@link ProbabilitySketch#DEFAULT_RELATIVE_ACCURACY}. See {@link ROC#sketch(double)} for details
+     */
+    public static ROCMultiClass sketch() {
+        return sketch(ProbabilitySketch.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * Create a ROCMultiClass instance that uses sketch mode (bounded memory, mergeable) for each output. See
+     * {@link ROC#sketch(double)} for details
+     *
+     * @param relativeAccuracy Relative accuracy of the sketch - see {@link ProbabilitySketch}
+     */
+    public static ROCMultiClass sketch(double relativeAccuracy) {
+        Preconditions.checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1,
+                "Relative accuracy must be in range (0, 1): got %s", relativeAccuracy);
+        ROCMultiClass r = new ROCMultiClass(0);
+        r.sketchRelativeAccuracy = relativeAccuracy;
+        return r;
+    }
+
+    private ROC newUnderlying() {
+        if (sketchRelativeAccuracy > 0) {
+            ROC r = ROC.sketch(sketchRelativeAccuracy);
+            r.setRocRemoveRedundantPts(rocRemoveRedundantPts);
+            return r;
+        }
+        return new ROC(thresholdSteps, rocRemoveRedundantPts);
+    }
+
     /**
      * Set the axis for evaluation - this is the dimension along which the probability (and label classes) are present.<br>
      * For DL4J, this can be left as the default setting (axis = 1).<br>
@@ -162,7 +194,11 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
 
             sb.append("Average AUC: ").append(String.format("%-12." + printPrecision + "f", calculateAverageAUC()));
 
-            if(thresholdSteps > 0){
+            if(sketchRelativeAccuracy > 0){
+                sb.append("\n");
+                sb.append("[Note: Sketch AUC/AUPRC calculation used with relative accuracy ").append(sketchRelativeAccuracy)
+                        .append("]");
+            } else if(thresholdSteps > 0){
                 sb.append("\n");
                 sb.append("[Note: Thresholded AUC/AUPRC calculation used with ").append(thresholdSteps)
                         .append(" steps); accuracy may reduced compared to exact mode]");
@@ -206,7 +242,7 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
         if (underlying == null) {
             underlying = new ROC[n];
             for (int i = 0; i < n; i++) {
-                underlying[i] = new ROC(thresholdSteps, rocRemoveRedundantPts);
+                underlying[i] = newUnderlying();
             }
         }
 
@@ -392,6 +428,8 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
 
     @Override
     public ROCMultiClass newInstance() {
-        return new ROCMultiClass(axis, thresholdSteps, rocRemoveRedundantPts, labels);
+        ROCMultiClass r = new ROCMultiClass(axis, thresholdSteps, rocRemoveRedundantPts, labels);
+        r.sketchRelativeAccuracy = sketchRelativeAccuracy;
+        return r;
     }
 }
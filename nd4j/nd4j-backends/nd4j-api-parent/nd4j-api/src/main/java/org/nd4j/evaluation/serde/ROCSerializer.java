@@ -56,6 +56,12 @@ public class ROCSerializer extends JsonSerializer<ROC> {
         }
         jsonGenerator.writeBooleanField("isExact", roc.isExact());
         jsonGenerator.writeNumberField("exampleCount", roc.getExampleCount());
+        if (roc.isSketchMode()) {
+            //Sketches are small (fixed size) and are needed to merge or continue evaluating after deserialization
+            jsonGenerator.writeNumberField("sketchRelativeAccuracy", roc.getSketchRelativeAccuracy());
+            jsonGenerator.writeObjectField("sketchPositive", roc.getSketchPositive());
+            jsonGenerator.writeObjectField("sketchNegative", roc.getSketchNegative());
+        }
         jsonGenerator.writeBooleanField("rocRemoveRedundantPts", roc.isRocRemoveRedundantPts());
     }
 
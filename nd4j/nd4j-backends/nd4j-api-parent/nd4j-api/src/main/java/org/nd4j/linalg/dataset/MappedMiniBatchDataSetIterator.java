@@ -0,0 +1,141 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * DataSetIterator over minibatches previously exported with {@link MappedMiniBatchWriter}.<br>
+ * Unlike {@link ExistingMiniBatchDataSetIterator}, minibatches are not deserialized on every epoch: returned
+ * DataSets are backed by memory-mapped shard files.<br>
+ * PLEASE NOTE: by default, preprocessors are applied to the mapped arrays in place. Shards are mapped copy-on-write,
+ * so files on disk are never modified, but the changes stay visible for the lifetime of the reader: a preprocessor
+ * would be applied to the same minibatch again on every epoch. Either apply preprocessing before export, or
+ * enable copying via {@link #MappedMiniBatchDataSetIterator(MappedMiniBatchReader, boolean)}.
+ */
+public class MappedMiniBatchDataSetIterator implements DataSetIterator {
+
+    private int currIdx;
+    private final MappedMiniBatchReader reader;
+    private final boolean copy;
+    private DataSetPreProcessor dataSetPreProcessor;
+
+    /**
+     * Create with the given root directory, using the default filename pattern {@link MappedMiniBatchWriter#DEFAULT_PATTERN}
+     * @param rootDir the root directory to use
+     */
+    public MappedMiniBatchDataSetIterator(@NonNull File rootDir) throws IOException {
+        this(new MappedMiniBatchReader(rootDir));
+    }
+
+    /**
+     * @param reader reader to iterate over
+     */
+    public MappedMiniBatchDataSetIterator(@NonNull MappedMiniBatchReader reader) {
+        this(reader, false);
+    }
+
+    /**
+     * @param reader reader to iterate over
+     * @param copy   if true, every returned DataSet is copied to the heap, so it can be modified (i.e. by a
+     *               preprocessor) without affecting later epochs. If false, arrays are copied only if the shard
+     *               file could only be mapped read-only
+     */
+    public MappedMiniBatchDataSetIterator(@NonNull MappedMiniBatchReader reader, boolean copy) {
+        this.reader = reader;
+        this.copy = copy;
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException("Unable to load custom number of examples");
+    }
+
+    @Override
+    public int inputColumns() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        currIdx = 0;
+    }
+
+    @Override
+    public int batch() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.dataSetPreProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return dataSetPreProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return currIdx < reader.numMiniBatches();
+    }
+
+    @Override
+    public void remove() {
+        //no opt;
+    }
+
+    @Override
+    public DataSet next() {
+        DataSet ret = reader.getDataSet(currIdx++, copy);
+        if (dataSetPreProcessor != null)
+            dataSetPreProcessor.preProcess(ret);
+
+        return ret;
+    }
+}
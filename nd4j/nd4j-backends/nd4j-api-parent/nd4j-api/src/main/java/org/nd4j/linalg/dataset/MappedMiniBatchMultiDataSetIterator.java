@@ -0,0 +1,119 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * MultiDataSetIterator over minibatches previously exported with {@link MappedMiniBatchWriter}.<br>
+ * Returned MultiDataSets are backed by memory-mapped shard files, so no deserialization happens on every epoch.<br>
+ * PLEASE NOTE: by default, preprocessors are applied to the mapped arrays in place. Shards are mapped copy-on-write,
+ * so files on disk are never modified, but the changes stay visible for the lifetime of the reader: a preprocessor
+ * would be applied to the same minibatch again on every epoch. Either apply preprocessing before export, or
+ * enable copying via {@link #MappedMiniBatchMultiDataSetIterator(MappedMiniBatchReader, boolean)}.
+ */
+public class MappedMiniBatchMultiDataSetIterator implements MultiDataSetIterator {
+
+    private int currIdx;
+    private final MappedMiniBatchReader reader;
+    private final boolean copy;
+    private MultiDataSetPreProcessor preProcessor;
+
+    /**
+     * Create with the given root directory, using the default filename pattern {@link MappedMiniBatchWriter#DEFAULT_PATTERN}
+     * @param rootDir the root directory to use
+     */
+    public MappedMiniBatchMultiDataSetIterator(@NonNull File rootDir) throws IOException {
+        this(new MappedMiniBatchReader(rootDir));
+    }
+
+    /**
+     * @param reader reader to iterate over
+     */
+    public MappedMiniBatchMultiDataSetIterator(@NonNull MappedMiniBatchReader reader) {
+        this(reader, false);
+    }
+
+    /**
+     * @param reader reader to iterate over
+     * @param copy   if true, every returned MultiDataSet is copied to the heap, so it can be modified (i.e. by a
+     *               preprocessor) without affecting later epochs. If false, arrays are copied only if the shard
+     *               file could only be mapped read-only
+     */
+    public MappedMiniBatchMultiDataSetIterator(@NonNull MappedMiniBatchReader reader, boolean copy) {
+        this.reader = reader;
+        this.copy = copy;
+    }
+
+    @Override
+    public org.nd4j.linalg.dataset.api.MultiDataSet next(int num) {
+        throw new UnsupportedOperationException("Unable to load custom number of examples");
+    }
+
+    @Override
+    public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public MultiDataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        currIdx = 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return currIdx < reader.numMiniBatches();
+    }
+
+    @Override
+    public org.nd4j.linalg.dataset.api.MultiDataSet next() {
+        MultiDataSet ret = reader.getMultiDataSet(currIdx++, copy);
+        if (preProcessor != null)
+            preProcessor.preProcess(ret);
+
+        return ret;
+    }
+
+    @Override
+    public void remove() {
+        //no opt;
+    }
+}
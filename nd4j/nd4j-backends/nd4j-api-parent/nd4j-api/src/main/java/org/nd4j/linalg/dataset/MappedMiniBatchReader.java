@@ -0,0 +1,291 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.Pointer;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Random-access reader for minibatches written by {@link MappedMiniBatchWriter}.<br>
+ * Each shard is memory-mapped once, and arrays returned by this reader are views of the mapped file: no
+ * deserialization or copying happens, so repeated epochs over exported minibatches are limited by page cache
+ * bandwidth only.
+ *
+ * Shards are mapped in copy-on-write mode when file permissions allow that, so in-place modifications of returned
+ * arrays never reach the file. Such modifications are however visible to all later reads of the same minibatch from
+ * this reader, so callers that modify returned arrays (i.e. preprocessors) should request copies with
+ * {@link #getDataSet(int, boolean)} or {@link #getMultiDataSet(int, boolean)}.<br>
+ * If the file is read-only, it's mapped read-only, and returned arrays are always copied to the heap, since arrays
+ * backed by a read-only mapping can't be safely exposed as mutable INDArrays.
+ *
+ * PLEASE NOTE: zero-copy arrays are valid only while this reader is reachable, since the reader owns the mapped
+ * buffers. {@link #close()} doesn't unmap shards, it only prevents further reads.
+ */
+@Slf4j
+public class MappedMiniBatchReader implements Closeable {
+    private final List<MappedByteBuffer> shards = new ArrayList<>();
+    private final List<Boolean> readOnly = new ArrayList<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * Create reader for the given root directory, using the default filename pattern {@link MappedMiniBatchWriter#DEFAULT_PATTERN}
+     *
+     * @param rootDir the root directory to use
+     */
+    public MappedMiniBatchReader(@NonNull File rootDir) throws IOException {
+        this(rootDir, MappedMiniBatchWriter.DEFAULT_PATTERN);
+    }
+
+    /**
+     * @param rootDir The root directory to use
+     * @param pattern The filename pattern to use. Used with {@code String.format(pattern,idx)}, where idx is an
+     *                integer, starting at 0.
+     */
+    public MappedMiniBatchReader(@NonNull File rootDir, @NonNull String pattern) throws IOException {
+        int idx = 0;
+        File file;
+        while ((file = new File(rootDir, String.format(pattern, idx++))).exists())
+            mapShard(file);
+
+        if (shards.isEmpty())
+            throw new IllegalStateException("No shards matching pattern [" + pattern + "] found in [" + rootDir.getAbsolutePath() + "]");
+    }
+
+    protected void mapShard(File file) throws IOException {
+        boolean writable = Files.isWritable(file.toPath());
+        MappedByteBuffer buffer;
+        try (FileChannel channel = writable ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                                            : FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IllegalStateException("Shard [" + file.getAbsolutePath() + "] is too large to be mapped: " + size + " bytes");
+
+            if (!writable)
+                log.warn("Shard [{}] is read-only, arrays will be copied to the heap on every read", file.getAbsolutePath());
+
+            // mapping stays valid after the channel is closed
+            buffer = channel.map(writable ? FileChannel.MapMode.PRIVATE : FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        int shardIdx = shards.size();
+        shards.add(buffer);
+        readOnly.add(!writable);
+
+        // header
+        ByteBuffer bb = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (bb.getLong(0) != MappedMiniBatchWriter.MAGIC)
+            throw new IllegalStateException("File [" + file.getAbsolutePath() + "] isn't a mapped minibatch shard");
+
+        int version = bb.getInt(8);
+        if (version != MappedMiniBatchWriter.VERSION)
+            throw new IllegalStateException("Unsupported shard version: " + version);
+
+        ByteOrder order = bb.get(12) == MappedMiniBatchWriter.ORDER_LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        if (order != ByteOrder.nativeOrder())
+            throw new IllegalStateException("Shard [" + file.getAbsolutePath() + "] was written with " + order
+                    + " byte order, which doesn't match native byte order: arrays can't be mapped without copying");
+
+        // trailer & footer
+        int limit = bb.capacity();
+        if (bb.getLong(limit - 8) != MappedMiniBatchWriter.MAGIC)
+            throw new IllegalStateException("Shard [" + file.getAbsolutePath() + "] is truncated: index footer is missing");
+
+        bb.position((int) bb.getLong(limit - 16));
+        int numBatches = bb.getInt();
+        for (int b = 0; b < numBatches; b++) {
+            Entry entry = new Entry();
+            entry.shard = shardIdx;
+            entry.isDataSet = bb.get() != 0;
+            entry.arrays = new ArrayEntry[4][];
+            for (int g = 0; g < 4; g++) {
+                int count = bb.getInt();
+                if (count < 0)
+                    continue;
+
+                entry.arrays[g] = new ArrayEntry[count];
+                for (int e = 0; e < count; e++) {
+                    if (bb.get() == 0)
+                        continue;
+
+                    ArrayEntry a = new ArrayEntry();
+                    a.dataType = DataType.fromInt(bb.getInt());
+                    a.shape = new long[bb.getInt()];
+                    for (int s = 0; s < a.shape.length; s++)
+                        a.shape[s] = bb.getLong();
+                    a.offset = bb.getLong();
+                    a.length = bb.getLong();
+                    entry.arrays[g][e] = a;
+                }
+            }
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * @return total number of minibatches available in all shards
+     */
+    public int numMiniBatches() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of mapped shard files
+     */
+    public int numShards() {
+        return shards.size();
+    }
+
+    /**
+     * This method returns minibatch with the given index as DataSet
+     *
+     * @param idx index of the minibatch, in range [0, numMiniBatches())
+     * @return DataSet backed by the mapped file
+     */
+    public DataSet getDataSet(int idx) {
+        return getDataSet(idx, false);
+    }
+
+    /**
+     * This method returns minibatch with the given index as DataSet
+     *
+     * @param idx  index of the minibatch, in range [0, numMiniBatches())
+     * @param copy if true, arrays are copied to the heap, and can be modified without affecting later reads
+     * @return DataSet backed by the mapped file, or by heap copies if copy is true or the shard is read-only
+     */
+    public DataSet getDataSet(int idx, boolean copy) {
+        Entry entry = entry(idx);
+        if (!entry.isDataSet)
+            throw new IllegalStateException("Minibatch " + idx + " was written as MultiDataSet, use getMultiDataSet() instead");
+
+        INDArray[][] arrays = arrays(entry, copy);
+        return new DataSet(arrays[0][0], arrays[1][0], arrays[2][0], arrays[3][0]);
+    }
+
+    /**
+     * This method returns minibatch with the given index as MultiDataSet. Minibatches written as DataSet
+     * are returned as single input/single output MultiDataSet
+     *
+     * @param idx index of the minibatch, in range [0, numMiniBatches())
+     * @return MultiDataSet backed by the mapped file
+     */
+    public MultiDataSet getMultiDataSet(int idx) {
+        return getMultiDataSet(idx, false);
+    }
+
+    /**
+     * This method returns minibatch with the given index as MultiDataSet. Minibatches written as DataSet
+     * are returned as single input/single output MultiDataSet
+     *
+     * @param idx  index of the minibatch, in range [0, numMiniBatches())
+     * @param copy if true, arrays are copied to the heap, and can be modified without affecting later reads
+     * @return MultiDataSet backed by the mapped file, or by heap copies if copy is true or the shard is read-only
+     */
+    public MultiDataSet getMultiDataSet(int idx, boolean copy) {
+        INDArray[][] arrays = arrays(entry(idx), copy);
+        return new MultiDataSet(arrays[0], arrays[1], maskOrNull(arrays[2]), maskOrNull(arrays[3]));
+    }
+
+    private static INDArray[] maskOrNull(INDArray[] masks) {
+        if (masks == null)
+            return null;
+
+        for (INDArray m : masks)
+            if (m != null)
+                return masks;
+
+        return null;
+    }
+
+    protected Entry entry(int idx) {
+        if (closed)
+            throw new IllegalStateException("Reader was closed");
+
+        return entries.get(idx);
+    }
+
+    protected INDArray[][] arrays(Entry entry, boolean copy) {
+        copy |= readOnly.get(entry.shard);
+        INDArray[][] result = new INDArray[4][];
+        for (int g = 0; g < 4; g++) {
+            if (entry.arrays[g] == null)
+                continue;
+
+            result[g] = new INDArray[entry.arrays[g].length];
+            for (int e = 0; e < result[g].length; e++) {
+                ArrayEntry a = entry.arrays[g][e];
+                if (a != null)
+                    result[g][e] = copy ? map(shards.get(entry.shard), a).dup('c') : map(shards.get(entry.shard), a);
+            }
+        }
+        return result;
+    }
+
+    protected INDArray map(MappedByteBuffer shard, ArrayEntry a) {
+        if (a.length == 0)
+            return Nd4j.create(a.dataType, a.shape);
+
+        ByteBuffer bb = shard.duplicate();
+        bb.position((int) a.offset);
+        bb.limit((int) (a.offset + a.length * a.dataType.width()));
+        ByteBuffer slice = bb.slice().order(ByteOrder.nativeOrder());
+
+        DataBuffer buffer = Nd4j.createBuffer(new Pointer(slice), a.length, a.dataType);
+        return Nd4j.create(buffer, a.shape, Nd4j.getStrides(a.shape, 'c'), 0, 'c', a.dataType);
+    }
+
+    @Override
+    public void close() {
+        // mapped buffers are unmapped by GC once this reader is unreachable: shards are kept here, so that arrays
+        // returned before close() stay valid for as long as the reader itself
+        closed = true;
+    }
+
+    protected static class Entry {
+        private int shard;
+        private boolean isDataSet;
+        private ArrayEntry[][] arrays;
+    }
+
+    protected static class ArrayEntry {
+        private DataType dataType;
+        private long[] shape;
+        private long offset;
+        private long length;
+    }
+}
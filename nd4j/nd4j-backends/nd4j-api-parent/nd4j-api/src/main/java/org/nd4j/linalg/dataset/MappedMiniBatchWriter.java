@@ -0,0 +1,291 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writer for the memory-mappable minibatch format, read back via {@link MappedMiniBatchReader}.<br>
+ * Minibatches are written into one or more shard files (see {@link #DEFAULT_PATTERN}), each shard looks like this:
+ * <pre>
+ * [header, padded to PAGE_SIZE bytes]
+ * [minibatch records, each one starting at a PAGE_SIZE aligned offset. Within a record, each array is stored as
+ *  raw c-order native-endian bytes, starting at an ARRAY_ALIGNMENT aligned offset]
+ * [index footer: per minibatch, per array: data type, shape, offset and length]
+ * [trailer: footer offset + magic]
+ * </pre>
+ * Since arrays are stored exactly as they are laid out in memory, reader is able to expose them as INDArrays
+ * backed by the mapped file, without any deserialization or copying.
+ *
+ * PLEASE NOTE: example metadata is not stored in this format
+ */
+@Slf4j
+public class MappedMiniBatchWriter implements Closeable {
+    public static final String DEFAULT_PATTERN = "minibatches-%d.bin";
+    public static final long DEFAULT_MAX_SHARD_BYTES = 1024L * 1024L * 1024L;
+
+    public static final int PAGE_SIZE = 4096;
+    public static final int ARRAY_ALIGNMENT = 64;
+    public static final int VERSION = 1;
+    protected static final long MAGIC = 0x4e44344a4d4d4231L;    // "ND4JMMB1"
+
+    protected static final byte ORDER_LITTLE_ENDIAN = 0;
+    protected static final byte ORDER_BIG_ENDIAN = 1;
+
+    private final File rootDir;
+    private final String pattern;
+    private final long maxShardBytes;
+
+    private int shardIdx = 0;
+    private FileChannel channel;
+    private long position;
+    private int numInShard;
+    private ByteArrayOutputStream index;
+    private DataOutputStream indexStream;
+    private long totalBatches = 0;
+
+    /**
+     * Create writer with the given root directory, using the default filename pattern {@link #DEFAULT_PATTERN} and
+     * the default maximum shard size of 1GB
+     *
+     * @param rootDir directory to write shards to
+     */
+    public MappedMiniBatchWriter(@NonNull File rootDir) {
+        this(rootDir, DEFAULT_PATTERN, DEFAULT_MAX_SHARD_BYTES);
+    }
+
+    /**
+     * @param rootDir       directory to write shards to
+     * @param pattern       The filename pattern to use. Used with {@code String.format(pattern,idx)}, where idx is an
+     *                      integer, starting at 0.
+     * @param maxShardBytes Maximum size of a single shard file. Must not exceed Integer.MAX_VALUE, since each shard is
+     *                      mapped as a single buffer. A single minibatch is never split across shards.
+     */
+    public MappedMiniBatchWriter(@NonNull File rootDir, @NonNull String pattern, long maxShardBytes) {
+        if (maxShardBytes <= PAGE_SIZE || maxShardBytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Max shard size should be in range (" + PAGE_SIZE + ", " + Integer.MAX_VALUE + "], got " + maxShardBytes);
+
+        if (!rootDir.exists() && !rootDir.mkdirs())
+            throw new IllegalStateException("Unable to create directory [" + rootDir.getAbsolutePath() + "]");
+
+        this.rootDir = rootDir;
+        this.pattern = pattern;
+        this.maxShardBytes = maxShardBytes;
+    }
+
+    /**
+     * Write all minibatches from the given iterator into the given directory, using default settings
+     *
+     * @param iterator iterator to export
+     * @param rootDir  directory to write shards to
+     * @return number of minibatches written
+     */
+    public static long export(@NonNull DataSetIterator iterator, @NonNull File rootDir) throws IOException {
+        try (MappedMiniBatchWriter writer = new MappedMiniBatchWriter(rootDir)) {
+            while (iterator.hasNext())
+                writer.write(iterator.next());
+
+            return writer.numMiniBatches();
+        }
+    }
+
+    /**
+     * Write all minibatches from the given iterator into the given directory, using default settings
+     *
+     * @param iterator iterator to export
+     * @param rootDir  directory to write shards to
+     * @return number of minibatches written
+     */
+    public static long export(@NonNull MultiDataSetIterator iterator, @NonNull File rootDir) throws IOException {
+        try (MappedMiniBatchWriter writer = new MappedMiniBatchWriter(rootDir)) {
+            while (iterator.hasNext())
+                writer.write(iterator.next());
+
+            return writer.numMiniBatches();
+        }
+    }
+
+    /**
+     * Append single DataSet minibatch
+     */
+    public void write(@NonNull org.nd4j.linalg.dataset.api.DataSet dataSet) throws IOException {
+        write(true, new INDArray[]{dataSet.getFeatures()}, new INDArray[]{dataSet.getLabels()},
+                new INDArray[]{dataSet.getFeaturesMaskArray()}, new INDArray[]{dataSet.getLabelsMaskArray()});
+    }
+
+    /**
+     * Append single MultiDataSet minibatch
+     */
+    public void write(@NonNull org.nd4j.linalg.dataset.api.MultiDataSet multiDataSet) throws IOException {
+        write(false, multiDataSet.getFeatures(), multiDataSet.getLabels(),
+                multiDataSet.getFeaturesMaskArrays(), multiDataSet.getLabelsMaskArrays());
+    }
+
+    /**
+     * @return number of minibatches written so far
+     */
+    public long numMiniBatches() {
+        return totalBatches;
+    }
+
+    protected void write(boolean isDataSet, INDArray[] features, INDArray[] labels, INDArray[] featuresMasks, INDArray[] labelsMasks) throws IOException {
+        INDArray[][] groups = new INDArray[][]{features, labels, featuresMasks, labelsMasks};
+
+        // all arrays are going to be laid out as c-order, detached, host-side copies
+        long required = 0;
+        for (int g = 0; g < groups.length; g++) {
+            if (groups[g] == null)
+                continue;
+
+            // we don't want to replace arrays within source MultiDataSet
+            groups[g] = groups[g].clone();
+            for (int e = 0; e < groups[g].length; e++) {
+                INDArray arr = groups[g][e];
+                if (arr == null)
+                    continue;
+
+                if (arr.isCompressed() || arr.dataType() == DataType.UTF8)
+                    throw new UnsupportedOperationException("Compressed and UTF8 arrays can't be memory-mapped");
+
+                if (arr.isView() || arr.ordering() != 'c' || arr.data().offset() != 0 || arr.data().length() != arr.length())
+                    groups[g][e] = arr = arr.dup('c');
+
+                required += align(arr.length() * arr.dataType().width(), ARRAY_ALIGNMENT);
+            }
+        }
+
+        required = align(required, PAGE_SIZE);
+        if (required + PAGE_SIZE > maxShardBytes)
+            throw new IllegalArgumentException("Minibatch requires " + required + " bytes, which exceeds max shard size of " + maxShardBytes + " bytes");
+
+        if (channel != null && position + required + indexStream.size() + PAGE_SIZE > maxShardBytes)
+            finishShard();
+
+        if (channel == null)
+            startShard();
+
+        Nd4j.getExecutioner().commit();
+
+        indexStream.writeBoolean(isDataSet);
+        for (INDArray[] group : groups) {
+            if (group == null) {
+                indexStream.writeInt(-1);
+                continue;
+            }
+
+            indexStream.writeInt(group.length);
+            for (INDArray arr : group) {
+                indexStream.writeBoolean(arr != null);
+                if (arr == null)
+                    continue;
+
+                Nd4j.getAffinityManager().ensureLocation(arr, AffinityManager.Location.HOST);
+
+                long numBytes = arr.length() * arr.dataType().width();
+                indexStream.writeInt(arr.dataType().toInt());
+                indexStream.writeInt(arr.rank());
+                for (long s : arr.shape())
+                    indexStream.writeLong(s);
+                indexStream.writeLong(position);
+                indexStream.writeLong(arr.length());
+
+                if (numBytes > 0) {
+                    ByteBuffer buffer = arr.data().pointer().asByteBuffer().order(ByteOrder.nativeOrder());
+                    buffer.limit((int) numBytes);
+                    long p = position;
+                    while (buffer.hasRemaining())
+                        p += channel.write(buffer, p);
+                }
+
+                position = align(position + numBytes, ARRAY_ALIGNMENT);
+            }
+        }
+
+        // arrays within a record are packed, but every record starts on a page boundary
+        position = align(position, PAGE_SIZE);
+        numInShard++;
+        totalBatches++;
+    }
+
+    protected void startShard() throws IOException {
+        File file = new File(rootDir, String.format(pattern, shardIdx++));
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putLong(MAGIC);
+        header.putInt(VERSION);
+        header.put(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? ORDER_LITTLE_ENDIAN : ORDER_BIG_ENDIAN);
+        header.flip();
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+
+        position = PAGE_SIZE;
+        numInShard = 0;
+        index = new ByteArrayOutputStream();
+        indexStream = new DataOutputStream(index);
+    }
+
+    protected void finishShard() throws IOException {
+        indexStream.flush();
+
+        ByteBuffer footer = ByteBuffer.allocate(4 + index.size() + 16);
+        footer.putInt(numInShard);
+        footer.put(index.toByteArray());
+        footer.putLong(position);
+        footer.putLong(MAGIC);
+        footer.flip();
+
+        long p = position;
+        while (footer.hasRemaining())
+            p += channel.write(footer, p);
+
+        channel.force(false);
+        channel.close();
+        channel = null;
+    }
+
+    protected static long align(long bytes, int alignment) {
+        return (bytes + alignment - 1) / alignment * alignment;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null)
+            finishShard();
+    }
+}
@@ -0,0 +1,602 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.linalg.dataset;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.callbacks.DataSetCallback;
+import org.nd4j.linalg.dataset.callbacks.DefaultCallback;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Multi-threaded alternative to {@link AsyncDataSetIterator}.<br>
+ * Data is prefetched by N worker threads, either from a single source iterator, or from multiple source iterators
+ * (shards) over disjoint parts of the data:
+ * <ul>
+ *     <li>Single source: calls to the source next() are serialized, but DataSetPreProcessor set on this iterator is
+ *     applied by the workers in parallel</li>
+ *     <li>Shards: each shard is driven by its own worker(s), so both fetching (i.e. image decoding, TransformProcess)
+ *     and preprocessing run in parallel</li>
+ * </ul>
+ * Memory use is bounded: no more than queueSize DataSets (split evenly between shards) are fetched and not consumed
+ * at any given time.<br>
+ * In ordered mode output is deterministic: DataSets of a single source are returned in source order, DataSets of
+ * multiple shards are interleaved in round-robin order. Otherwise, DataSets are returned as soon as they are ready.<br>
+ * Per-stage timings (fetch, preprocess, worker and consumer wait times) are available via {@link #getStats()}.
+ *
+ * PLEASE NOTE: With workspaces enabled, DataSet returned by next() is valid only until the next call to next(),
+ * same as for {@link AsyncDataSetIterator}
+ */
+@Slf4j
+public class ParallelAsyncDataSetIterator implements DataSetIterator {
+    protected final List<DataSetIterator> shards;
+    protected final int numWorkers;
+    protected final int queueSize;
+    protected final boolean ordered;
+    protected final boolean useWorkspace;
+    protected final DataSetCallback callback;
+    protected final Integer deviceId;
+    protected final String workspaceId = "PADSI_ITER-" + UUID.randomUUID().toString();
+    protected volatile DataSetPreProcessor preProcessor;
+
+    @Getter
+    protected final Stats stats = new Stats();
+
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Condition changed = lock.newCondition();
+    protected ShardState[] states;
+    protected final ArrayDeque<Item> ready = new ArrayDeque<>();
+    protected int nextShard;
+    protected volatile Throwable throwable;
+    protected List<Worker> workers = new ArrayList<>();
+    protected List<MemoryWorkspace> workspaces = Collections.synchronizedList(new ArrayList<>());
+
+    protected DataSet nextElement;
+    protected boolean depleted;
+
+    protected ParallelAsyncDataSetIterator(@NonNull Builder builder) {
+        this.shards = builder.shards;
+        this.numWorkers = Math.max(builder.numWorkers, shards.size());
+        this.queueSize = Math.max(builder.queueSize, shards.size());
+        this.ordered = builder.ordered;
+        this.useWorkspace = builder.useWorkspace;
+        this.callback = builder.callback;
+        this.deviceId = builder.deviceId != null ? builder.deviceId : Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        this.preProcessor = builder.preProcessor;
+
+        for (DataSetIterator shard : shards) {
+            if (shard.resetSupported() && !shard.hasNext())
+                shard.reset();
+        }
+
+        start();
+    }
+
+    protected void start() {
+        int permits = Math.max(1, queueSize / shards.size());
+        states = new ShardState[shards.size()];
+        for (int i = 0; i < states.length; i++)
+            states[i] = new ShardState(i, shards.get(i), permits);
+
+        ready.clear();
+        nextShard = 0;
+        nextElement = null;
+        depleted = false;
+        throwable = null;
+
+        workers = new ArrayList<>(numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            Worker w = new Worker(states[i % states.length], permits, i);
+            workers.add(w);
+            w.start();
+        }
+    }
+
+    protected void stop() {
+        for (Worker w : workers)
+            w.shouldWork = false;
+        for (Worker w : workers)
+            w.interrupt();
+        for (Worker w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        workers.clear();
+
+        lock.lock();
+        try {
+            ready.clear();
+            for (ShardState s : states)
+                s.pending.clear();
+        } finally {
+            lock.unlock();
+        }
+
+        synchronized (workspaces) {
+            for (MemoryWorkspace ws : workspaces)
+                ws.destroyWorkspace(true);
+            workspaces.clear();
+        }
+    }
+
+    /**
+     * This method will terminate all worker threads AND will destroy their workspaces (if any)
+     *
+     * PLEASE NOTE: After shutdown() call, this instance can't be used anymore
+     */
+    public void shutdown() {
+        stop();
+    }
+
+    @Override
+    public void reset() {
+        stop();
+
+        if (callback != null)
+            callback.reset();
+
+        for (DataSetIterator shard : shards)
+            shard.reset();
+
+        start();
+    }
+
+    @Override
+    public boolean hasNext() {
+        checkThrowable();
+
+        if (nextElement != null)
+            return true;
+        if (depleted)
+            return false;
+
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            while (true) {
+                checkThrowable();
+
+                DataSet ds = ordered ? pollOrdered() : pollAny();
+                if (ds != null) {
+                    nextElement = ds;
+                    return true;
+                }
+
+                if (isDepleted()) {
+                    depleted = true;
+                    return false;
+                }
+
+                changed.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+            stats.consumerWaitNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public DataSet next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        DataSet ds = nextElement;
+        nextElement = null;
+        stats.batches.increment();
+        return ds;
+    }
+
+    protected void checkThrowable() {
+        Throwable t = throwable;
+        if (t == null)
+            return;
+
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        throw new RuntimeException(t);
+    }
+
+    /**
+     * Returns next DataSet in round-robin order over shards, or null if it's not ready yet. Must be called under lock
+     */
+    protected DataSet pollOrdered() {
+        for (int i = 0; i < states.length; i++) {
+            ShardState s = states[nextShard];
+            DataSet ds = s.pending.remove(s.consumed);
+            if (ds != null) {
+                s.consumed++;
+                s.permits.release();
+                nextShard = (nextShard + 1) % states.length;
+                return ds;
+            }
+
+            if (!s.isDone())
+                return null;
+
+            //This shard has nothing left, skipping it
+            nextShard = (nextShard + 1) % states.length;
+        }
+        return null;
+    }
+
+    /**
+     * Returns any DataSet that is ready, or null. Must be called under lock
+     */
+    protected DataSet pollAny() {
+        Item item = ready.poll();
+        if (item == null)
+            return null;
+
+        ShardState s = states[item.shard];
+        s.consumed++;
+        s.permits.release();
+        return item.dataSet;
+    }
+
+    protected boolean isDepleted() {
+        for (ShardState s : states) {
+            if (!s.isDone())
+                return false;
+        }
+        return true;
+    }
+
+    protected void publish(ShardState s, long seq, DataSet ds) {
+        lock.lock();
+        try {
+            if (ordered)
+                s.pending.put(seq, ds);
+            else
+                ready.add(new Item(s.index, ds));
+            s.inFlight.decrementAndGet();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected void signal() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int inputColumns() {
+        return shards.get(0).inputColumns();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return shards.get(0).totalOutcomes();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        for (DataSetIterator shard : shards) {
+            if (!shard.resetSupported())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public int batch() {
+        return shards.get(0).batch();
+    }
+
+    /**
+     * Set a pre processor. Unlike {@link AsyncDataSetIterator}, pre processor is NOT passed to the source iterator(s),
+     * it's applied by worker threads in parallel instead
+     *
+     * @param preProcessor a pre processor to set
+     */
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return shards.get(0).getLabels();
+    }
+
+    @Override
+    public void remove() {
+        // no-op
+    }
+
+    protected static class Item {
+        protected final int shard;
+        protected final DataSet dataSet;
+
+        protected Item(int shard, DataSet dataSet) {
+            this.shard = shard;
+            this.dataSet = dataSet;
+        }
+    }
+
+    protected static class ShardState {
+        protected final int index;
+        protected final DataSetIterator iterator;
+        protected final Semaphore permits;
+        protected final Object fetchLock = new Object();
+        protected final AtomicInteger inFlight = new AtomicInteger();
+        // guarded by fetchLock
+        protected long fetched;
+        protected volatile boolean exhausted;
+        protected volatile long total;
+        // guarded by the iterator lock
+        protected long consumed;
+        protected final Map<Long, DataSet> pending = new HashMap<>();
+
+        protected ShardState(int index, DataSetIterator iterator, int permits) {
+            this.index = index;
+            this.iterator = iterator;
+            this.permits = new Semaphore(permits);
+        }
+
+        /**
+         * @return true if everything fetched from this shard was consumed, and nothing else will be fetched
+         */
+        protected boolean isDone() {
+            return exhausted && inFlight.get() == 0 && consumed >= total;
+        }
+    }
+
+    protected class Worker extends Thread {
+        private final ShardState shard;
+        private final WorkspaceConfiguration configuration;
+        protected volatile boolean shouldWork = true;
+
+        protected Worker(ShardState shard, int permits, int index) {
+            this.shard = shard;
+            // each worker can be at most "permits" DataSets ahead of consumer
+            this.configuration = WorkspaceConfiguration.builder().minSize(10 * 1024L * 1024L)
+                    .overallocationLimit(permits + 2).policyReset(ResetPolicy.ENDOFBUFFER_REACHED)
+                    .policyLearning(LearningPolicy.FIRST_LOOP).policyAllocation(AllocationPolicy.OVERALLOCATE)
+                    .policySpill(SpillPolicy.REALLOCATE).build();
+            this.setDaemon(true);
+            this.setName("PADSI worker thread " + index);
+        }
+
+        @Override
+        public void run() {
+            Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+            MemoryWorkspace workspace = null;
+            try {
+                if (useWorkspace) {
+                    workspace = Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(configuration, workspaceId);
+                    workspaces.add(workspace);
+                }
+
+                while (shouldWork) {
+                    long start = System.nanoTime();
+                    shard.permits.acquire();
+                    stats.workerWaitNanos.add(System.nanoTime() - start);
+
+                    DataSet ds;
+                    long seq;
+                    try (MemoryWorkspace ws = workspace != null ? workspace.notifyScopeEntered() : null) {
+                        synchronized (shard.fetchLock) {
+                            if (shard.exhausted || !shard.iterator.hasNext()) {
+                                shard.total = shard.fetched;
+                                shard.exhausted = true;
+                                shard.permits.release();
+                                signal();
+                                return;
+                            }
+
+                            shard.inFlight.incrementAndGet();
+                            seq = shard.fetched++;
+                            long fetchStart = System.nanoTime();
+                            ds = shard.iterator.next();
+                            stats.fetchNanos.add(System.nanoTime() - fetchStart);
+                        }
+
+                        long preprocessStart = System.nanoTime();
+                        DataSetPreProcessor pp = preProcessor;
+                        if (pp != null)
+                            pp.preProcess(ds);
+                        if (callback != null)
+                            callback.call(ds);
+
+                        // we want to ensure underlying iterator finished dataset creation
+                        Nd4j.getExecutioner().commit();
+                        stats.preprocessNanos.add(System.nanoTime() - preprocessStart);
+                    }
+
+                    publish(shard, seq, ds);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                if (shouldWork) {
+                    throwable = t;
+                    signal();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cumulative per-stage timings of the input pipeline, since iterator creation.<br>
+     * If consumer wait time dominates, the pipeline is input-bound: add workers or shards. If worker wait time
+     * dominates, the consumer is the bottleneck.
+     */
+    @Getter
+    public static class Stats {
+        /** Total time spent in source iterators next() calls, summed over all workers */
+        private final LongAdder fetchNanos = new LongAdder();
+        /** Total time spent in pre processor and callback, summed over all workers */
+        private final LongAdder preprocessNanos = new LongAdder();
+        /** Total time workers spent waiting for free queue slots, summed over all workers */
+        private final LongAdder workerWaitNanos = new LongAdder();
+        /** Total time consumer spent waiting for data in hasNext()/next() */
+        private final LongAdder consumerWaitNanos = new LongAdder();
+        /** Number of DataSets returned to consumer */
+        private final LongAdder batches = new LongAdder();
+
+        public void reset() {
+            fetchNanos.reset();
+            preprocessNanos.reset();
+            workerWaitNanos.reset();
+            consumerWaitNanos.reset();
+            batches.reset();
+        }
+
+        @Override
+        public String toString() {
+            long b = Math.max(1, batches.sum());
+            return String.format("batches: %d; avg per batch - fetch: %.3f ms, preprocess: %.3f ms, worker wait: %.3f ms, consumer wait: %.3f ms",
+                    batches.sum(), fetchNanos.sum() / 1e6 / b, preprocessNanos.sum() / 1e6 / b,
+                    workerWaitNanos.sum() / 1e6 / b, consumerWaitNanos.sum() / 1e6 / b);
+        }
+    }
+
+    public static class Builder {
+        private final List<DataSetIterator> shards;
+        private int numWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        private int queueSize = 8;
+        private boolean ordered = false;
+        private boolean useWorkspace = true;
+        private DataSetCallback callback = new DefaultCallback();
+        private Integer deviceId;
+        private DataSetPreProcessor preProcessor;
+
+        /**
+         * @param source Single source iterator. Its next() calls are serialized, pre processing is done in parallel
+         */
+        public Builder(@NonNull DataSetIterator source) {
+            this(Collections.singletonList(source));
+        }
+
+        /**
+         * @param shards Iterators over disjoint parts of the data. Each shard is fetched independently, in parallel
+         */
+        public Builder(@NonNull List<DataSetIterator> shards) {
+            Preconditions.checkArgument(!shards.isEmpty(), "At least 1 source iterator is required");
+            this.shards = new ArrayList<>(shards);
+        }
+
+        /**
+         * Number of worker threads. If less than number of shards, number of shards is used
+         */
+        public Builder workers(int numWorkers) {
+            Preconditions.checkArgument(numWorkers > 0, "Number of workers must be positive, got %s", numWorkers);
+            this.numWorkers = numWorkers;
+            return this;
+        }
+
+        /**
+         * Maximum number of DataSets fetched ahead of consumer
+         */
+        public Builder queueSize(int queueSize) {
+            Preconditions.checkArgument(queueSize > 0, "Queue size must be positive, got %s", queueSize);
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        /**
+         * If true, DataSets are returned in deterministic order: source order for single source iterator, round-robin
+         * over shards otherwise. Default: false
+         */
+        public Builder ordered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        /**
+         * If true, each worker allocates DataSets in its own cyclic workspace, so memory is reused between batches.
+         * Default: true
+         */
+        public Builder useWorkspace(boolean useWorkspace) {
+            this.useWorkspace = useWorkspace;
+            return this;
+        }
+
+        public Builder callback(DataSetCallback callback) {
+            this.callback = callback;
+            return this;
+        }
+
+        public Builder deviceId(Integer deviceId) {
+            this.deviceId = deviceId;
+            return this;
+        }
+
+        /**
+         * Pre processor applied by worker threads
+         */
+        public Builder preProcessor(DataSetPreProcessor preProcessor) {
+            this.preProcessor = preProcessor;
+            return this;
+        }
+
+        public ParallelAsyncDataSetIterator build() {
+            return new ParallelAsyncDataSetIterator(this);
+        }
+    }
+}
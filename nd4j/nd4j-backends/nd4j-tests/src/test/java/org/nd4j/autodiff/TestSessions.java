@@ -33,6 +33,8 @@ import org.nd4j.autodiff.samediff.internal.AbstractSession;
 import org.nd4j.autodiff.samediff.internal.FrameIter;
 import org.nd4j.autodiff.samediff.internal.InferenceSession;
 import org.nd4j.autodiff.samediff.internal.memory.NoOpMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.StaticMemoryPlan;
+import org.nd4j.autodiff.samediff.optimize.optimizations.OptimizationUtils;
 import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.imports.graphmapper.tf.TFGraphMapper;
@@ -49,6 +51,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -131,6 +136,186 @@ public class TestSessions extends BaseNd4jTestWithBackends {
         assertEquals(dExp, outMap.get("d"));
     }
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testInterOpParallelOutput(Nd4jBackend backend) {
+        //Independent branches: results must be identical to sequential execution
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 8);
+        SDVariable[] branches = new SDVariable[4];
+        for (int i = 0; i < branches.length; i++) {
+            SDVariable w = sd.var("w" + i, Nd4j.rand(DataType.FLOAT, 8, 8));
+            SDVariable b = sd.var("b" + i, Nd4j.rand(DataType.FLOAT, 1, 8));
+            SDVariable h = sd.nn.tanh(in.mmul(w).add(b));
+            branches[i] = sd.nn.relu(h.mmul(w), 0.0).mul(h).sum(true, 1);
+        }
+        SDVariable concat = sd.concat("concat", 1, branches);
+        SDVariable out = sd.math.log(sd.nn.softmax(concat, 1)).mean("out");
+        SDVariable mx = concat.max("max", 0);
+
+        INDArray arr = Nd4j.rand(DataType.FLOAT, 5, 8);
+        Map<String, INDArray> exp = sd.output(Collections.singletonMap("in", arr), "out", "max", "concat");
+
+        sd.setInterOpParallelism(4);
+        assertNotNull(sd.getInterOpExecutor());
+        for (int i = 0; i < 5; i++) {
+            Map<String, INDArray> act = sd.output(Collections.singletonMap("in", arr), "out", "max", "concat");
+            assertEquals(exp, act);
+        }
+
+        //Subset of outputs: ops of the other branches may be dispatched, but not required
+        INDArray expMax = exp.get("max");
+        assertEquals(expMax, sd.outputSingle(Collections.singletonMap("in", arr), "max"));
+
+        //Replaced pools are shut down once no longer used
+        ExecutorService previous = sd.getInterOpExecutor();
+        sd.setInterOpParallelism(2);
+        assertTrue(previous.isShutdown());
+        assertEquals(2, sd.getInterOpThreads());
+        assertEquals(exp, sd.output(Collections.singletonMap("in", arr), "out", "max", "concat"));
+
+        sd.setInterOpParallelism(1);
+        assertNull(sd.getInterOpExecutor());
+        assertEquals(exp, sd.output(Collections.singletonMap("in", arr), "out", "max", "concat"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testInterOpParallelismChangedDuringOutput(Nd4jBackend backend) throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 8);
+        SDVariable[] branches = new SDVariable[4];
+        for (int i = 0; i < branches.length; i++) {
+            SDVariable w = sd.var("w" + i, Nd4j.rand(DataType.FLOAT, 8, 8));
+            branches[i] = sd.nn.tanh(in.mmul(w)).sum(true, 1);
+        }
+        sd.concat("out", 1, branches);
+
+        INDArray arr = Nd4j.rand(DataType.FLOAT, 5, 8);
+        INDArray exp = sd.outputSingle(Collections.singletonMap("in", arr), "out");
+
+        //Executions in progress must complete on the pool they started with, rather than being rejected
+        sd.setInterOpParallelism(2);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread[] threads = new Thread[3];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        assertEquals(exp, sd.outputSingle(Collections.singletonMap("in", arr), "out"));
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+
+        for (int i = 0; i < 50; i++) {
+            sd.setInterOpParallelism(1 + i % 4);
+            Thread.sleep(2);
+        }
+        done.set(true);
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (error.get() != null)
+            throw new AssertionError("Concurrent output failed", error.get());
+
+        sd.setInterOpParallelism(1);
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testExecutionPlanCaching(Nd4jBackend backend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable b = sd.constant("b", Nd4j.rand(DataType.FLOAT, 1, 3));
+        SDVariable z = in.mmul(w).add(b);
+        SDVariable a = sd.nn.tanh("a", z);
+        SDVariable id = sd.identity("id", a);
+        SDVariable out = sd.nn.softmax("out", id.mul(2.0), 1);
+        SDVariable sum = z.sum("sum", true, 1);
+
+        INDArray arr = Nd4j.rand(DataType.FLOAT, 5, 4);
+        INDArray arr2 = Nd4j.rand(DataType.FLOAT, 2, 4);
+        Map<String, INDArray> exp = sd.output(Collections.singletonMap("in", arr), "out", "sum", "id");
+        Map<String, INDArray> exp2 = sd.output(Collections.singletonMap("in", arr2), "out", "sum", "id");
+
+        sd.setExecutionPlanCaching(true);
+        for (int i = 0; i < 3; i++) {
+            //First call compiles the plan, subsequent calls replay it
+            assertEquals(exp, sd.output(Collections.singletonMap("in", arr), "out", "sum", "id"));
+            assertEquals(exp2, sd.output(Collections.singletonMap("in", arr2), "out", "sum", "id"));
+            assertEquals(exp.get("sum"), sd.outputSingle(Collections.singletonMap("in", arr), "sum"));
+        }
+
+        //Placeholder cast: double input for float placeholder
+        assertEquals(exp, sd.output(Collections.singletonMap("in", arr.castTo(DataType.DOUBLE)), "out", "sum", "id"));
+        assertEquals(exp, sd.output(Collections.singletonMap("in", arr.castTo(DataType.DOUBLE)), "out", "sum", "id"));
+
+        //Graph structure changed: plan must be recompiled
+        out.add("out2", 1.0);
+        for (int i = 0; i < 2; i++) {
+            Map<String, INDArray> act = sd.output(Collections.singletonMap("in", arr), "out", "out2");
+            assertEquals(exp.get("out"), act.get("out"));
+            assertEquals(exp.get("out").add(1.0), act.get("out2"));
+        }
+
+        //Op rewired, with the same number of ops and variables: plan must also be recompiled
+        assertEquals(exp.get("sum"), sd.outputSingle(Collections.singletonMap("in", arr), "sum"));
+        String sumOp = sd.getVariableOutputOp("sum").getOwnName();
+        OptimizationUtils.replaceOpInput(sd, sumOp, 0, "a");
+        assertEquals(exp.get("id").sum(true, 1), sd.outputSingle(Collections.singletonMap("in", arr), "sum"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testStaticMemoryPlanning(Nd4jBackend backend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 16);
+        SDVariable x1 = sd.math.tanh(in);
+        SDVariable x2 = x1.mul(2.0);
+        SDVariable x3 = sd.nn.sigmoid(x2);
+        SDVariable x4 = x3.add(1.0);
+        SDVariable out = sd.nn.softmax("out", x4, 1);
+
+        INDArray arr = Nd4j.rand(DataType.FLOAT, 8, 16);
+        INDArray exp = sd.outputSingle(Collections.singletonMap("in", arr), "out");
+        INDArray arr2 = Nd4j.rand(DataType.FLOAT, 3, 16);
+        INDArray exp2 = sd.outputSingle(Collections.singletonMap("in", arr2), "out");
+
+        sd.setStaticMemoryPlanning(true);
+        assertTrue(sd.isExecutionPlanCaching());
+        //First call compiles the execution plan, second records the shapes and compiles the memory plan, later calls use the arena
+        INDArray first = null;
+        for (int i = 0; i < 4; i++) {
+            INDArray act = sd.outputSingle(Collections.singletonMap("in", arr), "out");
+            assertEquals(exp, act);
+            if (first == null) {
+                first = act;
+            }
+        }
+        //Outputs are not placed in the arena: earlier results are unchanged by later calls
+        assertEquals(exp, first);
+
+        InferenceSession is = sd.getSessions().get(Thread.currentThread().getId());
+        StaticMemoryPlan plan = is.getStaticMemoryPlan(Collections.singletonList("out"), Collections.singletonMap("in", arr));
+        assertNotNull(plan);
+        //Chain of 4 intermediate [8,16] float arrays: only an op's input and output are live at the same time
+        assertEquals(4, plan.getNumPlannedArrays());
+        assertEquals(4 * 8 * 16 * 4, plan.getNaiveBytes());
+        assertEquals(2 * 8 * 16 * 4, plan.getPeakBytes());
+
+        //Different placeholder shape: separate plan
+        for (int i = 0; i < 3; i++) {
+            assertEquals(exp2, sd.outputSingle(Collections.singletonMap("in", arr2), "out"));
+            assertEquals(exp, sd.outputSingle(Collections.singletonMap("in", arr), "out"));
+        }
+    }
+
     @ParameterizedTest
     @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
     public void testMergeSimple(Nd4jBackend backend) {
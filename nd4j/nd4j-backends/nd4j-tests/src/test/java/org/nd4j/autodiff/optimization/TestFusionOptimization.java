@@ -0,0 +1,284 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.nd4j.autodiff.optimization;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.autodiff.optimization.util.OptTestConfig;
+import org.nd4j.autodiff.optimization.util.OptimizationTestUtil;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.optimize.GraphOptimizer;
+import org.nd4j.autodiff.samediff.optimize.OptimizerSet;
+import org.nd4j.autodiff.samediff.optimize.debug.OutputValidationDebugger;
+import org.nd4j.autodiff.samediff.optimize.optimizations.FusionOptimizations;
+import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarAdd;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMultiplication;
+import org.nd4j.linalg.api.ops.impl.transforms.ReluLayer;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFusionOptimization extends BaseNd4jTestWithBackends {
+    @TempDir
+    Path tempDir;
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @Override
+    public long getTimeoutMilliseconds() {
+        return 1_000_000_000L;
+    }
+
+    private static List<OptimizerSet> fusion(){
+        return Collections.<OptimizerSet>singletonList(new FusionOptimizations());
+    }
+
+    private static String opOf(SameDiff sd, SDVariable v){
+        return sd.getVariables().get(v.name()).getOutputOfOp();
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testConv2dBiasBatchNormFolding(Nd4jBackend nd4jBackend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.DOUBLE, -1, 3, 8, 8);
+        SDVariable w = sd.constant("w", Nd4j.rand(DataType.DOUBLE, 2, 2, 3, 4));
+        SDVariable b = sd.constant("b", Nd4j.rand(DataType.DOUBLE, 4));
+        SDVariable conv = sd.cnn.conv2d(in, w, Conv2DConfig.builder().kH(2).kW(2).build());
+        SDVariable bias = sd.nn.biasAdd(conv, b, true);
+        SDVariable mean = sd.constant("mean", Nd4j.rand(DataType.DOUBLE, 4));
+        SDVariable var = sd.constant("var", Nd4j.rand(DataType.DOUBLE, 4).addi(0.5));
+        SDVariable gamma = sd.constant("gamma", Nd4j.rand(DataType.DOUBLE, 4));
+        SDVariable beta = sd.constant("beta", Nd4j.rand(DataType.DOUBLE, 4));
+        SDVariable bn = sd.nn.batchNorm(bias, mean, var, gamma, beta, 1e-3, 1);
+        SDVariable out = sd.nn.tanh("out", bn);
+
+        File subDir = tempDir.resolve("conv2d-bn").toFile();
+        assertTrue(subDir.mkdirs());
+        OptTestConfig conf = OptTestConfig.builder()
+                .original(sd)
+                .tempFolder(subDir)
+                .outputs(Collections.singletonList("out"))
+                .placeholder("in", Nd4j.rand(DataType.DOUBLE, 2, 3, 8, 8))
+                .optimizerSets(fusion())
+                .mustApply(opOf(sd, bias), FusionOptimizations.FuseConv2DBias.class)
+                .mustApply(opOf(sd, bn), FusionOptimizations.FoldBatchNormIntoConv2D.class)
+                .build();
+
+        SameDiff optimized = OptimizationTestUtil.testOptimization(conf);
+        assertEquals(2, optimized.getOps().size());
+        assertFalse(optimized.hasVariable(conv.name()));
+        assertFalse(optimized.hasVariable(bias.name()));
+        assertTrue(optimized.hasVariable(bn.name()));
+        SameDiffOp convOp = optimized.getOps().get(optimized.getVariables().get(bn.name()).getOutputOfOp());
+        assertTrue(convOp.getOp() instanceof Conv2D);
+        assertEquals(3, convOp.getInputsToOp().size());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testDenseBiasReluFusion(Nd4jBackend nd4jBackend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.DOUBLE, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.DOUBLE, 4, 5));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.DOUBLE, 5).subi(0.5));
+        SDVariable mmul = in.mmul(w);
+        SDVariable add = mmul.add(b);
+        SDVariable out = sd.nn.relu("out", add, 0.0);
+
+        File subDir = tempDir.resolve("dense-relu").toFile();
+        assertTrue(subDir.mkdirs());
+        OptTestConfig conf = OptTestConfig.builder()
+                .original(sd)
+                .tempFolder(subDir)
+                .outputs(Collections.singletonList("out"))
+                .placeholder("in", Nd4j.rand(DataType.DOUBLE, 3, 4).subi(0.5))
+                .optimizerSets(fusion())
+                .mustApply(opOf(sd, add), FusionOptimizations.FuseMatMulBias.class)
+                .mustApply(opOf(sd, out), FusionOptimizations.FuseDenseRelu.class)
+                .build();
+
+        SameDiff optimized = OptimizationTestUtil.testOptimization(conf);
+        assertEquals(1, optimized.getOps().size());
+        SameDiffOp op = optimized.getOps().values().iterator().next();
+        assertTrue(op.getOp() instanceof ReluLayer);
+        assertEquals(op.getName(), optimized.getVariables().get("out").getOutputOfOp());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testDenseBatchNormFolding(Nd4jBackend nd4jBackend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.DOUBLE, -1, 4);
+        SDVariable w = sd.constant("w", Nd4j.rand(DataType.DOUBLE, 4, 5));
+        SDVariable mmul = in.mmul(w);
+        SDVariable mean = sd.constant("mean", Nd4j.rand(DataType.DOUBLE, 5));
+        SDVariable var = sd.constant("var", Nd4j.rand(DataType.DOUBLE, 5).addi(0.5));
+        SDVariable gamma = sd.constant("gamma", Nd4j.rand(DataType.DOUBLE, 5));
+        SDVariable beta = sd.constant("beta", Nd4j.rand(DataType.DOUBLE, 5));
+        SDVariable bn = sd.nn.batchNorm("out", mmul, mean, var, gamma, beta, 1e-5, 1);
+
+        File subDir = tempDir.resolve("dense-bn").toFile();
+        assertTrue(subDir.mkdirs());
+        OptTestConfig conf = OptTestConfig.builder()
+                .original(sd)
+                .tempFolder(subDir)
+                .outputs(Collections.singletonList("out"))
+                .placeholder("in", Nd4j.rand(DataType.DOUBLE, 3, 4))
+                .optimizerSets(fusion())
+                .mustApply(opOf(sd, bn), FusionOptimizations.FoldBatchNormIntoDense.class)
+                .build();
+
+        SameDiff optimized = OptimizationTestUtil.testOptimization(conf);
+        assertEquals(1, optimized.getOps().size());
+        assertTrue(optimized.getOps().values().iterator().next().getOp() instanceof XwPlusB);
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testScalarChainFusion(Nd4jBackend nd4jBackend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.DOUBLE, -1, 4);
+        SDVariable s1 = in.mul(2.0);
+        SDVariable s2 = s1.add(1.0);
+        SDVariable s3 = s2.mul(3.0);
+        SDVariable s4 = s3.sub(2.0);
+        SDVariable s5 = s4.neg();
+        SDVariable s6 = s5.rsub(4.0);
+        SDVariable out = s6.div("out", 2.0);
+
+        File subDir = tempDir.resolve("scalar-chain").toFile();
+        assertTrue(subDir.mkdirs());
+        OptTestConfig conf = OptTestConfig.builder()
+                .original(sd)
+                .tempFolder(subDir)
+                .outputs(Collections.singletonList("out"))
+                .placeholder("in", Nd4j.rand(DataType.DOUBLE, 3, 4))
+                .optimizerSets(fusion())
+                .mustApply(opOf(sd, out), FusionOptimizations.FuseScalarChains.class)
+                .build();
+
+        //((x*2 + 1)*3 - 2) -> 6x + 1 -> negate, reverse subtract from 4 -> 6x + 5 -> divide by 2 -> 3x + 2.5
+        SameDiff optimized = OptimizationTestUtil.testOptimization(conf);
+        assertEquals(2, optimized.getOps().size());
+        SameDiffOp last = optimized.getOps().get(optimized.getVariables().get("out").getOutputOfOp());
+        assertTrue(last.getOp() instanceof ScalarAdd);
+        assertEquals(2.5, ((ScalarAdd) last.getOp()).scalar().getDouble(0), 1e-12);
+        SameDiffOp first = optimized.getOps().get(optimized.getVariables().get(last.getInputsToOp().get(0)).getOutputOfOp());
+        assertTrue(first.getOp() instanceof ScalarMultiplication);
+        assertEquals(3.0, ((ScalarMultiplication) first.getOp()).scalar().getDouble(0), 1e-12);
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testIdentityScalarChainRemoved(Nd4jBackend nd4jBackend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.DOUBLE, -1, 4);
+        SDVariable s1 = in.mul(4.0);
+        SDVariable s2 = s1.div(2.0);
+        SDVariable s3 = s2.div(2.0);
+        SDVariable out = sd.nn.relu("out", s3, 0.0);
+
+        File subDir = tempDir.resolve("identity-chain").toFile();
+        assertTrue(subDir.mkdirs());
+        OptTestConfig conf = OptTestConfig.builder()
+                .original(sd)
+                .tempFolder(subDir)
+                .outputs(Collections.singletonList("out"))
+                .placeholder("in", Nd4j.rand(DataType.DOUBLE, 3, 4))
+                .optimizerSets(fusion())
+                .mustApply(opOf(sd, s3), FusionOptimizations.FuseScalarChains.class)
+                .build();
+
+        //x*4/2/2 == x: the chain is removed, and relu uses the placeholder directly
+        SameDiff optimized = OptimizationTestUtil.testOptimization(conf);
+        assertEquals(1, optimized.getOps().size());
+        SameDiffOp relu = optimized.getOps().get(optimized.getVariables().get("out").getOutputOfOp());
+        assertEquals(Collections.singletonList("in"), relu.getInputsToOp());
+        assertEquals(Collections.singletonList(relu.getName()), optimized.getVariables().get("in").getInputsForOp());
+        assertFalse(optimized.hasVariable(s3.name()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testNoFusionOfSharedOrRequiredVariables(Nd4jBackend nd4jBackend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.DOUBLE, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.DOUBLE, 4, 5));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.DOUBLE, 5));
+        SDVariable mmul = in.mmul("mmul", w);
+        SDVariable add = mmul.add("add", b);
+        SDVariable out = sd.nn.relu("out", add, 0.0);
+        SDVariable s1 = in.mul(2.0);
+        SDVariable out2 = s1.add("out2", 1.0);
+        SDVariable out3 = s1.mul("out3", 2.0);
+
+        //"mmul" is a required output, and the output of scalar op s1 is used by 2 ops: nothing should be fused
+        List<String> outputs = java.util.Arrays.asList("mmul", "out", "out2", "out3");
+        Map<String, INDArray> ph = Collections.singletonMap("in", Nd4j.rand(DataType.DOUBLE, 3, 4));
+        SameDiff optimized = GraphOptimizer.optimize(sd, outputs, fusion(), new OutputValidationDebugger(sd, ph, outputs, 1e-8));
+        assertEquals(sd.getOps().size(), optimized.getOps().size());
+        assertEquals(sd.output(ph, outputs), optimized.output(ph, outputs));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testInferenceOptimizationsValidated(Nd4jBackend nd4jBackend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.DOUBLE, -1, 4);
+        SDVariable w = sd.constant("w", Nd4j.rand(DataType.DOUBLE, 4, 5));
+        SDVariable b = sd.constant("b", Nd4j.rand(DataType.DOUBLE, 5));
+        SDVariable mean = sd.constant("mean", Nd4j.rand(DataType.DOUBLE, 5));
+        SDVariable var = sd.constant("var", Nd4j.rand(DataType.DOUBLE, 5).addi(0.5));
+        SDVariable bn = sd.nn.batchNorm(sd.nn.biasAdd(in.mmul(w), b, true), mean, var, null, null, 1e-5, 1);
+        SDVariable out = sd.nn.relu("out", bn.mul(2.0).add(1.0).mul(0.5), 0.0);
+
+        List<String> outputs = Collections.singletonList("out");
+        Map<String, INDArray> ph = Collections.singletonMap("in", Nd4j.rand(DataType.DOUBLE, 3, 4));
+        //Debugger throws an exception as soon as any applied optimization changes the output
+        SameDiff optimized = GraphOptimizer.optimize(sd, outputs, GraphOptimizer.inferenceOptimizations(),
+                new OutputValidationDebugger(sd, ph, outputs, 1e-8));
+        assertTrue(optimized.getOps().size() < sd.getOps().size());
+        assertTrue(sd.output(ph, outputs).get("out").equalsWithEps(optimized.output(ph, outputs).get("out"), 1e-8));
+    }
+}
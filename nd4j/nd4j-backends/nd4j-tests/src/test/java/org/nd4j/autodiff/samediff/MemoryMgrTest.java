@@ -24,6 +24,7 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.nd4j.autodiff.samediff.internal.memory.ArrayCacheMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.SizeClassMemoryMgr;
 import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.linalg.BaseNd4jTestWithBackends;
@@ -33,6 +34,9 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 
 import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -142,4 +146,134 @@ public class MemoryMgrTest extends BaseNd4jTestWithBackends {
         assertEquals(2000, mmgr.getLruCacheValues().size());
     }
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClassReuse(Nd4jBackend backend) {
+        SizeClassMemoryMgr mmgr = new SizeClassMemoryMgr();
+
+        //100 elements -> 128 element size class
+        INDArray a1 = mmgr.allocate(false, DataType.FLOAT, 10, 10);
+        assertArrayEquals(new long[]{10, 10}, a1.shape());
+        assertEquals(128, a1.data().length());
+        assertEquals(1, mmgr.getMisses());
+
+        a1.assign(1.0);
+        mmgr.release(a1);
+        assertEquals(128 * 4, mmgr.getBytesRetained());
+
+        //Different shape, same size class -> same buffer
+        INDArray a2 = mmgr.allocate(false, DataType.FLOAT, 3, 5, 7);
+        assertSame(a1.data(), a2.data());
+        assertArrayEquals(new long[]{3, 5, 7}, a2.shape());
+        assertEquals(1, mmgr.getHits());
+        assertEquals(0, mmgr.getBytesRetained());
+
+        a2.assign(2.0);
+        assertEquals(2.0 * 105, a2.sumNumber().doubleValue(), 1e-6);
+
+        //Different data type -> separate free lists
+        mmgr.release(a2);
+        INDArray a3 = mmgr.allocate(false, DataType.DOUBLE, 100);
+        assertNotSame(a2.data(), a3.data());
+        assertEquals(2, mmgr.getMisses());
+
+        //Releasing same buffer twice must not pool it twice
+        INDArray a4 = mmgr.allocate(false, DataType.FLOAT, 100);
+        assertSame(a2.data(), a4.data());
+        mmgr.release(a4);
+        mmgr.release(a4);
+        assertEquals(128 * 4, mmgr.getBytesRetained());
+
+        mmgr.close();
+        assertEquals(0, mmgr.getBytesRetained());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClassSharedPool(Nd4jBackend backend) throws Exception {
+        //No per-thread retention: everything goes to the shared pool
+        SizeClassMemoryMgr mmgr = new SizeClassMemoryMgr(4, 20, 0, 1024 * 1024);
+
+        INDArray arr = mmgr.allocate(false, DataType.FLOAT, 1000);
+        mmgr.release(arr);
+
+        AtomicReference<INDArray> fromOtherThread = new AtomicReference<>();
+        Thread t = new Thread(() -> fromOtherThread.set(mmgr.allocate(false, DataType.FLOAT, 600)));
+        t.start();
+        t.join();
+
+        assertSame(arr.data(), fromOtherThread.get().data());
+        assertEquals(1, mmgr.getSharedHits());
+        assertEquals(0, mmgr.getCurrentThreadHits());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClassThreadPoolsLifecycle(Nd4jBackend backend) throws Exception {
+        SizeClassMemoryMgr mmgr = new SizeClassMemoryMgr(4, 20, 1024 * 1024, 1024 * 1024);
+
+        //Detached arrays may be returned to the user: exact length, never views of pooled buffers
+        INDArray detached = mmgr.allocate(true, DataType.FLOAT, 10, 10);
+        assertFalse(detached.isView());
+        assertEquals(100, detached.data().length());
+
+        //Buffers retained by a terminated thread are moved to the shared pool
+        Thread t = new Thread(() -> mmgr.release(mmgr.allocate(false, DataType.FLOAT, 1000)));
+        t.start();
+        t.join();
+        assertEquals(1024 * 4, mmgr.getBytesRetained());
+        INDArray fromShared = mmgr.allocate(false, DataType.FLOAT, 1000);
+        assertEquals(1, mmgr.getSharedHits());
+        assertEquals(0, mmgr.getBytesRetained());
+
+        //close() must not touch free lists of other live threads
+        CountDownLatch released = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        AtomicReference<INDArray> reused = new AtomicReference<>();
+        AtomicReference<INDArray> first = new AtomicReference<>();
+        Thread live = new Thread(() -> {
+            first.set(mmgr.allocate(false, DataType.FLOAT, 500));
+            mmgr.release(first.get());
+            released.countDown();
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            reused.set(mmgr.allocate(false, DataType.FLOAT, 500));
+        });
+        live.start();
+        released.await();
+        mmgr.release(fromShared);
+        mmgr.close();
+        closed.countDown();
+        live.join();
+        assertSame(first.get().data(), reused.get().data());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testSizeClassVariableLengthInference(Nd4jBackend backend) throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 8, -1);
+        SDVariable w = sd.constant("w", Nd4j.rand(DataType.FLOAT, 8, 8));
+        SDVariable out = sd.nn().tanh("out", sd.math().abs(in).mul(2.0).sum(2).mmul(w));
+
+        SizeClassMemoryMgr mmgr = new SizeClassMemoryMgr();
+        sd.setSessionMemMgr(mmgr);
+
+        SameDiff reference = SameDiff.fromFlatBuffers(sd.asFlatBuffers(true));
+
+        for (int i = 0; i < 20; i++) {
+            //Every iteration has different sequence length
+            INDArray input = Nd4j.rand(DataType.FLOAT, 4, 8, 10 + i);
+            INDArray exp = reference.outputSingle(Collections.singletonMap("in", input), "out");
+            INDArray act = sd.outputSingle(Collections.singletonMap("in", input), "out");
+            assertEquals(exp, act);
+        }
+
+        assertTrue(mmgr.getHits() > 0);
+        assertTrue(mmgr.getHitRate() > 0.5, "Hit rate: " + mmgr.getHitRate());
+    }
+
 }
@@ -0,0 +1,168 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.autodiff.samediff.internal.profiler.ExecStats;
+import org.nd4j.autodiff.samediff.internal.profiler.Histogram;
+import org.nd4j.autodiff.samediff.internal.profiler.SessionProfiler;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.shade.jackson.databind.JsonNode;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.SAMEDIFF)
+public class SessionProfilerTest extends BaseNd4jTestWithBackends {
+
+    @Override
+    public char ordering(){
+        return 'c';
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testHistogram(Nd4jBackend backend) {
+        Histogram h = new Histogram();
+        for (long i = 1; i <= 100000; i++)
+            h.record(i * 1000);
+
+        assertEquals(100000, h.getCount());
+        assertEquals(1000, h.getMin());
+        assertEquals(100_000_000, h.getMax());
+        assertEquals(50_000_500.0, h.getMean(), 1e-3);
+
+        //Relative error is bounded by 1/2^precisionBits
+        double maxError = 1.0 / (1 << Histogram.DEFAULT_PRECISION_BITS);
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            double expected = p / 100.0 * 100_000_000;
+            assertEquals(expected, h.getPercentile(p), expected * maxError, "p" + p);
+        }
+
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getPercentile(99));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testProfilerStats(Nd4jBackend backend) throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 3));
+        SDVariable out = sd.nn().tanh("out", in.mmul("mmul", w).add("add", b));
+
+        SessionProfiler profiler = new SessionProfiler();
+        sd.setSessionProfiler(profiler);
+
+        INDArray input = Nd4j.rand(DataType.FLOAT, 5, 4);
+        for (int i = 0; i < 10; i++)
+            sd.output(Collections.singletonMap("in", input), "out");
+
+        Map<String, ExecStats> ops = profiler.getOpStats();
+        assertEquals(3, ops.size());
+        for (ExecStats s : ops.values()) {
+            assertEquals(10, s.getCount());
+            //All ops produce 5x3 float arrays
+            assertEquals(5 * 3 * 4, s.getOutputBytes().getMax());
+            assertTrue(s.getExecTimeNanos().getMax() > 0);
+        }
+        assertTrue(ops.values().stream().anyMatch(s -> "matmul".equals(s.getType())));
+
+        Map<String, ExecStats> vars = profiler.getVariableStats();
+        assertEquals(3, vars.size());
+        assertEquals(10, vars.get("out").getCount());
+        assertEquals(5 * 3 * 4, vars.get("out").getOutputBytes().getMin());
+
+        //Arrays released after first iteration should be reused afterwards
+        assertTrue(profiler.getCacheHits() > 0);
+        assertEquals(profiler.getCacheHits() + profiler.getCacheMisses(),
+                ops.values().stream().mapToLong(s -> s.getCacheHits().sum() + s.getCacheMisses().sum()).sum());
+
+        JsonNode json = new ObjectMapper().readTree(profiler.toJson());
+        assertEquals(3, json.get("ops").size());
+        assertEquals(3, json.get("variables").size());
+        assertEquals(10, json.get("ops").get(0).get("count").asLong());
+
+        String prometheus = profiler.toPrometheus();
+        assertTrue(prometheus.contains("# TYPE samediff_op_exec_time_seconds summary"));
+        assertTrue(prometheus.contains("samediff_variable_output_bytes_count{graph=\"default\",variable=\"out\""));
+        assertTrue(prometheus.contains("quantile=\"0.99\""));
+
+        profiler.reset();
+        assertTrue(profiler.getOpStats().isEmpty());
+
+        sd.setSessionProfiler(null);
+        sd.output(Collections.singletonMap("in", input), "out");
+        assertTrue(profiler.getOpStats().isEmpty());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testProfilerSharedBetweenGraphs(Nd4jBackend backend) {
+        //Both graphs use the same op names: stats must not be merged when graphs are attached under different names
+        SameDiff sd1 = SameDiff.create();
+        SDVariable in1 = sd1.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable mul1 = in1.mul("mul", 2.0);
+        sd1.nn().tanh("out", mul1);
+
+        SameDiff sd2 = SameDiff.create();
+        SDVariable in2 = sd2.placeHolder("in", DataType.FLOAT, -1, 8);
+        SDVariable mul2 = in2.mul("mul", 2.0);
+        sd2.nn().tanh("out", mul2);
+
+        String mulOp = sd1.getVariableOutputOp(mul1.name()).getOwnName();
+        assertEquals(mulOp, sd2.getVariableOutputOp(mul2.name()).getOwnName());
+
+        SessionProfiler profiler = new SessionProfiler();
+        sd1.setSessionProfiler(profiler, "first");
+        sd2.setSessionProfiler(profiler, "second");
+
+        for (int i = 0; i < 3; i++)
+            sd1.output(Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 5, 4)), "out");
+        sd2.output(Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 5, 8)), "out");
+
+        assertEquals(2, profiler.getGraphs().size());
+        assertTrue(profiler.getOpStats().isEmpty());
+        assertEquals(3, profiler.getOpStats("first").get(mulOp).getCount());
+        assertEquals(5 * 4 * 4, profiler.getOpStats("first").get(mulOp).getOutputBytes().getMax());
+        assertEquals(1, profiler.getOpStats("second").get(mulOp).getCount());
+        assertEquals(5 * 8 * 4, profiler.getOpStats("second").get(mulOp).getOutputBytes().getMax());
+        assertEquals("second", profiler.getVariableStats("second").get("out").getGraph());
+
+        String prometheus = profiler.toPrometheus();
+        assertTrue(prometheus.contains("samediff_op_exec_time_seconds_count{graph=\"first\",op=\"" + mulOp + "\""));
+        assertTrue(prometheus.contains("samediff_variable_output_bytes_count{graph=\"second\",variable=\"mul\""));
+    }
+}
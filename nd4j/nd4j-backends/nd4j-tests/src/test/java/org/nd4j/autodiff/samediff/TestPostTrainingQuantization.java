@@ -0,0 +1,207 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.autodiff.samediff.quantization.ActivationRange;
+import org.nd4j.autodiff.samediff.quantization.PostTrainingQuantizer;
+import org.nd4j.autodiff.samediff.quantization.QuantizationConfig;
+import org.nd4j.autodiff.samediff.quantization.QuantizationReport;
+import org.nd4j.common.primitives.Pair;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.SAMEDIFF)
+public class TestPostTrainingQuantization extends BaseNd4jTestWithBackends {
+
+    @TempDir Path testDir;
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    private static SameDiff convDenseGraph() {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 1, 6, 6);
+        SDVariable cw = sd.var("cw", Nd4j.randn(DataType.FLOAT, 3, 3, 1, 4).muli(0.5));
+        SDVariable cb = sd.var("cb", Nd4j.randn(DataType.FLOAT, 4).muli(0.1));
+        SDVariable conv = sd.cnn().conv2d("conv", in, cw, cb, Conv2DConfig.builder().kH(3).kW(3).build());
+        SDVariable act = sd.nn().relu("act", conv, 0.0);
+        SDVariable flat = sd.reshape("flat", act, -1, 64);
+        SDVariable w = sd.var("w", Nd4j.randn(DataType.FLOAT, 64, 10).muli(0.2));
+        SDVariable b = sd.var("b", Nd4j.randn(DataType.FLOAT, 10).muli(0.1));
+        SDVariable dense = sd.nn().linear("dense", flat, w, b);
+        sd.nn().softmax("out", dense);
+        return sd;
+    }
+
+    private static List<Map<String, INDArray>> batches(int n) {
+        List<Map<String, INDArray>> l = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            l.add(Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 8, 1, 6, 6)));
+        }
+        return l;
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testActivationRange(Nd4jBackend backend) {
+        ActivationRange r = new ActivationRange(-1.0, 3.0);
+        assertEquals(4.0 / 255, r.scale(), 1e-9);
+        //-1.0 / scale = -63.75: 0.0 is exactly represented by the zero point
+        int zp = r.zeroPoint();
+        assertEquals(-64, zp);
+        assertEquals(-1.0, (ActivationRange.QMIN - zp) * r.scale(), r.scale());
+        assertEquals(3.0, (ActivationRange.QMAX - zp) * r.scale(), r.scale());
+
+        //Positive only range (i.e., ReLU outputs): zero point is QMIN
+        ActivationRange r2 = new ActivationRange();
+        r2.update(Nd4j.createFromArray(0.5f, 2.0f));
+        r2.update(Nd4j.createFromArray(1.0f, 2.55f));
+        assertEquals(2, r2.getCount());
+        assertEquals(0.5, r2.getMin(), 1e-6);
+        assertEquals(2.55, r2.getMax(), 1e-6);
+        assertEquals(ActivationRange.QMIN, r2.zeroPoint());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testQuantizeConvDense(Nd4jBackend backend) throws Exception {
+        SameDiff sd = convDenseGraph();
+        List<Map<String, INDArray>> calibration = batches(4);
+        List<Map<String, INDArray>> evaluation = batches(3);
+        List<String> outputs = Collections.singletonList("out");
+
+        PostTrainingQuantizer quantizer = new PostTrainingQuantizer();
+        assertEquals(2, quantizer.findQuantizableOps(sd).size());
+
+        //Evaluation batches must not be empty: report would have no statistics
+        assertThrows(IllegalStateException.class, () -> quantizer.quantize(sd, calibration, Collections.emptyList(), outputs));
+
+        Pair<SameDiff, QuantizationReport> p = quantizer.quantize(sd, calibration, evaluation, outputs);
+        SameDiff q = p.getFirst();
+        QuantizationReport report = p.getSecond();
+
+        assertEquals(2, report.getQuantizedOps().size());
+        //Float weights are removed from the quantized graph, and replaced by INT8 constants
+        assertFalse(q.hasVariable("cw"));
+        assertFalse(q.hasVariable("w"));
+        assertTrue(sd.hasVariable("cw"));
+        assertTrue(sd.hasVariable("w"));
+        assertEquals(DataType.INT8, q.getVariable("cw_int8").dataType());
+        assertEquals(DataType.INT8, q.getVariable("w_int8").dataType());
+        assertEquals(VariableType.CONSTANT, q.getVariable("w_int8").getVariableType());
+        //Quantized activations: placeholder input of the convolution, and reshaped ReLU output input to the dense layer
+        assertEquals(DataType.INT8, q.getVariable("in_int8").dataType());
+        assertEquals(DataType.INT8, q.getVariable("flat_int8").dataType());
+        //Per output channel scales
+        assertArrayEquals(new long[]{1, 1, 1, 4}, q.getVariable("cw_scale").getArr().shape());
+        assertArrayEquals(new long[]{1, 10}, q.getVariable("w_scale").getArr().shape());
+        //Biases are not quantized
+        assertTrue(q.hasVariable("b"));
+        assertEquals(DataType.FLOAT, q.getVariable("b").dataType());
+
+        long floatBytes = (3 * 3 * 4 + 64 * 10) * 4;
+        assertEquals(floatBytes, report.getFloatWeightsBytes());
+        assertEquals(3 * 3 * 4 + 64 * 10 + (4 + 10) * 4, report.getQuantizedWeightsBytes());
+
+        QuantizationReport.OutputStats stats = report.getOutputStats().get("out");
+        assertNotNull(stats);
+        //Statistics are collected on the held-out evaluation batches only
+        assertEquals(3 * 8 * 10, stats.getCount());
+        assertTrue(stats.getRelativeError() < 0.05, "Relative error: " + stats.getRelativeError());
+        assertTrue(stats.getTop1Agreement() >= 0.75, "Top-1 agreement: " + stats.getTop1Agreement());
+
+        //Quantized graph should be saved with its INT8 weights, and give the same output after loading
+        File f = Files.createTempFile(testDir, "quantized", "fb").toFile();
+        q.save(f, false);
+        SameDiff restored = SameDiff.load(f, false);
+        assertEquals(DataType.INT8, restored.getVariable("w_int8").getArr().dataType());
+        assertEquals(q.getVariable("w_int8").getArr(), restored.getVariable("w_int8").getArr());
+        Map<String, INDArray> ph = evaluation.get(0);
+        assertEquals(q.output(ph, "out").get("out"), restored.output(ph, "out").get("out"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testQuantizeWeightsOnly(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 5);
+        SDVariable w = sd.constant("w", Nd4j.randn(DataType.FLOAT, 5, 3));
+        SDVariable mmul = in.mmul("mmul", w);
+        SDVariable other = sd.constant("other", Nd4j.randn(DataType.FLOAT, 5, 3));
+        SDVariable notQuantized = sd.constant("x", Nd4j.randn(DataType.FLOAT, 2, 5)).mmul("mmul2", other);
+        //Weights with a single element are below the threshold
+        SDVariable small = sd.var("small", Nd4j.randn(DataType.FLOAT, 3, 1));
+        mmul.mmul("out", small);
+
+        QuantizationConfig c = QuantizationConfig.builder()
+                .quantizeActivations(false)
+                .perChannelWeights(false)
+                .minWeightsLength(4)
+                .build();
+        PostTrainingQuantizer quantizer = new PostTrainingQuantizer(c);
+
+        List<Map<String, INDArray>> calibration = Collections.singletonList(
+                Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 4, 5)));
+        Map<String, ActivationRange> ranges = quantizer.calibrate(sd, calibration);
+        //Only the activation inputs of quantizable ops are calibrated
+        assertEquals(Collections.singleton("in"), ranges.keySet());
+
+        QuantizationReport report = new QuantizationReport();
+        SameDiff q = quantizer.quantize(sd, ranges, report);
+        assertTrue(report.getQuantizedOps().contains("mmul"));
+        assertTrue(report.getQuantizedOps().contains("mmul2"));
+        assertFalse(report.getQuantizedOps().contains("out"));
+        assertFalse(q.hasVariable("w"));
+        assertFalse(q.hasVariable("other"));
+        assertTrue(q.hasVariable("small"));
+        assertFalse(q.hasVariable("in_int8"));
+        //Per-tensor scale
+        assertEquals(0, q.getVariable("w_scale").getArr().rank());
+
+        List<Map<String, INDArray>> evaluation = Collections.singletonList(
+                Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 4, 5)));
+        quantizer.evaluate(sd, q, evaluation, Arrays.asList("out", notQuantized.name()), report);
+        assertTrue(report.getOutputStats().get("out").getRelativeError() < 0.05);
+        assertTrue(Double.isNaN(report.getOutputStats().get("out").getTop1Agreement()));
+    }
+}
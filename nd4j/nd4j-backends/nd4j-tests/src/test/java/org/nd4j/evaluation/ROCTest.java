@@ -1207,4 +1207,137 @@ public class ROCTest extends BaseNd4jTestWithBackends {
             }
         }
     }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testRocSketchInvalidAccuracy(Nd4jBackend backend) {
+        for (double d : new double[]{0.0, -0.01, 1.0}) {
+            assertThrows(IllegalArgumentException.class, () -> ROC.sketch(d));
+            assertThrows(IllegalArgumentException.class, () -> ROCBinary.sketch(d));
+            assertThrows(IllegalArgumentException.class, () -> ROCMultiClass.sketch(d));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testRocSketchVsExact(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        Random r = new Random(12345);
+
+        ROC exact = new ROC(0);
+        ROC sketch = ROC.sketch(0.001);
+        ROCBinary sketchBinary = ROCBinary.sketch(0.001);
+        ROCMultiClass sketchMulti = ROCMultiClass.sketch(0.001);
+        for (int i = 0; i < 20; i++) {
+            //Mix of well separated and overlapping predictions, some very close to 0 and 1
+            INDArray l = Nd4j.create(DataType.DOUBLE, 256, 1);
+            INDArray p = Nd4j.create(DataType.DOUBLE, 256, 1);
+            for (int j = 0; j < 256; j++) {
+                int label = r.nextInt(2);
+                double z = r.nextGaussian() * 3 + (label == 1 ? 2 : -2);
+                l.putScalar(j, label);
+                p.putScalar(j, 1.0 / (1.0 + Math.exp(-z)));
+            }
+            exact.eval(l, p);
+            sketch.eval(l, p);
+            sketchBinary.eval(l, p);
+            sketchMulti.eval(Nd4j.hstack(l.rsub(1.0), l), Nd4j.hstack(p.rsub(1.0), p));
+        }
+
+        assertEquals(exact.getCountActualPositive(), sketch.getCountActualPositive());
+        assertEquals(exact.getCountActualNegative(), sketch.getCountActualNegative());
+        assertEquals(exact.calculateAUC(), sketch.calculateAUC(), 1e-3);
+        assertEquals(exact.calculateAUCPR(), sketch.calculateAUCPR(), 1e-3);
+        assertEquals(sketch.calculateAUC(), sketchBinary.calculateAUC(0), 1e-12);
+        assertEquals(sketch.calculateAUC(), sketchMulti.calculateAUC(1), 1e-12);
+
+        //Memory is bounded: curve has at most one point per bucket, plus the edge points
+        int maxPoints = sketch.getSketchPositive().numBuckets() + 2;
+        assertTrue(sketch.getRocCurve().numPoints() <= maxPoints);
+        assertTrue(sketch.getPrecisionRecallCurve().numPoints() <= maxPoints);
+
+        PrecisionRecallCurve prc = sketch.getPrecisionRecallCurve();
+        for (int i = 0; i < prc.numPoints(); i++) {
+            assertEquals(prc.getTpCount()[i] + prc.getFnCount()[i], sketch.getCountActualPositive());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testRocSketchMergingAndSerialization(Nd4jBackend backend) throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+        Random r = new Random(12345);
+
+        List<ROC> rocList = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            rocList.add(ROC.sketch());
+        }
+        ROC single = ROC.sketch();
+        for (int i = 0; i < 10; i++) {
+            INDArray p = Nd4j.rand(64, 2);
+            p.diviColumnVector(p.sum(1));
+            INDArray l = Nd4j.zeros(64, 2);
+            for (int j = 0; j < 64; j++) {
+                l.putScalar(j, r.nextInt(2), 1.0);
+            }
+            single.eval(l, p);
+            rocList.get(i % rocList.size()).eval(l, p);
+        }
+
+        ROC first = rocList.get(0);
+        for (int i = 1; i < rocList.size(); i++) {
+            first.merge(rocList.get(i));
+        }
+        assertEquals(single, first);
+        assertEquals(single.calculateAUC(), first.calculateAUC(), 0.0);
+        assertEquals(single.getRocCurve(), first.getRocCurve());
+
+        try {
+            first.merge(new ROC(0));
+            fail("Expected exception");
+        } catch (UnsupportedOperationException e) {
+            //Expected
+        }
+
+        ROC fromJson = ROC.fromJson(single.toJson());
+        assertTrue(fromJson.isSketchMode());
+        assertEquals(single.getSketchPositive(), fromJson.getSketchPositive());
+        assertEquals(single.calculateAUC(), fromJson.calculateAUC(), 0.0);
+
+        ROC newInstance = single.newInstance();
+        assertTrue(newInstance.isSketchMode());
+        assertEquals(0, newInstance.getSketchPositive().getTotalCount());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testRocSketchMergePastIntegerMaxValue(Nd4jBackend backend) {
+        //Sketches summarize arbitrarily many examples: counts must not overflow once merged past Integer.MAX_VALUE
+        long pos = 1_500_000_000L;
+        long neg = 1_200_000_000L;
+        ROC first = ROC.sketch();
+        ROC second = ROC.sketch();
+        for (ROC r : new ROC[]{first, second}) {
+            r.getSketchPositive().add(0.9, pos);
+            r.getSketchNegative().add(0.1, neg);
+            r.setCountActualPositive(pos);
+            r.setCountActualNegative(neg);
+            r.setExampleCount(pos + neg);
+        }
+        first.merge(second);
+
+        assertEquals(2 * (pos + neg), first.getExampleCount());
+        assertEquals(2 * pos, first.getCountActualPositive());
+        assertEquals(2 * pos, first.getSketchPositive().getTotalCount());
+        assertEquals(1.0, first.calculateAUC(), 1e-6);
+        assertEquals(1.0, first.calculateAUCPR(), 1e-6);
+
+        PrecisionRecallCurve prc = first.getPrecisionRecallCurve();
+        assertEquals(Integer.MAX_VALUE, prc.getTotalCount());
+        for (int i = 0; i < prc.numPoints(); i++) {
+            assertTrue(prc.getTpCount()[i] >= 0);
+            assertTrue(prc.getFpCount()[i] >= 0);
+            assertTrue(prc.getFnCount()[i] >= 0);
+        }
+    }
 }
@@ -0,0 +1,192 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.linalg.dataset;
+
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.preprocessor.NormalizerStandardize;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TagNames.NDARRAY_ETL)
+@NativeTag
+@Tag(TagNames.FILE_IO)
+public class MappedMiniBatchIteratorTest extends BaseNd4jTestWithBackends {
+
+    @TempDir Path testDir;
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testDataSetRoundTrip(Nd4jBackend backend) throws Exception {
+        File dir = testDir.toFile();
+        DataSetIterator iter = new IrisDataSetIterator(10, 150);
+        List<DataSet> expected = new ArrayList<>();
+        while (iter.hasNext())
+            expected.add(iter.next());
+
+        // small shards, to make sure minibatches are spread over multiple files
+        try (MappedMiniBatchWriter writer = new MappedMiniBatchWriter(dir, MappedMiniBatchWriter.DEFAULT_PATTERN, 8 * MappedMiniBatchWriter.PAGE_SIZE)) {
+            for (DataSet ds : expected)
+                writer.write(ds);
+
+            assertEquals(15, writer.numMiniBatches());
+        }
+
+        MappedMiniBatchReader reader = new MappedMiniBatchReader(dir);
+        assertEquals(15, reader.numMiniBatches());
+        assertTrue(reader.numShards() > 1);
+
+        MappedMiniBatchDataSetIterator mapped = new MappedMiniBatchDataSetIterator(reader);
+        for (int epoch = 0; epoch < 2; epoch++) {
+            int cnt = 0;
+            while (mapped.hasNext()) {
+                DataSet ds = mapped.next();
+                assertEquals(expected.get(cnt).getFeatures(), ds.getFeatures());
+                assertEquals(expected.get(cnt).getLabels(), ds.getLabels());
+                assertNull(ds.getFeaturesMaskArray());
+                cnt++;
+            }
+            assertEquals(15, cnt);
+            mapped.reset();
+        }
+
+        // random access
+        assertEquals(expected.get(7).getFeatures(), reader.getDataSet(7).getFeatures());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testMultiDataSetRoundTrip(Nd4jBackend backend) throws Exception {
+        File dir = testDir.toFile();
+        List<MultiDataSet> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            INDArray f1 = Nd4j.rand(DataType.FLOAT, 4, 3, 7);
+            INDArray f2 = Nd4j.rand(DataType.DOUBLE, 4, 5).castTo(DataType.HALF);
+            INDArray l = Nd4j.rand(DataType.FLOAT, 4, 2);
+            INDArray fm = Nd4j.createFromArray(new int[][]{{1, 1, 1, 1, 1, 1, 1}, {1, 1, 1, 0, 0, 0, 0}, {1, 1, 1, 1, 1, 1, 0}, {1, 0, 0, 0, 0, 0, 0}}).castTo(DataType.FLOAT);
+            // views should be written as plain c-order arrays
+            INDArray l2 = Nd4j.rand(DataType.FLOAT, 3, 4).transpose();
+            expected.add(new MultiDataSet(new INDArray[]{f1, f2}, new INDArray[]{l, l2}, new INDArray[]{fm, null}, null));
+        }
+
+        try (MappedMiniBatchWriter writer = new MappedMiniBatchWriter(dir)) {
+            for (MultiDataSet mds : expected)
+                writer.write(mds);
+        }
+
+        MappedMiniBatchMultiDataSetIterator mapped = new MappedMiniBatchMultiDataSetIterator(dir);
+        int cnt = 0;
+        while (mapped.hasNext()) {
+            org.nd4j.linalg.dataset.api.MultiDataSet mds = mapped.next();
+            MultiDataSet exp = expected.get(cnt++);
+            assertEquals(2, mds.numFeatureArrays());
+            assertEquals(2, mds.numLabelsArrays());
+            for (int i = 0; i < 2; i++) {
+                assertEquals(exp.getFeatures(i), mds.getFeatures(i));
+                assertEquals(exp.getLabels(i), mds.getLabels(i));
+            }
+            assertEquals(exp.getFeaturesMaskArray(0), mds.getFeaturesMaskArray(0));
+            assertNull(mds.getFeaturesMaskArray(1));
+            assertNull(mds.getLabelsMaskArrays());
+        }
+        assertEquals(5, cnt);
+
+        // mapped arrays are copy-on-write, so in-place modifications must not reach the file
+        mapped.reset();
+        mapped.next().getFeatures(0).assign(0.0);
+        assertEquals(expected.get(0).getFeatures(0), new MappedMiniBatchReader(dir).getMultiDataSet(0).getFeatures(0));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testPreProcessorOverMultipleEpochs(Nd4jBackend backend) throws Exception {
+        File dir = testDir.toFile();
+        DataSetIterator iter = new IrisDataSetIterator(10, 150);
+        try (MappedMiniBatchWriter writer = new MappedMiniBatchWriter(dir)) {
+            while (iter.hasNext())
+                writer.write(iter.next());
+        }
+
+        // arrays are packed within a record: header page, one page per minibatch, and the index footer
+        File shard = new File(dir, String.format(MappedMiniBatchWriter.DEFAULT_PATTERN, 0));
+        assertTrue(shard.length() < 17 * MappedMiniBatchWriter.PAGE_SIZE, "Shard size: " + shard.length());
+
+        NormalizerStandardize normalizer = new NormalizerStandardize();
+        iter.reset();
+        normalizer.fit(iter);
+
+        MappedMiniBatchReader reader = new MappedMiniBatchReader(dir);
+        MappedMiniBatchDataSetIterator mapped = new MappedMiniBatchDataSetIterator(reader, true);
+        mapped.setPreProcessor(normalizer);
+
+        // normalizer works in place: with copying enabled, every epoch must normalize the original data, not the output of the previous epoch
+        List<INDArray> firstEpoch = new ArrayList<>();
+        while (mapped.hasNext())
+            firstEpoch.add(mapped.next().getFeatures());
+
+        mapped.reset();
+        int cnt = 0;
+        while (mapped.hasNext()) {
+            DataSet ds = mapped.next();
+            assertEquals(firstEpoch.get(cnt), ds.getFeatures());
+
+            DataSet exp = reader.getDataSet(cnt, true);
+            normalizer.preProcess(exp);
+            assertEquals(exp.getFeatures(), ds.getFeatures());
+            cnt++;
+        }
+        assertEquals(15, cnt);
+
+        // mapped data itself is left untouched
+        iter.reset();
+        DataSet first = iter.next();
+        assertEquals(first.getFeatures(), reader.getDataSet(0).getFeatures());
+
+        // without copying, preprocessor works on the mapped arrays directly: visible via the same reader, but not in the file
+        MappedMiniBatchDataSetIterator zeroCopy = new MappedMiniBatchDataSetIterator(reader);
+        zeroCopy.setPreProcessor(normalizer);
+        INDArray normalized = zeroCopy.next().getFeatures();
+        assertEquals(firstEpoch.get(0), normalized);
+        assertEquals(normalized, reader.getDataSet(0).getFeatures());
+        assertEquals(first.getFeatures(), new MappedMiniBatchReader(dir).getDataSet(0).getFeatures());
+    }
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+}